@@ -422,6 +422,21 @@ public interface Logs extends BasicLogger {
     @Message(id = 510, value = "Failed to configure SSL context")
     IOException failedToConfigureSslContext(@Cause Throwable cause);
 
+    @Message(id = 511, value = "Too many sessions requested: %d (the maximum is %d)")
+    IOException tooManySessionsRequested(int count, int max);
+
+    @Message(id = 512, value = "Protocol error: transaction handle %d is out of range (the limit is %d)")
+    IOException transactionHandleOutOfRange(int handle, int max);
+
+    @Message(id = 513, value = "Protocol error: transaction handle %d is not registered")
+    IOException unknownTransactionHandle(int handle);
+
+    @Message(id = 514, value = "Too many batch entries: %d (the maximum is %d)")
+    IOException tooManyBatchEntries(int count, int max);
+
+    @Message(id = 515, value = "Batch entry too large: %d bytes (the maximum is %d)")
+    IOException batchEntryTooLarge(int length, int max);
+
     // Remote messages; no ID for brevity but should be translated
 
     @Message(value = "No such EJB: %s")
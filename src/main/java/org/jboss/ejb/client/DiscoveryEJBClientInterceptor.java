@@ -36,6 +36,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -77,6 +78,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
     public static final int PRIORITY = ClientInterceptorPriority.JBOSS_AFTER + 100;
 
     private static final AttachmentKey<Set<URI>> BL_KEY = new AttachmentKey<>();
+    private static final AttachmentKey<Long> START_KEY = new AttachmentKey<>();
 
     /**
      * Construct a new instance.
@@ -87,15 +89,17 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
     public void handleInvocation(final EJBClientInvocationContext context) throws Exception {
         if (context.getDestination() != null) {
             // already discovered!
+            context.putAttachment(START_KEY, Long.valueOf(System.nanoTime()));
             context.sendRequest();
             return;
         }
         List<Throwable> problems = executeDiscovery(context);
         try {
+            context.putAttachment(START_KEY, Long.valueOf(System.nanoTime()));
             context.sendRequest();
         } catch (NoSuchEJBException | RequestSendFailedException e) {
             if (isTargetMissing(e)) {
-                processMissingTarget(context);
+                processMissingTarget(context, e);
             }
             throw e;
         } finally {
@@ -118,10 +122,15 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
             result = context.getResult();
         } catch (NoSuchEJBException | RequestSendFailedException e) {
             if (isTargetMissing(e)) {
-                processMissingTarget(context);
+                processMissingTarget(context, e);
             }
             throw e;
         }
+        final URI destination = context.getDestination();
+        final Long start = context.getAttachment(START_KEY);
+        if (destination != null && start != null) {
+            context.getClientContext().getNodeHealthRegistry().recordSuccess(destination, System.nanoTime() - start.longValue());
+        }
         final EJBLocator<?> locator = context.getLocator();
         if (locator.isStateful() && locator.getAffinity() instanceof ClusterAffinity && context.getWeakAffinity() == Affinity.NONE) {
             // set the weak affinity to the location of the session (in case it failed over)
@@ -129,7 +138,6 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
             if (targetAffinity != null) {
                 context.setWeakAffinity(targetAffinity);
             } else {
-                final URI destination = context.getDestination();
                 if (destination != null) {
                     context.setWeakAffinity(URIAffinity.forUri(destination));
                 }
@@ -150,12 +158,16 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
             sessionID = context.proceed();
         } catch (NoSuchEJBException | RequestSendFailedException e) {
             if (isTargetMissing(e)) {
-                processMissingTarget(context);
+                processMissingTarget(context, e);
             }
             throw withSuppressed(e, problems);
         } catch (Exception t) {
             throw withSuppressed(t, problems);
         }
+        final URI destination = context.getDestination();
+        if (destination != null) {
+            context.getClientContext().getNodeHealthRegistry().recordSuccess(destination);
+        }
         setupSessionAffinities(context);
         return sessionID;
     }
@@ -199,7 +211,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         }
     }
 
-    private void processMissingTarget(final AbstractInvocationContext context) {
+    private void processMissingTarget(final AbstractInvocationContext context, final Exception cause) {
         final URI destination = context.getDestination();
 
         if (destination == null) {
@@ -208,6 +220,11 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         }
         // Oops, we got some wrong information!
         addBlackListedDestination(context, destination);
+        if (cause instanceof RequestSendFailedException) {
+            // the node itself could not be reached, so keep later invocations away from it too
+            context.getClientContext().getNodeHealthRegistry().recordFailure(destination);
+        }
+        context.getClientContext().getDiscoveryResultCache().invalidate(destination);
 
         // clear the weak affinity so that cluster invocations can be re-targeted.
         context.setWeakAffinity(Affinity.NONE);
@@ -239,6 +256,72 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         return blacklist != null && blacklist.contains(destination);
     }
 
+    /**
+     * Get the discovered services which are neither blacklisted for this invocation nor backing off, best score first,
+     * so that selectors which take the first eligible node prefer the fastest destination.  If every remaining
+     * service is backing off, they are all returned, since trying one of them beats having no target at all.
+     * Nothing is claimed here; the destination which is finally chosen is claimed by {@link #claimDestination}.
+     *
+     * @param context the invocation context
+     * @param serviceURLs the discovered services
+     * @return the services to choose from (not {@code null})
+     */
+    private static List<ServiceURL> getUsableServices(AbstractInvocationContext context, List<ServiceURL> serviceURLs) {
+        final Set<URI> blacklist = context.getAttachment(BL_KEY);
+        final NodeHealthRegistry healthRegistry = context.getClientContext().getNodeHealthRegistry();
+        // a location may appear in several services
+        final Map<URI, Boolean> available = new HashMap<>();
+        final List<ServiceURL> usable = new ArrayList<>(serviceURLs.size());
+        final List<ServiceURL> backingOff = new ArrayList<>();
+        for (ServiceURL serviceURL : serviceURLs) {
+            final URI location = serviceURL.getLocationURI();
+            if (blacklist != null && blacklist.contains(location)) {
+                continue;
+            }
+            if (available.computeIfAbsent(location, healthRegistry::isUsable).booleanValue()) {
+                usable.add(serviceURL);
+            } else {
+                backingOff.add(serviceURL);
+            }
+        }
+        if (usable.isEmpty() && ! backingOff.isEmpty()) {
+            Logs.INVOCATION.tracef("All discovered destinations are backing off; trying them anyway");
+            return backingOff;
+        }
+        sortByScore(healthRegistry, usable);
+        return usable;
+    }
+
+    /**
+     * Sort services by the score of their location, best first.  Services with equal scores keep their order.
+     *
+     * @param healthRegistry the node health registry
+     * @param serviceURLs the services to sort
+     */
+    static void sortByScore(NodeHealthRegistry healthRegistry, List<ServiceURL> serviceURLs) {
+        if (serviceURLs.size() < 2) {
+            return;
+        }
+        // look each score up once, so that concurrent updates cannot make the order inconsistent
+        final Map<URI, Double> scores = new HashMap<>();
+        for (ServiceURL serviceURL : serviceURLs) {
+            scores.computeIfAbsent(serviceURL.getLocationURI(), location -> Double.valueOf(healthRegistry.getScore(location)));
+        }
+        serviceURLs.sort((s1, s2) -> Double.compare(scores.get(s2.getLocationURI()).doubleValue(), scores.get(s1.getLocationURI()).doubleValue()));
+    }
+
+    /**
+     * Claim the chosen destination with the node health registry, so that if it is due to be probed, other callers
+     * keep away from it until the probe is reported.
+     *
+     * @param context the invocation context
+     * @param destination the chosen destination
+     */
+    private static void claimDestination(AbstractInvocationContext context, URI destination) {
+        // the destination is used either way; losing the claim only means that another caller is probing it too
+        context.getClientContext().getNodeHealthRegistry().claimProbe(destination);
+    }
+
     ServicesQueue discover(final FilterSpec filterSpec) {
         return getDiscovery().discover(EJB_SERVICE_TYPE, filterSpec);
     }
@@ -247,6 +330,47 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         return DISCOVERY_SUPPLIER.get();
     }
 
+    /**
+     * Collect every service matching the given filter, using the client context's discovery result cache if possible.
+     *
+     * @param context the invocation context
+     * @param filterSpec the filter
+     * @param serviceURLs the list to add the matching services to
+     * @return the problems encountered by discovery (not {@code null})
+     */
+    private List<Throwable> discoverAll(AbstractInvocationContext context, final FilterSpec filterSpec, final List<ServiceURL> serviceURLs) {
+        final DiscoveryResultCache cache = context.getClientContext().getDiscoveryResultCache();
+        if (! cache.isEnabled()) {
+            return discoverAll(filterSpec, serviceURLs);
+        }
+        final List<ServiceURL> cached = cache.get(filterSpec);
+        if (cached != null) {
+            Logs.INVOCATION.tracef("Using cached discovery result (filter spec = %s)", filterSpec);
+            serviceURLs.addAll(cached);
+            return Collections.emptyList();
+        }
+        final long generation = cache.getGeneration();
+        final List<Throwable> problems = discoverAll(filterSpec, serviceURLs);
+        // only a complete answer is worth keeping
+        if (problems.isEmpty()) {
+            cache.put(filterSpec, serviceURLs, generation);
+        }
+        return problems;
+    }
+
+    private List<Throwable> discoverAll(final FilterSpec filterSpec, final List<ServiceURL> serviceURLs) {
+        try (final ServicesQueue queue = discover(filterSpec)) {
+            ServiceURL serviceURL;
+            while ((serviceURL = queue.takeService()) != null) {
+                serviceURLs.add(serviceURL);
+            }
+            return queue.getProblems();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Logs.MAIN.operationInterrupted();
+        }
+    }
+
     private List<Throwable> executeDiscovery(AbstractInvocationContext context) {
         assert context.getDestination() == null;
         final EJBLocator<?> locator = context.getLocator();
@@ -311,21 +435,20 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         Logs.INVOCATION.tracef("Performing first-match discovery(locator = %s, weak affinity = %s, filter spec = %s)", context.getLocator(), context.getWeakAffinity(), filterSpec);
         final List<Throwable> problems;
         final Set<URI> set = context.getAttachment(BL_KEY);
+        final NodeHealthRegistry healthRegistry = context.getClientContext().getNodeHealthRegistry();
+        ServiceURL backingOff = null;
         try (final ServicesQueue queue = discover(filterSpec)) {
             ServiceURL serviceURL;
             while ((serviceURL = queue.takeService()) != null) {
                 final URI location = serviceURL.getLocationURI();
                 if (set == null || ! set.contains(location)) {
-                    // Got a match!  See if there's a node affinity to set for the invocation.
-                    final AttributeValue nodeValue = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
-                    if (nodeValue != null) {
-                        context.setTargetAffinity(new NodeAffinity(nodeValue.toString()));
-                    } else {
-                        // just set the URI
-                        context.setTargetAffinity(URIAffinity.forUri(location));
+                    if (! healthRegistry.claimProbe(location)) {
+                        // keep it in case there is nothing better
+                        if (backingOff == null) backingOff = serviceURL;
+                        continue;
                     }
-                    context.setDestination(location);
-                    Logs.INVOCATION.tracef("Performed first-match discovery(target affinity = %s, destination = %s)", context.getTargetAffinity(), context.getDestination());
+                    // Got a match!
+                    setFirstMatch(context, serviceURL);
                     return queue.getProblems();
                 }
             }
@@ -334,6 +457,11 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
             Thread.currentThread().interrupt();
             throw Logs.MAIN.operationInterrupted();
         }
+        if (backingOff != null) {
+            Logs.INVOCATION.tracef("Performed first-match discovery, only matches are backing off");
+            setFirstMatch(context, backingOff);
+            return problems;
+        }
         // No good; fall back to cluster discovery.
         if (fallbackFilterSpec != null) {
             assert context.getLocator().getAffinity() instanceof ClusterAffinity;
@@ -346,6 +474,20 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         return problems;
     }
 
+    private static void setFirstMatch(AbstractInvocationContext context, ServiceURL serviceURL) {
+        final URI location = serviceURL.getLocationURI();
+        // See if there's a node affinity to set for the invocation.
+        final AttributeValue nodeValue = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
+        if (nodeValue != null) {
+            context.setTargetAffinity(new NodeAffinity(nodeValue.toString()));
+        } else {
+            // just set the URI
+            context.setTargetAffinity(URIAffinity.forUri(location));
+        }
+        context.setDestination(location);
+        Logs.INVOCATION.tracef("Performed first-match discovery(target affinity = %s, destination = %s)", context.getTargetAffinity(), context.getDestination());
+    }
+
     private static List<Throwable> merge(List<Throwable> problems, List<Throwable> problems2) {
         if (problems2.isEmpty()) {
             return problems;
@@ -362,57 +504,49 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
     private List<Throwable> doAnyDiscovery(AbstractInvocationContext context, final FilterSpec filterSpec, final EJBLocator<?> locator) {
         Logs.INVOCATION.tracef("Performing any discovery(locator = %s, weak affinity = %s, filter spec = %s)", context.getLocator(), context.getWeakAffinity(), filterSpec);
         final List<Throwable> problems;
-        // blacklist
-        final Set<URI> blacklist = context.getAttachment(BL_KEY);
-        final Map<URI, String> nodes = new HashMap<>();
+        // in the order of the usable services, which is best score first
+        final Map<URI, String> nodes = new LinkedHashMap<>();
         final Map<String, URI> uris = new HashMap<>();
         final Map<URI, List<String>> clusterAssociations = new HashMap<>();
 
         int nodeless = 0;
-        try (final ServicesQueue queue = discover(filterSpec)) {
-            ServiceURL serviceURL;
-            while ((serviceURL = queue.takeService()) != null) {
-                final URI location = serviceURL.getLocationURI();
-                if (blacklist == null || ! blacklist.contains(location)) {
-                    // Got a match!  See if there's a node affinity to set for the invocation.
-                    final AttributeValue nodeValue = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
-                    if (nodeValue != null) {
-                        if (nodes.remove(location, null)) {
-                            nodeless--;
-                        }
-                        final String nodeName = nodeValue.toString();
-                        nodes.put(location, nodeName);
-                        uris.put(nodeName, location);
-                    } else {
-                        // just set the URI but don't overwrite a separately-found node name
-                        if (nodes.putIfAbsent(location, null) == null) {
-                            nodeless++;
-                        }
-                    }
+        final List<ServiceURL> serviceURLs = new ArrayList<>();
+        problems = discoverAll(context, filterSpec, serviceURLs);
+        for (ServiceURL serviceURL : getUsableServices(context, serviceURLs)) {
+            final URI location = serviceURL.getLocationURI();
+            // Got a match!  See if there's a node affinity to set for the invocation.
+            final AttributeValue nodeValue = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
+            if (nodeValue != null) {
+                if (nodes.remove(location, null)) {
+                    nodeless--;
+                }
+                final String nodeName = nodeValue.toString();
+                nodes.put(location, nodeName);
+                uris.put(nodeName, location);
+            } else {
+                // just set the URI but don't overwrite a separately-found node name
+                if (nodes.putIfAbsent(location, null) == null) {
+                    nodeless++;
+                }
+            }
 
-                    // Handle multiple cluster specifications per entry, and also multiple entries with
-                    // cluster specifications that refer to the same URI. Currently multi-membership is
-                    // represented in the latter form, however, handle the first form as well, just in
-                    // case this changes in the future.
-                    final List<AttributeValue> clusters = serviceURL.getAttributeValues(FILTER_ATTR_CLUSTER);
-                    if (clusters != null) {
-                        for (AttributeValue cluster : clusters) {
-                            List<String> list = clusterAssociations.putIfAbsent(location, Collections.singletonList(cluster.toString()));
-                            if (list != null) {
-                                if (!(list instanceof ArrayList)) {
-                                    list = new ArrayList<>(list);
-                                    clusterAssociations.put(location, list);
-                                }
-                                list.add(cluster.toString());
-                            }
+            // Handle multiple cluster specifications per entry, and also multiple entries with
+            // cluster specifications that refer to the same URI. Currently multi-membership is
+            // represented in the latter form, however, handle the first form as well, just in
+            // case this changes in the future.
+            final List<AttributeValue> clusters = serviceURL.getAttributeValues(FILTER_ATTR_CLUSTER);
+            if (clusters != null) {
+                for (AttributeValue cluster : clusters) {
+                    List<String> list = clusterAssociations.putIfAbsent(location, Collections.singletonList(cluster.toString()));
+                    if (list != null) {
+                        if (!(list instanceof ArrayList)) {
+                            list = new ArrayList<>(list);
+                            clusterAssociations.put(location, list);
                         }
+                        list.add(cluster.toString());
                     }
                 }
             }
-            problems = queue.getProblems();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw Logs.MAIN.operationInterrupted();
         }
 
         if (nodes.isEmpty()) {
@@ -430,7 +564,11 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         } else if (nodeless == 0) {
             // use the deployment node selector
             DeploymentNodeSelector selector = context.getClientContext().getDeploymentNodeSelector();
-            nodeName = selector.selectNode(nodes.values().toArray(NO_STRINGS), locator.getAppName(), locator.getModuleName(), locator.getDistinctName());
+            if (selector instanceof MetricsAwareNodeSelector) {
+                nodeName = ((MetricsAwareNodeSelector) selector).selectNode(context.getClientContext(), nodes.values().toArray(NO_STRINGS));
+            } else {
+                nodeName = selector.selectNode(nodes.values().toArray(NO_STRINGS), locator.getAppName(), locator.getModuleName(), locator.getDistinctName());
+            }
             if (nodeName == null) {
                 throw Logs.INVOCATION.selectorReturnedNull(selector);
             }
@@ -460,6 +598,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         // associated cluster with the invocation, so that an effective auth config can be
         // determined. Randomly pick a cluster if there is more than one.
         selectCluster(context, clusterAssociations, location);
+        claimDestination(context, location);
         context.setDestination(location);
         if (nodeName != null) context.setTargetAffinity(new NodeAffinity(nodeName));
         return problems;
@@ -480,29 +619,22 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
 
     private List<Throwable> doClusterDiscovery(AbstractInvocationContext context, final FilterSpec filterSpec) {
         Logs.INVOCATION.tracef("Performing cluster discovery(locator = %s, weak affinity = %s, filter spec = %s)", context.getLocator(), context.getWeakAffinity(), filterSpec);
-        Map<String, URI> nodes = new HashMap<>();
+        // in the order of the usable services, which is best score first
+        Map<String, URI> nodes = new LinkedHashMap<>();
         final EJBClientContext clientContext = context.getClientContext();
         final List<Throwable> problems;
-        final Set<URI> set = context.getAttachment(BL_KEY);
-        try (final ServicesQueue queue = discover(filterSpec)) {
-            ServiceURL serviceURL;
-            while ((serviceURL = queue.takeService()) != null) {
-                final URI location = serviceURL.getLocationURI();
-                if (set == null || ! set.contains(location)) {
-                    final EJBReceiver transportProvider = clientContext.getTransportProvider(location.getScheme());
-                    if (transportProvider != null && satisfiesSourceAddress(serviceURL, transportProvider)) {
-                        final AttributeValue nodeNameValue = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
-                        // should always be true, but no harm in checking
-                        if (nodeNameValue != null) {
-                            nodes.put(nodeNameValue.toString(), location);
-                        }
-                    }
+        final List<ServiceURL> serviceURLs = new ArrayList<>();
+        problems = discoverAll(context, filterSpec, serviceURLs);
+        for (ServiceURL serviceURL : getUsableServices(context, serviceURLs)) {
+            final URI location = serviceURL.getLocationURI();
+            final EJBReceiver transportProvider = clientContext.getTransportProvider(location.getScheme());
+            if (transportProvider != null && satisfiesSourceAddress(serviceURL, transportProvider)) {
+                final AttributeValue nodeNameValue = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
+                // should always be true, but no harm in checking
+                if (nodeNameValue != null) {
+                    nodes.put(nodeNameValue.toString(), location);
                 }
             }
-            problems = queue.getProblems();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw Logs.MAIN.operationInterrupted();
         }
 
         // Prefer nodes associated with a transaction, if possible
@@ -526,6 +658,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
             final String nodeName = entry.getKey();
             final URI uri = entry.getValue();
             context.setTargetAffinity(new NodeAffinity(nodeName));
+            claimDestination(context, uri);
             context.setDestination(uri);
 
             Logs.INVOCATION.tracef("Performed cluster discovery (target affinity = %s, destination = %s)", context.getTargetAffinity(), context.getDestination());
@@ -549,7 +682,13 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         Logs.INVOCATION.tracef("Performing cluster discovery (connected nodes = %s, available nodes = %s)", connectedNodes, availableNodes);
 
         final ClusterNodeSelector selector = clientContext.getClusterNodeSelector();
-        final String selectedNode = selector.selectNode(((ClusterAffinity) locator.getAffinity()).getClusterName(), connectedNodes.toArray(NO_STRINGS), availableNodes.toArray(NO_STRINGS));
+        final String clusterName = ((ClusterAffinity) locator.getAffinity()).getClusterName();
+        final String selectedNode;
+        if (selector instanceof MetricsAwareNodeSelector) {
+            selectedNode = ((MetricsAwareNodeSelector) selector).selectNode(clientContext, clusterName, connectedNodes.toArray(NO_STRINGS), availableNodes.toArray(NO_STRINGS));
+        } else {
+            selectedNode = selector.selectNode(clusterName, connectedNodes.toArray(NO_STRINGS), availableNodes.toArray(NO_STRINGS));
+        }
         if (selectedNode == null) {
             throw withSuppressed(Logs.MAIN.selectorReturnedNull(selector), problems);
         }
@@ -558,6 +697,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
             throw withSuppressed(Logs.MAIN.selectorReturnedUnknownNode(selector, selectedNode), problems);
         }
         // got it!
+        claimDestination(context, uri);
         context.setDestination(uri);
         context.setTargetAffinity(new NodeAffinity(selectedNode));
 
@@ -578,7 +718,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         for (Map.Entry<String, URI> check : nodes.entrySet()) {
             if (preferred.contains(check.getValue())) {
                 if (result == null) {
-                    result = new HashMap<>(attachment.size());
+                    result = new LinkedHashMap<>(attachment.size());
                 }
                 result.put(check.getKey(), check.getValue());
             }
@@ -587,7 +727,7 @@ public final class DiscoveryEJBClientInterceptor implements EJBClientInterceptor
         return result == null ? nodes : result;
     }
 
-    FilterSpec getFilterSpec(EJBModuleIdentifier identifier) {
+    static FilterSpec getFilterSpec(EJBModuleIdentifier identifier) {
         final String appName = identifier.getAppName();
         final String moduleName = identifier.getModuleName();
         final String distinctName = identifier.getDistinctName();
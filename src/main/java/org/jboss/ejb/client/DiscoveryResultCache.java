@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.net.URI;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.wildfly.discovery.FilterSpec;
+import org.wildfly.discovery.ServiceURL;
+
+/**
+ * A cache of complete discovery results of a client context, keyed by filter, relying on the value equality of filter
+ * specifications.  Entries expire after a fixed time to live, and are invalidated early by transport providers when
+ * they learn of module availability or topology changes, and by the discovery interceptor when a discovered destination
+ * turns out not to have the target.
+ */
+public final class DiscoveryResultCache {
+
+    /**
+     * The default time to live of cached results in milliseconds; zero disables the cache.
+     */
+    static final long DEFAULT_TTL = doPrivileged((PrivilegedAction<Long>) () -> Long.valueOf(System.getProperty("org.jboss.ejb.client.discovery.cache.ttl", "5000"))).longValue();
+
+    private final long ttlNanos;
+    private final ConcurrentHashMap<FilterSpec, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    DiscoveryResultCache(final long ttl) {
+        ttlNanos = Math.max(0L, ttl) * 1_000_000L;
+    }
+
+    boolean isEnabled() {
+        return ttlNanos != 0L;
+    }
+
+    /**
+     * Get the cached result for the given filter.
+     *
+     * @param filterSpec the filter (must not be {@code null})
+     * @return the matching service URLs, or {@code null} if there is no live entry
+     */
+    List<ServiceURL> get(final FilterSpec filterSpec) {
+        final Entry entry = entries.get(filterSpec);
+        if (entry != null) {
+            if (System.nanoTime() - entry.expiresAt < 0L) {
+                hits.increment();
+                return entry.serviceURLs;
+            }
+            entries.remove(filterSpec, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Get the cached result for the given filter without counting a hit or a miss.
+     *
+     * @param filterSpec the filter (must not be {@code null})
+     * @return the matching service URLs, or {@code null} if there is no live entry
+     */
+    List<ServiceURL> peek(final FilterSpec filterSpec) {
+        final Entry entry = entries.get(filterSpec);
+        return entry != null && System.nanoTime() - entry.expiresAt < 0L ? entry.serviceURLs : null;
+    }
+
+    /**
+     * Get the current generation, which must be captured before discovery starts and passed to
+     * {@link #put(FilterSpec, List, long)} so that a result which raced with an invalidation is dropped.
+     *
+     * @return the current generation
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    void put(final FilterSpec filterSpec, final List<ServiceURL> serviceURLs, final long generation) {
+        if (serviceURLs.isEmpty()) {
+            // nothing found (yet); keep asking
+            return;
+        }
+        final Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(serviceURLs)), System.nanoTime() + ttlNanos);
+        entries.put(filterSpec, entry);
+        if (this.generation.get() != generation) {
+            entries.remove(filterSpec, entry);
+        }
+    }
+
+    /**
+     * Invalidate all cached results.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Invalidate the cached results which include the given location.
+     *
+     * @param location the location URI (must not be {@code null})
+     */
+    public void invalidate(final URI location) {
+        generation.incrementAndGet();
+        entries.values().removeIf(entry -> entry.contains(location));
+    }
+
+    /**
+     * Get the number of lookups which were answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups which had to run discovery.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    static final class Entry {
+        final List<ServiceURL> serviceURLs;
+        final long expiresAt;
+
+        Entry(final List<ServiceURL> serviceURLs, final long expiresAt) {
+            this.serviceURLs = serviceURLs;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean contains(final URI location) {
+            for (ServiceURL serviceURL : serviceURLs) {
+                if (location.equals(serviceURL.getLocationURI())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -22,7 +22,13 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.net.SocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
@@ -331,6 +337,53 @@ public final class EJBClient {
         return clientContext.createSession(statelessLocator, authenticationContext, null);
     }
 
+    /**
+     * Create several new EJB sessions on the same target in a single request, where the transport supports it.
+     *
+     * @param statelessLocator the stateless locator identifying the stateful EJB
+     * @param count the number of sessions to create (at least 1)
+     * @param <T> the view type
+     * @return the new EJB locators, one per session
+     * @throws CreateException if an error occurs
+     */
+    public static <T> List<StatefulEJBLocator<T>> createSessions(StatelessEJBLocator<T> statelessLocator, int count) throws Exception {
+        Assert.checkNotNullParam("statelessLocator", statelessLocator);
+        Assert.checkMinimumParameter("count", 1, count);
+        final EJBClientContext clientContext = EJBClientContext.getCurrent();
+        return clientContext.createSessions(statelessLocator, count, AuthenticationContext.captureCurrent());
+    }
+
+    /**
+     * Create several new EJB sessions on the same target asynchronously.  Session creation runs on the given executor,
+     * using the client context and authentication context which are current when this method is called.
+     *
+     * @param statelessLocator the stateless locator identifying the stateful EJB
+     * @param count the number of sessions to create (at least 1)
+     * @param executor the executor to create the sessions on (must not be {@code null})
+     * @param <T> the view type
+     * @return the future new EJB locators, one per session
+     */
+    public static <T> CompletionStage<List<StatefulEJBLocator<T>>> createSessionsAsync(StatelessEJBLocator<T> statelessLocator, int count, Executor executor) {
+        Assert.checkNotNullParam("statelessLocator", statelessLocator);
+        Assert.checkMinimumParameter("count", 1, count);
+        Assert.checkNotNullParam("executor", executor);
+        final EJBClientContext clientContext = EJBClientContext.getCurrent();
+        final AuthenticationContext authenticationContext = AuthenticationContext.captureCurrent();
+        final CompletableFuture<List<StatefulEJBLocator<T>>> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(clientContext.createSessions(statelessLocator, count, authenticationContext));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Perform a one-way asynchronous invocation by method locator on a proxy.  Any return value is ignored.
      *
@@ -376,6 +429,34 @@ public final class EJBClient {
         return invocationHandler.invoke(proxy, proxyMethodInfo, args);
     }
 
+    /**
+     * Perform a batch of asynchronous invocations by method locator on a proxy, returning the future result of each
+     * invocation in order.  Invocations of the batch which are routed to the same destination may be sent to it as a
+     * single request if the transport supports it; the result of each invocation is still delivered independently.
+     *
+     * @param proxy the EJB proxy
+     * @param invocations the invocations to perform (must not be {@code null})
+     * @param <T> the view type
+     * @return the list of future results, one per invocation
+     * @throws Exception if an invocation could not be issued for some reason
+     */
+    public static <T> List<Future<?>> invokeBatch(T proxy, List<EJBMethodInvocation> invocations) throws Exception {
+        Assert.checkNotNullParam("invocations", invocations);
+        final EJBInvocationHandler<? extends T> invocationHandler = EJBInvocationHandler.forProxy(proxy);
+        final EJBInvocationBatch batch = new EJBInvocationBatch();
+        final List<Future<?>> results = new ArrayList<>(invocations.size());
+        try {
+            for (EJBMethodInvocation invocation : invocations) {
+                Assert.checkNotNullParam("invocation", invocation);
+                final EJBProxyInformation.ProxyMethodInfo proxyMethodInfo = invocationHandler.getProxyMethodInfo(invocation.getMethodLocator());
+                results.add(invocationHandler.invokeBatched(proxy, proxyMethodInfo, batch, invocation.getArguments()));
+            }
+        } finally {
+            batch.flush();
+        }
+        return results;
+    }
+
     /**
      * Get the locator for a proxy, if it has one.
      *
@@ -32,6 +32,7 @@ public final class EJBClientCluster {
     private final long connectTimeoutMilliseconds;
     private final ClusterNodeSelector clusterNodeSelector;
     private final AuthenticationConfiguration overrideConfiguration;
+    private final boolean warmUp;
 
     EJBClientCluster(final Builder builder) {
         name = builder.name;
@@ -39,6 +40,7 @@ public final class EJBClientCluster {
         connectTimeoutMilliseconds = builder.connectTimeoutMilliseconds;
         clusterNodeSelector = builder.clusterNodeSelector;
         overrideConfiguration = builder.overrideConfiguration;
+        warmUp = builder.warmUp;
     }
 
     /**
@@ -86,6 +88,16 @@ public final class EJBClientCluster {
         return overrideConfiguration;
     }
 
+    /**
+     * Determine whether connections to the nodes of this cluster should be established ahead of the first invocation,
+     * up to the maximum number of connected nodes, and re-established as the cluster topology changes.
+     *
+     * @return {@code true} to warm up connections to the cluster, {@code false} to connect on demand
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
     /**
      * A builder for a cluster definition.
      */
@@ -96,6 +108,7 @@ public final class EJBClientCluster {
         private long connectTimeoutMilliseconds = -1L;
         private ClusterNodeSelector clusterNodeSelector;
         private AuthenticationConfiguration overrideConfiguration;
+        private boolean warmUp;
 
         /**
          * Construct a new instance.
@@ -131,6 +144,11 @@ public final class EJBClientCluster {
             return this;
         }
 
+        public Builder setWarmUp(final boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
         /**
          * Build a new {@link EJBClientCluster} instance based on the current contents of this builder.
          *
@@ -39,6 +39,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -135,6 +136,10 @@ public final class EJBClientContext extends Attachable implements Contextual<EJB
     private final Map<String, InterceptorList> configuredPerClassInterceptors;
     private final Map<String, Map<EJBMethodLocator, InterceptorList>> configuredPerMethodInterceptors;
     private final int maximumConnectedClusterNodes;
+    private final DiscoveryResultCache discoveryResultCache = new DiscoveryResultCache(DiscoveryResultCache.DEFAULT_TTL);
+    private final NodeHealthRegistry nodeHealthRegistry = new NodeHealthRegistry();
+    private final ConcurrentHashMap<String, NodeMetrics> nodeMetrics = new ConcurrentHashMap<>();
+    private final RetryMetrics retryMetrics = new RetryMetrics();
 
     EJBClientContext(Builder builder) {
         final List<EJBTransportProvider> builderTransportProviders = builder.transportProviders;
@@ -274,6 +279,12 @@ public final class EJBClientContext extends Attachable implements Contextual<EJB
         for (EJBTransportProvider transportProvider : transportProviders) {
             transportProvider.notifyRegistered(receiverContext);
         }
+        for (EJBClientCluster clientCluster : configuredClusters.values()) {
+            if (clientCluster.isWarmUp()) {
+                warmUp();
+                break;
+            }
+        }
     }
 
     private static Map<EJBMethodLocator, InterceptorList> calculateMethodInterceptors(final HashMap<EJBMethodLocator, ArrayList<EJBClientInterceptorInformation>> map) {
@@ -477,6 +488,60 @@ public final class EJBClientContext extends Attachable implements Contextual<EJB
         return maximumConnectedClusterNodes;
     }
 
+    /**
+     * Get the cache of discovery results of this context.  Transport providers which learn of module availability or
+     * topology changes should invalidate it.
+     *
+     * @return the discovery result cache (not {@code null})
+     */
+    public DiscoveryResultCache getDiscoveryResultCache() {
+        return discoveryResultCache;
+    }
+
+    /**
+     * Get the registry of destination health of this context.  Transport providers should report the destinations
+     * they fail to reach.
+     *
+     * @return the node health registry (not {@code null})
+     */
+    public NodeHealthRegistry getNodeHealthRegistry() {
+        return nodeHealthRegistry;
+    }
+
+    /**
+     * Start establishing connections ahead of the first invocations: to the configured connections, and to up to the
+     * maximum number of connected nodes of each configured cluster which has {@linkplain EJBClientCluster#isWarmUp()
+     * warm-up} enabled.  Such clusters are warmed up again whenever their topology changes.  This method does not wait
+     * for the connections; it is called on construction if any configured cluster has warm-up enabled.
+     */
+    public void warmUp() {
+        for (EJBTransportProvider transportProvider : transportProviders) {
+            transportProvider.warmUp(receiverContext);
+        }
+    }
+
+    /**
+     * Get the load metrics of the given node as seen by this context.  Transport providers should report the
+     * invocations they send to the node through their {@link EJBReceiverContext}.
+     *
+     * @param nodeName the node name (must not be {@code null})
+     * @return the node metrics (not {@code null})
+     */
+    public NodeMetrics getNodeMetrics(final String nodeName) {
+        Assert.checkNotNullParam("nodeName", nodeName);
+        return nodeMetrics.computeIfAbsent(nodeName, NodeMetrics::new);
+    }
+
+    /**
+     * Get the metrics of the retries of failed invocations of this context.  Transport providers should report the
+     * retries they schedule.
+     *
+     * @return the retry metrics (not {@code null})
+     */
+    public RetryMetrics getRetryMetrics() {
+        return retryMetrics;
+    }
+
     /**
      * Get a copy of this context with the given interceptor(s) added.  If the array is {@code null} or empty, the
      * current context is returned as-is.
@@ -828,12 +893,34 @@ public final class EJBClientContext extends Attachable implements Contextual<EJB
 
         Logs.INVOCATION.tracef("Calling createSession(locator = %s)",statelessLocator);
 
-        SessionID sessionID = null;
+        final SessionID sessionID = proceedSessionCreation(context, statelessLocator);
+        final Affinity affinity = context.getLocator().getAffinity();
+
+        return statelessLocator.withSessionAndAffinity(sessionID, affinity);
+    }
+
+    <T> List<StatefulEJBLocator<T>> createSessions(final StatelessEJBLocator<T> statelessLocator, final int count, final AuthenticationContext authenticationContext) throws Exception {
+        final EJBSessionCreationInvocationContext context = createSessionCreationInvocationContext(statelessLocator, authenticationContext);
+        context.setSessionCount(count);
+
+        Logs.INVOCATION.tracef("Calling createSessions(locator = %s, count = %d)", statelessLocator, Integer.valueOf(count));
+
+        final SessionID sessionID = proceedSessionCreation(context, statelessLocator);
+        final Affinity affinity = context.getLocator().getAffinity();
+
+        final SessionID[] sessionIds = count == 1 ? new SessionID[] { sessionID } : context.getSessionIds();
+        final List<StatefulEJBLocator<T>> locators = new ArrayList<>(sessionIds.length);
+        for (SessionID id : sessionIds) {
+            locators.add(statelessLocator.withSessionAndAffinity(id, affinity));
+        }
+        return locators;
+    }
+
+    private static SessionID proceedSessionCreation(final EJBSessionCreationInvocationContext context, final StatelessEJBLocator<?> statelessLocator) throws Exception {
         for (int i = 0; i < MAX_SESSION_RETRIES; i++) {
             Throwable t;
             try {
-                sessionID = context.proceed();
-                break;
+                return context.proceed();
             } catch (RequestSendFailedException r) {
                 if (! r.canBeRetried()) {
                     throw r;
@@ -858,9 +945,7 @@ public final class EJBClientContext extends Attachable implements Contextual<EJB
             }
             Logs.INVOCATION.tracef("Retrying invocation (attempt %d): %s", i + 1, statelessLocator);
         }
-        final Affinity affinity = context.getLocator().getAffinity();
-
-        return statelessLocator.withSessionAndAffinity(sessionID, affinity);
+        throw Assert.unreachableCode();
     }
 
     InterceptorList getClassPathInterceptors() {
@@ -18,6 +18,7 @@
 
 package org.jboss.ejb.client;
 
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.URI;
@@ -28,10 +29,11 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 import static java.lang.Math.max;
-import static java.lang.Thread.holdsLock;
 
 import javax.transaction.Transaction;
 
@@ -67,7 +69,23 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
     private final long timeout;
 
     // Invocation state
-    private final Object lock = new Object();
+
+    private static final State[] STATES = State.values();
+
+    /**
+     * Guards the invocation state and the fields below it.  It is not a monitor, so that virtual threads which wait
+     * for the invocation are not pinned.
+     */
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final Condition stateChanged = stateLock.newCondition();
+
+    /**
+     * The published {@link State} ordinal.  It is written whenever the lock is released, so that the state can be
+     * read at any time without locking.
+     */
+    private volatile int publishedState = State.SENDING.ordinal();
+    private boolean signal;
+
     private EJBReceiverInvocationContext.ResultProducer resultProducer;
 
     private volatile boolean cancelRequested;
@@ -79,7 +97,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
     private Object cachedResult;
 
     private int interceptorChainIndex;
-    private boolean blockingCaller;
+    private volatile boolean blockingCaller;
+    private volatile EJBInvocationBatch invocationBatch;
 
     EJBClientInvocationContext(final EJBInvocationHandler<?> invocationHandler, final EJBClientContext ejbClientContext, final Object invokedProxy, final Object[] parameters, final EJBProxyInformation.ProxyMethodInfo methodInfo, final int allowedRetries, final Supplier<AuthenticationContext> authenticationContextSupplier) {
         super(invocationHandler.getLocator(), ejbClientContext);
@@ -210,6 +229,16 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         return methodInfo.getCompressionLevel();
     }
 
+    /**
+     * Get the name of the compression codec given by the compression hint.  If no compression hint is given,
+     * {@code null} is returned.
+     *
+     * @return the compression codec name, or {@code null} for no compression hint
+     */
+    public String getCompressionCodec() {
+        return methodInfo.getCompressionCodec();
+    }
+
     /**
      * Get the method type signature string, used to identify the method.
      *
@@ -234,9 +263,7 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      * @return {@code true} if the calling thread is being blocked; {@code false} otherwise
      */
     public boolean isBlockingCaller() {
-        synchronized (lock) {
-            return blockingCaller;
-        }
+        return blockingCaller;
     }
 
     /**
@@ -245,9 +272,20 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      * @param blockingCaller {@code true} if the calling thread is being blocked; {@code false} otherwise
      */
     public void setBlockingCaller(final boolean blockingCaller) {
-        synchronized (lock) {
-            this.blockingCaller = blockingCaller;
-        }
+        this.blockingCaller = blockingCaller;
+    }
+
+    /**
+     * Get the batch that this invocation was issued as a part of, if any.
+     *
+     * @return the invocation batch, or {@code null} if the invocation is not part of a batch
+     */
+    public EJBInvocationBatch getInvocationBatch() {
+        return invocationBatch;
+    }
+
+    void setInvocationBatch(final EJBInvocationBatch invocationBatch) {
+        this.invocationBatch = invocationBatch;
     }
 
     /**
@@ -257,15 +295,12 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      */
     public void addSuppressed(Throwable cause) {
         Assert.checkNotNullParam("cause", cause);
-        synchronized (lock) {
-            if (state == State.DONE) {
-                return;
-            }
-            if (suppressedExceptions == null) {
-                suppressedExceptions = new ArrayList<>();
-            }
-            suppressedExceptions.add(() -> cause);
+        lock();
+        try {
+            addSuppressedLocked(() -> cause);
+        } finally {
             checkStateInvariants();
+            unlock();
         }
     }
 
@@ -276,21 +311,47 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      */
     public void addSuppressed(Supplier<? extends Throwable> cause) {
         Assert.checkNotNullParam("cause", cause);
-        synchronized (lock) {
-            if (state == State.DONE) {
-                return;
-            }
-            if (suppressedExceptions == null) {
-                suppressedExceptions = new ArrayList<>();
-            }
-            suppressedExceptions.add(cause);
+        lock();
+        try {
+            addSuppressedLocked(cause);
+        } finally {
             checkStateInvariants();
+            unlock();
+        }
+    }
+
+    private boolean hasStreamParameter() {
+        if (parameters != null) {
+            for (Object parameter : parameters) {
+                if (parameter instanceof InputStream) {
+                    return true;
+                }
+            }
         }
+        return false;
+    }
+
+    private void addSuppressedLocked(Supplier<? extends Throwable> cause) {
+        assert isLockHeld();
+        if (state == State.DONE) {
+            return;
+        }
+        if (suppressedExceptions == null) {
+            suppressedExceptions = new ArrayList<>();
+        }
+        suppressedExceptions.add(cause);
     }
 
     public void requestRetry() {
-        synchronized (lock) {
+        lock();
+        try {
+            if (hasStreamParameter()) {
+                // the content of a stream parameter has already been consumed, so it cannot be sent again
+                return;
+            }
             retryRequested = true;
+        } finally {
+            unlock();
         }
     }
 
@@ -301,97 +362,97 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
             try {
                 authenticationContext.runExConsumer(EJBClientInvocationContext::sendRequest, this);
                 // back to the start of the chain; decide what to do next.
-                synchronized (lock) {
-                    try {
-                        assert state == State.SENT;
-                        // from here we can go to: READY, or WAITING, or retry SENDING.
-                        Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
-                        EJBReceiverInvocationContext.ResultProducer resultProducer = this.resultProducer;
-                        if (resultProducer != null) {
-                            // READY, even if we have a pending failure.
-                            if (pendingFailure != null) {
-                                addSuppressed(pendingFailure);
-                                this.pendingFailure = null;
-                            }
-                            transition(State.READY);
-                            return;
-                        }
-                        // now see if we're retrying or returning.
+                lock();
+                try {
+                    assert state == State.SENT;
+                    // from here we can go to: READY, or WAITING, or retry SENDING.
+                    Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
+                    EJBReceiverInvocationContext.ResultProducer resultProducer = this.resultProducer;
+                    if (resultProducer != null) {
+                        // READY, even if we have a pending failure.
                         if (pendingFailure != null) {
-                            // either READY (with exception) or retry SENDING.
-                            if (! retryRequested || remainingRetries == 0) {
-                                // nobody wants retry, or there are none left; READY (with exception).
-                                this.resultProducer = new ThrowableResult(pendingFailure);
-                                this.pendingFailure = null;
-                                // in case we've gone asynchronous
-                                transition(State.READY);
-                                return;
-                            } else {
-                                // redo the loop
-                                transition(State.SENDING);
-                                retryRequested = false;
-                                remainingRetries --;
-                                addSuppressed(pendingFailure);
-                                this.pendingFailure = null;
-                                continue;
-                            }
+                            addSuppressedLocked(pendingFailure);
+                            this.pendingFailure = null;
                         }
-                        transition(State.WAITING);
+                        transition(State.READY);
                         return;
-                    } finally {
-                        checkStateInvariants();
                     }
+                    // now see if we're retrying or returning.
+                    if (pendingFailure != null) {
+                        // either READY (with exception) or retry SENDING.
+                        if (! retryRequested || remainingRetries == 0) {
+                            // nobody wants retry, or there are none left; READY (with exception).
+                            this.resultProducer = new ThrowableResult(pendingFailure);
+                            this.pendingFailure = null;
+                            // in case we've gone asynchronous
+                            transition(State.READY);
+                            return;
+                        } else {
+                            // redo the loop
+                            transition(State.SENDING);
+                            retryRequested = false;
+                            remainingRetries --;
+                            addSuppressedLocked(pendingFailure);
+                            this.pendingFailure = null;
+                            continue;
+                        }
+                    }
+                    transition(State.WAITING);
+                    return;
+                } finally {
+                    checkStateInvariants();
+                    unlock();
                 }
                 // not reachable
             } catch (Throwable t) {
                 // back to the start of the chain; decide what to do next.
-                synchronized (lock) {
+                lock();
+                try {
                     if (state == State.SENDING) {
                         // didn't make it to the end of the chain even... but we won't suppress the thrown exception
                         transition(State.SENT);
                     }
                     assert state == State.SENT;
-                    try {
-                        // from here we can go to: FAILED, READY, or retry SENDING.
-                        Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
-                        EJBReceiverInvocationContext.ResultProducer resultProducer = this.resultProducer;
-                        if (resultProducer != null) {
-                            // READY, even if we have a pending failure.
-                            if (pendingFailure != null) {
-                                addSuppressed(t);
-                                addSuppressed(pendingFailure);
-                                this.pendingFailure = null;
-                            }
-                            transition(State.READY);
-                            return;
-                        }
-                        // FAILED, or retry SENDING.
-                        if (! retryRequested || remainingRetries == 0) {
-                            // nobody wants retry, or there are none left; go to FAILED
-                            if (pendingFailure != null) {
-                                addSuppressed(pendingFailure);
-                            }
-                            if (t instanceof Exception) {
-                                this.resultProducer = new EJBReceiverInvocationContext.ResultProducer.Failed((Exception) t);
-                            } else {
-                                this.resultProducer = new EJBReceiverInvocationContext.ResultProducer.Failed(new UndeclaredThrowableException(t));
-                            }
+                    // from here we can go to: FAILED, READY, or retry SENDING.
+                    Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
+                    EJBReceiverInvocationContext.ResultProducer resultProducer = this.resultProducer;
+                    if (resultProducer != null) {
+                        // READY, even if we have a pending failure.
+                        if (pendingFailure != null) {
+                            addSuppressedLocked(() -> t);
+                            addSuppressedLocked(pendingFailure);
                             this.pendingFailure = null;
-                            transition(State.READY);
-                            return;
                         }
-                        // retry SENDING
+                        transition(State.READY);
+                        return;
+                    }
+                    // FAILED, or retry SENDING.
+                    if (! retryRequested || remainingRetries == 0) {
+                        // nobody wants retry, or there are none left; go to FAILED
                         if (pendingFailure != null) {
-                            addSuppressed(pendingFailure);
+                            addSuppressedLocked(pendingFailure);
+                        }
+                        if (t instanceof Exception) {
+                            this.resultProducer = new EJBReceiverInvocationContext.ResultProducer.Failed((Exception) t);
+                        } else {
+                            this.resultProducer = new EJBReceiverInvocationContext.ResultProducer.Failed(new UndeclaredThrowableException(t));
                         }
-                        setReceiver(null);
                         this.pendingFailure = null;
-                        transition(State.SENDING);
-                        retryRequested = false;
-                        remainingRetries --;
-                    } finally {
-                        checkStateInvariants();
+                        transition(State.READY);
+                        return;
                     }
+                    // retry SENDING
+                    if (pendingFailure != null) {
+                        addSuppressedLocked(pendingFailure);
+                    }
+                    setReceiver(null);
+                    this.pendingFailure = null;
+                    transition(State.SENDING);
+                    retryRequested = false;
+                    remainingRetries --;
+                } finally {
+                    checkStateInvariants();
+                    unlock();
                 }
                 // record for later
                 addSuppressed(t);
@@ -403,9 +464,7 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
     }
 
     State checkState() {
-        synchronized (lock) {
-            return state;
-        }
+        return STATES[publishedState];
     }
 
     /**
@@ -414,21 +473,22 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      * @throws Exception if the request was not successfully sent
      */
     public void sendRequest() throws Exception {
-        final Object lock = this.lock;
-        Assert.assertNotHoldsLock(lock);
+        assert ! isLockHeld();
         final EJBClientInterceptorInformation[] chain = interceptorList.getInformation();
-        synchronized (lock) {
-            if (state != State.SENDING) {
-                throw Logs.MAIN.sendRequestCalledDuringWrongPhase();
-            }
+        if (checkState() != State.SENDING) {
+            throw Logs.MAIN.sendRequestCalledDuringWrongPhase();
         }
         final int idx = interceptorChainIndex ++;
         try {
             if (cancelRequested) {
-                synchronized (lock) {
+                lock();
+                try {
                     transition(State.SENT);
-                    resultReady(CANCELLED);
+                    // the cancelled result needs no discarding if it is not accepted
+                    resultReadyLocked(CANCELLED);
+                } finally {
                     checkStateInvariants();
+                    unlock();
                 }
             } else if (chain.length == idx) {
                 // End of the chain processing; deliver to receiver or throw an exception.
@@ -437,52 +497,40 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                 try {
                     receiver = getClientContext().resolveReceiver(destination, getLocator());
                 } catch (Throwable t) {
-                    synchronized (lock) {
-                        if (state != State.SENT) {
-                            transition(State.SENT);
-                        }
-                        checkStateInvariants();
-                    }
+                    transitionToSent();
                     throw t;
                 }
                 setReceiver(receiver);
-                synchronized (lock) {
+                lock();
+                try {
                     transition(State.SENT);
+                } finally {
                     checkStateInvariants();
+                    unlock();
                 }
                 try {
                     receiver.processInvocation(receiverInvocationContext);
                 } catch (Throwable t) {
-                    synchronized (lock) {
-                        if (state != State.SENT) {
-                            transition(State.SENT);
-                        }
-                        checkStateInvariants();
-                    }
+                    transitionToSent();
                     throw t;
                 }
             } else {
                 try {
                     chain[idx].getInterceptorInstance().handleInvocation(this);
                 } catch (Throwable t) {
-                    synchronized (lock) {
-                        if (state != State.SENT) {
-                            transition(State.SENT);
-                        }
-                        checkStateInvariants();
-                    }
+                    transitionToSent();
                     throw t;
                 }
-                synchronized (lock) {
-                    try {
-                        if (state != State.SENT) {
-                            assert state == State.SENDING;
-                            transition(State.SENT);
-                            throw Logs.INVOCATION.requestNotSent();
-                        }
-                    } finally {
-                        checkStateInvariants();
+                lock();
+                try {
+                    if (state != State.SENT) {
+                        assert state == State.SENDING;
+                        transition(State.SENT);
+                        throw Logs.INVOCATION.requestNotSent();
                     }
+                } finally {
+                    checkStateInvariants();
+                    unlock();
                 }
             }
         } finally {
@@ -492,6 +540,18 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         return;
     }
 
+    private void transitionToSent() {
+        lock();
+        try {
+            if (state != State.SENT) {
+                transition(State.SENT);
+            }
+        } finally {
+            checkStateInvariants();
+            unlock();
+        }
+    }
+
     /**
      * Get the invocation result from this request.  The result is not actually acquired unless all interceptors
      * call this method.  Should only be called from {@link EJBClientInterceptor#handleInvocationResult(EJBClientInvocationContext)}.
@@ -516,41 +576,40 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         final EJBReceiverInvocationContext.ResultProducer resultProducer;
         Throwable fail = null;
         final int idx = this.interceptorChainIndex;
-        final Object lock = this.lock;
-        synchronized (lock) {
-            try {
-                if (idx == 0) {
-                    if (retry) {
-                        assert state == State.CONSUMING;
-                    } else {
-                        while (state == State.CONSUMING) try {
-                            checkStateInvariants();
-                            lock.wait();
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            throw Logs.MAIN.operationInterrupted();
-                        }
-                        if (state == State.DONE) {
-                            Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
-                            if (pendingFailure != null) {
-                                fail = pendingFailure.get();
-                                if (fail == null) {
-                                    return cachedResult;
-                                }
-                            } else {
+        lock();
+        try {
+            if (idx == 0) {
+                if (retry) {
+                    assert state == State.CONSUMING;
+                } else {
+                    while (state == State.CONSUMING) try {
+                        checkStateInvariants();
+                        await(0L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw Logs.MAIN.operationInterrupted();
+                    }
+                    if (state == State.DONE) {
+                        Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
+                        if (pendingFailure != null) {
+                            fail = pendingFailure.get();
+                            if (fail == null) {
                                 return cachedResult;
                             }
-                        } else if (state != State.READY) {
-                            throw Logs.MAIN.getResultCalledDuringWrongPhase();
                         } else {
-                            transition(State.CONSUMING);
+                            return cachedResult;
                         }
+                    } else if (state != State.READY) {
+                        throw Logs.MAIN.getResultCalledDuringWrongPhase();
+                    } else {
+                        transition(State.CONSUMING);
                     }
                 }
-                resultProducer = this.resultProducer;
-            } finally {
-                checkStateInvariants();
             }
+            resultProducer = this.resultProducer;
+        } finally {
+            checkStateInvariants();
+            unlock();
         }
         if (fail != null) try {
             throw fail;
@@ -569,19 +628,23 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                     result = chain[idx].getInterceptorInstance().handleInvocationResult(this);
                 }
                 if (idx == 0) {
-                    synchronized (lock) {
+                    lock();
+                    try {
                         transition(State.DONE);
                         pendingFailure = null;
                         suppressedExceptions = null;
                         cachedResult = result;
                         this.resultProducer = null;
+                    } finally {
                         checkStateInvariants();
+                        unlock();
                     }
                 }
                 return result;
             } catch (Throwable t) {
                 if (idx == 0) {
-                    synchronized (lock) {
+                    lock();
+                    try {
                         // retry if we can
                         this.resultProducer = null;
                         List<Supplier<? extends Throwable>> suppressedExceptions = this.suppressedExceptions;
@@ -596,7 +659,6 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                             this.pendingFailure = null;
                             setReceiver(null);
                             transition(State.SENDING);
-                            checkStateInvariants();
                         } else {
                             pendingFailure = () -> t;
                             if (suppressedExceptions != null) {
@@ -608,8 +670,10 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                                 }
                             }
                             transition(State.DONE);
-                            checkStateInvariants();
                         }
+                    } finally {
+                        checkStateInvariants();
+                        unlock();
                     }
                 }
                 throw t;
@@ -636,19 +700,30 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
 
     void resultReady(EJBReceiverInvocationContext.ResultProducer resultProducer) {
         Assert.checkNotNullParam("resultProducer", resultProducer);
-        synchronized (lock) {
-            if (state.isWaiting() && this.resultProducer == null) {
-                this.resultProducer = resultProducer;
-                if (state == State.WAITING) {
-                    transition(State.READY);
-                }
-                checkStateInvariants();
-                return;
-            }
+        final boolean accepted;
+        lock();
+        try {
+            accepted = resultReadyLocked(resultProducer);
+        } finally {
             checkStateInvariants();
+            unlock();
+        }
+        if (! accepted) {
+            // for whatever reason, we don't care
+            resultProducer.discardResult();
+        }
+    }
+
+    private boolean resultReadyLocked(EJBReceiverInvocationContext.ResultProducer resultProducer) {
+        assert isLockHeld();
+        if (state.isWaiting() && this.resultProducer == null) {
+            this.resultProducer = resultProducer;
+            if (state == State.WAITING) {
+                transition(State.READY);
+            }
+            return true;
         }
-        // for whatever reason, we don't care
-        resultProducer.discardResult();
+        return false;
     }
 
     /**
@@ -728,8 +803,7 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      * @param newState the state to transition to (must not be {@code null})
      */
     private void transition(State newState) {
-        final Object lock = this.lock;
-        Assert.assertHoldsLock(lock);
+        assert isLockHeld();
         final State oldState = this.state;
         log.tracef("Transitioning %s from %s to %s", this, oldState, newState);
         switch (oldState) {
@@ -765,7 +839,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                 // fall thru
             }
             case WAITING:{
-                lock.notifyAll();
+                // waiters are woken once the new state is published
+                signal = true;
                 break;
             }
         }
@@ -773,12 +848,57 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         this.state = newState;
     }
 
+    /**
+     * Acquire exclusive access to the invocation state.  The lock is reentrant, so that a callback which runs while it
+     * is held may call back into this context.
+     */
+    private void lock() {
+        stateLock.lock();
+    }
+
+    /**
+     * Publish the current state and release the lock, waking any waiters if the state changed in a way that they may
+     * be interested in.
+     */
+    private void unlock() {
+        publish();
+        stateLock.unlock();
+    }
+
+    private void publish() {
+        assert isLockHeld();
+        publishedState = state.ordinal();
+        if (signal) {
+            signal = false;
+            stateChanged.signalAll();
+        }
+    }
+
+    private boolean isLockHeld() {
+        return stateLock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Release the lock and wait until the state changes, the timeout elapses, or the thread is interrupted; the lock
+     * is reacquired before returning.  Spurious returns are possible, so callers must recheck their condition.
+     *
+     * @param nanos the maximum time to wait in nanoseconds, or 0 to wait indefinitely
+     * @throws InterruptedException if the thread was interrupted
+     */
+    private void await(final long nanos) throws InterruptedException {
+        publish();
+        if (nanos > 0L) {
+            stateChanged.awaitNanos(nanos);
+        } else {
+            stateChanged.await();
+        }
+    }
+
     /**
      * Check the invariants of the current state with assertions before the caller releases the lock.
      */
     private void checkStateInvariants() {
-        final Object lock = this.lock;
-        Assert.assertHoldsLock(lock);
+        assert isLockHeld();
         final State state = this.state;
         switch (state) {
             case SENDING: {
@@ -819,9 +939,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
      *  interrupted
      */
     public boolean awaitCancellationResult() {
-        final Object lock = this.lock;
-        Assert.assertNotHoldsLock(lock);
-        synchronized (lock) {
+        lock();
+        try {
             for (;;) {
                 if (resultProducer == CANCELLED) {
                     return true;
@@ -830,79 +949,79 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                 }
                 try {
                     checkStateInvariants();
-                    lock.wait();
+                    await(0L);
                 } catch (InterruptedException ex) {
                     Thread.currentThread().interrupt();
                     return false;
                 }
             }
+        } finally {
+            unlock();
         }
     }
 
     Object awaitResponse() throws Exception {
-        Assert.assertNotHoldsLock(lock);
         boolean intr = false, timedOut = false;
         try {
-            final Object lock = this.lock;
             final long timeout = this.timeout;
-            synchronized (lock) {
-                try {
-                    out: for (;;) {
-                        switch (state) {
-                            case SENDING:
-                            case SENT:
-                            case CONSUMING:
-                            case WAITING: {
-                                if (timeout <= 0) {
-                                    // no timeout; lighter code path
-                                    try {
-                                        checkStateInvariants();
-                                        lock.wait();
-                                    } catch (InterruptedException e) {
-                                        intr = true;
-                                    }
-                                } else {
-                                    // timeout in ms, elapsed time in nanosecs
-                                    long remaining = max(0L, timeout * 1_000_000L - max(0L, System.nanoTime() - startTime));
-                                    if (remaining == 0L) {
-                                        // timed out
-                                        timedOut = true;
-                                        resultReady(new ThrowableResult(() -> new TimeoutException("No invocation response received in " + timeout + " milliseconds")));
-                                    } else try {
-                                        checkStateInvariants();
-                                        lock.wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
-                                    } catch (InterruptedException e) {
-                                        intr = true;
-                                    }
+            lock();
+            try {
+                out: for (;;) {
+                    switch (state) {
+                        case SENDING:
+                        case SENT:
+                        case CONSUMING:
+                        case WAITING: {
+                            if (timeout <= 0) {
+                                // no timeout; lighter code path
+                                try {
+                                    checkStateInvariants();
+                                    await(0L);
+                                } catch (InterruptedException e) {
+                                    intr = true;
                                 }
-                                break;
-                            }
-                            case READY: {
-                                // we have to get the result, so break out of here.
-                                checkStateInvariants();
-                                break out;
-                            }
-                            case DONE: {
-                                checkStateInvariants();
-                                if (pendingFailure != null) {
-                                    try {
-                                        throw pendingFailure.get();
-                                    } catch (Error | Exception e) {
-                                        throw e;
-                                    } catch (Throwable t) {
-                                        throw new UndeclaredThrowableException(t);
-                                    }
+                            } else {
+                                // timeout in ms, elapsed time in nanosecs
+                                long remaining = max(0L, timeout * 1_000_000L - max(0L, System.nanoTime() - startTime));
+                                if (remaining == 0L) {
+                                    // timed out
+                                    timedOut = true;
+                                    resultReadyLocked(new ThrowableResult(() -> new TimeoutException("No invocation response received in " + timeout + " milliseconds")));
+                                } else try {
+                                    checkStateInvariants();
+                                    await(remaining);
+                                } catch (InterruptedException e) {
+                                    intr = true;
                                 }
-                                return cachedResult;
                             }
-                            default: {
-                                throw new IllegalStateException();
+                            break;
+                        }
+                        case READY: {
+                            // we have to get the result, so break out of here.
+                            checkStateInvariants();
+                            break out;
+                        }
+                        case DONE: {
+                            checkStateInvariants();
+                            if (pendingFailure != null) {
+                                try {
+                                    throw pendingFailure.get();
+                                } catch (Error | Exception e) {
+                                    throw e;
+                                } catch (Throwable t) {
+                                    throw new UndeclaredThrowableException(t);
+                                }
                             }
+                            return cachedResult;
+                        }
+                        default: {
+                            throw new IllegalStateException();
                         }
                     }
-                } finally {
-                    blockingCaller = false;
                 }
+            } finally {
+                blockingCaller = false;
+                unlock();
             }
             return getResult();
         } finally {
@@ -915,10 +1034,9 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
     }
 
     void setDiscardResult() {
-        final Object lock = this.lock;
-        assert !holdsLock(lock);
         final EJBReceiverInvocationContext.ResultProducer resultProducer;
-        synchronized (lock) {
+        lock();
+        try {
             resultProducer = this.resultProducer;
             this.resultProducer = EJBReceiverInvocationContext.ResultProducer.NULL;
             // result is waiting, discard it
@@ -926,7 +1044,9 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                 transition(State.DONE);
             }
             // fall out of the lock to discard the old result (if any)
+        } finally {
             checkStateInvariants();
+            unlock();
         }
         if (resultProducer != null) resultProducer.discardResult();
     }
@@ -936,8 +1056,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
     }
 
     void failed(Exception exception, Executor retryExecutor) {
-        final Object lock = this.lock;
-        synchronized (lock) {
+        lock();
+        try {
             switch (state) {
                 case CONSUMING:
                 case DONE: {
@@ -950,13 +1070,13 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                 case SENT: {
                     final Supplier<? extends Throwable> pendingFailure = this.pendingFailure;
                     if (pendingFailure != null) {
-                        addSuppressed(pendingFailure);
+                        addSuppressedLocked(pendingFailure);
                     }
                     this.pendingFailure = () -> exception;
                     return;
                 }
                 case READY: {
-                    addSuppressed(exception);
+                    addSuppressedLocked(() -> exception);
                     return;
                 }
                 case WAITING: {
@@ -974,6 +1094,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                     throw Assert.impossibleSwitchCase(state);
                 }
             }
+        } finally {
+            unlock();
         }
         retryExecutor.execute(this::retryOperation);
         return;
@@ -983,11 +1105,7 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         try {
             getResult(true);
         } catch (Throwable t) {
-            final boolean retry;
-            synchronized (lock) {
-                retry = state == State.SENDING;
-            }
-            if (retry) sendRequestInitial();
+            if (checkState() == State.SENDING) sendRequestInitial();
         }
     }
 
@@ -997,9 +1115,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         }
 
         public boolean cancel(final boolean mayInterruptIfRunning) {
-            final Object lock = EJBClientInvocationContext.this.lock;
-            assert !holdsLock(lock);
-            synchronized (lock) {
+            lock();
+            try {
                 if (state == State.DONE) {
                     // cannot cancel now; also resultProducer is gone
                     return pendingFailure == CANCELLED_PRODUCER;
@@ -1014,37 +1131,49 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                     // the cancel request flag and a fall out to send the request
                     cancelRequested = true;
                 }
+            } finally {
+                unlock();
             }
             final EJBReceiver receiver = getReceiver();
             final boolean result = receiver != null && receiver.cancelInvocation(receiverInvocationContext, mayInterruptIfRunning);
             if (! result) {
-                synchronized (lock) {
+                lock();
+                try {
                     if (resultProducer == CANCELLED || state == State.DONE && pendingFailure == CANCELLED_PRODUCER) {
                         return true;
                     }
+                } finally {
+                    unlock();
                 }
             }
             return result;
         }
 
         public boolean isCancelled() {
-            final Object lock = EJBClientInvocationContext.this.lock;
-            assert !holdsLock(lock);
-            synchronized (lock) {
+            lock();
+            try {
                 return state == State.DONE ? pendingFailure == CANCELLED_PRODUCER : resultProducer == CANCELLED;
+            } finally {
+                unlock();
             }
         }
 
         public boolean isDone() {
-            final Object lock = EJBClientInvocationContext.this.lock;
-            assert !holdsLock(lock);
-            synchronized (lock) {
+            // the published state is enough unless the result is being consumed
+            final State published = checkState();
+            if (published != State.CONSUMING) {
+                // TODO: we should also calculate whether the invocation timed out
+                return ! published.isWaiting();
+            }
+            lock();
+            try {
                 if (state == State.CONSUMING) {
                     return retryRequested && remainingRetries > 0 && resultProducer instanceof ThrowableResult;
                 } else {
-                    // TODO: we should also calculate whether the invocation timed out
                     return ! state.isWaiting();
                 }
+            } finally {
+                unlock();
             }
         }
 
@@ -1059,8 +1188,6 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
         }
 
         public Object get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            final Object lock = EJBClientInvocationContext.this.lock;
-            assert !holdsLock(lock);
             final long handlerInvTimeout = invocationHandler.getInvocationTimeout();
             final long invocationTimeout = handlerInvTimeout != -1 ? handlerInvTimeout : getClientContext().getInvocationTimeout();
             final long ourStart = System.nanoTime();
@@ -1070,7 +1197,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                 return get();
             }
             long remaining = unit.toNanos(timeout);
-            synchronized (lock) {
+            lock();
+            try {
                 out: for (;;) {
                     switch (state) {
                         case SENDING:
@@ -1081,7 +1209,7 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                             if (remaining <= 0L) {
                                 throw log.timedOut();
                             }
-                            lock.wait(remaining / 1_000_000_000L, (int) (remaining % 1_000_000_000L));
+                            await(remaining);
                             remaining = unit.toNanos(timeout) - (System.nanoTime() - ourStart);
                             break;
                         }
@@ -1101,6 +1229,8 @@ public final class EJBClientInvocationContext extends AbstractInvocationContext
                             throw new IllegalStateException();
                     }
                 }
+            } finally {
+                unlock();
             }
             // we've gotten the result
             try {
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.ejb._private.Logs;
+import org.wildfly.common.Assert;
+
+/**
+ * A group of invocations which are issued together by {@link EJBClient#invokeBatch(Object, java.util.List)}.  Receivers
+ * which support batching may hold back the requests of a batch, using the batch attachments to keep per-destination
+ * state, and register a flush action which sends them together once every invocation of the batch has been issued.
+ * <p>
+ * Requests which reach a receiver after the batch has been flushed (for example, because they were retried or because
+ * their connection was established asynchronously) must be sent individually.
+ */
+public final class EJBInvocationBatch extends Attachable {
+    private List<Runnable> flushActions = new ArrayList<>();
+
+    EJBInvocationBatch() {
+    }
+
+    /**
+     * Register an action to run when this batch is flushed.
+     *
+     * @param action the action to run (must not be {@code null})
+     * @return {@code true} if the action was registered, or {@code false} if the batch was already flushed, in which
+     *      case the action will never be run
+     */
+    public boolean addFlushAction(Runnable action) {
+        Assert.checkNotNullParam("action", action);
+        synchronized (this) {
+            final List<Runnable> flushActions = this.flushActions;
+            if (flushActions == null) {
+                return false;
+            }
+            flushActions.add(action);
+            return true;
+        }
+    }
+
+    void flush() {
+        final List<Runnable> flushActions;
+        synchronized (this) {
+            flushActions = this.flushActions;
+            if (flushActions == null) {
+                return;
+            }
+            this.flushActions = null;
+        }
+        for (Runnable action : flushActions) {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                Logs.MAIN.trace("Batch flush action failed", t);
+            }
+        }
+    }
+}
@@ -196,6 +196,20 @@ final class EJBInvocationHandler<T> extends Attachable implements InvocationHand
         }
     }
 
+    Future<?> invokeBatched(final Object proxy, final EJBProxyInformation.ProxyMethodInfo methodInfo, final EJBInvocationBatch batch, final Object... args) throws Exception {
+        if (methodInfo.getMethodType() != EJBProxyInformation.MT_BUSINESS) {
+            // local methods are never batched
+            return new FinishedFuture<>(invoke(proxy, methodInfo, args));
+        }
+        final EJBClientContext clientContext = EJBClientContext.getCurrent();
+        final EJBClientInvocationContext invocationContext = new EJBClientInvocationContext(this, clientContext, proxy, args, methodInfo, 8, authenticationContextSupplier);
+        invocationContext.setLocator(locatorRef.get());
+        invocationContext.setWeakAffinity(getWeakAffinity());
+        invocationContext.setInvocationBatch(batch);
+        invocationContext.sendRequestInitial();
+        return invocationContext.getFutureResponse();
+    }
+
     void setWeakAffinity(Affinity newWeakAffinity) {
         weakAffinity = newWeakAffinity;
     }
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A single method invocation to be issued as part of a batch.
+ *
+ * @see EJBClient#invokeBatch(Object, java.util.List)
+ */
+public final class EJBMethodInvocation {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final EJBMethodLocator methodLocator;
+    private final Object[] arguments;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param methodLocator the locator of the method to invoke (must not be {@code null})
+     * @param arguments the invocation arguments
+     */
+    public EJBMethodInvocation(final EJBMethodLocator methodLocator, final Object... arguments) {
+        Assert.checkNotNullParam("methodLocator", methodLocator);
+        this.methodLocator = methodLocator;
+        this.arguments = arguments == null ? NO_ARGS : arguments;
+    }
+
+    /**
+     * Get the locator of the method to invoke.
+     *
+     * @return the method locator (not {@code null})
+     */
+    public EJBMethodLocator getMethodLocator() {
+        return methodLocator;
+    }
+
+    /**
+     * Get the invocation arguments.
+     *
+     * @return the invocation arguments (not {@code null})
+     */
+    public Object[] getArguments() {
+        return arguments;
+    }
+}
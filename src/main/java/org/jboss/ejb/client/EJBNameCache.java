@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.lang.ref.WeakReference;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache of parsed EJB JNDI names, so that repeated lookups of the same name skip parsing, identifier
+ * construction and view class resolution.  The resolved view class is remembered for the class loader it was resolved
+ * through, and is only weakly referenced so that the cache does not keep deployments alive.
+ * <p>
+ * Proxies are not cached, since each one carries its own affinity and attachments; creating one from a cached
+ * entry costs only the invocation handler and the proxy instance.
+ */
+final class EJBNameCache {
+
+    /**
+     * The default maximum number of cached names; zero disables the cache.
+     */
+    static final int DEFAULT_MAX_SIZE = doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.naming.cache.size", "1024"))).intValue();
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, ParsedName> names = new ConcurrentHashMap<>();
+
+    EJBNameCache(final int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Get the parsed form of the given name.
+     *
+     * @param name the name string (must not be {@code null})
+     * @return the parsed name, or {@code null} if it is not cached
+     */
+    ParsedName get(final String name) {
+        return maxSize == 0 ? null : names.get(name);
+    }
+
+    void put(final String name, final ParsedName parsedName) {
+        if (maxSize == 0) {
+            return;
+        }
+        if (names.size() >= maxSize) {
+            // no need for anything fancier; hot names come right back
+            final Iterator<String> iterator = names.keySet().iterator();
+            if (iterator.hasNext()) {
+                names.remove(iterator.next());
+            }
+        }
+        names.put(name, parsedName);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    static final class ParsedName {
+        private final EJBIdentifier identifier;
+        private final String viewType;
+        private final boolean stateful;
+        private volatile ResolvedView view;
+
+        ParsedName(final EJBIdentifier identifier, final String viewType, final boolean stateful) {
+            this.identifier = identifier;
+            this.viewType = viewType;
+            this.stateful = stateful;
+        }
+
+        EJBIdentifier getIdentifier() {
+            return identifier;
+        }
+
+        String getViewType() {
+            return viewType;
+        }
+
+        boolean isStateful() {
+            return stateful;
+        }
+
+        /**
+         * Get the view class previously resolved through the given class loader.
+         *
+         * @param classLoader the class loader
+         * @return the view class, or {@code null} if it was not resolved through this class loader or was collected
+         */
+        Class<?> getView(final ClassLoader classLoader) {
+            final ResolvedView view = this.view;
+            return view == null || view.classLoader.get() != classLoader ? null : view.get();
+        }
+
+        void setView(final ClassLoader classLoader, final Class<?> view) {
+            this.view = new ResolvedView(classLoader, view);
+        }
+    }
+
+    static final class ResolvedView extends WeakReference<Class<?>> {
+        final WeakReference<ClassLoader> classLoader;
+
+        ResolvedView(final ClassLoader classLoader, final Class<?> view) {
+            super(view);
+            this.classLoader = new WeakReference<>(classLoader);
+        }
+    }
+}
@@ -86,13 +86,16 @@ final class EJBProxyInformation<T> {
             final int classCompressionLevel;
             final boolean classCompressRequest;
             final boolean classCompressResponse;
+            final String classCompressionCodec;
             if (classCompressionHint == null) {
                 classCompressionLevel = -1;
                 classCompressRequest = classCompressResponse = false;
+                classCompressionCodec = null;
             } else {
                 classCompressionLevel = classCompressionHint.compressionLevel() == -1 ? Deflater.DEFAULT_COMPRESSION : classCompressionHint.compressionLevel();
                 classCompressRequest = classCompressionHint.compressRequest();
                 classCompressResponse = classCompressionHint.compressResponse();
+                classCompressionCodec = classCompressionHint.codec();
             }
             final boolean classIdempotent = ENABLE_SCANNING && type.getAnnotation(Idempotent.class) != null;
             final boolean classAsync = ENABLE_SCANNING && type.getAnnotation(ClientAsynchronous.class) != null;
@@ -113,15 +116,18 @@ final class EJBProxyInformation<T> {
                         final int compressionLevel;
                         final boolean compressRequest;
                         final boolean compressResponse;
+                        final String compressionCodec;
                         final ClientTransactionPolicy transactionPolicy;
                         if (compressionHint == null) {
                             compressionLevel = classCompressionLevel;
                             compressRequest = classCompressRequest;
                             compressResponse = classCompressResponse;
+                            compressionCodec = classCompressionCodec;
                         } else {
                             compressionLevel = compressionHint.compressionLevel() == -1 ? Deflater.DEFAULT_COMPRESSION : compressionHint.compressionLevel();
                             compressRequest = compressionHint.compressRequest();
                             compressResponse = compressionHint.compressResponse();
+                            compressionCodec = compressionHint.codec();
                         }
                         transactionPolicy = transactionHint != null ? transactionHint.value() : clientAsync ? ClientTransactionPolicy.NOT_SUPPORTED : classTransactionHint != null ? classTransactionHint.value() : ClientTransactionPolicy.SUPPORTS;
                         // build the old signature format
@@ -138,7 +144,7 @@ final class EJBProxyInformation<T> {
                         final String methodName = method.getName();
                         final int methodType = getMethodType(type, methodName, methodParamTypes);
                         final EJBMethodLocator methodLocator = new EJBMethodLocator(methodName, parameterTypeNames);
-                        final ProxyMethodInfo proxyMethodInfo = new ProxyMethodInfo(methodType, compressionLevel, compressRequest, compressResponse, idempotent, transactionPolicy, method, methodLocator, b.toString(), clientAsync, interceptors);
+                        final ProxyMethodInfo proxyMethodInfo = new ProxyMethodInfo(methodType, compressionLevel, compressRequest, compressResponse, compressionCodec, idempotent, transactionPolicy, method, methodLocator, b.toString(), clientAsync, interceptors);
                         methodInfoMap.put(method, proxyMethodInfo);
                         fallbackMap.put(method, proxyMethodInfo);
                         methodLocatorMap.put(methodLocator, proxyMethodInfo);
@@ -305,6 +311,7 @@ final class EJBProxyInformation<T> {
         final int compressionLevel;
         final boolean compressRequest;
         final boolean compressResponse;
+        final String compressionCodec;
         final boolean idempotent;
         final ClientTransactionPolicy transactionPolicy;
         final Method method;
@@ -313,11 +320,12 @@ final class EJBProxyInformation<T> {
         final boolean clientAsync;
         final EJBClientContext.InterceptorList interceptors;
 
-        ProxyMethodInfo(final int methodType, final int compressionLevel, final boolean compressRequest, final boolean compressResponse, final boolean idempotent, final ClientTransactionPolicy transactionPolicy, final Method method, final EJBMethodLocator methodLocator, final String signature, final boolean clientAsync, final EJBClientContext.InterceptorList interceptors) {
+        ProxyMethodInfo(final int methodType, final int compressionLevel, final boolean compressRequest, final boolean compressResponse, final String compressionCodec, final boolean idempotent, final ClientTransactionPolicy transactionPolicy, final Method method, final EJBMethodLocator methodLocator, final String signature, final boolean clientAsync, final EJBClientContext.InterceptorList interceptors) {
             this.methodType = methodType;
             this.compressionLevel = compressionLevel;
             this.compressRequest = compressRequest;
             this.compressResponse = compressResponse;
+            this.compressionCodec = compressionCodec;
             this.idempotent = idempotent;
             this.transactionPolicy = transactionPolicy;
             this.method = method;
@@ -363,6 +371,10 @@ final class EJBProxyInformation<T> {
             return compressResponse;
         }
 
+        String getCompressionCodec() {
+            return compressionCodec;
+        }
+
         EJBMethodLocator getMethodLocator() {
             return methodLocator;
         }
@@ -75,6 +75,25 @@ public abstract class EJBReceiver extends Attachable {
         return createSession$$bridge(receiverContext).getSessionId();
     }
 
+    /**
+     * Creates several sessions for a stateful session bean at once.  The default implementation calls
+     * {@link #createSession(EJBReceiverSessionCreationContext)} once per session; receivers which can open several
+     * sessions in one request should override it.
+     *
+     * @param receiverContext the EJB receiver session creation context
+     * @param count the number of sessions to create (at least 1)
+     * @return the session IDs of the newly opened sessions, exactly {@code count} of them
+     * @throws IllegalArgumentException if the session creation request is made for a bean which is <i>not</i> a
+     * stateful session bean
+     */
+    protected SessionID[] createSessions(final EJBReceiverSessionCreationContext receiverContext, final int count) throws Exception {
+        final SessionID[] sessionIds = new SessionID[count];
+        for (int i = 0; i < count; i ++) {
+            sessionIds[i] = createSession(receiverContext);
+        }
+        return sessionIds;
+    }
+
     /**
      * @deprecated Compatibility bridge, remove at Final.
      */
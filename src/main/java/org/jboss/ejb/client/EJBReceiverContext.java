@@ -38,4 +38,51 @@ public final class EJBReceiverContext {
     public EJBClientContext getClientContext() {
         return clientContext;
     }
+
+    /**
+     * Record that an invocation was sent to a node.
+     *
+     * @param nodeMetrics the metrics of the node (must not be {@code null})
+     */
+    public void invocationStarted(final NodeMetrics nodeMetrics) {
+        nodeMetrics.invocationStarted();
+    }
+
+    /**
+     * Record that an invocation which was reported with {@link #invocationStarted(NodeMetrics)} was answered.
+     *
+     * @param nodeMetrics the metrics of the node (must not be {@code null})
+     * @param responseTime the time the invocation took in nanoseconds, or a negative value if it failed without an
+     *      answer
+     */
+    public void invocationFinished(final NodeMetrics nodeMetrics, final long responseTime) {
+        nodeMetrics.invocationFinished(responseTime);
+    }
+
+    /**
+     * Record the zone and load factor advertised by a node.
+     *
+     * @param nodeName the node name (must not be {@code null})
+     * @param zone the zone, or {@code null} if none was advertised
+     * @param loadFactor the load from 0 to 100, or -1 if none was advertised
+     */
+    public void setAdvertisedLoad(final String nodeName, final String zone, final int loadFactor) {
+        clientContext.getNodeMetrics(nodeName).setAdvertisedLoad(zone, loadFactor);
+    }
+
+    /**
+     * Record that a retry of a failed invocation was scheduled.
+     */
+    public void retryScheduled() {
+        clientContext.getRetryMetrics().retryScheduled();
+    }
+
+    /**
+     * Record that a retry which was reported with {@link #retryScheduled()} started.
+     *
+     * @param latency the time the retry waited in nanoseconds
+     */
+    public void retryStarted(final long latency) {
+        clientContext.getRetryMetrics().retryStarted(latency);
+    }
 }
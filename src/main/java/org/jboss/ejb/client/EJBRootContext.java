@@ -47,6 +47,8 @@ class EJBRootContext extends AbstractContext {
     private static final String PROPERTY_KEY_INVOCATION_TIMEOUT = "invocation.timeout";
     private static final String LEARNED_AFFINITY_KEY = "__jboss.learned-affinity";
 
+    private static final EJBNameCache NAME_CACHE = new EJBNameCache(EJBNameCache.DEFAULT_MAX_SIZE);
+
     private final LearnedAffinity baseAffinity;
     private final NamingProvider namingProvider;
     private final ProviderEnvironment providerEnvironment;
@@ -80,6 +82,62 @@ class EJBRootContext extends AbstractContext {
         } else if (size > 4) {
             throw nameNotFound(name);
         }
+        final String key = name.toString();
+        EJBNameCache.ParsedName parsedName = NAME_CACHE.get(key);
+        if (parsedName == null) {
+            parsedName = parseName(name);
+            if (parsedName == null) {
+                // name is of the form appName/moduleName/distinctName
+                return new RelativeContext(new FastHashtable<>(getEnvironment()), this, SimpleName.of(name));
+            }
+            NAME_CACHE.put(key, parsedName);
+        }
+        final ClassLoader classLoader = getContextClassLoader();
+        Class<?> view = parsedName.getView(classLoader);
+        if (view == null) {
+            try {
+                view = Class.forName(parsedName.getViewType(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw Logs.MAIN.lookupFailed(name, name, e);
+            }
+            parsedName.setView(classLoader, view);
+        }
+        final NamingProvider namingProvider = this.namingProvider;
+        final StatelessEJBLocator<?> statelessLocator = StatelessEJBLocator.create(view, parsedName.getIdentifier(), baseAffinity.get());
+        final Object proxy;
+        if (parsedName.isStateful()) {
+            try {
+                proxy = EJBClient.createSessionProxy(statelessLocator, providerEnvironment.getAuthenticationContextSupplier(), namingProvider);
+            } catch (Exception e) {
+                throw Logs.MAIN.lookupFailed(name, name, e);
+            }
+        } else {
+            proxy = EJBClient.createProxy(statelessLocator, providerEnvironment.getAuthenticationContextSupplier());
+        }
+        if (namingProvider != null) EJBClient.putProxyAttachment(proxy, NAMING_PROVIDER_ATTACHMENT_KEY, namingProvider);
+
+        if (baseAffinity.isUnset()) {
+            EJBClient.putProxyAttachment(proxy, ClusterAffinityInterest.KEY, baseAffinity);
+        }
+
+        // if "invocation.timeout" is set in environment properties, set this value to created proxy
+        Long invocationTimeout = getLongValueFromEnvironment(PROPERTY_KEY_INVOCATION_TIMEOUT);
+        if (invocationTimeout != null) {
+            EJBClient.setInvocationTimeout(proxy, invocationTimeout.longValue(), TimeUnit.MILLISECONDS);
+        }
+
+        return proxy;
+    }
+
+    /**
+     * Parse a name of three or four parts.
+     *
+     * @param name the name
+     * @return the parsed name, or {@code null} if the name is that of a context
+     * @throws NamingException if the name is not a valid EJB name
+     */
+    private EJBNameCache.ParsedName parseName(final Name name) throws NamingException {
+        final int size = name.size();
         String appName = name.get(0);
         String moduleName = name.get(1);
         String distinctName;
@@ -99,7 +157,7 @@ class EJBRootContext extends AbstractContext {
         if (beanName == null) {
             if (size == 3) {
                 // name is of the form appName/moduleName/distinctName
-                return new RelativeContext(new FastHashtable<>(getEnvironment()), this, SimpleName.of(name));
+                return null;
             }
             // no view type given; invalid
             throw nameNotFound(name);
@@ -142,39 +200,8 @@ class EJBRootContext extends AbstractContext {
                 }
             }
         }
-        Class<?> view;
-        try {
-            view = Class.forName(viewType, false, getContextClassLoader());
-        } catch (ClassNotFoundException e) {
-            throw Logs.MAIN.lookupFailed(name, name, e);
-        }
-        final NamingProvider namingProvider = this.namingProvider;
         final EJBModuleIdentifier moduleIdentifier = new EJBModuleIdentifier(appName, moduleName, distinctName);
-        final EJBIdentifier identifier = new EJBIdentifier(moduleIdentifier, beanName);
-        final StatelessEJBLocator<?> statelessLocator = StatelessEJBLocator.create(view, identifier, baseAffinity.get());
-        final Object proxy;
-        if (stateful) {
-            try {
-                proxy = EJBClient.createSessionProxy(statelessLocator, providerEnvironment.getAuthenticationContextSupplier(), namingProvider);
-            } catch (Exception e) {
-                throw Logs.MAIN.lookupFailed(name, name, e);
-            }
-        } else {
-            proxy = EJBClient.createProxy(statelessLocator, providerEnvironment.getAuthenticationContextSupplier());
-        }
-        if (namingProvider != null) EJBClient.putProxyAttachment(proxy, NAMING_PROVIDER_ATTACHMENT_KEY, namingProvider);
-
-        if (baseAffinity.isUnset()) {
-            EJBClient.putProxyAttachment(proxy, ClusterAffinityInterest.KEY, baseAffinity);
-        }
-
-        // if "invocation.timeout" is set in environment properties, set this value to created proxy
-        Long invocationTimeout = getLongValueFromEnvironment(PROPERTY_KEY_INVOCATION_TIMEOUT);
-        if (invocationTimeout != null) {
-            EJBClient.setInvocationTimeout(proxy, invocationTimeout.longValue(), TimeUnit.MILLISECONDS);
-        }
-
-        return proxy;
+        return new EJBNameCache.ParsedName(new EJBIdentifier(moduleIdentifier, beanName), viewType, stateful);
     }
 
     private static ClassLoader getContextClassLoader(){
@@ -36,6 +36,8 @@ public final class EJBSessionCreationInvocationContext extends AbstractInvocatio
     private final EJBClientContext.InterceptorList interceptorList;
     private int interceptorChainIndex;
     private boolean retry;
+    private int sessionCount = 1;
+    private SessionID[] sessionIds;
 
     EJBSessionCreationInvocationContext(final StatelessEJBLocator<?> locator, final EJBClientContext ejbClientContext, AuthenticationContext authenticationContext, final EJBClientContext.InterceptorList interceptorList) {
         super(locator, ejbClientContext);
@@ -60,9 +62,25 @@ public final class EJBSessionCreationInvocationContext extends AbstractInvocatio
                 final URI destination = getDestination();
                 final EJBReceiver receiver = getClientContext().resolveReceiver(destination, getLocator());
                 setReceiver(receiver);
-                final SessionID sessionID = receiver.createSession(new EJBReceiverSessionCreationContext(this, authenticationContext));
-                if (sessionID == null) {
-                    throw Logs.INVOCATION.nullSessionID(receiver, getLocator().asStateless());
+                final EJBReceiverSessionCreationContext receiverContext = new EJBReceiverSessionCreationContext(this, authenticationContext);
+                final SessionID sessionID;
+                if (sessionCount == 1) {
+                    sessionID = receiver.createSession(receiverContext);
+                    if (sessionID == null) {
+                        throw Logs.INVOCATION.nullSessionID(receiver, getLocator().asStateless());
+                    }
+                } else {
+                    final SessionID[] sessionIds = receiver.createSessions(receiverContext, sessionCount);
+                    if (sessionIds == null || sessionIds.length != sessionCount) {
+                        throw Logs.INVOCATION.nullSessionID(receiver, getLocator().asStateless());
+                    }
+                    for (SessionID id : sessionIds) {
+                        if (id == null) {
+                            throw Logs.INVOCATION.nullSessionID(receiver, getLocator().asStateless());
+                        }
+                    }
+                    this.sessionIds = sessionIds;
+                    sessionID = sessionIds[0];
                 }
                 retry = false;
                 return sessionID;
@@ -74,6 +92,24 @@ public final class EJBSessionCreationInvocationContext extends AbstractInvocatio
         }
     }
 
+    /**
+     * Get the number of sessions being created.  All of them are created on the same target, and {@link #proceed()}
+     * returns the ID of the first one.
+     *
+     * @return the number of sessions (at least 1)
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    void setSessionCount(final int sessionCount) {
+        this.sessionCount = sessionCount;
+    }
+
+    SessionID[] getSessionIds() {
+        return sessionIds;
+    }
+
     public void requestRetry() {
         retry = true;
     }
@@ -32,6 +32,15 @@ public interface EJBTransportProvider {
      */
     default void notifyRegistered(EJBReceiverContext receiverContext) {}
 
+    /**
+     * Start establishing the connections which the given client context is expected to need, without waiting for
+     * them.  Connectionless providers can inherit the default, which does nothing.
+     *
+     * @param receiverContext the EJB receiver context (not {@code null})
+     * @see EJBClientContext#warmUp()
+     */
+    default void warmUp(EJBReceiverContext receiverContext) {}
+
     /**
      * Determine whether this transport provider supports the protocol identified by the given URI scheme.
      *
@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.security.PrivilegedAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A node selector which chooses among candidate nodes by their {@linkplain NodeMetrics load metrics} rather than by
+ * name alone.  It can be used both as a {@link ClusterNodeSelector} and as a {@link DeploymentNodeSelector}; the
+ * discovery interceptor passes it the metrics of the invocation's client context.
+ */
+@FunctionalInterface
+public interface MetricsAwareNodeSelector extends ClusterNodeSelector, DeploymentNodeSelector {
+
+    /**
+     * Select a node from among the given candidates.
+     *
+     * @param candidates the candidate nodes with their current metrics (will not be empty or {@code null})
+     * @return the name of the selected node (must not be {@code null})
+     */
+    String selectNode(NodeMetrics[] candidates);
+
+    /**
+     * Select a node from among the given nodes, using the metrics of the given client context.
+     *
+     * @param context the client context (must not be {@code null})
+     * @param nodeNames the candidate node names (must not be empty or {@code null})
+     * @return the name of the selected node (not {@code null})
+     */
+    default String selectNode(EJBClientContext context, String[] nodeNames) {
+        final NodeMetrics[] candidates = new NodeMetrics[nodeNames.length];
+        for (int i = 0; i < nodeNames.length; i ++) {
+            candidates[i] = context.getNodeMetrics(nodeNames[i]);
+        }
+        return selectNode(candidates);
+    }
+
+    /**
+     * Select a cluster node using the metrics of the given client context.  Only connected nodes are considered
+     * unless there are none, since nothing is known of the others yet.
+     *
+     * @param context the client context (must not be {@code null})
+     * @param clusterName the name of the cluster to which the nodes belong (will not be {@code null})
+     * @param connectedNodes the node names to which a connection has been established (may be empty but will not be {@code null})
+     * @param totalAvailableNodes all available nodes in the cluster, including connected nodes (will not be empty or {@code null})
+     * @return the selected node name (not {@code null})
+     */
+    default String selectNode(EJBClientContext context, String clusterName, String[] connectedNodes, String[] totalAvailableNodes) {
+        return selectNode(context, connectedNodes.length > 0 ? connectedNodes : totalAvailableNodes);
+    }
+
+    default String selectNode(final String clusterName, final String[] connectedNodes, final String[] totalAvailableNodes) {
+        return selectNode(EJBClientContext.getCurrent(), clusterName, connectedNodes, totalAvailableNodes);
+    }
+
+    default String selectNode(final String[] eligibleNodes, final String appName, final String moduleName, final String distinctName) {
+        return selectNode(EJBClientContext.getCurrent(), eligibleNodes);
+    }
+
+    /**
+     * Use the node with the fewest outstanding invocations, breaking ties by the lower average response time.
+     */
+    MetricsAwareNodeSelector LEAST_OUTSTANDING = candidates -> {
+        // start at a random position so that equally loaded nodes share the traffic
+        final int length = candidates.length;
+        final int start = ThreadLocalRandom.current().nextInt(length);
+        NodeMetrics best = candidates[start];
+        for (int i = 1; i < length; i ++) {
+            final NodeMetrics candidate = candidates[(start + i) % length];
+            final int diff = candidate.getOutstandingInvocations() - best.getOutstandingInvocations();
+            if (diff < 0 || diff == 0 && candidate.getAverageResponseTime() < best.getAverageResponseTime()) {
+                best = candidate;
+            }
+        }
+        return best.getNodeName();
+    };
+
+    /**
+     * Use the node with the lowest expected wait, which is its average response time scaled by the number of
+     * invocations it already has in flight.  Nodes which have not answered yet are tried first.
+     */
+    MetricsAwareNodeSelector LEAST_RESPONSE_TIME = candidates -> {
+        final int length = candidates.length;
+        final int start = ThreadLocalRandom.current().nextInt(length);
+        NodeMetrics best = candidates[start];
+        long bestCost = best.getAverageResponseTime() * (best.getOutstandingInvocations() + 1L);
+        for (int i = 1; i < length; i ++) {
+            final NodeMetrics candidate = candidates[(start + i) % length];
+            final long cost = candidate.getAverageResponseTime() * (candidate.getOutstandingInvocations() + 1L);
+            if (cost < bestCost) {
+                best = candidate;
+                bestCost = cost;
+            }
+        }
+        return best.getNodeName();
+    };
+
+    /**
+     * Pick two nodes at random and use the one with fewer outstanding invocations ("power of two choices").  This
+     * avoids herding every caller onto the same least loaded node while still keeping away from overloaded ones.
+     */
+    MetricsAwareNodeSelector POWER_OF_TWO_CHOICES = candidates -> {
+        final int length = candidates.length;
+        if (length == 1) {
+            return candidates[0].getNodeName();
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(length);
+        // a second, distinct index
+        final int second = (first + 1 + random.nextInt(length - 1)) % length;
+        final NodeMetrics a = candidates[first];
+        final NodeMetrics b = candidates[second];
+        final int diff = a.getOutstandingInvocations() - b.getOutstandingInvocations();
+        if (diff == 0) {
+            return (a.getAverageResponseTime() <= b.getAverageResponseTime() ? a : b).getNodeName();
+        }
+        return (diff < 0 ? a : b).getNodeName();
+    };
+
+    /**
+     * Prefer the nodes in the zone named by the {@code org.jboss.ejb.client.zone} system property, weighted by their
+     * advertised load.  See {@link #zoneAware(String)}.
+     */
+    MetricsAwareNodeSelector ZONE_AWARE = zoneAware(doPrivileged((PrivilegedAction<String>) () -> System.getProperty("org.jboss.ejb.client.zone")));
+
+    /**
+     * Create a selector which prefers the nodes which advertise the given zone, falling back to all candidates if none
+     * do.  Among the preferred nodes one is picked at random, weighted by the inverse of its advertised load factor.
+     *
+     * @param zone the local zone, or {@code null} to only weight by load
+     * @return the node selector (not {@code null})
+     */
+    static MetricsAwareNodeSelector zoneAware(String zone) {
+        return candidates -> {
+            boolean local = false;
+            if (zone != null) for (NodeMetrics candidate : candidates) {
+                if (zone.equals(candidate.getZone())) {
+                    local = true;
+                    break;
+                }
+            }
+            double total = 0.0;
+            for (NodeMetrics candidate : candidates) {
+                if (! local || zone.equals(candidate.getZone())) {
+                    total += candidate.getLoadWeight();
+                }
+            }
+            double point = ThreadLocalRandom.current().nextDouble(total);
+            NodeMetrics selected = null;
+            for (NodeMetrics candidate : candidates) {
+                if (! local || zone.equals(candidate.getZone())) {
+                    selected = candidate;
+                    point -= candidate.getLoadWeight();
+                    if (point < 0.0) {
+                        break;
+                    }
+                }
+            }
+            return selected.getNodeName();
+        };
+    }
+
+    /**
+     * Create a selector which uses the given metrics-aware selector only once at least the given number of nodes
+     * are connected, and the given cluster node selector otherwise, to build up connections first.
+     *
+     * @param minimum the minimum number of connected nodes
+     * @param unmet the selector to use while there are fewer connected nodes (must not be {@code null})
+     * @param met the selector to use once the minimum is met (must not be {@code null})
+     * @return the node selector (not {@code null})
+     */
+    static MetricsAwareNodeSelector minimumConnectionThreshold(int minimum, ClusterNodeSelector unmet, MetricsAwareNodeSelector met) {
+        Assert.checkNotNullParam("unmet", unmet);
+        Assert.checkNotNullParam("met", met);
+        return new MetricsAwareNodeSelector() {
+            public String selectNode(final NodeMetrics[] candidates) {
+                return met.selectNode(candidates);
+            }
+
+            public String selectNode(final EJBClientContext context, final String clusterName, final String[] connectedNodes, final String[] totalAvailableNodes) {
+                if (connectedNodes.length < minimum && connectedNodes.length < totalAvailableNodes.length) {
+                    return unmet.selectNode(clusterName, connectedNodes, totalAvailableNodes);
+                }
+                return met.selectNode(context, clusterName, connectedNodes, totalAvailableNodes);
+            }
+        };
+    }
+}
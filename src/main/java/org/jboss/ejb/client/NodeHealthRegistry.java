@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.net.URI;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jboss.ejb._private.Logs;
+import org.wildfly.common.Assert;
+
+/**
+ * The health of the destinations of a client context, shared by every invocation and by the transport providers.
+ * A destination which fails is skipped for a backoff window which doubles with every consecutive failure; once the
+ * window has passed, a single caller is let through to probe it, and the outcome of that probe either restores the
+ * destination or starts the next, longer window.  Successful invocations also feed a moving average of the latency,
+ * from which a score is derived for choosing between healthy destinations.
+ * <p>
+ * Choosing a destination is done in two steps: candidates are filtered with {@link #isUsable(URI)}, which has no side
+ * effects, and only the destination which is finally chosen is {@linkplain #claimProbe(URI) claimed}.
+ */
+public final class NodeHealthRegistry {
+
+    /**
+     * The first backoff window in milliseconds.
+     */
+    static final long INITIAL_BACKOFF = doPrivileged((PrivilegedAction<Long>) () -> Long.valueOf(System.getProperty("org.jboss.ejb.client.health.backoff.initial", "1000"))).longValue();
+
+    /**
+     * The longest backoff window in milliseconds.
+     */
+    static final long MAXIMUM_BACKOFF = doPrivileged((PrivilegedAction<Long>) () -> Long.valueOf(System.getProperty("org.jboss.ejb.client.health.backoff.max", "30000"))).longValue();
+
+    // weight of a new latency sample in the moving average
+    private static final double ALPHA = 0.2;
+
+    private final long initialBackoffNanos;
+    private final long maximumBackoffNanos;
+    private final ConcurrentHashMap<URI, Health> destinations = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    NodeHealthRegistry() {
+        this(INITIAL_BACKOFF, MAXIMUM_BACKOFF);
+    }
+
+    NodeHealthRegistry(final long initialBackoff, final long maximumBackoff) {
+        initialBackoffNanos = Math.max(1L, initialBackoff) * 1_000_000L;
+        maximumBackoffNanos = Math.max(initialBackoff, maximumBackoff) * 1_000_000L;
+    }
+
+    /**
+     * Determine whether the given destination may be chosen, without claiming it.  A destination may be chosen if it
+     * is available, or if its backoff window (or the time allowed for its probe) has passed.
+     *
+     * @param destination the destination (must not be {@code null})
+     * @return {@code true} if the destination may be chosen, {@code false} if it should be skipped
+     */
+    public boolean isUsable(final URI destination) {
+        Assert.checkNotNullParam("destination", destination);
+        final Health health = destinations.get(destination);
+        return health == null || health.state == State.AVAILABLE || System.nanoTime() - health.until >= 0L;
+    }
+
+    /**
+     * Claim the given destination for use.  If its backoff window has passed, the caller is let through as the probe
+     * of the destination, and other callers are turned away until the probe is reported or another window has passed.
+     * This should only be called for a destination which is actually going to be used.
+     *
+     * @param destination the destination (must not be {@code null})
+     * @return {@code true} if the destination may be used, {@code false} if it should be skipped
+     */
+    public boolean claimProbe(final URI destination) {
+        Assert.checkNotNullParam("destination", destination);
+        final Health health = destinations.get(destination);
+        if (health == null || health.state == State.AVAILABLE) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        if (now - health.until < 0L) {
+            return false;
+        }
+        // the window has passed; whoever wins the replacement does the probing
+        final Health probing = new Health(State.PROBING, health.failures, now + backoff(health.failures), health.latency);
+        if (destinations.replace(destination, health, probing)) {
+            if (health.state != State.PROBING) {
+                fire(destination, health.state, State.PROBING);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the state of the given destination.
+     *
+     * @param destination the destination (must not be {@code null})
+     * @return the state (not {@code null})
+     */
+    public State getState(final URI destination) {
+        Assert.checkNotNullParam("destination", destination);
+        final Health health = destinations.get(destination);
+        return health == null ? State.AVAILABLE : health.state;
+    }
+
+    /**
+     * Get the score of the given destination, between 0 (unusable) and 1 (available with no known latency).  The score
+     * of an available destination falls with its average latency in milliseconds.
+     *
+     * @param destination the destination (must not be {@code null})
+     * @return the score
+     */
+    public double getScore(final URI destination) {
+        Assert.checkNotNullParam("destination", destination);
+        final Health health = destinations.get(destination);
+        if (health == null) {
+            return 1.0;
+        }
+        if (health.state != State.AVAILABLE) {
+            return 0.0;
+        }
+        return 1.0 / (1.0 + health.latency / 1_000_000.0);
+    }
+
+    /**
+     * Record that a destination was reached.
+     *
+     * @param destination the destination (must not be {@code null})
+     */
+    public void recordSuccess(final URI destination) {
+        recordSuccess(destination, -1L);
+    }
+
+    /**
+     * Record that a request to a destination completed after the given time.
+     *
+     * @param destination the destination (must not be {@code null})
+     * @param latencyNanos the time taken in nanoseconds, or a negative value if it is not known
+     */
+    public void recordSuccess(final URI destination, final long latencyNanos) {
+        Assert.checkNotNullParam("destination", destination);
+        Health old;
+        Health health;
+        do {
+            old = destinations.get(destination);
+            final boolean recovered = old != null && old.state != State.AVAILABLE;
+            final double latency;
+            if (latencyNanos < 0L) {
+                // the average from before the failure is stale
+                latency = old == null || recovered ? 0.0 : old.latency;
+            } else if (old == null || recovered || old.latency == 0.0) {
+                latency = latencyNanos;
+            } else {
+                latency = old.latency + ALPHA * (latencyNanos - old.latency);
+            }
+            if (latency == 0.0) {
+                // an available destination with no latency sample needs no entry at all
+                if (old == null) {
+                    return;
+                }
+                health = null;
+            } else {
+                if (old != null && ! recovered && old.latency == latency) {
+                    return;
+                }
+                health = new Health(State.AVAILABLE, 0, 0L, latency);
+            }
+        } while (! update(destination, old, health));
+        if (old != null && old.state != State.AVAILABLE) {
+            fire(destination, old.state, State.AVAILABLE);
+        }
+    }
+
+    private boolean update(final URI destination, final Health old, final Health health) {
+        if (old == null) {
+            return destinations.putIfAbsent(destination, health) == null;
+        } else if (health == null) {
+            return destinations.remove(destination, old);
+        } else {
+            return destinations.replace(destination, old, health);
+        }
+    }
+
+    /**
+     * Record that a destination could not be reached, starting its next backoff window.
+     *
+     * @param destination the destination (must not be {@code null})
+     */
+    public void recordFailure(final URI destination) {
+        Assert.checkNotNullParam("destination", destination);
+        Health old;
+        Health health;
+        do {
+            old = destinations.get(destination);
+            final int failures = old == null ? 1 : old.failures + 1;
+            health = new Health(State.BACKING_OFF, failures, System.nanoTime() + backoff(failures), old == null ? 0.0 : old.latency);
+        } while (! update(destination, old, health));
+        Logs.INVOCATION.tracef("Destination %s failed %d time(s) in a row, backing off", destination, Integer.valueOf(health.failures));
+        if (old == null || old.state != State.BACKING_OFF) {
+            fire(destination, old == null ? State.AVAILABLE : old.state, State.BACKING_OFF);
+        }
+    }
+
+    /**
+     * Forget everything known about a destination.
+     *
+     * @param destination the destination (must not be {@code null})
+     */
+    public void reset(final URI destination) {
+        Assert.checkNotNullParam("destination", destination);
+        final Health old = destinations.remove(destination);
+        if (old != null && old.state != State.AVAILABLE) {
+            fire(destination, old.state, State.AVAILABLE);
+        }
+    }
+
+    /**
+     * Add a listener for state changes.
+     *
+     * @param listener the listener (must not be {@code null})
+     */
+    public void addListener(final Listener listener) {
+        Assert.checkNotNullParam("listener", listener);
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener for state changes.
+     *
+     * @param listener the listener (must not be {@code null})
+     */
+    public void removeListener(final Listener listener) {
+        Assert.checkNotNullParam("listener", listener);
+        listeners.remove(listener);
+    }
+
+    private long backoff(final int failures) {
+        // double per consecutive failure, stopping at the maximum before the shift can overflow
+        final int shift = Math.min(failures - 1, 30);
+        final long backoff = initialBackoffNanos << shift;
+        return backoff < 0L || backoff > maximumBackoffNanos ? maximumBackoffNanos : backoff;
+    }
+
+    private void fire(final URI destination, final State oldState, final State newState) {
+        for (Listener listener : listeners) {
+            try {
+                listener.stateChanged(destination, oldState, newState);
+            } catch (Throwable t) {
+                Logs.MAIN.debugf(t, "Node health listener %s failed", listener);
+            }
+        }
+    }
+
+    /**
+     * The health state of a destination.
+     */
+    public enum State {
+        /**
+         * The destination is in use.
+         */
+        AVAILABLE,
+        /**
+         * The destination failed and is skipped until its backoff window has passed.
+         */
+        BACKING_OFF,
+        /**
+         * One caller is probing the destination; everyone else still skips it.
+         */
+        PROBING,
+        ;
+    }
+
+    /**
+     * A listener for destination state changes.  Listeners are called on the thread which caused the change and must
+     * not block.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called when the state of a destination changes.
+         *
+         * @param destination the destination (not {@code null})
+         * @param oldState the previous state (not {@code null})
+         * @param newState the new state (not {@code null})
+         */
+        void stateChanged(URI destination, State oldState, State newState);
+    }
+
+    static final class Health {
+        final State state;
+        final int failures;
+        // the end of the backoff window or of the probe
+        final long until;
+        final double latency;
+
+        Health(final State state, final int failures, final long until, final double latency) {
+            this.state = state;
+            this.failures = failures;
+            this.until = until;
+            this.latency = latency;
+        }
+    }
+}
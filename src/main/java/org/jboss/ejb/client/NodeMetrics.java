@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The load metrics of one node, as seen by one client context: the number of invocations which are in flight to it,
+ * and a moving average of the time its invocations took.  Transport providers report invocations as they are sent and
+ * answered through their {@link EJBReceiverContext}; {@linkplain MetricsAwareNodeSelector node selectors} use the
+ * metrics to steer traffic away from busy or slow nodes.  Applications can only read the metrics.
+ */
+public final class NodeMetrics {
+    // the weight of a new sample in the moving average is 1 / 2^SHIFT
+    private static final int SHIFT = 3;
+
+    private final String nodeName;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong averageResponseTime = new AtomicLong();
+    private volatile String zone;
+    private volatile int loadFactor = -1;
+
+    NodeMetrics(final String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    /**
+     * Get the node name.
+     *
+     * @return the node name (not {@code null})
+     */
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    /**
+     * Get the number of invocations which have been sent to the node and not answered yet.
+     *
+     * @return the outstanding invocation count
+     */
+    public int getOutstandingInvocations() {
+        return outstanding.get();
+    }
+
+    /**
+     * Get the moving average of the response time of the node.
+     *
+     * @return the average response time in nanoseconds, or 0 if no invocation was answered yet
+     */
+    public long getAverageResponseTime() {
+        return averageResponseTime.get();
+    }
+
+    /**
+     * Get the zone or rack which the node advertised.
+     *
+     * @return the zone, or {@code null} if the node did not advertise one
+     */
+    public String getZone() {
+        return zone;
+    }
+
+    /**
+     * Get the load factor which the node last advertised.
+     *
+     * @return the load from 0 (idle) to 100 (saturated), or -1 if the node did not advertise one
+     */
+    public int getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * Record the zone and load factor advertised by the node.
+     *
+     * @param zone the zone, or {@code null} if none was advertised
+     * @param loadFactor the load from 0 to 100, or -1 if none was advertised
+     */
+    void setAdvertisedLoad(final String zone, final int loadFactor) {
+        this.zone = zone;
+        this.loadFactor = loadFactor < 0 ? -1 : Math.min(loadFactor, 100);
+    }
+
+    /**
+     * Get the selection weight of the node, which is the inverse of its advertised load factor; a node which did not
+     * advertise its load counts as half loaded.
+     *
+     * @return the weight, which is greater than zero
+     */
+    double getLoadWeight() {
+        final int loadFactor = this.loadFactor;
+        return 1.0 / (1 + (loadFactor < 0 ? 50 : loadFactor));
+    }
+
+    /**
+     * Record that an invocation was sent to the node.
+     */
+    void invocationStarted() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Record that an invocation started with {@link #invocationStarted()} was answered.
+     *
+     * @param responseTime the time the invocation took in nanoseconds, or a negative value if it failed without an
+     *      answer, in which case only the outstanding count is updated
+     */
+    void invocationFinished(final long responseTime) {
+        outstanding.decrementAndGet();
+        if (responseTime < 0L) {
+            return;
+        }
+        final AtomicLong averageResponseTime = this.averageResponseTime;
+        long oldVal, newVal;
+        do {
+            oldVal = averageResponseTime.get();
+            newVal = oldVal == 0L ? Math.max(1L, responseTime) : Math.max(1L, oldVal + ((responseTime - oldVal) >> SHIFT));
+        } while (! averageResponseTime.compareAndSet(oldVal, newVal));
+    }
+
+    public String toString() {
+        return String.format("%s (outstanding = %d, average response time = %d ns)", nodeName, Integer.valueOf(getOutstandingInvocations()), Long.valueOf(getAverageResponseTime()));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of the retries of failed invocations of a client context: how many retries are waiting to run, and how
+ * long they waited.  Transport providers report retries through their {@link EJBReceiverContext} as they are scheduled
+ * and as they start.
+ */
+public final class RetryMetrics {
+    // the weight of a new sample in the moving average is 1 / 2^SHIFT
+    private static final int SHIFT = 3;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder scheduled = new LongAdder();
+    private final AtomicLong averageLatency = new AtomicLong();
+    private final AtomicLong maximumLatency = new AtomicLong();
+
+    /**
+     * Construct a new instance.
+     */
+    RetryMetrics() {
+    }
+
+    /**
+     * Get the number of retries which are scheduled and have not started yet.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Get the number of retries which were scheduled.
+     *
+     * @return the scheduled retry count
+     */
+    public long getScheduledCount() {
+        return scheduled.sum();
+    }
+
+    /**
+     * Get the moving average of the time retries waited between being scheduled and starting.
+     *
+     * @return the average latency in nanoseconds, or 0 if no retry started yet
+     */
+    public long getAverageLatency() {
+        return averageLatency.get();
+    }
+
+    /**
+     * Get the longest time a retry waited between being scheduled and starting.
+     *
+     * @return the maximum latency in nanoseconds, or 0 if no retry started yet
+     */
+    public long getMaximumLatency() {
+        return maximumLatency.get();
+    }
+
+    /**
+     * Record that a retry was scheduled.
+     */
+    void retryScheduled() {
+        scheduled.increment();
+        queueDepth.incrementAndGet();
+    }
+
+    /**
+     * Record that a retry scheduled with {@link #retryScheduled()} started.
+     *
+     * @param latency the time the retry waited in nanoseconds
+     */
+    void retryStarted(final long latency) {
+        queueDepth.decrementAndGet();
+        final AtomicLong averageLatency = this.averageLatency;
+        long oldVal, newVal;
+        do {
+            oldVal = averageLatency.get();
+            newVal = oldVal == 0L ? Math.max(1L, latency) : Math.max(1L, oldVal + ((latency - oldVal) >> SHIFT));
+        } while (! averageLatency.compareAndSet(oldVal, newVal));
+        final AtomicLong maximumLatency = this.maximumLatency;
+        do {
+            oldVal = maximumLatency.get();
+            if (latency <= oldVal) {
+                break;
+            }
+        } while (! maximumLatency.compareAndSet(oldVal, latency));
+    }
+
+    public String toString() {
+        return String.format("retries (queued = %d, scheduled = %d, average latency = %d ns, maximum latency = %d ns)", Integer.valueOf(getQueueDepth()), Long.valueOf(getScheduledCount()), Long.valueOf(getAverageLatency()), Long.valueOf(getMaximumLatency()));
+    }
+}
@@ -21,7 +21,6 @@ package org.jboss.ejb.client;
 import java.net.URI;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.transaction.Transaction;
 
@@ -47,7 +46,11 @@ public final class TransactionInterceptor implements EJBClientInterceptor {
 
     static final Object RESOURCE_KEY = new Object();
     static final AttachmentKey<Collection<URI>> PREFERRED_DESTINATIONS = new AttachmentKey<>();
-    static final AttachmentKey<ConcurrentMap<Application, URI>> APPLICATIONS = new AttachmentKey<>();
+    static final AttachmentKey<TransactionRoutingTable> ROUTING_TABLE = new AttachmentKey<>();
+
+    // application keys by module, so that looking one up does not allocate; entries are only an optimization
+    private static final int MAX_APPLICATION_KEYS = 1024;
+    private static final ConcurrentHashMap<EJBModuleIdentifier, Application> APPLICATION_KEYS = new ConcurrentHashMap<>();
 
     /**
      * This interceptor's priority.
@@ -60,24 +63,31 @@ public final class TransactionInterceptor implements EJBClientInterceptor {
     public TransactionInterceptor() {
     }
 
-    private static URI getApplicationAssociation(ConcurrentMap<Application, URI> applications, AbstractInvocationContext context) {
-        return applications.get(toApplication(context.getLocator().getIdentifier()));
-    }
-
     static Application toApplication(EJBIdentifier id) {
-        return new Application(id.getAppName(), id.getDistinctName());
+        final EJBModuleIdentifier moduleIdentifier = id.getModuleIdentifier();
+        Application application = APPLICATION_KEYS.get(moduleIdentifier);
+        if (application == null) {
+            if (APPLICATION_KEYS.size() >= MAX_APPLICATION_KEYS) {
+                APPLICATION_KEYS.clear();
+            }
+            application = new Application(id.getAppName(), id.getDistinctName());
+            final Application appearing = APPLICATION_KEYS.putIfAbsent(moduleIdentifier, application);
+            if (appearing != null) {
+                application = appearing;
+            }
+        }
+        return application;
     }
 
-    @SuppressWarnings("unchecked")
-    private static ConcurrentMap<Application, URI> getOrCreateApplicationMap(AbstractTransaction transaction) {
+    private static TransactionRoutingTable getOrCreateRoutingTable(AbstractTransaction transaction) {
         Object resource = transaction.getResource(RESOURCE_KEY);
-        ConcurrentMap<Application, URI> map = null;
+        TransactionRoutingTable table = null;
         if (resource == null) {
-            map = new ConcurrentHashMap<>();
-            resource = transaction.putResourceIfAbsent(RESOURCE_KEY, map);
+            table = new TransactionRoutingTable();
+            resource = transaction.putResourceIfAbsent(RESOURCE_KEY, table);
         }
 
-        return resource == null ? map : ConcurrentMap.class.cast(resource);
+        return resource == null ? table : (TransactionRoutingTable) resource;
     }
 
     @Override
@@ -110,7 +120,6 @@ public final class TransactionInterceptor implements EJBClientInterceptor {
     }
 
     private void setupStickinessIfRequired(AbstractInvocationContext context, boolean propagate, AbstractTransaction transaction) {
-        ConcurrentMap<Application, URI> applications = null;
         if (transaction instanceof RemoteTransaction) {
             final URI location = ((RemoteTransaction) transaction).getLocation();
             // we can only route this request to one place; do not load-balance
@@ -119,17 +128,17 @@ public final class TransactionInterceptor implements EJBClientInterceptor {
                 setupSessionAffinitiesIfNeeded(context);
             }
         }  else if (transaction instanceof LocalTransaction && propagate){
-            applications = getOrCreateApplicationMap(transaction);
-            URI destination = getApplicationAssociation(applications, context);
+            final TransactionRoutingTable routingTable = getOrCreateRoutingTable(transaction);
+            final Application application = toApplication(context.getLocator().getIdentifier());
+            URI destination = routingTable.route(context, application);
             if (destination != null) {
+                // no need for discovery
                 context.setDestination(destination);
                 setupSessionAffinitiesIfNeeded(context);
-            } else {
-                if (applications.size() > 0) {
-                    context.putAttachment(PREFERRED_DESTINATIONS, applications.values());
-                }
-                context.putAttachment(APPLICATIONS, applications);
+            } else if (! routingTable.isEmpty()) {
+                context.putAttachment(PREFERRED_DESTINATIONS, routingTable.getDestinations());
             }
+            context.putAttachment(ROUTING_TABLE, routingTable);
         }
     }
 
@@ -173,12 +182,14 @@ public final class TransactionInterceptor implements EJBClientInterceptor {
     }
 
     final static class Application {
-        private String application;
-        private String distinctName;
+        private final String application;
+        private final String distinctName;
+        private final int hashCode;
 
         public Application(String application, String distinctName) {
             this.application = application;
             this.distinctName = distinctName;
+            hashCode = 31 * application.hashCode() + distinctName.hashCode();
         }
 
         @Override
@@ -198,9 +209,7 @@ public final class TransactionInterceptor implements EJBClientInterceptor {
 
         @Override
         public int hashCode() {
-            int result = application.hashCode();
-            result = 31 * result + distinctName.hashCode();
-            return result;
+            return hashCode;
         }
     }
 }
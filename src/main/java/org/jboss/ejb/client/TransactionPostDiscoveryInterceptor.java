@@ -18,13 +18,12 @@
 
 package org.jboss.ejb.client;
 
-import static org.jboss.ejb.client.TransactionInterceptor.APPLICATIONS;
 import static org.jboss.ejb.client.TransactionInterceptor.Application;
 import static org.jboss.ejb.client.TransactionInterceptor.PREFERRED_DESTINATIONS;
+import static org.jboss.ejb.client.TransactionInterceptor.ROUTING_TABLE;
 import static org.jboss.ejb.client.TransactionInterceptor.toApplication;
 
 import java.net.URI;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.ejb.NoSuchEJBException;
 
@@ -59,18 +58,18 @@ public final class TransactionPostDiscoveryInterceptor implements EJBClientInter
     }
 
     public void handleInvocation(final EJBClientInvocationContext context) throws Exception {
-        ConcurrentMap<Application, URI> applications = context.getAttachment(APPLICATIONS);
-        if (applications != null) {
+        TransactionRoutingTable routingTable = context.getAttachment(ROUTING_TABLE);
+        if (routingTable != null) {
             URI destination = context.getDestination();
-            Application registered = updateOrFollowApplication(context, applications, true);
+            Application registered = updateOrFollowApplication(context, routingTable, true);
             try {
                 context.sendRequest();
             } catch (NoSuchEJBException | RequestSendFailedException e) {
                 if (registered != null) {
                     // Clear sticky association only if this path registered it
-                    applications.remove(registered, destination);
+                    routingTable.remove(registered, destination);
                 }
-                context.removeAttachment(APPLICATIONS);
+                context.removeAttachment(ROUTING_TABLE);
                 context.removeAttachment(PREFERRED_DESTINATIONS);
                 context.removeAttachment(APPLICATION);
                 throw e;
@@ -81,20 +80,20 @@ public final class TransactionPostDiscoveryInterceptor implements EJBClientInter
     }
 
     public SessionID handleSessionCreation(final EJBSessionCreationInvocationContext context) throws Exception {
-        ConcurrentMap<Application, URI> applications = context.getAttachment(APPLICATIONS);
-        if (applications != null) {
+        TransactionRoutingTable routingTable = context.getAttachment(ROUTING_TABLE);
+        if (routingTable != null) {
             URI destination = context.getDestination();
-            Application registered = updateOrFollowApplication(context, applications, false);
+            Application registered = updateOrFollowApplication(context, routingTable, false);
             try {
                 return context.proceed();
             } catch (NoSuchEJBException | RequestSendFailedException e) {
                 if (registered != null) {
                     // Clear sticky association only if this path registered it
-                    applications.remove(registered, destination);
+                    routingTable.remove(registered, destination);
                 }
                 throw e;
             } finally {
-                context.removeAttachment(APPLICATIONS);
+                context.removeAttachment(ROUTING_TABLE);
                 context.removeAttachment(PREFERRED_DESTINATIONS);
             }
         }
@@ -102,12 +101,12 @@ public final class TransactionPostDiscoveryInterceptor implements EJBClientInter
         return context.proceed();
     }
 
-    private Application updateOrFollowApplication(AbstractInvocationContext context, ConcurrentMap<Application, URI> applications, boolean register) {
+    private Application updateOrFollowApplication(AbstractInvocationContext context, TransactionRoutingTable routingTable, boolean register) {
         URI destination = context.getDestination();
         if (destination != null) {
             EJBIdentifier identifier = context.getLocator().getIdentifier();
             Application application = toApplication(identifier);
-            URI existing = applications.putIfAbsent(application, destination);
+            URI existing = routingTable.putIfAbsent(application, destination);
             if (existing != null) {
                 // Someone else set a mapping, use it instead
                 context.setDestination(existing);
@@ -126,18 +125,18 @@ public final class TransactionPostDiscoveryInterceptor implements EJBClientInter
     }
 
     public Object handleInvocationResult(final EJBClientInvocationContext context) throws Exception {
-        ConcurrentMap<Application, URI> applications = context.getAttachment(APPLICATIONS);
+        TransactionRoutingTable routingTable = context.getAttachment(ROUTING_TABLE);
         Application application = context.getAttachment(APPLICATION);
         URI destination = context.getDestination();
         try {
             return context.getResult();
         } catch (RequestSendFailedException | NoSuchEJBException e) {
             if (application != null) {
-                applications.remove(application, destination);
+                routingTable.remove(application, destination);
             }
             throw e;
         }  finally {
-            context.removeAttachment(APPLICATIONS);
+            context.removeAttachment(ROUTING_TABLE);
             context.removeAttachment(PREFERRED_DESTINATIONS);
             context.removeAttachment(APPLICATION);
         }
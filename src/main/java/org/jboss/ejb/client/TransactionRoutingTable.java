@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.ejb.client.TransactionInterceptor.Application;
+import org.wildfly.discovery.ServiceURL;
+
+/**
+ * The routing decisions of one transaction, kept as a resource of the transaction.  Every application is pinned to
+ * the node which it was first invoked on within the transaction.  An application which is new to the transaction is
+ * routed to a node which is already enlisted, if the discovery result cache knows that node to have the module, so
+ * that discovery does not have to run at all.
+ */
+final class TransactionRoutingTable {
+    private final ConcurrentHashMap<Application, URI> applications = new ConcurrentHashMap<>();
+
+    /**
+     * Get the destination for an invocation in the transaction.
+     *
+     * @param context the invocation context (must not be {@code null})
+     * @param application the application of the invocation target (must not be {@code null})
+     * @return the destination, or {@code null} if discovery has to pick one
+     */
+    URI route(final AbstractInvocationContext context, final Application application) {
+        final URI destination = applications.get(application);
+        if (destination != null || applications.isEmpty()) {
+            return destination;
+        }
+        final EJBLocator<?> locator = context.getLocator();
+        if (locator.getAffinity() != Affinity.NONE || context.getWeakAffinity() != Affinity.NONE) {
+            // discovery would not just look for the module
+            return null;
+        }
+        final DiscoveryResultCache cache = context.getClientContext().getDiscoveryResultCache();
+        if (! cache.isEnabled()) {
+            return null;
+        }
+        final List<ServiceURL> serviceURLs = cache.peek(DiscoveryEJBClientInterceptor.getFilterSpec(locator.getIdentifier().getModuleIdentifier()));
+        if (serviceURLs == null) {
+            return null;
+        }
+        final Collection<URI> enlisted = applications.values();
+        for (ServiceURL serviceURL : serviceURLs) {
+            final URI location = serviceURL.getLocationURI();
+            if (enlisted.contains(location)) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pin an application to a destination, unless it is pinned already.
+     *
+     * @param application the application (must not be {@code null})
+     * @param destination the destination (must not be {@code null})
+     * @return the destination the application was already pinned to, or {@code null} if it is pinned to the given one now
+     */
+    URI putIfAbsent(final Application application, final URI destination) {
+        return applications.putIfAbsent(application, destination);
+    }
+
+    void remove(final Application application, final URI destination) {
+        applications.remove(application, destination);
+    }
+
+    boolean isEmpty() {
+        return applications.isEmpty();
+    }
+
+    Collection<URI> getDestinations() {
+        return applications.values();
+    }
+}
@@ -49,4 +49,12 @@ public @interface CompressionHint {
      * The compression level to be used while compressing the data. The values can be any of those that are supported by {@link Deflater}. By default the compression level is {@link Deflater#DEFAULT_COMPRESSION}
      */
     int compressionLevel() default Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * The name of the compression codec to be used.  The built-in codecs are {@code deflate}, which is supported by
+     * every server, and {@code fast}, which uses much less CPU at the cost of a lower compression ratio.  If the
+     * named codec is not supported by both the client and the server, {@code deflate} is used instead.  By default
+     * the codec is {@code deflate}.
+     */
+    String codec() default "deflate";
 }
@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.ejb.client.EJBMethodLocator;
+
+/**
+ * Adaptive request compression for the methods of a channel which carry no compression hint.  The marshalled size
+ * and the achieved compression ratio of each method are sampled, and compression is switched on for a method once it
+ * pays off and switched off again once it clearly does not.  While compression is off for a method, every
+ * {@linkplain #PROBE_INTERVAL probe interval}th request is compressed anyway to keep the ratio up to date.
+ */
+final class AdaptiveCompression {
+
+    /**
+     * Whether adaptive compression is enabled for methods without a compression hint.
+     */
+    static final boolean ENABLED = doPrivileged((PrivilegedAction<Boolean>) () -> Boolean.valueOf(System.getProperty("org.jboss.ejb.client.compression.adaptive", "false"))).booleanValue();
+
+    static final int PROBE_INTERVAL = 32;
+
+    // switch on once compression saves at least 30%, and off again once it saves less than 10%
+    static final double ENABLE_RATIO = 0.7;
+    static final double DISABLE_RATIO = 0.9;
+
+    private static final double WEIGHT = 0.25;
+
+    private final int threshold;
+    private final ConcurrentHashMap<EJBMethodLocator, MethodStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param threshold the size, in bytes, up to which a message is never compressed
+     */
+    AdaptiveCompression(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    MethodStats getStats(final EJBMethodLocator methodLocator) {
+        final MethodStats methodStats = stats.get(methodLocator);
+        return methodStats != null ? methodStats : stats.computeIfAbsent(methodLocator, ignored -> new MethodStats());
+    }
+
+    final class MethodStats {
+        private boolean compress;
+        private int skipped;
+        private double size = -1;
+        private double ratio = -1;
+
+        MethodStats() {
+        }
+
+        /**
+         * Determine whether the next request should be compressed.
+         *
+         * @return {@code true} to compress the request, {@code false} otherwise
+         */
+        synchronized boolean shouldCompress() {
+            if (compress || ++ skipped >= PROBE_INTERVAL) {
+                skipped = 0;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Record a sample from a request for which {@link #shouldCompress()} returned {@code true}.
+         *
+         * @param rawSize the uncompressed size of the request
+         * @param compressedSize the compressed size of the request, or -1 if it was below the threshold
+         */
+        synchronized void record(final long rawSize, final long compressedSize) {
+            size = size < 0 ? rawSize : size + WEIGHT * (rawSize - size);
+            if (compressedSize >= 0 && rawSize > 0) {
+                final double sample = (double) compressedSize / rawSize;
+                ratio = ratio < 0 ? sample : ratio + WEIGHT * (sample - ratio);
+            }
+            if (compress) {
+                if (size <= threshold || ratio >= DISABLE_RATIO) {
+                    compress = false;
+                }
+            } else if (size > threshold && ratio >= 0 && ratio <= ENABLE_RATIO) {
+                compress = true;
+            }
+        }
+
+        synchronized boolean isCompressing() {
+            return compress;
+        }
+    }
+}
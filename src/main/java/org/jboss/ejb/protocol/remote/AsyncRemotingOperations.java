@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.util.concurrent.CompletionStage;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.jboss.remoting3.ConnectionPeerIdentity;
+import org.wildfly.transaction.client.provider.remoting.RemotingOperations;
+
+/**
+ * Remoting transaction operations which can also be issued without waiting for the answer, so that a coordinator can
+ * run a phase on all of its participants at once instead of one after another.  The returned stages fail with an
+ * {@link XAException} where the blocking methods would throw one.
+ */
+public interface AsyncRemotingOperations extends RemotingOperations {
+
+    /**
+     * Roll back the given transaction on the peer.
+     *
+     * @param xid the transaction ID
+     * @param peerIdentity the peer identity
+     * @return the stage which completes when the peer answered
+     */
+    CompletionStage<Void> rollbackAsync(Xid xid, ConnectionPeerIdentity peerIdentity);
+
+    /**
+     * Run the before-completion callbacks of the given transaction on the peer.
+     *
+     * @param xid the transaction ID
+     * @param peerIdentity the peer identity
+     * @return the stage which completes when the peer answered
+     */
+    CompletionStage<Void> beforeCompletionAsync(Xid xid, ConnectionPeerIdentity peerIdentity);
+
+    /**
+     * Prepare the given transaction on the peer.
+     *
+     * @param xid the transaction ID
+     * @param peerIdentity the peer identity
+     * @return the stage which completes with the prepare vote of the peer
+     */
+    CompletionStage<Integer> prepareAsync(Xid xid, ConnectionPeerIdentity peerIdentity);
+
+    /**
+     * Run the before-completion callbacks of the given transaction on the peer, then prepare it.  Where the peer
+     * supports it, both travel in one request.
+     *
+     * @param xid the transaction ID
+     * @param peerIdentity the peer identity
+     * @return the stage which completes with the prepare vote of the peer
+     */
+    CompletionStage<Integer> beforeCompletionAndPrepareAsync(Xid xid, ConnectionPeerIdentity peerIdentity);
+
+    /**
+     * Forget the given heuristically completed transaction on the peer.
+     *
+     * @param xid the transaction ID
+     * @param peerIdentity the peer identity
+     * @return the stage which completes when the peer answered
+     */
+    CompletionStage<Void> forgetAsync(Xid xid, ConnectionPeerIdentity peerIdentity);
+
+    /**
+     * Commit the given transaction on the peer.
+     *
+     * @param xid the transaction ID
+     * @param onePhase {@code true} to commit in one phase
+     * @param peerIdentity the peer identity
+     * @return the stage which completes when the peer answered
+     */
+    CompletionStage<Void> commitAsync(Xid xid, boolean onePhase, ConnectionPeerIdentity peerIdentity);
+
+    /**
+     * Run the before-completion callbacks of the given transaction on the peer, then prepare it.  Where the peer
+     * supports it, both travel in one request.
+     *
+     * @param xid the transaction ID
+     * @param peerIdentity the peer identity
+     * @return the prepare vote of the peer
+     * @throws XAException if either step failed
+     */
+    int beforeCompletionAndPrepare(Xid xid, ConnectionPeerIdentity peerIdentity) throws XAException;
+
+    /**
+     * Scan the peer for in-doubt branches.  Unlike {@link #recover(int, String, ConnectionPeerIdentity)}, the branches
+     * are handed out while the peer is still sending them.
+     *
+     * @param flag the recovery flags
+     * @param parentName the name of the recovering node
+     * @param peerIdentity the peer identity
+     * @return the iterator over the branches (not {@code null})
+     * @throws XAException if the scan could not be started
+     */
+    RecoveryIterator recoverIterator(int flag, String parentName, ConnectionPeerIdentity peerIdentity) throws XAException;
+}
@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.xnio.IoUtils.safeClose;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.remoting3.MessageInputStream;
+import org.jboss.remoting3.util.Invocation;
+
+/**
+ * An invocation whose caller blocks until the response arrives.  This takes the place of Remoting's
+ * {@code BlockingInvocation}, which waits on the invocation's monitor; waiting on a {@link Condition} instead lets a
+ * virtual thread caller unmount from its carrier thread while the response is outstanding.
+ */
+class AwaitableInvocation extends Invocation {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition responded = lock.newCondition();
+    private int parameter;
+    private MessageInputStream inputStream;
+    private IOException exception;
+    private boolean closed;
+    private boolean cancelled;
+
+    AwaitableInvocation(final int index) {
+        super(index);
+    }
+
+    public void handleResponse(final int parameter, final MessageInputStream inputStream) {
+        lock.lock();
+        try {
+            if (! cancelled) {
+                this.parameter = parameter;
+                this.inputStream = inputStream;
+                responded.signalAll();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // nobody is waiting for it anymore
+        safeClose(inputStream);
+    }
+
+    public void handleClosed() {
+        lock.lock();
+        try {
+            closed = true;
+            responded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void handleException(final IOException cause) {
+        lock.lock();
+        try {
+            exception = cause;
+            responded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the response to this invocation.
+     *
+     * @return the response (not {@code null})
+     * @throws IOException if the invocation failed or the channel was closed before a response arrived
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    Response getResponse() throws IOException, InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                final MessageInputStream inputStream = this.inputStream;
+                if (inputStream != null) {
+                    this.inputStream = null;
+                    return new Response(parameter, inputStream);
+                }
+                if (exception != null) {
+                    throw new IOException(exception);
+                }
+                if (closed || cancelled) {
+                    throw new ClosedChannelException();
+                }
+                responded.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Abandon this invocation; a response which has arrived or arrives later is discarded.
+     */
+    void cancel() {
+        final MessageInputStream inputStream;
+        lock.lock();
+        try {
+            cancelled = true;
+            inputStream = this.inputStream;
+            this.inputStream = null;
+            responded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        safeClose(inputStream);
+    }
+
+    static final class Response implements AutoCloseable {
+        private final int parameter;
+        private final MessageInputStream inputStream;
+
+        Response(final int parameter, final MessageInputStream inputStream) {
+            this.parameter = parameter;
+            this.inputStream = inputStream;
+        }
+
+        int getParameter() {
+            return parameter;
+        }
+
+        MessageInputStream getInputStream() {
+            return inputStream;
+        }
+
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.io.IOException;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.jboss.remoting3.Channel;
+import org.jboss.remoting3.ClientServiceHandle;
+import org.jboss.remoting3.Connection;
+import org.wildfly.common.Assert;
+import org.xnio.IoFuture;
+import org.xnio.OptionMap;
+
+/**
+ * A fixed number of EJB client channels per connection.  Each pooled service handle opens its own channel on the
+ * connection, so invocations to one node are no longer confined to a single channel's outbound message window.
+ * <p>
+ * The first channel is the primary one; it carries session creation, transaction control and discovery, so that all
+ * state the peer keeps for the connection is seen on one channel.  The other channels are opened in invocation-only
+ * mode, so the peer does not send them module availability or cluster topology reports, and they are not registered
+ * as discovery targets.  Method invocations are spread over all of the channels which are open, picking the one with
+ * the fewest invocations in flight.  Invocation-only channels need protocol version 4, so against older peers only
+ * the primary channel is used.
+ */
+final class ChannelPool {
+
+    /**
+     * The number of channels to open per connection.
+     */
+    static final int SIZE = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.channels-per-connection", "1"))).intValue());
+
+    private final List<ClientServiceHandle<EJBClientChannel>> handles;
+
+    ChannelPool(final int size, final BiFunction<Channel, Boolean, IoFuture<EJBClientChannel>> constructor) {
+        Assert.checkMinimumParameter("size", 1, size);
+        final List<ClientServiceHandle<EJBClientChannel>> handles = new ArrayList<>(size);
+        handles.add(new ClientServiceHandle<>("jboss.ejb", channel -> constructor.apply(channel, Boolean.FALSE)));
+        for (int i = 1; i < size; i ++) {
+            handles.add(new ClientServiceHandle<>("jboss.ejb", channel -> constructor.apply(channel, Boolean.TRUE)));
+        }
+        this.handles = handles;
+    }
+
+    /**
+     * Get the primary channel of the given connection, opening it if necessary.
+     *
+     * @param connection the connection (must not be {@code null})
+     * @return the future channel
+     */
+    IoFuture<EJBClientChannel> getPrimary(final Connection connection) {
+        return handles.get(0).getClientService(connection, OptionMap.EMPTY);
+    }
+
+    /**
+     * Open all of the pooled channels of the given connection.  The invocation-only channels are opened once the
+     * primary one is ready, if the peer supports them.
+     *
+     * @param connection the connection (must not be {@code null})
+     * @return the future primary channel
+     */
+    IoFuture<EJBClientChannel> open(final Connection connection) {
+        final IoFuture<EJBClientChannel> primary = getPrimary(connection);
+        if (handles.size() > 1) {
+            primary.addNotifier((future, ignored) -> {
+                if (isPooled(future)) {
+                    openSecondary(connection);
+                }
+            }, null);
+        }
+        return primary;
+    }
+
+    /**
+     * Select a channel of the given connection for a method invocation.  The invocation-only channels are opened
+     * once the primary one is ready; until one of them is ready, or if none of them could be opened, the primary one
+     * is used.
+     *
+     * @param connection the connection (must not be {@code null})
+     * @return the future channel
+     */
+    IoFuture<EJBClientChannel> select(final Connection connection) {
+        final IoFuture<EJBClientChannel> primary = getPrimary(connection);
+        final List<ClientServiceHandle<EJBClientChannel>> handles = this.handles;
+        if (handles.size() == 1 || ! isPooled(primary)) {
+            return primary;
+        }
+        IoFuture<EJBClientChannel> best = primary;
+        int bestCount = Integer.MAX_VALUE;
+        for (ClientServiceHandle<EJBClientChannel> handle : handles) {
+            final IoFuture<EJBClientChannel> future = handle.getClientService(connection, OptionMap.EMPTY);
+            if (future.getStatus() == IoFuture.Status.DONE) {
+                final int count;
+                try {
+                    count = future.get().getOutstandingInvocations();
+                } catch (IOException e) {
+                    // impossible
+                    throw Assert.unreachableCode();
+                }
+                if (count < bestCount) {
+                    best = future;
+                    bestCount = count;
+                    if (count == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void openSecondary(final Connection connection) {
+        for (int i = 1; i < handles.size(); i ++) {
+            handles.get(i).getClientService(connection, OptionMap.EMPTY);
+        }
+    }
+
+    private static boolean isPooled(final IoFuture<? extends EJBClientChannel> primary) {
+        if (primary.getStatus() != IoFuture.Status.DONE) {
+            return false;
+        }
+        try {
+            return primary.get().getVersion() >= 4;
+        } catch (IOException e) {
+            // impossible
+            throw Assert.unreachableCode();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+import static org.jboss.ejb.client.EJBClientContext.EJB_SERVICE_TYPE;
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_CLUSTER;
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_NODE;
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_SOURCE_IP;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.ejb._private.Logs;
+import org.jboss.ejb.client.EJBClientCluster;
+import org.jboss.ejb.client.EJBClientConnection;
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.NodeHealthRegistry;
+import org.jboss.remoting3.ConnectionPeerIdentity;
+import org.jboss.remoting3.Endpoint;
+import org.wildfly.common.net.CidrAddress;
+import org.wildfly.common.net.Inet;
+import org.wildfly.discovery.AttributeValue;
+import org.wildfly.discovery.FilterSpec;
+import org.wildfly.discovery.ServiceURL;
+import org.wildfly.discovery.spi.DiscoveryResult;
+import org.wildfly.security.auth.client.AuthenticationContext;
+import org.xnio.IoFuture;
+
+/**
+ * Establishes connections and EJB channels to the nodes of configured clusters ahead of the first invocation, so that
+ * invocations do not pay for connecting, authenticating and the channel handshake.  A cluster is warmed up once when
+ * the client context is constructed, and again whenever nodes join or leave it.
+ * <p>
+ * Warm-up runs on worker threads, so it uses the authentication context which was current when the client context was
+ * constructed (or when warm-up was last requested), rather than whatever happens to be current on the worker.
+ */
+final class ClusterWarmUp {
+    private final RemoteEJBReceiver receiver;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private volatile AuthenticationContext authenticationContext = AuthenticationContext.captureCurrent();
+
+    private final IoFuture.HandlingNotifier<ConnectionPeerIdentity, URI> connectionNotifier = new IoFuture.HandlingNotifier<ConnectionPeerIdentity, URI>() {
+        public void handleDone(final ConnectionPeerIdentity identity, final URI destination) {
+            // open the EJB channel too, so that its handshake is done before the first invocation
+            receiver.channelPool.open(identity.getConnection()).addNotifier(channelNotifier, destination);
+        }
+
+        public void handleFailed(final IOException exception, final URI destination) {
+            Logs.INVOCATION.debugf(exception, "Failed to warm up connection to %s", destination);
+            getHealthRegistry().recordFailure(destination);
+        }
+    };
+
+    private final IoFuture.HandlingNotifier<EJBClientChannel, URI> channelNotifier = new IoFuture.HandlingNotifier<EJBClientChannel, URI>() {
+        public void handleDone(final EJBClientChannel channel, final URI destination) {
+            Logs.INVOCATION.tracef("Warmed up EJB channel to %s", destination);
+            getHealthRegistry().recordSuccess(destination);
+        }
+
+        public void handleFailed(final IOException exception, final URI destination) {
+            Logs.INVOCATION.debugf(exception, "Failed to warm up EJB channel to %s", destination);
+            getHealthRegistry().recordFailure(destination);
+        }
+    };
+
+    ClusterWarmUp(final RemoteEJBReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    private EJBClientContext getClientContext() {
+        return receiver.getReceiverContext().getClientContext();
+    }
+
+    private NodeHealthRegistry getHealthRegistry() {
+        return getClientContext().getNodeHealthRegistry();
+    }
+
+    /**
+     * Connect to the configured connections, and warm up every configured cluster which has warm-up enabled.
+     */
+    void warmUpAll() {
+        authenticationContext = AuthenticationContext.captureCurrent();
+        final EJBClientContext clientContext = getClientContext();
+        boolean clusters = false;
+        for (EJBClientCluster cluster : clientContext.getInitialConfiguredClusters()) {
+            if (cluster.isWarmUp()) {
+                schedule(cluster);
+                clusters = true;
+            }
+        }
+        if (! clusters) {
+            // cluster discovery connects to these anyway
+            for (EJBClientConnection connection : clientContext.getConfiguredConnections()) {
+                connect(connection.getDestination(), null);
+            }
+        }
+    }
+
+    /**
+     * Called when nodes joined or left the given cluster.
+     *
+     * @param clusterName the cluster name
+     */
+    void clusterChanged(final String clusterName) {
+        for (EJBClientCluster cluster : getClientContext().getInitialConfiguredClusters()) {
+            if (cluster.isWarmUp() && cluster.getName().equals(clusterName)) {
+                schedule(cluster);
+                return;
+            }
+        }
+    }
+
+    private void schedule(final EJBClientCluster cluster) {
+        final String clusterName = cluster.getName();
+        // topology messages report nodes one by one; warm up once for all of them
+        if (pending.add(clusterName)) {
+            final AuthenticationContext authenticationContext = this.authenticationContext;
+            Endpoint.getCurrent().getXnioWorker().execute(() -> {
+                pending.remove(clusterName);
+                authenticationContext.run(() -> warmUp(cluster));
+            });
+        }
+    }
+
+    private void warmUp(final EJBClientCluster cluster) {
+        final List<ServiceURL> serviceURLs = Collections.synchronizedList(new ArrayList<>());
+        final DiscoveryResult result = new DiscoveryResult() {
+            public void complete() {
+                connectNodes(cluster, serviceURLs);
+            }
+
+            public void reportProblem(final Throwable description) {
+                Logs.INVOCATION.debugf(description, "Problem discovering nodes of cluster %s for warm-up", cluster.getName());
+            }
+
+            public void addMatch(final ServiceURL serviceURL) {
+                serviceURLs.add(serviceURL);
+            }
+        };
+        // discovery looks up the receiver and configured connections of the current context
+        getClientContext().run(() -> receiver.getDiscoveredNodeRegistry().discover(EJB_SERVICE_TYPE, FilterSpec.equal(FILTER_ATTR_CLUSTER, cluster.getName()), result));
+    }
+
+    private void connectNodes(final EJBClientCluster cluster, final List<ServiceURL> serviceURLs) {
+        long limit = cluster.getMaximumConnectedNodes();
+        if (limit == 0L) {
+            limit = getClientContext().getMaximumConnectedClusterNodes();
+        }
+        if (limit <= 0L) {
+            limit = Long.MAX_VALUE;
+        }
+        final Map<String, URI> nodes = new LinkedHashMap<>();
+        synchronized (serviceURLs) {
+            for (ServiceURL serviceURL : serviceURLs) {
+                final AttributeValue nodeName = serviceURL.getFirstAttributeValue(FILTER_ATTR_NODE);
+                if (nodeName != null && satisfiesSourceAddress(serviceURL)) {
+                    nodes.putIfAbsent(nodeName.toString(), serviceURL.getLocationURI());
+                }
+            }
+        }
+        final List<URI> unconnected = new ArrayList<>(nodes.size());
+        long connected = 0;
+        for (URI uri : nodes.values()) {
+            if (receiver.isConnected(uri)) {
+                connected ++;
+            } else {
+                unconnected.add(uri);
+            }
+        }
+        // spread the clients of a cluster over its nodes
+        Collections.shuffle(unconnected);
+        final NodeHealthRegistry healthRegistry = getHealthRegistry();
+        for (URI uri : unconnected) {
+            if (connected >= limit) {
+                break;
+            }
+            if (healthRegistry.claimProbe(uri)) {
+                Logs.INVOCATION.tracef("Warming up connection to %s of cluster %s", uri, cluster.getName());
+                connect(uri, cluster.getName());
+                connected ++;
+            }
+        }
+    }
+
+    private void connect(final URI uri, final String clusterName) {
+        final Endpoint endpoint = Endpoint.getCurrent();
+        final AuthenticationContext authenticationContext = this.authenticationContext;
+        final IoFuture<ConnectionPeerIdentity> future;
+        if (clusterName == null) {
+            future = doPrivileged((PrivilegedAction<IoFuture<ConnectionPeerIdentity>>) () -> endpoint.getConnectedIdentity(uri, "ejb", "jboss", authenticationContext));
+        } else {
+            future = doPrivileged((PrivilegedAction<IoFuture<ConnectionPeerIdentity>>) () -> receiver.getDiscoveredNodeRegistry().getConnectedIdentityUsingClusterEffective(endpoint, uri, "ejb", "jboss", authenticationContext, clusterName));
+        }
+        future.addNotifier(connectionNotifier, uri);
+    }
+
+    private boolean satisfiesSourceAddress(final ServiceURL serviceURL) {
+        final List<AttributeValue> values = serviceURL.getAttributeValues(FILTER_ATTR_SOURCE_IP);
+        if (values.isEmpty()) {
+            return true;
+        }
+        final URI uri = serviceURL.getLocationURI();
+        final InetSocketAddress sourceAddress = receiver.getSourceAddress(new InetSocketAddress(uri.getHost(), uri.getPort()));
+        final InetAddress inetAddress = sourceAddress == null ? null : sourceAddress.getAddress();
+        for (AttributeValue value : values) {
+            final CidrAddress matchAddress = value.isString() ? Inet.parseCidrAddress(value.toString()) : null;
+            if (matchAddress != null && (inetAddress == null ? matchAddress.getNetmaskBits() == 0 : matchAddress.matches(inetAddress))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jboss.remoting3.MessageOutputStream;
+
+/**
+ * A message output stream which compresses the rest of a message with a codec, unless the whole remainder of the
+ * message fits within the compression threshold, in which case it is sent as-is.  The compressed message header is
+ * only written once the threshold is exceeded, so that a peer never sees a compressed message which is smaller than
+ * its uncompressed form would have been.
+ * <p>
+ * If adaptive compression statistics are given, the uncompressed and compressed sizes of the message are recorded
+ * when it is closed.
+ */
+final class CompressingMessageOutputStream extends MessageOutputStream {
+    private final MessageOutputStream underlying;
+    private final CompressionCodec codec;
+    private final int codecId;
+    private final int level;
+    private final AdaptiveCompression.MethodStats stats;
+    private byte[] buffer;
+    private int count;
+    private OutputStream delegate;
+    private Counter counter;
+    private long written;
+    private boolean cancelled;
+    private boolean closed;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param underlying the message to write to
+     * @param codec the codec to use
+     * @param codecId the wire ID of the codec on the channel
+     * @param level the compression level
+     * @param threshold the number of bytes up to which the message is not compressed
+     * @param stats the adaptive compression statistics to update, or {@code null} for none
+     */
+    CompressingMessageOutputStream(final MessageOutputStream underlying, final CompressionCodec codec, final int codecId, final int level, final int threshold, final AdaptiveCompression.MethodStats stats) {
+        this.underlying = underlying;
+        this.codec = codec;
+        this.codecId = codecId;
+        this.level = level;
+        this.stats = stats;
+        buffer = threshold > 0 ? new byte[threshold] : null;
+    }
+
+    CompressingMessageOutputStream(final MessageOutputStream underlying, final CompressionCodec codec, final int codecId, final int level, final int threshold) {
+        this(underlying, codec, codecId, level, threshold, null);
+    }
+
+    private OutputStream target(final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        final OutputStream delegate = this.delegate;
+        if (delegate != null) {
+            return delegate;
+        }
+        final byte[] buffer = this.buffer;
+        if (buffer != null && len <= buffer.length - count) {
+            return null;
+        }
+        return startCompression();
+    }
+
+    private OutputStream startCompression() throws IOException {
+        if (codecId == 0) {
+            underlying.write(Protocol.COMPRESSED_INVOCATION_MESSAGE);
+        } else {
+            underlying.write(Protocol.CODEC_COMPRESSED_MESSAGE);
+            underlying.write(codecId);
+        }
+        final Counter counter = new Counter();
+        final OutputStream delegate = codec.compress(counter, level);
+        this.counter = counter;
+        this.delegate = delegate;
+        if (count > 0) {
+            delegate.write(buffer, 0, count);
+        }
+        buffer = null;
+        return delegate;
+    }
+
+    public void write(final int b) throws IOException {
+        final OutputStream target = target(1);
+        if (target == null) {
+            buffer[count ++] = (byte) b;
+        } else {
+            target.write(b);
+        }
+        written ++;
+    }
+
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        final OutputStream target = target(len);
+        if (target == null) {
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        } else {
+            target.write(b, off, len);
+        }
+        written += len;
+    }
+
+    public void flush() throws IOException {
+        // buffered content is only written once the size of the message is known
+        final OutputStream delegate = this.delegate;
+        if (delegate != null) {
+            delegate.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        final OutputStream delegate = this.delegate;
+        if (delegate != null) {
+            // releases the codec resources even if the message was cancelled
+            delegate.close();
+        } else {
+            if (count > 0 && ! cancelled) {
+                underlying.write(buffer, 0, count);
+            }
+            buffer = null;
+            underlying.close();
+        }
+        final AdaptiveCompression.MethodStats stats = this.stats;
+        if (stats != null && ! cancelled) {
+            stats.record(written, delegate == null ? -1 : counter.count);
+        }
+    }
+
+    public MessageOutputStream cancel() {
+        cancelled = true;
+        underlying.cancel();
+        return this;
+    }
+
+    /**
+     * Counts the compressed bytes written to the message.
+     */
+    final class Counter extends OutputStream {
+        long count;
+
+        public void write(final int b) throws IOException {
+            underlying.write(b);
+            count ++;
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            underlying.write(b, off, len);
+            count += len;
+        }
+
+        public void flush() throws IOException {
+            underlying.flush();
+        }
+
+        public void close() throws IOException {
+            underlying.close();
+        }
+    }
+}
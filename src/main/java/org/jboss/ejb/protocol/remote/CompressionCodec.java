@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression codec which may be used for invocation messages.  Codecs other than the built-in {@code deflate} codec
+ * are advertised in the protocol greetings and may only be used once both peers of a channel support them (v4 and up).
+ * Additional codecs are discovered using the {@link java.util.ServiceLoader} mechanism and are selected by name using
+ * {@link org.jboss.ejb.client.annotation.CompressionHint#codec()}.
+ * <p>
+ * Codec implementations must be thread-safe; a single instance is shared by all channels.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Get the name of this codec, which identifies it to the peer.  The name must be unique and should be short.
+     *
+     * @return the codec name (must not be {@code null})
+     */
+    String getName();
+
+    /**
+     * Create a stream which compresses everything written to it into the given stream.  Closing the returned stream
+     * must write any remaining data, close the given stream, and release any resources held by the compressor.
+     *
+     * @param out the stream to write compressed data to (not {@code null})
+     * @param level the requested compression level, as specified for {@link java.util.zip.Deflater}; codecs may
+     *      ignore it
+     * @return the compressing stream (must not be {@code null})
+     * @throws IOException if the stream could not be created
+     */
+    OutputStream compress(OutputStream out, int level) throws IOException;
+
+    /**
+     * Create a stream which decompresses the content of the given stream.  Closing the returned stream must close
+     * the given stream and release any resources held by the decompressor.
+     *
+     * @param in the stream to read compressed data from (not {@code null})
+     * @return the decompressing stream (must not be {@code null})
+     * @throws IOException if the stream could not be created
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.jboss.ejb._private.Logs;
+
+/**
+ * The registry of available compression codecs.  On the wire, a codec is identified by an ID which is zero for the
+ * built-in {@code deflate} codec, or otherwise the one-based index of the codec in the list which the client selected
+ * in its greeting (v4 and up).
+ */
+final class CompressionCodecs {
+
+    /**
+     * The maximum number of idle codec instances to retain per codec.  A value of zero disables pooling.
+     */
+    static final int POOL_SIZE = doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.compression.pool.size", "8"))).intValue();
+
+    /**
+     * The size, in bytes, up to which a message is sent uncompressed even though compression was requested.
+     */
+    static final int THRESHOLD = doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.compression.threshold", "512"))).intValue();
+
+    /**
+     * The maximum number of negotiated codecs, which is limited by the four bits of the response codec flags.
+     */
+    static final int MAX_NEGOTIATED = 15;
+
+    static final CompressionCodec DEFLATE = new DeflateCompressionCodec(POOL_SIZE);
+
+    private static final LinkedHashMap<String, CompressionCodec> CODECS;
+    private static final List<String> NAMES;
+
+    static {
+        final LinkedHashMap<String, CompressionCodec> codecs = new LinkedHashMap<>();
+        codecs.put(FastCompressionCodec.NAME, new FastCompressionCodec(POOL_SIZE));
+        doPrivileged((PrivilegedAction<Void>) () -> {
+            final Iterator<CompressionCodec> iterator = ServiceLoader.load(CompressionCodec.class, CompressionCodecs.class.getClassLoader()).iterator();
+            for (;;) try {
+                if (! iterator.hasNext()) break;
+                final CompressionCodec codec = iterator.next();
+                final String name = codec.getName();
+                if (name == null || name.equals(DeflateCompressionCodec.NAME) || codecs.containsKey(name)) {
+                    Logs.REMOTING.tracef("Ignoring compression codec %s with duplicate name %s", codec, name);
+                } else {
+                    codecs.put(name, codec);
+                }
+            } catch (ServiceConfigurationError e) {
+                Logs.REMOTING.trace("Failed to load a compression codec", e);
+            }
+            return null;
+        });
+        final ArrayList<String> names = new ArrayList<>(codecs.keySet());
+        CODECS = codecs;
+        NAMES = Collections.unmodifiableList(names.size() > MAX_NEGOTIATED ? new ArrayList<>(names.subList(0, MAX_NEGOTIATED)) : names);
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * Get the names of the locally available codecs which may be negotiated, excluding {@code deflate}.
+     *
+     * @return the codec names (not {@code null})
+     */
+    static List<String> getNames() {
+        return NAMES;
+    }
+
+    /**
+     * Resolve the codecs named by the peer.  Names which are not available locally resolve to {@code null}, so that
+     * the index of each codec is preserved.
+     *
+     * @param names the codec names
+     * @return the codecs, indexed by ID minus one
+     */
+    static CompressionCodec[] resolve(final List<String> names) {
+        final int size = Math.min(names.size(), MAX_NEGOTIATED);
+        final CompressionCodec[] codecs = new CompressionCodec[size];
+        for (int i = 0; i < size; i ++) {
+            codecs[i] = CODECS.get(names.get(i));
+        }
+        return codecs;
+    }
+
+    /**
+     * Get the wire ID of the named codec.
+     *
+     * @param codecs the negotiated codecs of the channel
+     * @param name the codec name, or {@code null} for {@code deflate}
+     * @return the codec ID, or 0 for {@code deflate} or if the codec was not negotiated
+     */
+    static int getId(final CompressionCodec[] codecs, final String name) {
+        if (name != null) {
+            for (int i = 0; i < codecs.length; i ++) {
+                if (codecs[i] != null && codecs[i].getName().equals(name)) {
+                    return i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the codec with the given wire ID.
+     *
+     * @param codecs the negotiated codecs of the channel
+     * @param id the codec ID
+     * @return the codec, or {@code null} if the ID is not valid on this channel
+     */
+    static CompressionCodec getCodec(final CompressionCodec[] codecs, final int id) {
+        if (id == 0) {
+            return DEFLATE;
+        }
+        return id <= codecs.length ? codecs[id - 1] : null;
+    }
+
+    static void writeNames(final DataOutput output, final List<String> names) throws IOException {
+        PackedInteger.writePackedInteger(output, names.size());
+        for (String name : names) {
+            output.writeUTF(name);
+        }
+    }
+
+    static List<String> readNames(final DataInput input) throws IOException {
+        final int count = PackedInteger.readPackedInteger(input);
+        final ArrayList<String> names = new ArrayList<>(Math.min(count, MAX_NEGOTIATED));
+        for (int i = 0; i < count; i ++) {
+            names.add(input.readUTF());
+        }
+        return names;
+    }
+}
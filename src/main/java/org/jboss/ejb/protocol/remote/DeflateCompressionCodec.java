@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The built-in {@code deflate} codec, which is understood by every peer that supports compression (v2 and up) and is
+ * written using {@link Protocol#COMPRESSED_INVOCATION_MESSAGE}.  Deflaters and inflaters are pooled; an instance is
+ * reset and returned to the pool when its stream is closed normally, and is {@linkplain Deflater#end() ended} at once
+ * if it could not be pooled or its stream failed.
+ */
+final class DeflateCompressionCodec implements CompressionCodec {
+
+    static final String NAME = "deflate";
+
+    private final ArrayBlockingQueue<Deflater> deflaters;
+    private final ArrayBlockingQueue<Inflater> inflaters;
+
+    DeflateCompressionCodec(final int poolSize) {
+        if (poolSize > 0) {
+            deflaters = new ArrayBlockingQueue<>(poolSize);
+            inflaters = new ArrayBlockingQueue<>(poolSize);
+        } else {
+            deflaters = null;
+            inflaters = null;
+        }
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public OutputStream compress(final OutputStream out, final int level) throws IOException {
+        final ArrayBlockingQueue<Deflater> deflaters = this.deflaters;
+        Deflater deflater = deflaters == null ? null : deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            try {
+                deflater.setLevel(level);
+            } catch (IllegalArgumentException e) {
+                deflater.end();
+                throw e;
+            }
+        }
+        return new PooledDeflaterOutputStream(out, deflater);
+    }
+
+    public InputStream decompress(final InputStream in) throws IOException {
+        final ArrayBlockingQueue<Inflater> inflaters = this.inflaters;
+        Inflater inflater = inflaters == null ? null : inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        return new PooledInflaterInputStream(in, inflater);
+    }
+
+    void release(final Deflater deflater, final boolean reusable) {
+        final ArrayBlockingQueue<Deflater> deflaters = this.deflaters;
+        if (reusable && deflaters != null) {
+            deflater.reset();
+            if (deflaters.offer(deflater)) {
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    void release(final Inflater inflater, final boolean reusable) {
+        final ArrayBlockingQueue<Inflater> inflaters = this.inflaters;
+        if (reusable && inflaters != null) {
+            inflater.reset();
+            if (inflaters.offer(inflater)) {
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    final class PooledDeflaterOutputStream extends DeflaterOutputStream {
+        private boolean closed;
+
+        PooledDeflaterOutputStream(final OutputStream out, final Deflater deflater) {
+            super(out, deflater);
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            // the deflater may already belong to another stream
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            super.write(b, off, len);
+        }
+
+        public void finish() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            super.finish();
+        }
+
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean ok = false;
+            try {
+                super.finish();
+                out.close();
+                ok = true;
+            } finally {
+                release(def, ok);
+            }
+        }
+    }
+
+    final class PooledInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        PooledInflaterInputStream(final InputStream in, final Inflater inflater) {
+            super(in, inflater);
+        }
+
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                // the inflater is reset, so it does not matter whether the content was read completely
+                release(inf, true);
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import static org.xnio.Bits.allAreClear;
 import static org.xnio.Bits.allAreSet;
 import static org.xnio.IoUtils.safeClose;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
@@ -35,16 +36,22 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 import javax.ejb.CreateException;
 import javax.ejb.EJBException;
@@ -63,11 +70,14 @@ import org.jboss.ejb.client.AttachmentKeys;
 import org.jboss.ejb.client.ClusterAffinity;
 import org.jboss.ejb.client.EJBClient;
 import org.jboss.ejb.client.EJBClientInvocationContext;
+import org.jboss.ejb.client.EJBInvocationBatch;
 import org.jboss.ejb.client.EJBLocator;
 import org.jboss.ejb.client.EJBModuleIdentifier;
+import org.jboss.ejb.client.EJBReceiverContext;
 import org.jboss.ejb.client.EJBReceiverInvocationContext;
 import org.jboss.ejb.client.EJBSessionCreationInvocationContext;
 import org.jboss.ejb.client.NodeAffinity;
+import org.jboss.ejb.client.NodeMetrics;
 import org.jboss.ejb.client.RequestSendFailedException;
 import org.jboss.ejb.client.SessionID;
 import org.jboss.ejb.client.StatefulEJBLocator;
@@ -113,26 +123,44 @@ class EJBClientChannel {
 
     private final MarshallerFactory marshallerFactory;
 
+    /**
+     * The largest number of entries written in one batch invocation request.
+     */
+    private static final int MAX_BATCH_ENTRIES = 256;
+
     private final Channel channel;
     private final int version;
+    private final EJBReceiverContext receiverContext;
     private final DiscoveredNodeRegistry discoveredNodeRegistry;
 
     private final InvocationTracker invocationTracker;
 
     private final MarshallingConfiguration configuration;
+    private final MarshallerPool marshallerPool;
+    private final ProtocolV4ObjectTable objectTable;
+    private final AttachmentKey<BatchBuffer> batchKey = new AttachmentKey<>();
+    private final RemoteStreams inboundStreams = new RemoteStreams(RemoteStreams.TIMEOUT);
+    private final CompressionCodec[] codecs;
+    private final AdaptiveCompression adaptiveCompression = AdaptiveCompression.ENABLED ? new AdaptiveCompression(CompressionCodecs.THRESHOLD) : null;
     private final IntIndexMap<UserTransactionID> userTxnIds = new IntIndexHashMap<UserTransactionID>(UserTransactionID::getId);
+    private final IntIndexMap<MethodInvocation> methodInvocations = new IntIndexHashMap<MethodInvocation>(Invocation::getIndex);
+    private final TransactionHandles transactionHandles = new TransactionHandles(TransactionHandles.DEFAULT_SIZE);
 
     private final RemoteTransactionContext transactionContext;
     private final AtomicInteger finishedParts = new AtomicInteger(0);
+    private final AtomicInteger outstandingInvocations = new AtomicInteger();
     private final AtomicReference<FutureResult<EJBClientChannel>> futureResultRef;
 
-    private final RetryExecutorWrapper retryExecutorWrapper;
+    private final RetryScheduler retryScheduler;
+    private final boolean invocationsOnly;
 
-    EJBClientChannel(final Channel channel, final int version, final DiscoveredNodeRegistry discoveredNodeRegistry, final FutureResult<EJBClientChannel> futureResult, RetryExecutorWrapper retryExecutorWrapper) {
+    EJBClientChannel(final Channel channel, final int version, final CompressionCodec[] codecs, final EJBReceiverContext receiverContext, final DiscoveredNodeRegistry discoveredNodeRegistry, final FutureResult<EJBClientChannel> futureResult, RetryScheduler retryScheduler, final boolean invocationsOnly) {
         this.channel = channel;
         this.version = version;
+        this.codecs = codecs;
+        this.receiverContext = receiverContext;
         this.discoveredNodeRegistry = discoveredNodeRegistry;
-        this.retryExecutorWrapper = retryExecutorWrapper;
+        this.retryScheduler = retryScheduler;
         marshallerFactory = Marshalling.getProvidedMarshallerFactory("river");
         MarshallingConfiguration configuration = new MarshallingConfiguration();
         configuration.setClassResolver(ProtocolClassResolver.INSTANCE);
@@ -145,25 +173,46 @@ class EJBClientChannel {
             configuration.setVersion(2);
             // Do not wait for cluster topology report.
             finishedParts.set(0b10);
+            objectTable = null;
         } else {
-            configuration.setObjectTable(ProtocolV3ObjectTable.INSTANCE);
+            if (version >= 4) {
+                objectTable = new ProtocolV4ObjectTable(true);
+                configuration.setObjectTable(objectTable);
+            } else {
+                objectTable = null;
+                configuration.setObjectTable(ProtocolV3ObjectTable.INSTANCE);
+            }
             configuration.setObjectResolver(new ProtocolV3ObjectResolver(connection, true));
             configuration.setVersion(4);
             // server does not present v3 unless the transaction service is also present
         }
         transactionContext = RemoteTransactionContext.getInstance();
         this.configuration = configuration;
-        invocationTracker = new InvocationTracker(this.channel, channel.getOption(RemotingOptions.MAX_OUTBOUND_MESSAGES).intValue(), EJBClientChannel::mask);
+        marshallerPool = new MarshallerPool(marshallerFactory, configuration);
+        invocationTracker = new InvocationTracker(this.channel, channel.getOption(RemotingOptions.MAX_OUTBOUND_MESSAGES).intValue(), maskFor(version));
         futureResultRef = new AtomicReference<>(futureResult);
-        final String nodeName = connection.getRemoteEndpointName();
-        final NodeInformation nodeInformation = discoveredNodeRegistry.getNodeInformation(nodeName);
-        nodeInformation.addAddress(this);
-        nodeInformation.setInvalid(false);
-        channel.addCloseHandler((ignored1, ignored2) -> nodeInformation.removeConnection(this));
+        this.invocationsOnly = invocationsOnly;
+        if (! invocationsOnly) {
+            // pooled channels which carry invocations only are not discovery targets
+            final String nodeName = connection.getRemoteEndpointName();
+            final NodeInformation nodeInformation = discoveredNodeRegistry.getNodeInformation(nodeName);
+            nodeInformation.addAddress(this);
+            nodeInformation.setInvalid(false);
+            channel.addCloseHandler((ignored1, ignored2) -> nodeInformation.removeConnection(this));
+        }
+        channel.addCloseHandler((ignored1, ignored2) -> inboundStreams.closeAll());
     }
 
-    static int mask(int original) {
-        return original & 0xffff;
+    private void readNodeLoad(final MessageInputStream message, final String nodeName) throws IOException {
+        final String zone = message.readUTF();
+        final int loadFactor = message.readUnsignedByte();
+        receiverContext.setAdvertisedLoad(nodeName, zone.isEmpty() ? null : zone, loadFactor == Protocol.NO_LOAD_FACTOR ? -1 : loadFactor);
+        Logs.INVOCATION.tracef("Node %s advertised zone %s and load factor %d", nodeName, zone, Integer.valueOf(loadFactor));
+    }
+
+    static IntUnaryOperator maskFor(int version) {
+        final int mask = Protocol.invocationIdMask(version);
+        return original -> original & mask;
     }
 
     private void processMessage(final MessageInputStream message) {
@@ -172,8 +221,11 @@ class EJBClientChannel {
             final int msg = message.readUnsignedByte();
             switch (msg) {
                 case Protocol.TXN_RESPONSE:
+                case Protocol.TXN_RECOVERY_RESPONSE:
+                case Protocol.TXN_RECOVERY_SCAN_RESPONSE:
                 case Protocol.INVOCATION_RESPONSE:
                 case Protocol.OPEN_SESSION_RESPONSE:
+                case Protocol.OPEN_SESSIONS_RESPONSE:
                 case Protocol.APPLICATION_EXCEPTION:
                 case Protocol.CANCEL_RESPONSE:
                 case Protocol.NO_SUCH_EJB:
@@ -182,15 +234,40 @@ class EJBClientChannel {
                 case Protocol.EJB_NOT_STATEFUL:
                 case Protocol.BAD_VIEW_TYPE:
                 case Protocol.PROCEED_ASYNC_RESPONSE:{
-                    final int invId = message.readUnsignedShort();
+                    final int invId = Protocol.readInvocationId(message, version);
                     leaveOpen = invocationTracker.signalResponse(invId, msg, message, false);
                     break;
                 }
                 case Protocol.COMPRESSED_INVOCATION_MESSAGE: {
-                    DataInputStream inputStream = new DataInputStream(new InflaterInputStream(message));
-                    final int realMessageId = inputStream.readByte();
-                    final int invId = inputStream.readUnsignedShort();
-                    leaveOpen = invocationTracker.signalResponse(invId, realMessageId, new ResponseMessageInputStream(inputStream, invId), false);
+                    leaveOpen = processCompressedMessage(CompressionCodecs.DEFLATE, message);
+                    break;
+                }
+                case Protocol.CODEC_COMPRESSED_MESSAGE: {
+                    final CompressionCodec codec = version >= 4 ? CompressionCodecs.getCodec(codecs, message.readUnsignedByte()) : null;
+                    if (codec == null) {
+                        Logs.REMOTING.invalidMessageReceived(msg);
+                        break;
+                    }
+                    leaveOpen = processCompressedMessage(codec, message);
+                    break;
+                }
+                case Protocol.STREAM_DATA: {
+                    if (version < 4) {
+                        Logs.REMOTING.invalidMessageReceived(msg);
+                        break;
+                    }
+                    final int invId = Protocol.readInvocationId(message, version);
+                    final int index = PackedInteger.readPackedInteger(message);
+                    if (methodInvocations.get(invId) == null) {
+                        // the invocation already finished; discard the content
+                        break;
+                    }
+                    inboundStreams.attach(invId, index, message);
+                    leaveOpen = true;
+                    if (methodInvocations.get(invId) == null) {
+                        // the invocation finished concurrently
+                        inboundStreams.release(invId);
+                    }
                     break;
                 }
                 case Protocol.MODULE_AVAILABLE: {
@@ -253,11 +330,21 @@ class EJBClientChannel {
                                 nodeInformation.addAddress(channel.getConnection().getProtocol(), clusterName, block, destination);
                                 Logs.INVOCATION.debugf("Received CLUSTER_TOPOLOGY(%x) message block, registering block %s to address %s", msg, block, destination);
                             }
+                            if (version >= 4) {
+                                readNodeLoad(message, nodeName);
+                            }
                         }
                     }
                     finishPart(0b10);
                     break;
                 }
+                case Protocol.CLUSTER_NODE_LOAD: {
+                    int nodeCount = StreamUtils.readPackedSignedInt32(message);
+                    for (int i = 0; i < nodeCount; i ++) {
+                        readNodeLoad(message, message.readUTF());
+                    }
+                    break;
+                }
                 case Protocol.CLUSTER_TOPOLOGY_REMOVAL: {
                     int clusterCount = StreamUtils.readPackedSignedInt32(message);
                     for (int i = 0; i < clusterCount; i ++) {
@@ -301,168 +388,395 @@ class EJBClientChannel {
         }
     }
 
+    private boolean processCompressedMessage(final CompressionCodec codec, final MessageInputStream message) throws IOException {
+        final DataInputStream inputStream = new DataInputStream(codec.decompress(message));
+        boolean leaveOpen = false;
+        try {
+            final int realMessageId = inputStream.readByte();
+            final int invId = Protocol.readInvocationId(inputStream, version);
+            leaveOpen = invocationTracker.signalResponse(invId, realMessageId, new ResponseMessageInputStream(inputStream, invId), false);
+            return leaveOpen;
+        } finally {
+            if (! leaveOpen) {
+                // release the decompressor as well as the message
+                safeClose(inputStream);
+            }
+        }
+    }
+
     private static final AttachmentKey<MethodInvocation> INV_KEY = new AttachmentKey<>();
 
     public void processInvocation(final EJBReceiverInvocationContext receiverContext, final ConnectionPeerIdentity peerIdentity) {
         MethodInvocation invocation = invocationTracker.addInvocation(id -> new MethodInvocation(id, receiverContext));
+        methodInvocations.put(invocation);
         final EJBClientInvocationContext invocationContext = receiverContext.getClientInvocationContext();
         invocationContext.putAttachment(INV_KEY, invocation);
-        final EJBLocator<?> locator = invocationContext.getLocator();
         final int peerIdentityId;
         if (version >= 3) {
             peerIdentityId = peerIdentity.getId();
         } else {
             peerIdentityId = 0; // unused
         }
-        try (MessageOutputStream underlying = invocationTracker.allocateMessage()) {
-            MessageOutputStream out = handleCompression(invocationContext, underlying);
-            try {
-                out.write(Protocol.INVOCATION_REQUEST);
-                out.writeShort(invocation.getIndex());
+        // only v4 and up peers understand batch requests
+        final EJBInvocationBatch batch = version >= 4 ? invocationContext.getInvocationBatch() : null;
+        boolean holdForStreams = hasStreams(invocationContext.getParameters());
+        if (holdForStreams) {
+            // stream content is written after the request; keep the invocation ID until then, even if the response
+            // arrives first, so that the content cannot be mistaken for that of a later invocation
+            invocation.alloc();
+        }
+        try {
+            if (batch != null) {
+                // batched requests are never compressed individually
+                final BatchEntryOutputStream out = new BatchEntryOutputStream();
+                final List<ProtocolV4ObjectTable.Entry> defined = writeInvocationRequest(out, invocation, invocationContext, peerIdentityId);
+                final BatchEntry entry = new BatchEntry(receiverContext, peerIdentity, invocation, out.toByteArray(), defined);
+                // the batch writer releases the invocation ID once the streams are written
+                holdForStreams = false;
+                if (! getBatchBuffer(batch).add(entry)) {
+                    // the batch was already flushed
+                    writeBatch(Collections.singletonList(entry));
+                }
+                return;
+            }
+            final List<ProtocolV4ObjectTable.Entry> defined;
+            try (MessageOutputStream underlying = invocationTracker.allocateMessage()) {
+                MessageOutputStream out = handleCompression(invocationContext, underlying);
+                try {
+                    out.write(Protocol.INVOCATION_REQUEST);
+                    defined = writeInvocationRequest(out, invocation, invocationContext, peerIdentityId);
+                } catch (IOException e) {
+                    underlying.cancel();
+                    throw e;
+                } finally {
+                    out.close();
+                }
+            }
+            // the message is complete, so later messages may refer to its definitions
+            ProtocolV4ObjectTable.confirm(defined);
+            writeStreams(invocation.getIndex(), invocationContext.getParameters());
+        } catch (IOException e) {
+            invocation.finished(false);
+            receiverContext.requestFailed(new RequestSendFailedException(e.getMessage() + " @ " + peerIdentity.getConnection().getPeerURI(), e, true), getRetryExecutor(receiverContext));
+        } catch (RollbackException | SystemException | RuntimeException e) {
+            invocation.finished(false);
+            receiverContext.requestFailed(new EJBException(e.getMessage(), e), getRetryExecutor(receiverContext));
+            return;
+        } finally {
+            if (holdForStreams) {
+                invocation.free();
+            }
+        }
+    }
 
-                Marshaller marshaller = getMarshaller();
-                marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(out)));
+    /**
+     * Write the body of an invocation request, starting with the invocation ID.
+     *
+     * @param out the message output stream
+     * @param invocation the tracked invocation
+     * @param invocationContext the client invocation context
+     * @param peerIdentityId the peer identity ID (v3 and up)
+     * @return the dictionary definitions written in the request header, or {@code null} if there are none (v4 and up)
+     * @throws IOException if writing the request failed
+     * @throws RollbackException if the transaction was rolled back
+     * @throws SystemException if the transaction could not be written
+     */
+    private List<ProtocolV4ObjectTable.Entry> writeInvocationRequest(final MessageOutputStream out, final MethodInvocation invocation, final EJBClientInvocationContext invocationContext, final int peerIdentityId) throws IOException, RollbackException, SystemException {
+        final EJBLocator<?> locator = invocationContext.getLocator();
+        Protocol.writeInvocationId(out, version, invocation.getIndex());
 
-                final Method invokedMethod = invocationContext.getInvokedMethod();
-                final Object[] parameters = invocationContext.getParameters();
+        List<ProtocolV4ObjectTable.Entry> defined = null;
+        Marshaller marshaller = getMarshaller();
+        marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(out)));
 
-                if (version < 3) {
-                    // method name as UTF string
-                    out.writeUTF(invokedMethod.getName());
+        final Method invokedMethod = invocationContext.getInvokedMethod();
+        final Object[] parameters = invocationContext.getParameters();
 
-                    // write the method signature as UTF string
-                    out.writeUTF(invocationContext.getMethodSignatureString());
+        if (version < 3) {
+            // method name as UTF string
+            out.writeUTF(invokedMethod.getName());
 
-                    // protocol 1 & 2 redundant locator objects
-                    marshaller.writeObject(locator.getAppName());
-                    marshaller.writeObject(locator.getModuleName());
-                    marshaller.writeObject(locator.getDistinctName());
-                    marshaller.writeObject(locator.getBeanName());
-                } else {
+            // write the method signature as UTF string
+            out.writeUTF(invocationContext.getMethodSignatureString());
 
-                    // write identifier to allow the peer to find the class loader
-                    marshaller.writeObject(locator.getIdentifier());
+            // protocol 1 & 2 redundant locator objects
+            marshaller.writeObject(locator.getAppName());
+            marshaller.writeObject(locator.getModuleName());
+            marshaller.writeObject(locator.getDistinctName());
+            marshaller.writeObject(locator.getBeanName());
+        } else {
 
-                    // write method locator
-                    marshaller.writeObject(invocationContext.getMethodLocator());
+            final ProtocolV4ObjectTable objectTable = this.objectTable;
+            if (objectTable != null) {
+                objectTable.startCapture();
+            }
+            try {
+                // write identifier to allow the peer to find the class loader
+                marshaller.writeObject(locator.getIdentifier());
 
-                    // write sec context
-                    marshaller.writeInt(peerIdentityId);
+                // write method locator
+                marshaller.writeObject(invocationContext.getMethodLocator());
+            } finally {
+                if (objectTable != null) {
+                    defined = objectTable.stopCapture();
+                }
+            }
 
-                    // write weak affinity
-                    marshaller.writeObject(invocationContext.getWeakAffinity());
+            // write sec context
+            marshaller.writeInt(peerIdentityId);
 
-                    // write response compression info
-                    if (invocationContext.isCompressResponse()) {
-                        int compressionLevel = invocationContext.getCompressionLevel() > 0 ? invocationContext.getCompressionLevel() : 15;
-                        marshaller.writeByte(compressionLevel);
-                    } else {
-                        marshaller.writeByte(0);
-                    }
+            // write weak affinity
+            marshaller.writeObject(invocationContext.getWeakAffinity());
 
-                    // write txn context
-                    invocation.setOutflowHandle(writeTransaction(invocationContext.getTransaction(), marshaller));
+            // write response compression info
+            if (invocationContext.isCompressResponse()) {
+                int compressionLevel = invocationContext.getCompressionLevel() > 0 ? invocationContext.getCompressionLevel() : 15;
+                if (version >= 4) {
+                    compressionLevel |= CompressionCodecs.getId(codecs, invocationContext.getCompressionCodec()) << 4;
                 }
-                // write the invocation locator itself
-                marshaller.writeObject(locator);
+                marshaller.writeByte(compressionLevel);
+            } else {
+                marshaller.writeByte(0);
+            }
 
-                // and the parameters
-                if (parameters != null && parameters.length > 0) {
-                    for (final Object methodParam : parameters) {
-                        marshaller.writeObject(methodParam);
-                    }
+            // write txn context
+            invocation.setOutflowHandle(writeTransaction(invocationContext.getTransaction(), marshaller, invocation::setTransactionHandle));
+        }
+        // write the invocation locator itself
+        marshaller.writeObject(locator);
+
+        // and the parameters
+        if (parameters != null && parameters.length > 0) {
+            for (final Object methodParam : parameters) {
+                if (version >= 4 && methodParam instanceof InputStream) {
+                    // the content follows in a separate message
+                    marshaller.writeObject(ProtocolV4ObjectTable.STREAM_MARKER);
+                } else {
+                    marshaller.writeObject(methodParam);
+                }
+            }
+        }
+
+        // now, attachments
+        // we write out the private (a.k.a JBoss specific) attachments as well as public invocation context data
+        // (a.k.a user application specific data)
+        final Map<AttachmentKey<?>, ?> privateAttachments = invocationContext.getAttachments();
+        final Map<String, Object> contextData = invocationContext.getContextData();
+
+        // write the attachment count which is the sum of invocation context data + 1 (since we write
+        // out the private attachments under a single key with the value being the entire attachment map)
+        int totalContextData = contextData.size();
+        if (version >= 3) {
+            // Just write the attachments.
+            PackedInteger.writePackedInteger(marshaller, totalContextData);
+
+            for (Map.Entry<String, Object> invocationContextData : contextData.entrySet()) {
+                marshaller.writeObject(invocationContextData.getKey());
+                marshaller.writeObject(invocationContextData.getValue());
+            }
+        } else {
+            final Transaction transaction = invocationContext.getTransaction();
+
+            // We are only marshalling those attachments whose keys are present in the object table
+            final Map<AttachmentKey<?>, Object> marshalledPrivateAttachments = new HashMap<>();
+            for (final Map.Entry<AttachmentKey<?>, ?> entry : privateAttachments.entrySet()) {
+                final AttachmentKey<?> key = entry.getKey();
+                if (key == AttachmentKeys.TRANSACTION_ID_KEY) {
+                    // skip!
+                } else if (ProtocolV1ObjectTable.INSTANCE.getObjectWriter(key) != null) {
+                    marshalledPrivateAttachments.put(key, entry.getValue());
                 }
+            }
 
-                // now, attachments
-                // we write out the private (a.k.a JBoss specific) attachments as well as public invocation context data
-                // (a.k.a user application specific data)
-                final Map<AttachmentKey<?>, ?> privateAttachments = invocationContext.getAttachments();
-                final Map<String, Object> contextData = invocationContext.getContextData();
+            if (transaction != null) {
+                marshalledPrivateAttachments.put(AttachmentKeys.TRANSACTION_ID_KEY, calculateTransactionId(transaction));
+            }
 
-                // write the attachment count which is the sum of invocation context data + 1 (since we write
-                // out the private attachments under a single key with the value being the entire attachment map)
-                int totalContextData = contextData.size();
-                if (version >= 3) {
-                    // Just write the attachments.
-                    PackedInteger.writePackedInteger(marshaller, totalContextData);
+            final boolean hasPrivateAttachments = ! marshalledPrivateAttachments.isEmpty();
+            if (hasPrivateAttachments) {
+                totalContextData++;
+            }
+            // Note: The code here is just for backward compatibility of 1.x and 2.x versions of EJB client project.
+            // Attach legacy transaction ID, if there is an active txn.
 
-                    for (Map.Entry<String, Object> invocationContextData : contextData.entrySet()) {
-                        marshaller.writeObject(invocationContextData.getKey());
-                        marshaller.writeObject(invocationContextData.getValue());
-                    }
-                } else {
-                    final Transaction transaction = invocationContext.getTransaction();
-
-                    // We are only marshalling those attachments whose keys are present in the object table
-                    final Map<AttachmentKey<?>, Object> marshalledPrivateAttachments = new HashMap<>();
-                    for (final Map.Entry<AttachmentKey<?>, ?> entry : privateAttachments.entrySet()) {
-                        final AttachmentKey<?> key = entry.getKey();
-                        if (key == AttachmentKeys.TRANSACTION_ID_KEY) {
-                            // skip!
-                        } else if (ProtocolV1ObjectTable.INSTANCE.getObjectWriter(key) != null) {
-                            marshalledPrivateAttachments.put(key, entry.getValue());
-                        }
-                    }
+            if (transaction != null) {
+                // we additionally add/duplicate the transaction id under a different attachment key
+                // to preserve backward compatibility. This is here just for 1.0.x backward compatibility
+                totalContextData++;
+            }
+            // backward compatibility code block for transaction id ends here.
 
-                    if (transaction != null) {
-                        marshalledPrivateAttachments.put(AttachmentKeys.TRANSACTION_ID_KEY, calculateTransactionId(transaction));
-                    }
+            PackedInteger.writePackedInteger(marshaller, totalContextData);
+            // write out public (application specific) context data
+            for (Map.Entry<String, Object> invocationContextData : contextData.entrySet()) {
+                marshaller.writeObject(invocationContextData.getKey());
+                marshaller.writeObject(invocationContextData.getValue());
+            }
+            if (hasPrivateAttachments) {
+                // now write out the JBoss specific attachments under a single key and the value will be the
+                // entire map of JBoss specific attachments
+                marshaller.writeObject(EJBClientInvocationContext.PRIVATE_ATTACHMENTS_KEY);
+                marshaller.writeObject(marshalledPrivateAttachments);
+            }
 
-                    final boolean hasPrivateAttachments = ! marshalledPrivateAttachments.isEmpty();
-                    if (hasPrivateAttachments) {
-                        totalContextData++;
-                    }
-                    // Note: The code here is just for backward compatibility of 1.x and 2.x versions of EJB client project.
-                    // Attach legacy transaction ID, if there is an active txn.
+            // Note: The code here is just for backward compatibility of 1.0.x version of EJB client project
+            // against AS7 7.1.x releases. Discussion here https://github.com/jbossas/jboss-ejb-client/pull/11#issuecomment-6573863
+            if (transaction != null) {
+                // we additionally add/duplicate the transaction id under a different attachment key
+                // to preserve backward compatibility. This is here just for 1.0.x backward compatibility
+                marshaller.writeObject(TransactionID.PRIVATE_DATA_KEY);
+                // This transaction id attachment duplication *won't* cause increase in EJB protocol message payload
+                // since we rely on JBoss Marshalling to use back references for the same transaction id object being
+                // written out
+                marshaller.writeObject(marshalledPrivateAttachments.get(AttachmentKeys.TRANSACTION_ID_KEY));
+            }
+            // backward compatibility code block for transaction id ends here.
+        }
 
-                    if (transaction != null) {
-                        // we additionally add/duplicate the transaction id under a different attachment key
-                        // to preserve backward compatibility. This is here just for 1.0.x backward compatibility
-                        totalContextData++;
-                    }
-                    // backward compatibility code block for transaction id ends here.
+        // finished
+        marshaller.finish();
+        marshallerPool.returnMarshaller(marshaller);
+        return defined;
+    }
 
-                    PackedInteger.writePackedInteger(marshaller, totalContextData);
-                    // write out public (application specific) context data
-                    for (Map.Entry<String, Object> invocationContextData : contextData.entrySet()) {
-                        marshaller.writeObject(invocationContextData.getKey());
-                        marshaller.writeObject(invocationContextData.getValue());
-                    }
-                    if (hasPrivateAttachments) {
-                        // now write out the JBoss specific attachments under a single key and the value will be the
-                        // entire map of JBoss specific attachments
-                        marshaller.writeObject(EJBClientInvocationContext.PRIVATE_ATTACHMENTS_KEY);
-                        marshaller.writeObject(marshalledPrivateAttachments);
-                    }
+    private BatchBuffer getBatchBuffer(final EJBInvocationBatch batch) {
+        BatchBuffer buffer = batch.getAttachment(batchKey);
+        if (buffer == null) {
+            final BatchBuffer newBuffer = new BatchBuffer();
+            buffer = batch.putAttachmentIfAbsent(batchKey, newBuffer);
+            if (buffer == null) {
+                buffer = newBuffer;
+                if (! batch.addFlushAction(() -> writeBatch(newBuffer.drain()))) {
+                    // too late; the buffer will not collect any entries
+                    newBuffer.drain();
+                }
+            }
+        }
+        return buffer;
+    }
 
-                    // Note: The code here is just for backward compatibility of 1.0.x version of EJB client project
-                    // against AS7 7.1.x releases. Discussion here https://github.com/jbossas/jboss-ejb-client/pull/11#issuecomment-6573863
-                    if (transaction != null) {
-                        // we additionally add/duplicate the transaction id under a different attachment key
-                        // to preserve backward compatibility. This is here just for 1.0.x backward compatibility
-                        marshaller.writeObject(TransactionID.PRIVATE_DATA_KEY);
-                        // This transaction id attachment duplication *won't* cause increase in EJB protocol message payload
-                        // since we rely on JBoss Marshalling to use back references for the same transaction id object being
-                        // written out
-                        marshaller.writeObject(marshalledPrivateAttachments.get(AttachmentKeys.TRANSACTION_ID_KEY));
-                    }
-                    // backward compatibility code block for transaction id ends here.
+    /**
+     * Determine whether an invocation request has streamed parameters.
+     *
+     * @param parameters the invocation parameters
+     * @return {@code true} if the content of some parameter is sent after the request, {@code false} otherwise
+     */
+    private boolean hasStreams(final Object[] parameters) {
+        if (version >= 4 && parameters != null) {
+            for (Object parameter : parameters) {
+                if (parameter instanceof InputStream) {
+                    return true;
                 }
+            }
+        }
+        return false;
+    }
 
-                // finished
-                marshaller.finish();
-            } catch (IOException e) {
-                underlying.cancel();
-                throw e;
-            } finally {
-                out.close();
+    /**
+     * Write the content of every streamed parameter of an invocation request which has been sent.
+     *
+     * @param invId the invocation ID
+     * @param parameters the invocation parameters
+     */
+    private void writeStreams(final int invId, final Object[] parameters) {
+        if (! hasStreams(parameters)) {
+            return;
+        }
+        boolean failed = false;
+        for (int i = 0; i < parameters.length; i ++) {
+            if (parameters[i] instanceof InputStream) {
+                if (failed) {
+                    safeClose((InputStream) parameters[i]);
+                    continue;
+                }
+                try (MessageOutputStream out = invocationTracker.allocateMessage()) {
+                    RemoteStreams.writeStream(out, version, invId, i, (InputStream) parameters[i]);
+                } catch (IOException e) {
+                    Logs.REMOTING.trace("EJB stream parameter write failed", e);
+                    failed = true;
+                    // the source is not closed if the content message could not be started
+                    safeClose((InputStream) parameters[i]);
+                }
             }
+        }
+        if (failed) {
+            cancelRunning(invId);
+        }
+    }
+
+    /**
+     * Ask the server to cancel an invocation whose streamed parameters could not be written, even if it is running,
+     * so that its bean does not wait for their content.  The invocation then completes with the server's answer.
+     *
+     * @param invId the invocation ID, which is still held
+     */
+    private void cancelRunning(final int invId) {
+        // the stream may have failed because the thread was interrupted; the request must go out regardless
+        final boolean interrupted = Thread.interrupted();
+        try (MessageOutputStream out = invocationTracker.allocateMessage()) {
+            out.write(Protocol.CANCEL_REQUEST);
+            Protocol.writeInvocationId(out, version, invId);
+            out.writeBoolean(true);
         } catch (IOException e) {
-            receiverContext.requestFailed(new RequestSendFailedException(e.getMessage() + " @ " + peerIdentity.getConnection().getPeerURI(), e, true), getRetryExecutor());
-        } catch (RollbackException | SystemException | RuntimeException e) {
-            receiverContext.requestFailed(new EJBException(e.getMessage(), e), getRetryExecutor());
+            // the server gives up waiting for the content after a while
+            Logs.REMOTING.trace("EJB cancel request write failed", e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Write a batch invocation request containing the given entries.  Each response is received individually.
+     *
+     * @param entries the batch entries to write
+     */
+    private void writeBatch(final List<BatchEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (entries.size() > MAX_BATCH_ENTRIES) {
+            // stay within the limit which servers apply by default
+            for (int i = 0; i < entries.size(); i += MAX_BATCH_ENTRIES) {
+                writeBatch(entries.subList(i, Math.min(i + MAX_BATCH_ENTRIES, entries.size())));
+            }
             return;
         }
+        try {
+            try (MessageOutputStream out = invocationTracker.allocateMessage()) {
+                try {
+                    out.write(Protocol.BATCH_INVOCATION_REQUEST);
+                    PackedInteger.writePackedInteger(out, entries.size());
+                    for (BatchEntry entry : entries) {
+                        final byte[] bytes = entry.getBytes();
+                        PackedInteger.writePackedInteger(out, bytes.length);
+                        out.write(bytes);
+                    }
+                } catch (IOException e) {
+                    out.cancel();
+                    throw e;
+                }
+            }
+            for (BatchEntry entry : entries) {
+                ProtocolV4ObjectTable.confirm(entry.getDefined());
+            }
+            for (BatchEntry entry : entries) {
+                writeStreams(entry.getInvocation().getIndex(), entry.getReceiverContext().getClientInvocationContext().getParameters());
+            }
+        } catch (IOException e) {
+            for (BatchEntry entry : entries) {
+                entry.getInvocation().finished(false);
+                final ConnectionPeerIdentity peerIdentity = entry.getPeerIdentity();
+                entry.getReceiverContext().requestFailed(new RequestSendFailedException(e.getMessage() + " @ " + peerIdentity.getConnection().getPeerURI(), e, true), getRetryExecutor(entry.getReceiverContext()));
+            }
+        } finally {
+            for (BatchEntry entry : entries) {
+                if (hasStreams(entry.getReceiverContext().getClientInvocationContext().getParameters())) {
+                    entry.getInvocation().free();
+                }
+            }
+        }
     }
 
     /**
@@ -486,7 +800,12 @@ class EJBClientChannel {
             if (Logs.REMOTING.isTraceEnabled()) {
                 Logs.REMOTING.trace("Hints are disabled. Ignoring any CompressionHint on methods being invoked on view " + invocationContext.getViewClass());
             }
-            return messageOutputStream;
+            return handleAdaptiveCompression(invocationContext, messageOutputStream);
+        }
+
+        // methods without a CompressionHint may be compressed adaptively
+        if (invocationContext.getCompressionCodec() == null) {
+            return handleAdaptiveCompression(invocationContext, messageOutputStream);
         }
 
         // process any CompressionHint
@@ -502,16 +821,14 @@ class EJBClientChannel {
 
         // create a compressed invocation data *only* if the request has to be compressed (note, it's perfectly valid for certain methods to just specify that only the response is compressed)
         if (invocationContext.isCompressRequest()) {
-            // write out the header indicating that it's a compressed stream
-            messageOutputStream.write(Protocol.COMPRESSED_INVOCATION_MESSAGE);
-            // create the deflater using the specified level
-            final Deflater deflater = new Deflater(compressionLevel);
-            // wrap the message outputstream with the deflater stream so that *any subsequent* data writes to the stream are compressed
-            final DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(messageOutputStream, deflater);
+            // codecs other than deflate are only available if both peers support them (v4 and up)
+            final int codecId = version >= 4 ? CompressionCodecs.getId(codecs, invocationContext.getCompressionCodec()) : 0;
+            final CompressionCodec codec = CompressionCodecs.getCodec(codecs, codecId);
             if (Logs.REMOTING.isTraceEnabled()) {
-                Logs.REMOTING.trace("Using a compressing stream with compression level = " + compressionLevel + " for request data for EJB invocation on method " + invocationContext.getInvokedMethod());
+                Logs.REMOTING.trace("Using a compressing stream with codec " + codec.getName() + " and compression level = " + compressionLevel + " for request data for EJB invocation on method " + invocationContext.getInvokedMethod());
             }
-            return new WrapperMessageOutputStream(messageOutputStream, deflaterOutputStream);
+            // the compressed message header is only written if the request exceeds the compression threshold
+            return new CompressingMessageOutputStream(messageOutputStream, codec, codecId, compressionLevel, CompressionCodecs.THRESHOLD);
         } else {
             // just return a normal DataOutputStream without any compression
             return messageOutputStream;
@@ -519,6 +836,20 @@ class EJBClientChannel {
 
     }
 
+    private MessageOutputStream handleAdaptiveCompression(final EJBClientInvocationContext invocationContext, final MessageOutputStream messageOutputStream) {
+        final AdaptiveCompression adaptiveCompression = this.adaptiveCompression;
+        if (adaptiveCompression == null) {
+            return messageOutputStream;
+        }
+        final AdaptiveCompression.MethodStats stats = adaptiveCompression.getStats(invocationContext.getMethodLocator());
+        if (! stats.shouldCompress()) {
+            return messageOutputStream;
+        }
+        // prefer the cheaper codec if the peer supports it
+        final int codecId = version >= 4 ? CompressionCodecs.getId(codecs, FastCompressionCodec.NAME) : 0;
+        return new CompressingMessageOutputStream(messageOutputStream, CompressionCodecs.getCodec(codecs, codecId), codecId, Deflater.DEFAULT_COMPRESSION, CompressionCodecs.THRESHOLD, stats);
+    }
+
     private TransactionID calculateTransactionId(final Transaction transaction) throws RollbackException, SystemException, InvalidTransactionException {
         final URI location = channel.getConnection().getPeerURI();
         Assert.assertNotNull(transaction);
@@ -539,7 +870,7 @@ class EJBClientChannel {
         }
     }
 
-    private XAOutflowHandle writeTransaction(final Transaction transaction, final DataOutput dataOutput) throws IOException, RollbackException, SystemException {
+    private XAOutflowHandle writeTransaction(final Transaction transaction, final DataOutput dataOutput, final Consumer<TransactionHandles.Handle> registration) throws IOException, RollbackException, SystemException {
         final URI location = channel.getConnection().getPeerURI();
         if (transaction == null) {
             dataOutput.writeByte(0);
@@ -557,8 +888,16 @@ class EJBClientChannel {
         } else if (transaction instanceof LocalTransaction) {
             final LocalTransaction localTransaction = (LocalTransaction) transaction;
             final XAOutflowHandle outflowHandle = transactionContext.outflowTransaction(location, localTransaction);
+            final TransactionHandles.Handle handle = version >= 4 ? transactionHandles.get(localTransaction) : null;
+            if (handle != null && handle.isConfirmed()) {
+                // the peer knows it by its handle
+                dataOutput.writeByte(4);
+                PackedInteger.writePackedInteger(dataOutput, handle.getId());
+                PackedInteger.writePackedInteger(dataOutput, outflowHandle.getRemainingTime());
+                return outflowHandle;
+            }
             final Xid xid = outflowHandle.getXid();
-            dataOutput.writeByte(2);
+            dataOutput.writeByte(handle == null ? 2 : 3);
             PackedInteger.writePackedInteger(dataOutput, xid.getFormatId());
             final byte[] gtid = xid.getGlobalTransactionId();
             dataOutput.writeByte(gtid.length);
@@ -568,6 +907,10 @@ class EJBClientChannel {
             dataOutput.writeByte(bq.length);
             dataOutput.write(bq);
             PackedInteger.writePackedInteger(dataOutput, outflowHandle.getRemainingTime());
+            if (handle != null) {
+                PackedInteger.writePackedInteger(dataOutput, handle.getId());
+                registration.accept(handle);
+            }
             return outflowHandle;
         } else {
             throw Logs.TXN.cannotEnlistTx();
@@ -588,7 +931,7 @@ class EJBClientChannel {
             final int index = invocation.getIndex();
             try (MessageOutputStream out = invocationTracker.allocateMessage()) {
                 out.write(Protocol.CANCEL_REQUEST);
-                out.writeShort(index);
+                Protocol.writeInvocationId(out, version, index);
                 if (version >= 3) {
                     out.writeBoolean(cancelIfRunning);
                 }
@@ -601,18 +944,18 @@ class EJBClientChannel {
     }
 
     private Marshaller getMarshaller() throws IOException {
-        return marshallerFactory.createMarshaller(configuration);
+        return marshallerPool.getMarshaller();
     }
 
     public <T> StatefulEJBLocator<T> openSession(final StatelessEJBLocator<T> statelessLocator, final ConnectionPeerIdentity identity, EJBSessionCreationInvocationContext clientInvocationContext) throws Exception {
         SessionOpenInvocation<T> invocation = invocationTracker.addInvocation(id -> new SessionOpenInvocation<>(id, statelessLocator, clientInvocationContext));
         try (MessageOutputStream out = invocationTracker.allocateMessage()) {
             out.write(Protocol.OPEN_SESSION_REQUEST);
-            out.writeShort(invocation.getIndex());
+            Protocol.writeInvocationId(out, version, invocation.getIndex());
             writeRawIdentifier(statelessLocator, out);
             if (version >= 3) {
                 out.writeInt(identity.getId());
-                invocation.setOutflowHandle(writeTransaction(clientInvocationContext.getTransaction(), out));
+                invocation.setOutflowHandle(writeTransaction(clientInvocationContext.getTransaction(), out, invocation::setTransactionHandle));
             }
         } catch (IOException e) {
             CreateException createException = new CreateException(e.getMessage());
@@ -620,6 +963,43 @@ class EJBClientChannel {
             throw createException;
         }
         // await the response
+        return invocation.getResult().get(0);
+    }
+
+    /**
+     * Open several sessions of the same EJB in one request.  Peers older than protocol version 4 get one request per
+     * session.
+     *
+     * @param statelessLocator the locator of the EJB
+     * @param identity the peer identity to open the sessions as
+     * @param clientInvocationContext the session creation context
+     * @param count the number of sessions to open
+     * @param <T> the view type
+     * @return the locators of the new sessions
+     * @throws Exception if opening the sessions failed
+     */
+    public <T> List<StatefulEJBLocator<T>> openSessions(final StatelessEJBLocator<T> statelessLocator, final ConnectionPeerIdentity identity, EJBSessionCreationInvocationContext clientInvocationContext, final int count) throws Exception {
+        if (version < 4) {
+            final List<StatefulEJBLocator<T>> locators = new ArrayList<>(count);
+            for (int i = 0; i < count; i ++) {
+                locators.add(openSession(statelessLocator, identity, clientInvocationContext));
+            }
+            return locators;
+        }
+        SessionOpenInvocation<T> invocation = invocationTracker.addInvocation(id -> new SessionOpenInvocation<>(id, statelessLocator, clientInvocationContext));
+        try (MessageOutputStream out = invocationTracker.allocateMessage()) {
+            out.write(Protocol.OPEN_SESSIONS_REQUEST);
+            Protocol.writeInvocationId(out, version, invocation.getIndex());
+            writeRawIdentifier(statelessLocator, out);
+            PackedInteger.writePackedInteger(out, count);
+            out.writeInt(identity.getId());
+            invocation.setOutflowHandle(writeTransaction(clientInvocationContext.getTransaction(), out, invocation::setTransactionHandle));
+        } catch (IOException e) {
+            CreateException createException = new CreateException(e.getMessage());
+            createException.initCause(e);
+            throw createException;
+        }
+        // await the response
         return invocation.getResult();
     }
 
@@ -632,7 +1012,7 @@ class EJBClientChannel {
         out.writeUTF(statelessLocator.getBeanName());
     }
 
-    static IoFuture<EJBClientChannel> construct(final Channel channel, final DiscoveredNodeRegistry discoveredNodeRegistry, RetryExecutorWrapper retryExecutorWrapper) {
+    static IoFuture<EJBClientChannel> construct(final Channel channel, final EJBReceiverContext receiverContext, final DiscoveredNodeRegistry discoveredNodeRegistry, RetryScheduler retryScheduler, final boolean invocationsOnly) {
         FutureResult<EJBClientChannel> futureResult = new FutureResult<>();
         // now perform opening negotiation: receive server greeting
         channel.receiveMessage(new Channel.Receiver() {
@@ -647,7 +1027,21 @@ class EJBClientChannel {
             public void handleMessage(final Channel channel, final MessageInputStream message) {
                 // receive message body
                 try {
-                    final int version = min(3, StreamUtils.readInt8(message));
+                    final int version = min(Protocol.LATEST_VERSION, StreamUtils.readInt8(message));
+                    final List<String> codecNames = new ArrayList<>();
+                    if (version >= 4) {
+                        // skip the marshaller types; the codecs follow
+                        final int marshallerCount = StreamUtils.readPackedUnsignedInt31(message);
+                        for (int i = 0; i < marshallerCount; i ++) {
+                            message.readUTF();
+                        }
+                        // select the codecs which we support, in the server's order of preference
+                        for (String name : CompressionCodecs.readNames(message)) {
+                            if (codecNames.size() < CompressionCodecs.MAX_NEGOTIATED && CompressionCodecs.getNames().contains(name)) {
+                                codecNames.add(name);
+                            }
+                        }
+                    }
                     // drain the rest of the message because it's just garbage really
                     while (message.read() != -1) {
                         message.skip(Long.MAX_VALUE);
@@ -656,9 +1050,13 @@ class EJBClientChannel {
                     try (MessageOutputStream out = channel.writeMessage()) {
                         out.write(version);
                         out.writeUTF("river");
+                        if (version >= 4) {
+                            CompressionCodecs.writeNames(out, codecNames);
+                            out.writeByte(invocationsOnly ? Protocol.CHANNEL_FLAG_INVOCATIONS_ONLY : 0);
+                        }
                     }
                     // almost done; wait for initial module available report
-                    final EJBClientChannel ejbClientChannel = new EJBClientChannel(channel, version, discoveredNodeRegistry, futureResult, retryExecutorWrapper);
+                    final EJBClientChannel ejbClientChannel = new EJBClientChannel(channel, version, CompressionCodecs.resolve(codecNames), receiverContext, discoveredNodeRegistry, futureResult, retryScheduler, invocationsOnly && version >= 4);
                     channel.receiveMessage(new Channel.Receiver() {
                         public void handleError(final Channel channel, final IOException error) {
                             futureResult.setException(error);
@@ -678,6 +1076,10 @@ class EJBClientChannel {
                             }
                         }
                     });
+                    if (ejbClientChannel.isInvocationsOnly()) {
+                        // the peer sends no module or topology reports on this channel
+                        ejbClientChannel.finishPart(0b11);
+                    }
                 } catch (final IOException e) {
                     channel.closeAsync();
                     channel.addCloseHandler((closed, exception) -> futureResult.setException(e));
@@ -699,13 +1101,20 @@ class EJBClientChannel {
         return invocationTracker;
     }
 
+    int getVersion() {
+        return version;
+    }
+
     final class SessionOpenInvocation<T> extends Invocation {
 
         private final StatelessEJBLocator<T> statelessLocator;
         private final EJBSessionCreationInvocationContext clientInvocationContext;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition responded = lock.newCondition();
         private int id;
         private MessageInputStream inputStream;
         private XAOutflowHandle outflowHandle;
+        private TransactionHandles.Handle transactionHandle;
         private IOException ex;
 
         protected SessionOpenInvocation(final int index, final StatelessEJBLocator<T> statelessLocator, EJBSessionCreationInvocationContext clientInvocationContext) {
@@ -715,23 +1124,32 @@ class EJBClientChannel {
         }
 
         public void handleResponse(final int id, final MessageInputStream inputStream) {
-            synchronized (this) {
+            lock.lock();
+            try {
                 this.id = id;
                 this.inputStream = inputStream;
-                notifyAll();
+                responded.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
 
         public void handleClosed() {
-            synchronized (this) {
-                notifyAll();
+            lock.lock();
+            try {
+                responded.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
 
         public void handleException(IOException cause) {
-            synchronized (this) {
+            lock.lock();
+            try {
                 this.ex = cause;
-                notifyAll();
+                responded.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -743,25 +1161,37 @@ class EJBClientChannel {
             return outflowHandle;
         }
 
-        StatefulEJBLocator<T> getResult() throws Exception {
+        void setTransactionHandle(final TransactionHandles.Handle transactionHandle) {
+            this.transactionHandle = transactionHandle;
+        }
+
+        List<StatefulEJBLocator<T>> getResult() throws Exception {
             Exception e;
             try (ResponseMessageInputStream response = removeInvocationResult()) {
                 switch (id) {
-                    case Protocol.OPEN_SESSION_RESPONSE: {
+                    case Protocol.OPEN_SESSION_RESPONSE:
+                    case Protocol.OPEN_SESSIONS_RESPONSE: {
                         Affinity affinity;
-                        int size = StreamUtils.readPackedUnsignedInt32(response);
-                        byte[] bytes = new byte[size];
-                        response.readFully(bytes);
-                        // todo: pool unmarshallers?  use very small instance count config?
+                        final int count = id == Protocol.OPEN_SESSIONS_RESPONSE ? StreamUtils.readPackedUnsignedInt31(response) : 1;
+                        final SessionID[] sessionIds = new SessionID[count];
+                        for (int i = 0; i < count; i ++) {
+                            int size = StreamUtils.readPackedUnsignedInt32(response);
+                            byte[] bytes = new byte[size];
+                            response.readFully(bytes);
+                            sessionIds[i] = SessionID.createSessionID(bytes);
+                        }
                         if (1 <= version && version <= 2) {
-                            try (final Unmarshaller unmarshaller = createUnmarshaller()) {
-                                unmarshaller.start(response);
-                                affinity = unmarshaller.readObject(Affinity.class);
-                                unmarshaller.finish();
-                            }
+                            final Unmarshaller unmarshaller = marshallerPool.getUnmarshaller();
+                            unmarshaller.start(response);
+                            affinity = unmarshaller.readObject(Affinity.class);
+                            unmarshaller.finish();
+                            marshallerPool.returnUnmarshaller(unmarshaller);
                         } else {
                             affinity = statelessLocator.getAffinity();
                             final int cmd = response.readUnsignedByte();
+                            if (transactionHandle != null) {
+                                transactionHandle.confirm();
+                            }
                             final XAOutflowHandle outflowHandle = getOutflowHandle();
                             if (outflowHandle != null) {
                                 if (cmd == 0) {
@@ -789,9 +1219,12 @@ class EJBClientChannel {
                                 affinity = new ClusterAffinity(clusterName);
                             }
                         }
-                        StatefulEJBLocator<T> locator = statelessLocator.withSessionAndAffinity(SessionID.createSessionID(bytes), affinity);
-                        clientInvocationContext.setLocator(locator);
-                        return locator;
+                        final List<StatefulEJBLocator<T>> locators = new ArrayList<>(count);
+                        for (SessionID sessionId : sessionIds) {
+                            locators.add(statelessLocator.withSessionAndAffinity(sessionId, affinity));
+                        }
+                        clientInvocationContext.setLocator(locators.get(0));
+                        return locators;
                     }
                     case Protocol.APPLICATION_EXCEPTION: {
                         if (version >= 3) {
@@ -879,7 +1312,9 @@ class EJBClientChannel {
             MessageInputStream mis;
             int id;
             try {
-                synchronized (this) {
+                // a condition rather than the monitor, so that a virtual thread caller is not pinned while waiting
+                lock.lockInterruptibly();
+                try {
                     for (; ; ) {
                         id = this.getIndex();
                         if (inputStream != null) {
@@ -893,8 +1328,10 @@ class EJBClientChannel {
                         if (id == -1) {
                             throw new EJBException("Connection closed");
                         }
-                        wait();
+                        responded.await();
                     }
+                } finally {
+                    lock.unlock();
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -912,6 +1349,24 @@ class EJBClientChannel {
         return channel;
     }
 
+    /**
+     * Determine whether this is a pooled channel which carries method invocations only.
+     *
+     * @return {@code true} if the channel carries method invocations only, {@code false} otherwise
+     */
+    boolean isInvocationsOnly() {
+        return invocationsOnly;
+    }
+
+    /**
+     * Get the number of method invocations on this channel which have not yet finished.
+     *
+     * @return the number of outstanding invocations
+     */
+    int getOutstandingInvocations() {
+        return outstandingInvocations.get();
+    }
+
     UserTransactionID allocateUserTransactionID() {
         final ThreadLocalRandom random = ThreadLocalRandom.current();
         final String nodeName = getChannel().getConnection().getRemoteEndpointName();
@@ -965,11 +1420,31 @@ class EJBClientChannel {
     final class MethodInvocation extends Invocation {
         private final EJBReceiverInvocationContext receiverInvocationContext;
         private final AtomicInteger refCounter = new AtomicInteger(1);
+        private final NodeMetrics nodeMetrics;
+        private final long startTime;
+        private final AtomicBoolean finished = new AtomicBoolean();
         private XAOutflowHandle outflowHandle;
+        private TransactionHandles.Handle transactionHandle;
 
         MethodInvocation(final int index, final EJBReceiverInvocationContext receiverInvocationContext) {
             super(index);
             this.receiverInvocationContext = receiverInvocationContext;
+            nodeMetrics = receiverInvocationContext.getClientInvocationContext().getClientContext().getNodeMetrics(getChannel().getConnection().getRemoteEndpointName());
+            receiverContext.invocationStarted(nodeMetrics);
+            outstandingInvocations.incrementAndGet();
+            startTime = System.nanoTime();
+        }
+
+        /**
+         * Report the end of this invocation to the node metrics, once.
+         *
+         * @param answered {@code true} if the peer answered, {@code false} if the invocation failed without an answer
+         */
+        void finished(final boolean answered) {
+            if (finished.compareAndSet(false, true)) {
+                outstandingInvocations.decrementAndGet();
+                receiverContext.invocationFinished(nodeMetrics, answered ? System.nanoTime() - startTime : -1L);
+            }
         }
 
         boolean alloc() {
@@ -988,6 +1463,7 @@ class EJBClientChannel {
             final AtomicInteger refCounter = this.refCounter;
             final int newVal = refCounter.decrementAndGet();
             if (newVal == 0) {
+                methodInvocations.removeKey(getIndex());
                 invocationTracker.remove(this);
             }
         }
@@ -998,11 +1474,17 @@ class EJBClientChannel {
         }
 
         private void handleResponse(final int id, final DataInputStream inputStream) {
+            if (id != Protocol.PROCEED_ASYNC_RESPONSE) {
+                finished(true);
+            }
             switch (id) {
                 case Protocol.INVOCATION_RESPONSE: {
-                    free();
+                    boolean streamFollows = false;
                     if (version >= 3) try {
                         final int cmd = inputStream.readUnsignedByte();
+                        if (transactionHandle != null) {
+                            transactionHandle.confirm();
+                        }
                         final XAOutflowHandle outflowHandle = getOutflowHandle();
                         if (outflowHandle != null) {
                             if (cmd == 0) {
@@ -1015,6 +1497,12 @@ class EJBClientChannel {
                         }
                         final EJBClientInvocationContext context = receiverInvocationContext.getClientInvocationContext();
                         final int updateBits = inputStream.readUnsignedByte();
+                        if (allAreSet(updateBits, Protocol.UPDATE_BIT_STREAM_FOLLOWS)) {
+                            // keep the invocation ID until the result stream is gone, so that a later invocation
+                            // with the same ID cannot pick up its content
+                            inboundStreams.expect(getIndex(), 0, this::free);
+                            streamFollows = true;
+                        }
                         if (allAreSet(updateBits, Protocol.UPDATE_BIT_SESSION_ID)) {
                             byte[] encoded = new byte[PackedInteger.readPackedInteger(inputStream)];
                             inputStream.readFully(encoded);
@@ -1034,11 +1522,19 @@ class EJBClientChannel {
                             context.setLocator(context.getLocator().withNewAffinity(new ClusterAffinity(new String(b, StandardCharsets.UTF_8))));
                         }
                     } catch (RuntimeException | IOException | RollbackException | SystemException e) {
-                        receiverInvocationContext.requestFailed(new EJBException(e), getRetryExecutor());
+                        if (streamFollows) {
+                            inboundStreams.release(getIndex());
+                        } else {
+                            free();
+                        }
+                        receiverInvocationContext.requestFailed(new EJBException(e), getRetryExecutor(receiverInvocationContext));
                         safeClose(inputStream);
                         break;
                     }
-                    receiverInvocationContext.resultReady(new MethodCallResultProducer(inputStream, id));
+                    if (! streamFollows) {
+                        free();
+                    }
+                    receiverInvocationContext.resultReady(new MethodCallResultProducer(inputStream, id, streamFollows));
                     break;
                 }
                 case Protocol.CANCEL_RESPONSE: {
@@ -1067,9 +1563,9 @@ class EJBClientChannel {
                         final EJBModuleIdentifier moduleIdentifier = receiverInvocationContext.getClientInvocationContext().getLocator().getIdentifier().getModuleIdentifier();
                         final NodeInformation nodeInformation = discoveredNodeRegistry.getNodeInformation(getChannel().getConnection().getRemoteEndpointName());
                         nodeInformation.removeModule(EJBClientChannel.this, moduleIdentifier);
-                        receiverInvocationContext.requestFailed(new NoSuchEJBException(message + " @ " + getChannel().getConnection().getPeerURI()), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new NoSuchEJBException(message + " @ " + getChannel().getConnection().getPeerURI()), getRetryExecutor(receiverInvocationContext));
                     } catch (IOException e) {
-                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'No such EJB' response", e), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'No such EJB' response", e), getRetryExecutor(receiverInvocationContext));
                     } finally {
                         safeClose(inputStream);
                     }
@@ -1084,9 +1580,9 @@ class EJBClientChannel {
                         }
                         disassociateRemoteTxIfPossible(receiverInvocationContext.getClientInvocationContext());
                         final String message = inputStream.readUTF();
-                        receiverInvocationContext.requestFailed(Logs.REMOTING.invalidViewTypeForInvocation(message), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(Logs.REMOTING.invalidViewTypeForInvocation(message), getRetryExecutor(receiverInvocationContext));
                     } catch (IOException e) {
-                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'Bad EJB view type' response", e), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'Bad EJB view type' response", e), getRetryExecutor(receiverInvocationContext));
                     } finally {
                         safeClose(inputStream);
                     }
@@ -1102,9 +1598,9 @@ class EJBClientChannel {
                         disassociateRemoteTxIfPossible(receiverInvocationContext.getClientInvocationContext());
                         final String message = inputStream.readUTF();
                         // todo: I don't think this is the best exception type for this case...
-                        receiverInvocationContext.requestFailed(new IllegalArgumentException(message), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new IllegalArgumentException(message), getRetryExecutor(receiverInvocationContext));
                     } catch (IOException e) {
-                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'No such EJB method' response", e), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'No such EJB method' response", e), getRetryExecutor(receiverInvocationContext));
                     } finally {
                         safeClose(inputStream);
                     }
@@ -1119,9 +1615,9 @@ class EJBClientChannel {
                         }
                         disassociateRemoteTxIfPossible(receiverInvocationContext.getClientInvocationContext());
                         final String message = inputStream.readUTF();
-                        receiverInvocationContext.requestFailed(new EJBException(message), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException(message), getRetryExecutor(receiverInvocationContext));
                     } catch (IOException e) {
-                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'Session not active' response", e), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'Session not active' response", e), getRetryExecutor(receiverInvocationContext));
                     } finally {
                         safeClose(inputStream);
                     }
@@ -1136,9 +1632,9 @@ class EJBClientChannel {
                         }
                         disassociateRemoteTxIfPossible(receiverInvocationContext.getClientInvocationContext());
                         final String message = inputStream.readUTF();
-                        receiverInvocationContext.requestFailed(new EJBException(message), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException(message), getRetryExecutor(receiverInvocationContext));
                     } catch (IOException e) {
-                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'EJB not stateful' response"), getRetryExecutor());
+                        receiverInvocationContext.requestFailed(new EJBException("Failed to read 'EJB not stateful' response"), getRetryExecutor(receiverInvocationContext));
                     } finally {
                         safeClose(inputStream);
                     }
@@ -1153,18 +1649,20 @@ class EJBClientChannel {
                 default: {
                     free();
                     safeClose(inputStream);
-                    receiverInvocationContext.requestFailed(new EJBException("Unknown protocol response"), getRetryExecutor());
+                    receiverInvocationContext.requestFailed(new EJBException("Unknown protocol response"), getRetryExecutor(receiverInvocationContext));
                     break;
                 }
             }
         }
 
         public void handleClosed() {
-            receiverInvocationContext.requestFailed(new EJBException(new ClosedChannelException()), getRetryExecutor());
+            finished(false);
+            receiverInvocationContext.requestFailed(new EJBException(new ClosedChannelException()), getRetryExecutor(receiverInvocationContext));
         }
 
         public void handleException(IOException cause) {
-            receiverInvocationContext.requestFailed(new EJBException(cause), getRetryExecutor());
+            finished(false);
+            receiverInvocationContext.requestFailed(new EJBException(cause), getRetryExecutor(receiverInvocationContext));
         }
 
         XAOutflowHandle getOutflowHandle() {
@@ -1175,27 +1673,33 @@ class EJBClientChannel {
             this.outflowHandle = outflowHandle;
         }
 
+        void setTransactionHandle(final TransactionHandles.Handle transactionHandle) {
+            this.transactionHandle = transactionHandle;
+        }
+
         class MethodCallResultProducer implements EJBReceiverInvocationContext.ResultProducer {
 
             private final InputStream inputStream;
             private final int id;
+            private final boolean streamFollows;
 
-            MethodCallResultProducer(final InputStream inputStream, final int id) {
+            MethodCallResultProducer(final InputStream inputStream, final int id, final boolean streamFollows) {
                 this.inputStream = inputStream;
                 this.id = id;
+                this.streamFollows = streamFollows;
             }
 
             public Object getResult() throws Exception {
-                final ResponseMessageInputStream response;
-                if(inputStream instanceof ResponseMessageInputStream) {
-                    response = (ResponseMessageInputStream) inputStream;
-                } else {
-                    response = new ResponseMessageInputStream(inputStream, id);
-                }
                 Object result;
-                try (final Unmarshaller unmarshaller = createUnmarshaller()) {
+                boolean handedOut = false;
+                try (final ResponseMessageInputStream response = inputStream instanceof ResponseMessageInputStream ? (ResponseMessageInputStream) inputStream : new ResponseMessageInputStream(inputStream, id)) {
+                    final Unmarshaller unmarshaller = marshallerPool.getUnmarshaller();
                     unmarshaller.start(response);
                     result = unmarshaller.readObject();
+                    if (result == ProtocolV4ObjectTable.STREAM_MARKER) {
+                        // the content follows in a separate message
+                        result = inboundStreams.getStream(getIndex(), 0);
+                    }
                     int attachments = unmarshaller.readUnsignedByte();
                     final EJBClientInvocationContext clientInvocationContext = receiverInvocationContext.getClientInvocationContext();
                     for (int i = 0; i < attachments; i ++) {
@@ -1212,14 +1716,24 @@ class EJBClientChannel {
                         }
                     }
                     unmarshaller.finish();
+                    marshallerPool.returnUnmarshaller(unmarshaller);
+                    handedOut = result instanceof RemoteStreams.InboundStream;
                 } catch (IOException | ClassNotFoundException ex) {
                     throw new EJBException("Failed to read response", ex);
+                } finally {
+                    if (streamFollows && ! handedOut) {
+                        // nobody will ever read the stream
+                        inboundStreams.release(getIndex());
+                    }
                 }
                 return result;
             }
 
             public void discardResult() {
                 safeClose(inputStream);
+                if (streamFollows) {
+                    inboundStreams.release(getIndex());
+                }
             }
         }
 
@@ -1253,19 +1767,19 @@ class EJBClientChannel {
                             }
                         }
                     }
-                    try (final Unmarshaller unmarshaller = createUnmarshaller()) {
-                        unmarshaller.start(response);
-                        e = unmarshaller.readObject(Exception.class);
-                        if (version < 3) {
-                            // discard attachment data, if any
-                            int attachments = unmarshaller.readUnsignedByte();
-                            for (int i = 0; i < attachments; i ++) {
-                                unmarshaller.readObject();
-                                unmarshaller.readObject();
-                            }
+                    final Unmarshaller unmarshaller = marshallerPool.getUnmarshaller();
+                    unmarshaller.start(response);
+                    e = unmarshaller.readObject(Exception.class);
+                    if (version < 3) {
+                        // discard attachment data, if any
+                        int attachments = unmarshaller.readUnsignedByte();
+                        for (int i = 0; i < attachments; i ++) {
+                            unmarshaller.readObject();
+                            unmarshaller.readObject();
                         }
-                        unmarshaller.finish();
                     }
+                    unmarshaller.finish();
+                    marshallerPool.returnUnmarshaller(unmarshaller);
                 } catch (IOException | ClassNotFoundException ex) {
                     throw new EJBException("Failed to read response", ex);
                 }
@@ -1292,8 +1806,8 @@ class EJBClientChannel {
         }
     }
 
-    private Executor getRetryExecutor() {
-        return retryExecutorWrapper.getExecutor(getChannel().getConnection().getEndpoint().getXnioWorker());
+    private Executor getRetryExecutor(final EJBReceiverInvocationContext receiverContext) {
+        return retryScheduler.getExecutor(getChannel().getConnection().getEndpoint().getXnioWorker(), receiverContext.getClientInvocationContext());
     }
 
     static class ResponseMessageInputStream extends MessageInputStream implements ByteInput {
@@ -1325,4 +1839,88 @@ class EJBClientChannel {
             return id;
         }
     }
+
+    static final class BatchEntry {
+        private final EJBReceiverInvocationContext receiverContext;
+        private final ConnectionPeerIdentity peerIdentity;
+        private final MethodInvocation invocation;
+        private final byte[] bytes;
+        private final List<ProtocolV4ObjectTable.Entry> defined;
+
+        BatchEntry(final EJBReceiverInvocationContext receiverContext, final ConnectionPeerIdentity peerIdentity, final MethodInvocation invocation, final byte[] bytes, final List<ProtocolV4ObjectTable.Entry> defined) {
+            this.receiverContext = receiverContext;
+            this.peerIdentity = peerIdentity;
+            this.invocation = invocation;
+            this.bytes = bytes;
+            this.defined = defined;
+        }
+
+        EJBReceiverInvocationContext getReceiverContext() {
+            return receiverContext;
+        }
+
+        ConnectionPeerIdentity getPeerIdentity() {
+            return peerIdentity;
+        }
+
+        MethodInvocation getInvocation() {
+            return invocation;
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        List<ProtocolV4ObjectTable.Entry> getDefined() {
+            return defined;
+        }
+    }
+
+    /**
+     * The entries of a batch which are destined for this channel.
+     */
+    static final class BatchBuffer {
+        private List<BatchEntry> entries = new ArrayList<>();
+
+        synchronized boolean add(BatchEntry entry) {
+            final List<BatchEntry> entries = this.entries;
+            if (entries == null) {
+                return false;
+            }
+            entries.add(entry);
+            return true;
+        }
+
+        synchronized List<BatchEntry> drain() {
+            final List<BatchEntry> entries = this.entries;
+            this.entries = null;
+            return entries == null ? Collections.emptyList() : entries;
+        }
+    }
+
+    static final class BatchEntryOutputStream extends MessageOutputStream {
+        private final ByteArrayOutputStream delegate = new ByteArrayOutputStream();
+
+        public void write(final int b) {
+            delegate.write(b);
+        }
+
+        public void write(final byte[] b, final int off, final int len) {
+            delegate.write(b, off, len);
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+
+        public MessageOutputStream cancel() {
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return delegate.toByteArray();
+        }
+    }
 }
@@ -22,8 +22,10 @@ import static java.lang.Math.min;
 import static java.security.AccessController.doPrivileged;
 import static org.xnio.IoUtils.safeClose;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
@@ -38,13 +40,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 import javax.ejb.EJBException;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
 import javax.transaction.RollbackException;
+import javax.transaction.Synchronization;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.xa.XAException;
@@ -68,6 +69,7 @@ import org.jboss.ejb.client.UserTransactionID;
 import org.jboss.ejb.client.XidTransactionID;
 import org.jboss.ejb.client.annotation.CompressionHint;
 import org.jboss.ejb.server.Association;
+import org.jboss.ejb.server.BatchSessionOpenRequest;
 import org.jboss.ejb.server.CancelHandle;
 import org.jboss.ejb.server.ClusterTopologyListener;
 import org.jboss.ejb.server.InvocationRequest;
@@ -105,7 +107,22 @@ import org.wildfly.transaction.client.spi.SubordinateTransactionControl;
 @SuppressWarnings("deprecation")
 final class EJBServerChannel {
 
-    private static final char METHOD_PARAM_TYPE_SEPARATOR = ',';
+    static final char METHOD_PARAM_TYPE_SEPARATOR = ',';
+
+    /**
+     * The largest number of sessions which a single open sessions request may ask for.
+     */
+    static final int MAX_SESSIONS_PER_REQUEST = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.server.max-sessions-per-request", "1000"))).intValue());
+
+    /**
+     * The largest number of entries of a batch invocation request which are processed; any further entries fail.
+     */
+    static final int MAX_BATCH_ENTRIES = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.server.max-batch-entries", "1000"))).intValue());
+
+    /**
+     * The largest size in bytes of an entry of a batch invocation request which is processed; larger entries fail.
+     */
+    static final int MAX_BATCH_ENTRY_SIZE = Math.max(16, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.server.max-batch-entry-size", Integer.toString(16 << 20)))).intValue());
 
     private final RemotingTransactionServer transactionServer;
     private final Channel channel;
@@ -113,12 +130,18 @@ final class EJBServerChannel {
     private final MessageTracker messageTracker;
     private final MarshallerFactory marshallerFactory;
     private final MarshallingConfiguration configuration;
+    private final MarshallerPool marshallerPool;
     private final IntIndexHashMap<InProgress> invocations = new IntIndexHashMap<>(InProgress::getInvId);
+    private final IntIndexHashMap<ImportedTransaction> importedTransactions = new IntIndexHashMap<>(ImportedTransaction::getHandle);
+    private final RecoveryScans recoveryScans = new RecoveryScans(RecoveryScans.MAX_SCANS, RecoveryScans.TIMEOUT);
+    private final RemoteStreams inboundStreams = new RemoteStreams(RemoteStreams.TIMEOUT);
+    private final CompressionCodec[] codecs;
 
-    EJBServerChannel(final RemotingTransactionServer transactionServer, final Channel channel, final int version, final MessageTracker messageTracker) {
+    EJBServerChannel(final RemotingTransactionServer transactionServer, final Channel channel, final int version, final CompressionCodec[] codecs, final MessageTracker messageTracker) {
         this.transactionServer = transactionServer;
         this.channel = channel;
         this.version = version;
+        this.codecs = codecs;
         this.messageTracker = messageTracker;
         final MarshallingConfiguration configuration = new MarshallingConfiguration();
         if (version < 3) {
@@ -127,12 +150,14 @@ final class EJBServerChannel {
             configuration.setObjectResolver(new ProtocolV1ObjectResolver(channel.getConnection(), true));
             configuration.setVersion(2);
         } else {
-            configuration.setObjectTable(ProtocolV3ObjectTable.INSTANCE);
+            // v4 and up clients send identifiers and method locators through a per-connection dictionary
+            configuration.setObjectTable(version >= 4 ? new ProtocolV4ObjectTable(false) : ProtocolV3ObjectTable.INSTANCE);
             configuration.setObjectResolver(new ProtocolV3ObjectResolver(channel.getConnection(), true));
             configuration.setVersion(4);
         }
         marshallerFactory = new RiverMarshallerFactory();
         this.configuration = configuration;
+        marshallerPool = new MarshallerPool(marshallerFactory, configuration);
     }
 
     Channel.Receiver getReceiver(final Association association, final ListenerHandle handle1, final ListenerHandle handle2) {
@@ -161,29 +186,45 @@ final class EJBServerChannel {
         public void handleError(final Channel channel, final IOException error) {
             handle1.close();
             handle2.close();
+            inboundStreams.closeAll();
         }
 
         public void handleEnd(final Channel channel) {
             handle1.close();
             handle2.close();
+            inboundStreams.closeAll();
         }
 
         public void handleMessage(final Channel channel, final MessageInputStream message) {
+            boolean leaveOpen = false;
             try {
                 final int code = message.readUnsignedByte();
                 switch (code) {
+                    case Protocol.CODEC_COMPRESSED_MESSAGE:
                     case Protocol.COMPRESSED_INVOCATION_MESSAGE:
                     case Protocol.INVOCATION_REQUEST: {
-                        try (InputStream input = code == Protocol.COMPRESSED_INVOCATION_MESSAGE ? new InflaterInputStream(message) : message) {
+                        final CompressionCodec codec;
+                        if (code == Protocol.INVOCATION_REQUEST) {
+                            codec = null;
+                        } else if (code == Protocol.COMPRESSED_INVOCATION_MESSAGE) {
+                            codec = CompressionCodecs.DEFLATE;
+                        } else {
+                            codec = version >= 4 ? CompressionCodecs.getCodec(codecs, message.readUnsignedByte()) : null;
+                            if (codec == null) {
+                                Logs.REMOTING.invalidMessageReceived(code);
+                                break;
+                            }
+                        }
+                        try (InputStream input = codec != null ? codec.decompress(message) : message) {
                             // now if we get an error, we can respond.
-                            if(code == Protocol.COMPRESSED_INVOCATION_MESSAGE) {
+                            if(codec != null) {
                                 int verify = input.read();
                                 if(verify != Protocol.INVOCATION_REQUEST) {
                                     throw new RuntimeException();
                                 }
 
                             }
-                            final int invId = (input.read() << 8) | input.read();
+                            final int invId = Protocol.readInvocationId(input instanceof DataInput ? (DataInput) input : new DataInputStream(input), version);
                             try {
                                 handleInvocationRequest(invId, input);
                             } catch (IOException | ClassNotFoundException e) {
@@ -193,8 +234,64 @@ final class EJBServerChannel {
                         }
                         break;
                     }
+                    case Protocol.BATCH_INVOCATION_REQUEST: {
+                        if (version < 4) {
+                            Logs.REMOTING.invalidMessageReceived(code);
+                            break;
+                        }
+                        final int count = PackedInteger.readPackedInteger(message);
+                        if (count < 0) {
+                            throw new IOException("Invalid batch entry count " + count);
+                        }
+                        for (int i = 0; i < count; i ++) {
+                            // each entry is an invocation request body; responses are written individually
+                            final int length = PackedInteger.readPackedInteger(message);
+                            if (length < 1) {
+                                throw new IOException("Invalid batch entry length " + length);
+                            }
+                            if (i >= MAX_BATCH_ENTRIES) {
+                                rejectBatchEntry(message, length, Logs.REMOTING.tooManyBatchEntries(count, MAX_BATCH_ENTRIES));
+                                continue;
+                            }
+                            if (length > MAX_BATCH_ENTRY_SIZE) {
+                                rejectBatchEntry(message, length, Logs.REMOTING.batchEntryTooLarge(length, MAX_BATCH_ENTRY_SIZE));
+                                continue;
+                            }
+                            final byte[] entry = new byte[length];
+                            message.readFully(entry);
+                            final ByteArrayInputStream input = new ByteArrayInputStream(entry);
+                            final int invId = Protocol.readInvocationId(new DataInputStream(input), version);
+                            try {
+                                handleInvocationRequest(invId, input);
+                            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                                // write response back to client, and go on with the next entry
+                                writeFailedResponse(invId, e);
+                            }
+                        }
+                        break;
+                    }
+                    case Protocol.STREAM_DATA: {
+                        if (version < 4) {
+                            Logs.REMOTING.invalidMessageReceived(code);
+                            break;
+                        }
+                        final int invId = Protocol.readInvocationId(message, version);
+                        final int index = PackedInteger.readPackedInteger(message);
+                        if (invocations.get(invId) == null) {
+                            // the invocation already finished; discard the content
+                            break;
+                        }
+                        // the content is read directly by the bean
+                        inboundStreams.attach(invId, index, message);
+                        leaveOpen = true;
+                        if (invocations.get(invId) == null) {
+                            // the invocation finished concurrently
+                            inboundStreams.release(invId);
+                        }
+                        break;
+                    }
                     case Protocol.OPEN_SESSION_REQUEST: {
-                        final int invId = message.readUnsignedShort();
+                        final int invId = Protocol.readInvocationId(message, version);
                         try {
                             handleSessionOpenRequest(invId, message);
                         } catch (IOException e) {
@@ -203,8 +300,22 @@ final class EJBServerChannel {
                         }
                         break;
                     }
+                    case Protocol.OPEN_SESSIONS_REQUEST: {
+                        if (version < 4) {
+                            Logs.REMOTING.invalidMessageReceived(code);
+                            break;
+                        }
+                        final int invId = Protocol.readInvocationId(message, version);
+                        try {
+                            handleSessionsOpenRequest(invId, message);
+                        } catch (IOException e) {
+                            // write response back to client
+                            writeFailedResponse(invId, e);
+                        }
+                        break;
+                    }
                     case Protocol.CANCEL_REQUEST: {
-                        final int invId = message.readUnsignedShort();
+                        final int invId = Protocol.readInvocationId(message, version);
                         try {
                             handleCancelRequest(invId, message);
                         } catch (IOException e) {
@@ -217,7 +328,20 @@ final class EJBServerChannel {
                     case Protocol.TXN_PREPARE_REQUEST:
                     case Protocol.TXN_FORGET_REQUEST:
                     case Protocol.TXN_BEFORE_COMPLETION_REQUEST: {
-                        final int invId = message.readUnsignedShort();
+                        final int invId = Protocol.readInvocationId(message, version);
+                        try {
+                            handleTxnRequest(code, invId, message);
+                        } catch (IOException e) {
+                            // ignored
+                        }
+                        break;
+                    }
+                    case Protocol.TXN_BEFORE_COMPLETION_PREPARE_REQUEST: {
+                        if (version < 4) {
+                            Logs.REMOTING.invalidMessageReceived(code);
+                            break;
+                        }
+                        final int invId = Protocol.readInvocationId(message, version);
                         try {
                             handleTxnRequest(code, invId, message);
                         } catch (IOException e) {
@@ -226,7 +350,7 @@ final class EJBServerChannel {
                         break;
                     }
                     case Protocol.TXN_RECOVERY_REQUEST: {
-                        final int invId = message.readUnsignedShort();
+                        final int invId = Protocol.readInvocationId(message, version);
                         try {
                             handleTxnRecoverRequest(invId, message);
                         } catch (IOException e) {
@@ -234,6 +358,20 @@ final class EJBServerChannel {
                         }
                         break;
                     }
+                    case Protocol.TXN_RECOVERY_SCAN_REQUEST: {
+                        if (version < 4) {
+                            Logs.REMOTING.invalidMessageReceived(code);
+                            break;
+                        }
+                        final int invId = Protocol.readInvocationId(message, version);
+                        try {
+                            handleTxnRecoveryScanRequest(invId, message);
+                        } catch (IOException e) {
+                            // write response back to client
+                            writeFailedResponse(invId, e);
+                        }
+                        break;
+                    }
                     default: {
                         // unrecognized
                         Logs.REMOTING.invalidMessageReceived(code);
@@ -243,15 +381,44 @@ final class EJBServerChannel {
             } catch (IOException e) {
                 // nothing we can do.
             } finally {
-                safeClose(message);
+                if (! leaveOpen) {
+                    safeClose(message);
+                }
                 channel.receiveMessage(this);
             }
         }
 
+        /**
+         * Answer a batch entry with a failure without reading its body, which is skipped.
+         *
+         * @param message the batch message, positioned at the start of the entry
+         * @param length the entry length
+         * @param cause the failure to report
+         * @throws IOException if the entry could not be read
+         */
+        private void rejectBatchEntry(final MessageInputStream message, final int length, final IOException cause) throws IOException {
+            // only the invocation ID is needed, which takes at most five bytes
+            final byte[] head = new byte[Math.min(length, 5)];
+            message.readFully(head);
+            final int invId = Protocol.readInvocationId(new DataInputStream(new ByteArrayInputStream(head)), version);
+            long remaining = length - head.length;
+            while (remaining > 0L) {
+                final long skipped = message.skip(remaining);
+                if (skipped > 0L) {
+                    remaining -= skipped;
+                } else if (message.read() == -1) {
+                    throw new EOFException();
+                } else {
+                    remaining --;
+                }
+            }
+            writeFailedResponse(invId, cause);
+        }
+
         private void writeTxnResponse(final int invId, final int flag) {
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.TXN_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 os.writeBoolean(true);
                 PackedInteger.writePackedInteger(os, flag);
             } catch (IOException e) {
@@ -263,7 +430,7 @@ final class EJBServerChannel {
         private void writeTxnResponse(final int invId) {
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.TXN_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 os.writeBoolean(false);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
@@ -304,6 +471,12 @@ final class EJBServerChannel {
                         writeTxnResponse(invId);
                         break;
                     }
+                    case Protocol.TXN_BEFORE_COMPLETION_PREPARE_REQUEST: {
+                        control.beforeCompletion();
+                        int res = control.prepare();
+                        writeTxnResponse(invId, res);
+                        break;
+                    }
                     default: throw Assert.impossibleSwitchCase(code);
                 }
             } catch (XAException e) {
@@ -325,7 +498,8 @@ final class EJBServerChannel {
                     }
                     case Protocol.TXN_PREPARE_REQUEST:
                     case Protocol.TXN_FORGET_REQUEST:
-                    case Protocol.TXN_BEFORE_COMPLETION_REQUEST: {
+                    case Protocol.TXN_BEFORE_COMPLETION_REQUEST:
+                    case Protocol.TXN_BEFORE_COMPLETION_PREPARE_REQUEST: {
                         writeFailedResponse(invId, Logs.TXN.userTxNotSupportedByTxContext());
                         break;
                     }
@@ -353,14 +527,83 @@ final class EJBServerChannel {
             }
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.TXN_RECOVERY_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 PackedInteger.writePackedInteger(os, xids.length);
-                final Marshaller marshaller = marshallerFactory.createMarshaller(configuration);
+                final Marshaller marshaller = marshallerPool.getMarshaller();
                 marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(os)));
                 for (Xid xid : xids) {
                     marshaller.writeObject(new XidTransactionID(xid));
                 }
                 marshaller.finish();
+                marshallerPool.returnMarshaller(marshaller);
+            } catch (IOException e) {
+                // nothing to do at this point; the client doesn't want the response
+                Logs.REMOTING.trace("EJB transaction response write failed", e);
+            }
+        }
+
+        void handleTxnRecoveryScanRequest(final int invId, final MessageInputStream message) throws IOException {
+            final int cursor = PackedInteger.readPackedInteger(message);
+            final int batchSize = PackedInteger.readPackedInteger(message);
+            final RecoveryScans.Scan scan;
+            if (cursor == 0) {
+                final String parentName = message.readUTF();
+                final int flags = message.readInt();
+                final Xid[] xids;
+                try {
+                    xids = transactionServer.getTransactionService().getTransactionContext().getRecoveryInterface().recover(flags, parentName);
+                } catch (XAException e) {
+                    writeFailedResponse(invId, e);
+                    return;
+                } catch (RuntimeException e) {
+                    writeFailedResponse(invId, Logs.TXN.internalSystemErrorWithTx(e));
+                    return;
+                }
+                for (Xid xid : xids) {
+                    if (xid.getFormatId() < 0) {
+                        // cannot be written as a packed integer
+                        writeFailedResponse(invId, new XAException(XAException.XAER_RMERR));
+                        return;
+                    }
+                }
+                scan = recoveryScans.start(xids);
+                if (scan == null) {
+                    // the peer has to finish or close one of its scans first
+                    writeFailedResponse(invId, new XAException(XAException.XAER_RMFAIL));
+                    return;
+                }
+            } else {
+                scan = recoveryScans.resume(cursor);
+                if (scan == null) {
+                    writeFailedResponse(invId, new XAException(XAException.XAER_PROTO));
+                    return;
+                }
+            }
+            // a batch size of zero just ends the scan; the peer cannot ask for more than the server allows
+            final int count = Math.min(Math.max(0, Math.min(batchSize, RecoveryScans.MAX_BATCH_SIZE)), scan.getRemaining());
+            final int start = scan.advance(count);
+            final boolean more = batchSize > 0 && scan.getRemaining() > 0;
+            if (more) {
+                // before the response goes out, as the next request may follow right away
+                recoveryScans.suspend(scan);
+            } else {
+                recoveryScans.finish(scan);
+            }
+            try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
+                os.writeByte(Protocol.TXN_RECOVERY_SCAN_RESPONSE);
+                Protocol.writeInvocationId(os, version, invId);
+                PackedInteger.writePackedInteger(os, more ? scan.getCursor() : 0);
+                PackedInteger.writePackedInteger(os, count);
+                for (int i = start; i < start + count; i ++) {
+                    final Xid xid = scan.get(i);
+                    PackedInteger.writePackedInteger(os, xid.getFormatId());
+                    final byte[] gtid = xid.getGlobalTransactionId();
+                    os.writeByte(gtid.length);
+                    os.write(gtid);
+                    final byte[] bq = xid.getBranchQualifier();
+                    os.writeByte(bq.length);
+                    os.write(bq);
+                }
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB transaction response write failed", e);
@@ -372,6 +615,10 @@ final class EJBServerChannel {
             final InProgress inProgress = invocations.get(invId);
             if (inProgress != null) {
                 inProgress.cancel(cancelIfRunning);
+                if (cancelIfRunning) {
+                    // a bean which is reading a streamed parameter must not wait for content which will not come
+                    inboundStreams.release(invId);
+                }
             }
         }
 
@@ -399,6 +646,32 @@ final class EJBServerChannel {
                 connection.getLocalIdentity(securityContext)));
         }
 
+        void handleSessionsOpenRequest(final int invId, final MessageInputStream inputStream) throws IOException {
+            final String appName = inputStream.readUTF();
+            final String moduleName = inputStream.readUTF();
+            final String distName = inputStream.readUTF();
+            final String beanName = inputStream.readUTF();
+            final int count = PackedInteger.readPackedInteger(inputStream);
+            if (count < 1) {
+                throw new IOException("Invalid session count " + count);
+            }
+            if (count > MAX_SESSIONS_PER_REQUEST) {
+                // reject before the transaction is imported or any session is created
+                throw Logs.REMOTING.tooManySessionsRequested(count, MAX_SESSIONS_PER_REQUEST);
+            }
+            final int securityContext = inputStream.readInt();
+            final ExceptionSupplier<ImportResult<?>, SystemException> transactionSupplier = readTransaction(inputStream);
+            final Connection connection = channel.getConnection();
+            final EJBIdentifier identifier = new EJBIdentifier(appName, moduleName, beanName, distName);
+
+            association.receiveBatchSessionOpenRequest(new RemotingBatchSessionOpenRequest(
+                invId,
+                identifier,
+                count,
+                transactionSupplier,
+                connection.getLocalIdentity(securityContext)));
+        }
+
         void handleInvocationRequest(final int invId, final InputStream input) throws IOException, ClassNotFoundException {
             final MarshallingConfiguration configuration = EJBServerChannel.this.configuration.clone();
             final ServerClassResolver classResolver = new ServerClassResolver();
@@ -432,12 +705,7 @@ final class EJBServerChannel {
                 identifier = new EJBIdentifier(appName, moduleName, beanName, distinctName);
 
                 // parse out the signature string
-                final String[] parameterTypeNames;
-                if (sigString.isEmpty()) {
-                    parameterTypeNames = new String[0];
-                } else {
-                    parameterTypeNames = sigString.split(String.valueOf(METHOD_PARAM_TYPE_SEPARATOR));
-                }
+                final String[] parameterTypeNames = MethodLookupCache.getParameterTypeNames(sigString);
                 methodLocator = new EJBMethodLocator(methodName, parameterTypeNames);
                 identity = connection.getLocalIdentity();
             }
@@ -470,34 +738,82 @@ final class EJBServerChannel {
             final int id = input.readInt();
             final int timeout = PackedInteger.readPackedInteger(input);
             return () -> new ImportResult<Transaction>(transactionServer.getOrBeginTransaction(id, timeout), SubordinateTransactionControl.EMPTY, false);
-        } else if (type == 2) {
+        } else if (type == 2 || type == 3 && version >= 4) {
             final int fmt = PackedInteger.readPackedInteger(input);
             final byte[] gtid = new byte[input.readUnsignedByte()];
             input.readFully(gtid);
             final byte[] bq = new byte[input.readUnsignedByte()];
             input.readFully(bq);
             final int timeout = PackedInteger.readPackedInteger(input);
+            final SimpleXid xid = new SimpleXid(fmt, gtid, bq);
+            if (type == 2) {
+                return () -> importTransaction(xid, timeout, null);
+            }
+            // the client will refer to it by its handle from now on
+            final int handle = PackedInteger.readPackedInteger(input);
+            if (handle < 0 || handle >= TransactionHandles.MAX_SIZE) {
+                throw Logs.REMOTING.transactionHandleOutOfRange(handle, TransactionHandles.MAX_SIZE);
+            }
+            final ImportedTransaction importedTransaction = new ImportedTransaction(handle, xid);
+            importedTransactions.put(importedTransaction);
+            return () -> importTransaction(xid, timeout, importedTransaction);
+        } else if (type == 4 && version >= 4) {
+            final int handle = PackedInteger.readPackedInteger(input);
+            final int timeout = PackedInteger.readPackedInteger(input);
+            final ImportedTransaction importedTransaction = importedTransactions.get(handle);
+            if (importedTransaction == null) {
+                throw Logs.REMOTING.unknownTransactionHandle(handle);
+            }
             return () -> {
-                try {
-                    return transactionServer.getTransactionService().getTransactionContext().findOrImportTransaction(new SimpleXid(fmt, gtid, bq), timeout);
-                } catch (XAException e) {
-                    throw new SystemException(e.getMessage());
+                final LocalTransaction transaction = importedTransaction.getTransaction();
+                if (transaction != null) {
+                    return new ImportResult<Transaction>(transaction, SubordinateTransactionControl.EMPTY, false);
                 }
+                return importTransaction(importedTransaction.getXid(), timeout, importedTransaction);
             };
         } else {
             throw Logs.REMOTING.invalidTransactionType(type);
         }
     }
 
+    private ImportResult<?> importTransaction(final SimpleXid xid, final int timeout, final ImportedTransaction importedTransaction) throws SystemException {
+        final ImportResult<LocalTransaction> result;
+        try {
+            result = transactionServer.getTransactionService().getTransactionContext().findOrImportTransaction(xid, timeout);
+        } catch (XAException e) {
+            throw new SystemException(e.getMessage());
+        }
+        if (importedTransaction != null && importedTransaction.getTransaction() == null) {
+            final LocalTransaction transaction = result.getTransaction();
+            importedTransaction.setTransaction(transaction);
+            // forget the handle once the transaction completes; the client then releases it for reuse
+            try {
+                transaction.registerSynchronization(new Synchronization() {
+                    public void beforeCompletion() {
+                    }
+
+                    public void afterCompletion(final int status) {
+                        importedTransactions.remove(importedTransaction);
+                    }
+                });
+            } catch (RollbackException | SystemException | IllegalStateException e) {
+                // it is about to complete anyway
+                importedTransactions.remove(importedTransaction);
+            }
+        }
+        return result;
+    }
+
     private void writeFailedResponse(final int invId, final Throwable e) {
         try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
             os.writeByte(Protocol.APPLICATION_EXCEPTION);
-            os.writeShort(invId);
-            final Marshaller marshaller = marshallerFactory.createMarshaller(configuration);
+            Protocol.writeInvocationId(os, version, invId);
+            final Marshaller marshaller = marshallerPool.getMarshaller();
             marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(os)));
             marshaller.writeObject(new RequestSendFailedException(e.getMessage() + "@" + channel.getConnection().getPeerURI(), e));
             marshaller.writeByte(0);
             marshaller.finish();
+            marshallerPool.returnMarshaller(marshaller);
         } catch (IOException e2) {
             // nothing to do at this point; the client doesn't want the response
             Logs.REMOTING.trace("EJB response write failed", e2);
@@ -540,17 +856,21 @@ final class EJBServerChannel {
             return identity;
         }
 
+        void requestFinished() {
+            invocations.removeKey(invId);
+        }
+
         public void writeNoSuchEJB() {
             final String message = Logs.REMOTING.remoteMessageNoSuchEJB(getEJBIdentifier());
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.NO_SUCH_EJB);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 os.writeUTF(message);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
@@ -559,34 +879,35 @@ final class EJBServerChannel {
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 if (version >= 3) {
                     os.writeByte(Protocol.BAD_VIEW_TYPE);
-                    os.writeShort(invId);
+                    Protocol.writeInvocationId(os, version, invId);
                     os.writeUTF(message);
                 } else {
                     os.writeByte(Protocol.APPLICATION_EXCEPTION);
-                    os.writeShort(invId);
-                    final Marshaller marshaller = marshallerFactory.createMarshaller(configuration);
+                    Protocol.writeInvocationId(os, version, invId);
+                    final Marshaller marshaller = marshallerPool.getMarshaller();
                     marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(os)));
                     marshaller.writeObject(Logs.REMOTING.invalidViewTypeForInvocation(message));
                     marshaller.writeByte(0);
                     marshaller.finish();
+                    marshallerPool.returnMarshaller(marshaller);
                 }
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
         public void writeCancelResponse() {
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.CANCEL_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
@@ -594,13 +915,13 @@ final class EJBServerChannel {
             final String message = Logs.REMOTING.remoteMessageEJBNotStateful(getEJBIdentifier());
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.EJB_NOT_STATEFUL);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 os.writeUTF(message);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
@@ -626,18 +947,19 @@ final class EJBServerChannel {
         protected void writeFailure(Exception reason) {
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.APPLICATION_EXCEPTION);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 if (version >= 3) os.writeByte(getEnlistmentStatus());
-                final Marshaller marshaller = marshallerFactory.createMarshaller(configuration);
+                final Marshaller marshaller = marshallerPool.getMarshaller();
                 marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(os)));
                 marshaller.writeObject(reason);
                 marshaller.writeByte(0);
                 marshaller.finish();
+                marshallerPool.returnMarshaller(marshaller);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
@@ -656,7 +978,7 @@ final class EJBServerChannel {
         }
     }
 
-    final class RemotingSessionOpenRequest extends RemotingRequest implements SessionOpenRequest {
+    class RemotingSessionOpenRequest extends RemotingRequest implements SessionOpenRequest {
         private final EJBIdentifier identifier;
         final ExceptionSupplier<ImportResult<?>, SystemException> transactionSupplier;
         int txnCmd = 0; // assume nobody will ask about the transaction
@@ -706,12 +1028,12 @@ final class EJBServerChannel {
             super.convertToStateful(sessionId);
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.OPEN_SESSION_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 final byte[] encodedForm = sessionId.getEncodedForm();
                 PackedInteger.writePackedInteger(os, encodedForm.length);
                 os.write(encodedForm);
                 if (1 <= version && version <= 2) {
-                    final Marshaller marshaller = marshallerFactory.createMarshaller(configuration);
+                    final Marshaller marshaller = marshallerPool.getMarshaller();
                     marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(os)));
                     if (weakAffinityUpdate != null) {
                         marshaller.writeObject(weakAffinityUpdate);
@@ -719,30 +1041,77 @@ final class EJBServerChannel {
                         marshaller.writeObject(new NodeAffinity(channel.getConnection().getEndpoint().getName()));
                     }
                     marshaller.finish();
+                    marshallerPool.returnMarshaller(marshaller);
                 } else {
                     assert version >= 3;
-                    os.writeByte(txnCmd);
-                    int updateBits = 0;
-                    if (weakAffinityUpdate != null) {
-                        updateBits |= Protocol.UPDATE_BIT_WEAK_AFFINITY;
-                    }
-                    if (strongAffinityUpdate != null) {
-                        updateBits |= Protocol.UPDATE_BIT_STRONG_AFFINITY;
-                    }
-                    os.writeByte(updateBits);
-                    if (weakAffinityUpdate != null) {
-                        final String nodeName = weakAffinityUpdate.getNodeName();
-                        final byte[] bytes = nodeName.getBytes(StandardCharsets.UTF_8);
-                        PackedInteger.writePackedInteger(os, bytes.length);
-                        os.write(bytes);
-                    }
-                    if (strongAffinityUpdate != null) {
-                        final String clusterName = strongAffinityUpdate.getClusterName();
-                        final byte[] bytes = clusterName.getBytes(StandardCharsets.UTF_8);
-                        PackedInteger.writePackedInteger(os, bytes.length);
-                        os.write(bytes);
-                    }
+                    writeUpdates(os);
+                }
+            } catch (IOException e) {
+                // nothing to do at this point; the client doesn't want the response
+                Logs.REMOTING.trace("EJB session open response write failed", e);
+            }
+        }
+
+        void writeUpdates(final MessageOutputStream os) throws IOException {
+            os.writeByte(txnCmd);
+            int updateBits = 0;
+            if (weakAffinityUpdate != null) {
+                updateBits |= Protocol.UPDATE_BIT_WEAK_AFFINITY;
+            }
+            if (strongAffinityUpdate != null) {
+                updateBits |= Protocol.UPDATE_BIT_STRONG_AFFINITY;
+            }
+            os.writeByte(updateBits);
+            if (weakAffinityUpdate != null) {
+                final String nodeName = weakAffinityUpdate.getNodeName();
+                final byte[] bytes = nodeName.getBytes(StandardCharsets.UTF_8);
+                PackedInteger.writePackedInteger(os, bytes.length);
+                os.write(bytes);
+            }
+            if (strongAffinityUpdate != null) {
+                final String clusterName = strongAffinityUpdate.getClusterName();
+                final byte[] bytes = clusterName.getBytes(StandardCharsets.UTF_8);
+                PackedInteger.writePackedInteger(os, bytes.length);
+                os.write(bytes);
+            }
+        }
+    }
+
+    final class RemotingBatchSessionOpenRequest extends RemotingSessionOpenRequest implements BatchSessionOpenRequest {
+        private final SessionID[] sessionIds;
+        private int added;
+
+        RemotingBatchSessionOpenRequest(final int invId, final EJBIdentifier identifier, final int count, final ExceptionSupplier<ImportResult<?>, SystemException> transactionSupplier, final SecurityIdentity identity) {
+            super(invId, identifier, transactionSupplier, identity);
+            sessionIds = new SessionID[count];
+        }
+
+        public int getSessionCount() {
+            return sessionIds.length;
+        }
+
+        public void convertToStateful(@NotNull final SessionID sessionId) throws IllegalArgumentException, IllegalStateException {
+            Assert.checkNotNullParam("sessionId", sessionId);
+            final SessionID[] sessionIds = this.sessionIds;
+            synchronized (sessionIds) {
+                if (added == sessionIds.length) {
+                    throw new IllegalStateException();
+                }
+                sessionIds[added ++] = sessionId;
+                if (added < sessionIds.length) {
+                    return;
+                }
+            }
+            try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
+                os.writeByte(Protocol.OPEN_SESSIONS_RESPONSE);
+                Protocol.writeInvocationId(os, version, invId);
+                PackedInteger.writePackedInteger(os, sessionIds.length);
+                for (SessionID id : sessionIds) {
+                    final byte[] encodedForm = id.getEncodedForm();
+                    PackedInteger.writePackedInteger(os, encodedForm.length);
+                    os.write(encodedForm);
                 }
+                writeUpdates(os);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB session open response write failed", e);
@@ -765,9 +1134,16 @@ final class EJBServerChannel {
             this.remaining = remaining;
         }
 
+        void requestFinished() {
+            super.requestFinished();
+            // discard any content the bean did not read, including content which was never asked for
+            inboundStreams.release(invId);
+        }
+
         public Resolved getRequestContent(final ClassLoader classLoader) throws IOException, ClassNotFoundException {
             classResolver.setClassLoader(classLoader);
             int responseCompressLevel = 0;
+            int responseCodecId = 0;
             // resolve the rest of everything here
             try (Unmarshaller unmarshaller = remaining) {
                 Affinity weakAffinity = Affinity.NONE;
@@ -778,6 +1154,9 @@ final class EJBServerChannel {
                     if (weakAffinity == null) weakAffinity = Affinity.NONE;
                     int flags = unmarshaller.readUnsignedByte();
                     responseCompressLevel = flags & Protocol.COMPRESS_RESPONSE;
+                    if (version >= 4) {
+                        responseCodecId = (flags & Protocol.COMPRESS_RESPONSE_CODEC) >>> 4;
+                    }
                     transactionSupplier = readTransaction(unmarshaller);
                     locator = unmarshaller.readObject(EJBLocator.class);
                     // do identity checks for these strings to guarantee integrity.
@@ -803,6 +1182,10 @@ final class EJBServerChannel {
                 Object[] parameters = new Object[methodLocator.getParameterCount()];
                 for (int i = 0; i < parameters.length; i ++) {
                     parameters[i] = unmarshaller.readObject();
+                    if (parameters[i] == ProtocolV4ObjectTable.STREAM_MARKER) {
+                        // the content follows in a separate message
+                        parameters[i] = inboundStreams.getStream(invId, i);
+                    }
                 }
                 int attachmentCount = PackedInteger.readPackedInteger(unmarshaller);
                 final Map<String, Object> attachments = new HashMap<>(attachmentCount);
@@ -850,7 +1233,7 @@ final class EJBServerChannel {
                 if(version == 2) {
                     //version 2 did not send compression information in the response stream
                     //instead it must be read from the class
-                    Method invokedMethod = findMethod(locator.getViewType(), methodLocator);
+                    Method invokedMethod = MethodLookupCache.findMethod(locator.getIdentifier().getModuleIdentifier(), locator.getViewType(), methodLocator);
                     CompressionHint compressionHint = invokedMethod == null ? null : invokedMethod.getAnnotation(CompressionHint.class);
                     // then class level
                     if (compressionHint == null) {
@@ -864,6 +1247,10 @@ final class EJBServerChannel {
                 }
 
                 final int finalResponseCompressLevel = responseCompressLevel == 15 ? Deflater.DEFAULT_COMPRESSION : min(responseCompressLevel, 9);
+                // fall back to deflate if the client asked for a codec which was not negotiated
+                final CompressionCodec requestedCodec = CompressionCodecs.getCodec(codecs, responseCodecId);
+                final CompressionCodec responseCodec = requestedCodec == null ? CompressionCodecs.DEFLATE : requestedCodec;
+                final int finalResponseCodecId = requestedCodec == null ? 0 : responseCodecId;
                 return new Resolved() {
 
                     @NotNull
@@ -902,16 +1289,18 @@ final class EJBServerChannel {
                     }
 
                     public void writeInvocationResult(final Object result) {
+                        final InputStream resultStream = version >= 4 && result instanceof InputStream ? (InputStream) result : null;
+                        boolean written = false;
                         MessageOutputStream os;
                         try (MessageOutputStream underlying = messageTracker.openMessageUninterruptibly()) {
                             if(finalResponseCompressLevel != 0) {
-                                underlying.writeByte(Protocol.COMPRESSED_INVOCATION_MESSAGE);
-                                os = new WrapperMessageOutputStream(underlying, new DeflaterOutputStream(underlying, new Deflater(finalResponseCompressLevel)));
+                                // the compressed message header is only written if the response exceeds the compression threshold
+                                os = new CompressingMessageOutputStream(underlying, responseCodec, finalResponseCodecId, finalResponseCompressLevel, CompressionCodecs.THRESHOLD);
                             } else {
                                 os = underlying;
                             }
                             os.writeByte(Protocol.INVOCATION_RESPONSE);
-                            os.writeShort(invId);
+                            Protocol.writeInvocationId(os, version, invId);
                             if (version >= 3) {
                                 os.writeByte(txnCmd);
                                 int updateBits = 0;
@@ -924,6 +1313,9 @@ final class EJBServerChannel {
                                 if (strongAffinityUpdate != null) {
                                     updateBits |= Protocol.UPDATE_BIT_STRONG_AFFINITY;
                                 }
+                                if (resultStream != null) {
+                                    updateBits |= Protocol.UPDATE_BIT_STREAM_FOLLOWS;
+                                }
                                 os.writeByte(updateBits);
                                 if (sessionId != null) {
                                     final byte[] bytes = sessionId.getEncodedForm();
@@ -943,9 +1335,10 @@ final class EJBServerChannel {
                                     os.write(bytes);
                                 }
                             }
-                            final Marshaller marshaller = marshallerFactory.createMarshaller(configuration);
+                            final Marshaller marshaller = marshallerPool.getMarshaller();
                             marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(os)));
-                            marshaller.writeObject(result);
+                            // streamed content follows in a separate message
+                            marshaller.writeObject(resultStream != null ? ProtocolV4ObjectTable.STREAM_MARKER : result);
                             attachments.remove(EJBClient.SOURCE_ADDRESS_KEY);
                             if (version >= 3) {
                                 attachments.remove(Affinity.WEAK_AFFINITY_CONTEXT_KEY);
@@ -965,12 +1358,25 @@ final class EJBServerChannel {
                                 }
                             }
                             marshaller.finish();
+                            marshallerPool.returnMarshaller(marshaller);
                             os.close();
+                            written = true;
                         } catch (IOException e) {
                             // nothing to do at this point; the client doesn't want the response
                             Logs.REMOTING.trace("EJB response write failed", e);
                         } finally {
-                            invocations.removeKey(invId);
+                            requestFinished();
+                        }
+                        if (resultStream != null) {
+                            if (written) {
+                                try (MessageOutputStream out = messageTracker.openMessageUninterruptibly()) {
+                                    RemoteStreams.writeStream(out, version, invId, 0, resultStream);
+                                } catch (IOException e) {
+                                    Logs.REMOTING.trace("EJB stream result write failed", e);
+                                }
+                            } else {
+                                safeClose(resultStream);
+                            }
                         }
                     }
 
@@ -986,7 +1392,7 @@ final class EJBServerChannel {
             }
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.PROCEED_ASYNC_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB async response write failed", e);
@@ -1002,13 +1408,13 @@ final class EJBServerChannel {
             final String message = Logs.REMOTING.remoteMessageNoSuchMethod(methodLocator, identifier);
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.NO_SUCH_METHOD);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 os.writeUTF(message);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
@@ -1016,13 +1422,13 @@ final class EJBServerChannel {
             final String message = Logs.REMOTING.remoteMessageSessionNotActive(methodLocator, identifier);
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.NO_SUCH_METHOD);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
                 os.writeUTF(message);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             }
         }
 
@@ -1042,41 +1448,18 @@ final class EJBServerChannel {
         void writeCancellation() {
             if (version >= 3) try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.CANCEL_RESPONSE);
-                os.writeShort(invId);
+                Protocol.writeInvocationId(os, version, invId);
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
                 Logs.REMOTING.trace("EJB response write failed", e);
             } finally {
-                invocations.removeKey(invId);
+                requestFinished();
             } else {
                 writeFailure(Logs.REMOTING.requestCancelled());
             }
         }
     }
 
-    private static Method findMethod(final Class componentView, final EJBMethodLocator ejbMethodLocator) {
-        final Method[] viewMethods = componentView.getMethods();
-        for (final Method method : viewMethods) {
-            if (method.getName().equals(ejbMethodLocator.getMethodName())) {
-                final Class<?>[] methodParamTypes = method.getParameterTypes();
-                if (methodParamTypes.length != ejbMethodLocator.getParameterCount()) {
-                    continue;
-                }
-                boolean found = true;
-                for (int i = 0; i < methodParamTypes.length; i++) {
-                    if (!methodParamTypes[i].getName().equals(ejbMethodLocator.getParameterTypeName(i))) {
-                        found = false;
-                        break;
-                    }
-                }
-                if (found) {
-                    return method;
-                }
-            }
-        }
-        return null;
-    }
-
     static final class InProgress {
         private final RemotingInvocationRequest incomingInvocation;
         private CancelHandle cancelHandle;
@@ -1173,6 +1556,9 @@ final class EJBServerChannel {
                             os.writeUTF(mappingInfo.getDestinationAddress());
                             os.writeShort(mappingInfo.getDestinationPort());
                         }
+                        if (version >= 4) {
+                            writeNodeLoad(os, nodeInfo);
+                        }
                     }
                 }
             } catch (IOException e) {
@@ -1216,6 +1602,27 @@ final class EJBServerChannel {
                         os.writeUTF(mappingInfo.getDestinationAddress());
                         os.writeShort(mappingInfo.getDestinationPort());
                     }
+                    if (version >= 4) {
+                        writeNodeLoad(os, nodeInfo);
+                    }
+                }
+            } catch (IOException e) {
+                // nothing to do at this point; the client doesn't want the response
+                Logs.REMOTING.trace("EJB cluster message write failed", e);
+            }
+        }
+
+        public void clusterNodesLoadChanged(final List<NodeInfo> nodeInfoList) {
+            if (version < 4) {
+                // older clients would not understand the message
+                return;
+            }
+            try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
+                os.writeByte(Protocol.CLUSTER_NODE_LOAD);
+                PackedInteger.writePackedInteger(os, nodeInfoList.size());
+                for (NodeInfo nodeInfo : nodeInfoList) {
+                    os.writeUTF(nodeInfo.getNodeName());
+                    writeNodeLoad(os, nodeInfo);
                 }
             } catch (IOException e) {
                 // nothing to do at this point; the client doesn't want the response
@@ -1223,6 +1630,13 @@ final class EJBServerChannel {
             }
         }
 
+        private void writeNodeLoad(final MessageOutputStream os, final NodeInfo nodeInfo) throws IOException {
+            final String zone = nodeInfo.getZone();
+            os.writeUTF(zone == null ? "" : zone);
+            final int loadFactor = nodeInfo.getLoadFactor();
+            os.writeByte(loadFactor < 0 ? Protocol.NO_LOAD_FACTOR : loadFactor);
+        }
+
         public void clusterNodesRemoved(final List<ClusterRemovalInfo> clusterRemovalInfoList) {
             try (MessageOutputStream os = messageTracker.openMessageUninterruptibly()) {
                 os.writeByte(Protocol.CLUSTER_TOPOLOGY_NODE_REMOVAL);
@@ -1272,4 +1686,31 @@ final class EJBServerChannel {
             }
         }
     }
+
+    static final class ImportedTransaction {
+        private final int handle;
+        private final SimpleXid xid;
+        private volatile LocalTransaction transaction;
+
+        ImportedTransaction(final int handle, final SimpleXid xid) {
+            this.handle = handle;
+            this.xid = xid;
+        }
+
+        int getHandle() {
+            return handle;
+        }
+
+        SimpleXid getXid() {
+            return xid;
+        }
+
+        LocalTransaction getTransaction() {
+            return transaction;
+        }
+
+        void setTransaction(final LocalTransaction transaction) {
+            this.transaction = transaction;
+        }
+    }
 }
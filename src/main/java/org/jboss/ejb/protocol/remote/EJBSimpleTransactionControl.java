@@ -30,7 +30,6 @@ import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.Unmarshaller;
 import org.jboss.remoting3.MessageInputStream;
 import org.jboss.remoting3.MessageOutputStream;
-import org.jboss.remoting3.util.BlockingInvocation;
 import org.jboss.remoting3.util.InvocationTracker;
 import org.wildfly.transaction.client._private.Log;
 import org.wildfly.transaction.client.provider.remoting.SimpleIdResolver;
@@ -70,7 +69,7 @@ class EJBSimpleTransactionControl implements SimpleTransactionControl {
         final EJBTransactionOperations.PlainTransactionInvocation invocation = invocationTracker.addInvocation(EJBTransactionOperations.PlainTransactionInvocation::new);
         try (MessageOutputStream os = invocationTracker.allocateMessage(invocation)) {
             os.writeByte(type);
-            os.writeShort(invocation.getIndex());
+            Protocol.writeInvocationId(os, channel.getVersion(), invocation.getIndex());
             final byte[] encoded = transactionID.getEncodedForm();
             PackedInteger.writePackedInteger(os, encoded.length);
             os.write(encoded);
@@ -80,7 +79,7 @@ class EJBSimpleTransactionControl implements SimpleTransactionControl {
         } catch (IOException e) {
             throw new SystemException();
         }
-        try (BlockingInvocation.Response response = invocation.getResponse()) {
+        try (AwaitableInvocation.Response response = invocation.getResponse()) {
             switch (response.getParameter()) {
                 case Protocol.TXN_RESPONSE: {
                     final MessageInputStream inputStream = response.getInputStream();
@@ -107,7 +106,7 @@ class EJBSimpleTransactionControl implements SimpleTransactionControl {
         }
     }
 
-    static SystemException readAppException(final EJBClientChannel channel, final BlockingInvocation.Response response) throws SystemException {
+    static SystemException readAppException(final EJBClientChannel channel, final AwaitableInvocation.Response response) throws SystemException {
         Exception e;
         try (final Unmarshaller unmarshaller = channel.createUnmarshaller()) {
             try (MessageInputStream inputStream = response.getInputStream()) {
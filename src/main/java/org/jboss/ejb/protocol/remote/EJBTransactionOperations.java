@@ -19,6 +19,8 @@
 package org.jboss.ejb.protocol.remote;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import javax.transaction.SystemException;
 import javax.transaction.xa.XAException;
@@ -34,16 +36,14 @@ import org.jboss.remoting3.Connection;
 import org.jboss.remoting3.ConnectionPeerIdentity;
 import org.jboss.remoting3.MessageInputStream;
 import org.jboss.remoting3.MessageOutputStream;
-import org.jboss.remoting3.util.BlockingInvocation;
 import org.jboss.remoting3.util.InvocationTracker;
 import org.jboss.remoting3.util.StreamUtils;
-import org.wildfly.transaction.client.provider.remoting.RemotingOperations;
 import org.wildfly.transaction.client.spi.SimpleTransactionControl;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-class EJBTransactionOperations implements RemotingOperations {
+class EJBTransactionOperations implements AsyncRemotingOperations {
     private final EJBClientChannel channel;
 
     EJBTransactionOperations(final Connection connection) throws IOException {
@@ -86,39 +86,61 @@ class EJBTransactionOperations implements RemotingOperations {
         executeSimpleInvocation(new XidTransactionID(xid), Protocol.TXN_COMMIT_REQUEST, false, true, onePhase);
     }
 
+    public int beforeCompletionAndPrepare(final Xid xid, final ConnectionPeerIdentity peerIdentity) throws XAException {
+        assert peerIdentity.getId() == 0;
+        final XidTransactionID transactionID = new XidTransactionID(xid);
+        if (channel.getVersion() < 4) {
+            executeSimpleInvocation(transactionID, Protocol.TXN_BEFORE_COMPLETION_REQUEST, false, false, false);
+            return executeSimpleInvocation(transactionID, Protocol.TXN_PREPARE_REQUEST, true, false, false);
+        }
+        return executeSimpleInvocation(transactionID, Protocol.TXN_BEFORE_COMPLETION_PREPARE_REQUEST, true, false, false);
+    }
+
+    public CompletionStage<Void> rollbackAsync(final Xid xid, final ConnectionPeerIdentity peerIdentity) {
+        assert peerIdentity.getId() == 0;
+        return executeSimpleInvocationAsync(new XidTransactionID(xid), Protocol.TXN_ROLLBACK_REQUEST, false, false, false).thenApply(ignored -> null);
+    }
+
+    public CompletionStage<Void> beforeCompletionAsync(final Xid xid, final ConnectionPeerIdentity peerIdentity) {
+        assert peerIdentity.getId() == 0;
+        return executeSimpleInvocationAsync(new XidTransactionID(xid), Protocol.TXN_BEFORE_COMPLETION_REQUEST, false, false, false).thenApply(ignored -> null);
+    }
+
+    public CompletionStage<Integer> prepareAsync(final Xid xid, final ConnectionPeerIdentity peerIdentity) {
+        assert peerIdentity.getId() == 0;
+        return executeSimpleInvocationAsync(new XidTransactionID(xid), Protocol.TXN_PREPARE_REQUEST, true, false, false);
+    }
+
+    public CompletionStage<Integer> beforeCompletionAndPrepareAsync(final Xid xid, final ConnectionPeerIdentity peerIdentity) {
+        assert peerIdentity.getId() == 0;
+        final XidTransactionID transactionID = new XidTransactionID(xid);
+        if (channel.getVersion() < 4) {
+            return executeSimpleInvocationAsync(transactionID, Protocol.TXN_BEFORE_COMPLETION_REQUEST, false, false, false)
+                .thenCompose(ignored -> executeSimpleInvocationAsync(transactionID, Protocol.TXN_PREPARE_REQUEST, true, false, false));
+        }
+        return executeSimpleInvocationAsync(transactionID, Protocol.TXN_BEFORE_COMPLETION_PREPARE_REQUEST, true, false, false);
+    }
+
+    public CompletionStage<Void> forgetAsync(final Xid xid, final ConnectionPeerIdentity peerIdentity) {
+        assert peerIdentity.getId() == 0;
+        return executeSimpleInvocationAsync(new XidTransactionID(xid), Protocol.TXN_FORGET_REQUEST, false, false, false).thenApply(ignored -> null);
+    }
+
+    public CompletionStage<Void> commitAsync(final Xid xid, final boolean onePhase, final ConnectionPeerIdentity peerIdentity) {
+        assert peerIdentity.getId() == 0;
+        return executeSimpleInvocationAsync(new XidTransactionID(xid), Protocol.TXN_COMMIT_REQUEST, false, true, onePhase).thenApply(ignored -> null);
+    }
+
     private int executeSimpleInvocation(final TransactionID transactionID, int type, boolean withAnswer, boolean withParam, boolean param) throws XAException {
         final InvocationTracker invocationTracker = channel.getInvocationTracker();
         final PlainTransactionInvocation invocation = invocationTracker.addInvocation(PlainTransactionInvocation::new);
         try (MessageOutputStream os = invocationTracker.allocateMessage(invocation)) {
-            os.writeByte(type);
-            os.writeShort(invocation.getIndex());
-            final byte[] encoded = transactionID.getEncodedForm();
-            PackedInteger.writePackedInteger(os, encoded.length);
-            os.write(encoded);
-            if (withParam) {
-                os.writeBoolean(param);
-            }
+            writeRequest(os, invocation.getIndex(), transactionID, type, withParam, param);
         } catch (IOException e) {
             throw new XAException(XAException.XAER_RMERR);
         }
-        try (BlockingInvocation.Response response = invocation.getResponse()) {
-            switch (response.getParameter()) {
-                case Protocol.TXN_RESPONSE: {
-                    final MessageInputStream inputStream = response.getInputStream();
-                    boolean flag = inputStream.readBoolean();
-                    if (flag != withAnswer) {
-                        // unrecognized parameter
-                        throw new XAException(XAException.XAER_RMFAIL);
-                    }
-                    return flag ? StreamUtils.readPackedSignedInt32(inputStream) : 0;
-                }
-                case Protocol.APPLICATION_EXCEPTION: {
-                    throw readAppException(channel, response);
-                }
-                default: {
-                    throw new XAException(XAException.XAER_RMFAIL);
-                }
-            }
+        try (AwaitableInvocation.Response response = invocation.getResponse()) {
+            return readResponse(response, withAnswer);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             invocation.cancel();
@@ -128,7 +150,65 @@ class EJBTransactionOperations implements RemotingOperations {
         }
     }
 
-    static XAException readAppException(final EJBClientChannel channel, final BlockingInvocation.Response response) throws XAException {
+    private CompletableFuture<Integer> executeSimpleInvocationAsync(final TransactionID transactionID, int type, boolean withAnswer, boolean withParam, boolean param) {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        final InvocationTracker invocationTracker = channel.getInvocationTracker();
+        final FutureInvocation invocation = invocationTracker.addInvocation(FutureInvocation::new);
+        try (MessageOutputStream os = invocationTracker.allocateMessage(invocation)) {
+            writeRequest(os, invocation.getIndex(), transactionID, type, withParam, param);
+        } catch (IOException e) {
+            result.completeExceptionally(new XAException(XAException.XAER_RMERR));
+            return result;
+        }
+        // read the answer off the thread which delivered it
+        invocation.getFuture().whenCompleteAsync((answer, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(new XAException(XAException.XAER_RMERR));
+                return;
+            }
+            try (AwaitableInvocation.Response response = answer) {
+                result.complete(Integer.valueOf(readResponse(response, withAnswer)));
+            } catch (XAException e) {
+                result.completeExceptionally(e);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(new XAException(XAException.XAER_RMERR));
+            }
+        }, channel.getChannel().getConnection().getEndpoint().getXnioWorker());
+        return result;
+    }
+
+    private void writeRequest(final MessageOutputStream os, final int index, final TransactionID transactionID, final int type, final boolean withParam, final boolean param) throws IOException {
+        os.writeByte(type);
+        Protocol.writeInvocationId(os, channel.getVersion(), index);
+        final byte[] encoded = transactionID.getEncodedForm();
+        PackedInteger.writePackedInteger(os, encoded.length);
+        os.write(encoded);
+        if (withParam) {
+            os.writeBoolean(param);
+        }
+    }
+
+    private int readResponse(final AwaitableInvocation.Response response, final boolean withAnswer) throws XAException, IOException {
+        switch (response.getParameter()) {
+            case Protocol.TXN_RESPONSE: {
+                final MessageInputStream inputStream = response.getInputStream();
+                boolean flag = inputStream.readBoolean();
+                if (flag != withAnswer) {
+                    // unrecognized parameter
+                    throw new XAException(XAException.XAER_RMFAIL);
+                }
+                return flag ? StreamUtils.readPackedSignedInt32(inputStream) : 0;
+            }
+            case Protocol.APPLICATION_EXCEPTION: {
+                throw readAppException(channel, response);
+            }
+            default: {
+                throw new XAException(XAException.XAER_RMFAIL);
+            }
+        }
+    }
+
+    static XAException readAppException(final EJBClientChannel channel, final AwaitableInvocation.Response response) throws XAException {
         Exception e;
         try (final Unmarshaller unmarshaller = channel.createUnmarshaller()) {
             try (MessageInputStream inputStream = response.getInputStream()) {
@@ -158,7 +238,7 @@ class EJBTransactionOperations implements RemotingOperations {
         }
     }
 
-    static class PlainTransactionInvocation extends BlockingInvocation {
+    static class PlainTransactionInvocation extends AwaitableInvocation {
         PlainTransactionInvocation(final int index) {
             super(index);
         }
@@ -170,13 +250,13 @@ class EJBTransactionOperations implements RemotingOperations {
         final PlainTransactionInvocation invocation = invocationTracker.addInvocation(PlainTransactionInvocation::new);
         try (MessageOutputStream os = invocationTracker.allocateMessage(invocation)) {
             os.writeByte(Protocol.TXN_RECOVERY_REQUEST);
-            os.writeShort(invocation.getIndex());
+            Protocol.writeInvocationId(os, channel.getVersion(), invocation.getIndex());
             os.writeUTF(parentName);
             os.writeInt(flag);
         } catch (IOException e) {
             throw new XAException(XAException.XAER_RMERR);
         }
-        try (BlockingInvocation.Response response = invocation.getResponse()) {
+        try (AwaitableInvocation.Response response = invocation.getResponse()) {
             switch (response.getParameter()) {
                 case Protocol.TXN_RECOVERY_RESPONSE: {
                     final MessageInputStream inputStream = response.getInputStream();
@@ -186,7 +266,7 @@ class EJBTransactionOperations implements RemotingOperations {
                     final Unmarshaller unmarshaller = channel.createUnmarshaller();
                     unmarshaller.start(Marshalling.createByteInput(inputStream));
                     for (int i = 0; i < count; i ++) {
-                        xids[i ++] = unmarshaller.readObject(XidTransactionID.class).getXid();
+                        xids[i] = unmarshaller.readObject(XidTransactionID.class).getXid();
                     }
                     unmarshaller.finish();
                     return xids;
@@ -207,6 +287,14 @@ class EJBTransactionOperations implements RemotingOperations {
         }
     }
 
+    public RecoveryIterator recoverIterator(final int flag, final String parentName, final ConnectionPeerIdentity peerIdentity) throws XAException {
+        assert peerIdentity.getId() == 0;
+        if (channel.getVersion() < 4) {
+            return new RecoveryScanIterator(channel, recover(flag, parentName, peerIdentity));
+        }
+        return new RecoveryScanIterator(channel, flag, parentName, RecoveryScanIterator.BATCH_SIZE);
+    }
+
     public SimpleTransactionControl begin(final ConnectionPeerIdentity peerIdentity) throws SystemException {
         assert peerIdentity.getId() == 0;
         return new EJBSimpleTransactionControl(channel);
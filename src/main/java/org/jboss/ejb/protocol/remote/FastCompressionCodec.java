@@ -0,0 +1,413 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * The built-in {@code fast} codec, a pure-Java LZ77 block codec which trades compression ratio for much lower CPU
+ * usage than {@code deflate}.  The compression level is ignored.
+ * <p>
+ * The compressed stream is a sequence of blocks, each of which starts with the packed uncompressed length (at most
+ * 64 KiB) and the packed encoded length; an encoded length of zero means that the block is stored as-is.  An
+ * uncompressed length of zero ends the stream.  An encoded block is a sequence of LZ4-style sequences: a token byte
+ * whose high nibble is the literal count and whose low nibble is the match length minus four (a nibble of 15 is
+ * followed by extension bytes which are summed until one is less than 255), the literal bytes, then a two-byte
+ * little-endian match offset.  The final sequence of a block consists of literals only.
+ */
+final class FastCompressionCodec implements CompressionCodec {
+
+    static final String NAME = "fast";
+
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 14;
+    private static final int MAX_ENCODED_SIZE = BLOCK_SIZE + BLOCK_SIZE / 255 + 16;
+
+    private final ArrayBlockingQueue<Buffers> pool;
+
+    FastCompressionCodec(final int poolSize) {
+        pool = poolSize > 0 ? new ArrayBlockingQueue<>(poolSize) : null;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public OutputStream compress(final OutputStream out, final int level) {
+        return new CompressingStream(out, getBuffers());
+    }
+
+    public InputStream decompress(final InputStream in) {
+        return new DecompressingStream(in, getBuffers());
+    }
+
+    private Buffers getBuffers() {
+        final ArrayBlockingQueue<Buffers> pool = this.pool;
+        final Buffers buffers = pool == null ? null : pool.poll();
+        return buffers == null ? new Buffers() : buffers;
+    }
+
+    private void release(final Buffers buffers) {
+        final ArrayBlockingQueue<Buffers> pool = this.pool;
+        if (pool != null) {
+            pool.offer(buffers);
+        }
+    }
+
+    static final class Buffers {
+        final byte[] raw = new byte[BLOCK_SIZE];
+        final byte[] encoded = new byte[MAX_ENCODED_SIZE];
+        final int[] table = new int[1 << HASH_BITS];
+    }
+
+    // block encoding
+
+    private static int readInt(final byte[] b, final int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(final int value) {
+        return (value * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static int writeLength(final byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op ++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op ++] = (byte) length;
+        return op;
+    }
+
+    private static int writeSequence(final byte[] dst, int op, final byte[] src, final int anchor, final int literals, final int offset, final int matchLength) {
+        final int matchCode = matchLength - MIN_MATCH;
+        final int tokenPos = op ++;
+        int token = (literals >= 15 ? 15 : literals) << 4;
+        if (literals >= 15) {
+            op = writeLength(dst, op, literals - 15);
+        }
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        if (offset > 0) {
+            dst[op ++] = (byte) offset;
+            dst[op ++] = (byte) (offset >>> 8);
+            token |= matchCode >= 15 ? 15 : matchCode;
+            if (matchCode >= 15) {
+                op = writeLength(dst, op, matchCode - 15);
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    /**
+     * Encode a block.
+     *
+     * @param src the uncompressed data
+     * @param length the uncompressed length
+     * @param dst the destination, which must hold at least {@code MAX_ENCODED_SIZE} bytes
+     * @param table the hash table
+     * @return the encoded length
+     */
+    static int encodeBlock(final byte[] src, final int length, final byte[] dst, final int[] table) {
+        Arrays.fill(table, -1);
+        final int limit = length - MIN_MATCH;
+        int ip = 0;
+        int anchor = 0;
+        int op = 0;
+        while (ip <= limit) {
+            final int value = readInt(src, ip);
+            final int h = hash(value);
+            final int ref = table[h];
+            table[h] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != value) {
+                // skip ahead faster through data which does not compress
+                ip += 1 + ((ip - anchor) >>> 6);
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < length && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength ++;
+            }
+            op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+        if (anchor < length) {
+            op = writeSequence(dst, op, src, anchor, length - anchor, 0, 0);
+        }
+        return op;
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt compressed block");
+    }
+
+    /**
+     * Decode a block.
+     *
+     * @param src the encoded data
+     * @param encodedLength the encoded length
+     * @param dst the destination
+     * @param length the uncompressed length
+     * @throws IOException if the block is corrupt
+     */
+    static void decodeBlock(final byte[] src, final int encodedLength, final byte[] dst, final int length) throws IOException {
+        int ip = 0;
+        int op = 0;
+        while (op < length) {
+            if (ip >= encodedLength) throw corrupt();
+            final int token = src[ip ++] & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (ip >= encodedLength) throw corrupt();
+                    b = src[ip ++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > encodedLength - ip || literals > length - op) throw corrupt();
+            System.arraycopy(src, ip, dst, op, literals);
+            ip += literals;
+            op += literals;
+            if (op == length) {
+                break;
+            }
+            if (ip + 2 > encodedLength) throw corrupt();
+            final int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+            ip += 2;
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (ip >= encodedLength) throw corrupt();
+                    b = src[ip ++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (offset == 0 || offset > op || matchLength > length - op) throw corrupt();
+            // byte by byte, since the match may overlap its own output
+            int ref = op - offset;
+            for (int i = 0; i < matchLength; i ++) {
+                dst[op ++] = dst[ref ++];
+            }
+        }
+        if (ip != encodedLength) throw corrupt();
+    }
+
+    // packed lengths
+
+    private static void writePacked(final OutputStream out, int value) throws IOException {
+        while (value > 0x7f) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readPacked(final InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw corrupt();
+    }
+
+    private static void readFully(final InputStream in, final byte[] b, final int length) throws IOException {
+        int pos = 0;
+        while (pos < length) {
+            final int res = in.read(b, pos, length - pos);
+            if (res == -1) {
+                throw new EOFException();
+            }
+            pos += res;
+        }
+    }
+
+    final class CompressingStream extends OutputStream {
+        private final OutputStream out;
+        private Buffers buffers;
+        private int count;
+
+        CompressingStream(final OutputStream out, final Buffers buffers) {
+            this.out = out;
+            this.buffers = buffers;
+        }
+
+        private Buffers getBuffers() throws IOException {
+            final Buffers buffers = this.buffers;
+            if (buffers == null) {
+                throw new IOException("Stream closed");
+            }
+            return buffers;
+        }
+
+        public void write(final int b) throws IOException {
+            final Buffers buffers = getBuffers();
+            buffers.raw[count ++] = (byte) b;
+            if (count == BLOCK_SIZE) {
+                writeBlock(buffers);
+            }
+        }
+
+        public void write(final byte[] b, int off, int len) throws IOException {
+            final Buffers buffers = getBuffers();
+            while (len > 0) {
+                final int cnt = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, buffers.raw, count, cnt);
+                count += cnt;
+                off += cnt;
+                len -= cnt;
+                if (count == BLOCK_SIZE) {
+                    writeBlock(buffers);
+                }
+            }
+        }
+
+        private void writeBlock(final Buffers buffers) throws IOException {
+            final int count = this.count;
+            if (count == 0) {
+                return;
+            }
+            this.count = 0;
+            writePacked(out, count);
+            final int encodedLength = encodeBlock(buffers.raw, count, buffers.encoded, buffers.table);
+            if (encodedLength < count) {
+                writePacked(out, encodedLength);
+                out.write(buffers.encoded, 0, encodedLength);
+            } else {
+                writePacked(out, 0);
+                out.write(buffers.raw, 0, count);
+            }
+        }
+
+        public void flush() throws IOException {
+            writeBlock(getBuffers());
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            final Buffers buffers = this.buffers;
+            if (buffers == null) {
+                return;
+            }
+            this.buffers = null;
+            try {
+                writeBlock(buffers);
+                writePacked(out, 0);
+                out.close();
+            } finally {
+                release(buffers);
+            }
+        }
+    }
+
+    final class DecompressingStream extends InputStream {
+        private final InputStream in;
+        private Buffers buffers;
+        private int pos;
+        private int limit;
+        private boolean eof;
+
+        DecompressingStream(final InputStream in, final Buffers buffers) {
+            this.in = in;
+            this.buffers = buffers;
+        }
+
+        private boolean fill() throws IOException {
+            final Buffers buffers = this.buffers;
+            if (buffers == null) {
+                throw new IOException("Stream closed");
+            }
+            while (pos == limit) {
+                if (eof) {
+                    return false;
+                }
+                final int length = readPacked(in);
+                if (length == 0) {
+                    eof = true;
+                    return false;
+                }
+                if (length > BLOCK_SIZE) throw corrupt();
+                final int encodedLength = readPacked(in);
+                if (encodedLength == 0) {
+                    readFully(in, buffers.raw, length);
+                } else {
+                    if (encodedLength > MAX_ENCODED_SIZE) throw corrupt();
+                    readFully(in, buffers.encoded, encodedLength);
+                    decodeBlock(buffers.encoded, encodedLength, buffers.raw, length);
+                }
+                pos = 0;
+                limit = length;
+            }
+            return true;
+        }
+
+        public int read() throws IOException {
+            return fill() ? buffers.raw[pos ++] & 0xff : -1;
+        }
+
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (! fill()) {
+                return -1;
+            }
+            final int cnt = Math.min(len, limit - pos);
+            System.arraycopy(buffers.raw, pos, b, off, cnt);
+            pos += cnt;
+            return cnt;
+        }
+
+        public int available() throws IOException {
+            return buffers == null ? 0 : limit - pos;
+        }
+
+        public void close() throws IOException {
+            final Buffers buffers = this.buffers;
+            if (buffers == null) {
+                return;
+            }
+            this.buffers = null;
+            try {
+                in.close();
+            } finally {
+                release(buffers);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.xnio.IoUtils.safeClose;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+
+import org.jboss.remoting3.MessageInputStream;
+import org.jboss.remoting3.util.Invocation;
+
+/**
+ * An invocation whose response completes a future instead of waking a blocked caller.  The future is completed on
+ * the thread which delivers the response, so dependent actions which do more than a little work should run
+ * asynchronously.
+ */
+class FutureInvocation extends Invocation {
+    private final CompletableFuture<AwaitableInvocation.Response> future = new CompletableFuture<>();
+
+    FutureInvocation(final int index) {
+        super(index);
+    }
+
+    public void handleResponse(final int parameter, final MessageInputStream inputStream) {
+        if (! future.complete(new AwaitableInvocation.Response(parameter, inputStream))) {
+            // nobody is waiting for it anymore
+            safeClose(inputStream);
+        }
+    }
+
+    public void handleClosed() {
+        future.completeExceptionally(new ClosedChannelException());
+    }
+
+    public void handleException(final IOException cause) {
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * Get the future response to this invocation.  The future fails with an {@link IOException} if the invocation
+     * failed or the channel was closed before a response arrived.
+     *
+     * @return the future response (not {@code null})
+     */
+    CompletableFuture<AwaitableInvocation.Response> getFuture() {
+        return future;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.io.IOException;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.jboss.ejb._private.Logs;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerFactory;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+
+/**
+ * A bounded pool of reusable marshallers and unmarshallers which share a single configuration.  Instances
+ * are only returned to the pool after a successful {@code finish()}, at which point their instance and class
+ * caches are cleared so that every message remains self-contained on the wire, exactly as if a new instance had
+ * been created for it.  Instances which were not finished cleanly are simply dropped.
+ */
+final class MarshallerPool {
+
+    /**
+     * The default maximum number of idle marshallers (and, separately, unmarshallers) to retain per channel.
+     * A value of zero disables pooling.
+     */
+    static final int DEFAULT_POOL_SIZE = doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.marshaller.pool.size", "8"))).intValue();
+
+    private final MarshallerFactory marshallerFactory;
+    private final MarshallingConfiguration configuration;
+    private final ArrayBlockingQueue<Marshaller> marshallers;
+    private final ArrayBlockingQueue<Unmarshaller> unmarshallers;
+
+    MarshallerPool(final MarshallerFactory marshallerFactory, final MarshallingConfiguration configuration, final int size) {
+        this.marshallerFactory = marshallerFactory;
+        this.configuration = configuration;
+        if (size > 0) {
+            marshallers = new ArrayBlockingQueue<>(size);
+            unmarshallers = new ArrayBlockingQueue<>(size);
+        } else {
+            marshallers = null;
+            unmarshallers = null;
+        }
+    }
+
+    MarshallerPool(final MarshallerFactory marshallerFactory, final MarshallingConfiguration configuration) {
+        this(marshallerFactory, configuration, DEFAULT_POOL_SIZE);
+    }
+
+    Marshaller getMarshaller() throws IOException {
+        final ArrayBlockingQueue<Marshaller> marshallers = this.marshallers;
+        if (marshallers != null) {
+            final Marshaller marshaller = marshallers.poll();
+            if (marshaller != null) {
+                return marshaller;
+            }
+        }
+        return marshallerFactory.createMarshaller(configuration);
+    }
+
+    /**
+     * Return a marshaller to the pool.  The marshaller must have been {@linkplain Marshaller#finish() finished}.
+     *
+     * @param marshaller the marshaller to return
+     */
+    void returnMarshaller(final Marshaller marshaller) {
+        final ArrayBlockingQueue<Marshaller> marshallers = this.marshallers;
+        if (marshallers == null) {
+            return;
+        }
+        try {
+            marshaller.clearInstanceCache();
+            marshaller.clearClassCache();
+        } catch (IOException e) {
+            Logs.REMOTING.trace("Discarding marshaller which could not be reset", e);
+            return;
+        }
+        marshallers.offer(marshaller);
+    }
+
+    Unmarshaller getUnmarshaller() throws IOException {
+        final ArrayBlockingQueue<Unmarshaller> unmarshallers = this.unmarshallers;
+        if (unmarshallers != null) {
+            final Unmarshaller unmarshaller = unmarshallers.poll();
+            if (unmarshaller != null) {
+                return unmarshaller;
+            }
+        }
+        return marshallerFactory.createUnmarshaller(configuration);
+    }
+
+    /**
+     * Return an unmarshaller to the pool.  The unmarshaller must have been {@linkplain Unmarshaller#finish() finished}.
+     *
+     * @param unmarshaller the unmarshaller to return
+     */
+    void returnUnmarshaller(final Unmarshaller unmarshaller) {
+        final ArrayBlockingQueue<Unmarshaller> unmarshallers = this.unmarshallers;
+        if (unmarshallers == null) {
+            return;
+        }
+        try {
+            unmarshaller.clearInstanceCache();
+            unmarshaller.clearClassCache();
+        } catch (IOException e) {
+            Logs.REMOTING.trace("Discarding unmarshaller which could not be reset", e);
+            return;
+        }
+        unmarshallers.offer(unmarshaller);
+    }
+}
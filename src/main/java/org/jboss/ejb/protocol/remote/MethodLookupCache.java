@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.ejb.client.EJBMethodLocator;
+import org.jboss.ejb.client.EJBModuleIdentifier;
+
+/**
+ * A server side index of the methods of EJB views by method locator.  Each view is indexed lazily on its first lookup;
+ * the index of every view of a module is dropped when the module becomes unavailable.  Views are only weakly reachable
+ * from the cache, so the classes of a module which is undeployed without notice can still be unloaded, and such modules
+ * are forgotten once the number of tracked modules reaches its limit.
+ */
+final class MethodLookupCache {
+
+    private static final int MAX_SIGNATURES = 1024;
+
+    private static final int MAX_MODULES = 1024;
+
+    private static final ClassValue<Map<EJBMethodLocator, Method>> methodIndex = new ClassValue<Map<EJBMethodLocator, Method>>() {
+        protected Map<EJBMethodLocator, Method> computeValue(final Class<?> type) {
+            final Method[] methods = type.getMethods();
+            final Map<EJBMethodLocator, Method> index = new HashMap<>(methods.length);
+            for (Method method : methods) {
+                // first match wins, as with a linear scan
+                index.putIfAbsent(EJBMethodLocator.forMethod(method), method);
+            }
+            return Collections.unmodifiableMap(index);
+        }
+    };
+
+    private static final ConcurrentHashMap<EJBModuleIdentifier, Set<Class<?>>> viewsByModule = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, String[]> parameterTypeNamesBySignature = new ConcurrentHashMap<>();
+
+    private static final String[] NO_STRINGS = new String[0];
+
+    private MethodLookupCache() {
+    }
+
+    /**
+     * Find the method of a view with the given locator.
+     *
+     * @param module the module of the view
+     * @param view the view class
+     * @param methodLocator the method locator
+     * @return the method, or {@code null} if the view has no such method
+     */
+    static Method findMethod(final EJBModuleIdentifier module, final Class<?> view, final EJBMethodLocator methodLocator) {
+        Set<Class<?>> views = viewsByModule.get(module);
+        if (views == null && viewsByModule.size() >= MAX_MODULES) {
+            // drop the modules whose views have all been unloaded
+            viewsByModule.values().removeIf(Set::isEmpty);
+        }
+        if (views == null && viewsByModule.size() < MAX_MODULES) {
+            views = viewsByModule.computeIfAbsent(module, ignored -> Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>())));
+        }
+        if (views != null) {
+            views.add(view);
+        }
+        // an untracked view is still indexed; its index just goes away with the class instead of with the module
+        return methodIndex.get(view).get(methodLocator);
+    }
+
+    /**
+     * Drop the method indexes of every view of the given modules.
+     *
+     * @param modules the modules which have become unavailable
+     */
+    static void invalidate(final List<EJBModuleIdentifier> modules) {
+        for (EJBModuleIdentifier module : modules) {
+            final Set<Class<?>> views = viewsByModule.remove(module);
+            if (views != null) {
+                synchronized (views) {
+                    for (Class<?> view : views) {
+                        methodIndex.remove(view);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of modules whose views are tracked.
+     *
+     * @return the number of modules
+     */
+    static int getModuleCount() {
+        return viewsByModule.size();
+    }
+
+    /**
+     * Get the parameter type names of a protocol version 1 or 2 method signature string.  The returned array must not
+     * be modified.
+     *
+     * @param signature the signature string
+     * @return the parameter type names
+     */
+    static String[] getParameterTypeNames(final String signature) {
+        if (signature.isEmpty()) {
+            return NO_STRINGS;
+        }
+        String[] names = parameterTypeNamesBySignature.get(signature);
+        if (names == null) {
+            names = signature.split(String.valueOf(EJBServerChannel.METHOD_PARAM_TYPE_SEPARATOR));
+            if (parameterTypeNamesBySignature.size() < MAX_SIGNATURES) {
+                parameterTypeNamesBySignature.putIfAbsent(signature, names);
+            }
+        }
+        return names;
+    }
+}
@@ -52,12 +52,22 @@ final class NodeInformation {
     private final ConcurrentMap<String, ClusterNodeInformation> clustersByName = new ConcurrentHashMap<>(1);
     private final ConcurrentMap<EJBClientChannel, InetSocketAddress> addressesByConnection = new ConcurrentHashMap<>(1);
 
-    private volatile List<ServiceURL> serviceURLCache;
+    // guarded by this; the index is read without locking
+    private final Map<URI, List<ServiceURL>> serviceURLsByDestination = new HashMap<>();
+    private final ServiceURLIndex serviceURLIndex = new ServiceURLIndex(
+        EJBClientContext.FILTER_ATTR_EJB_MODULE,
+        EJBClientContext.FILTER_ATTR_EJB_MODULE_DISTINCT,
+        EJBClientContext.FILTER_ATTR_CLUSTER,
+        EJBClientContext.FILTER_ATTR_NODE
+    );
 
     private volatile boolean invalid;
 
-    NodeInformation(final String nodeName) {
+    private final Runnable changeListener;
+
+    NodeInformation(final String nodeName, final Runnable changeListener) {
         this.nodeName = nodeName;
+        this.changeListener = changeListener;
     }
 
     String getNodeName() {
@@ -67,8 +77,7 @@ final class NodeInformation {
     boolean discover(ServiceType serviceType, FilterSpec filterSpec, DiscoveryResult discoveryResult) {
         if (invalid) return false;
         boolean found = false;
-        List<ServiceURL> serviceURLCache = getServiceURLCache();
-        for (ServiceURL serviceURL : serviceURLCache) {
+        for (ServiceURL serviceURL : serviceURLIndex.getCandidates(filterSpec)) {
             if (serviceURL.satisfies(filterSpec) && serviceType.implies(serviceURL)) {
                 found = true;
                 discoveryResult.addMatch(serviceURL);
@@ -81,112 +90,142 @@ final class NodeInformation {
         return clustersByName;
     }
 
-    // this structure mashes together the cluster topo reports from various nodes, and the mod avail report from this node
-    static class TempInfo {
-        Map<String, CidrAddress> clusters;
-        Set<EJBModuleIdentifier> modules;
-        URI destination;
-
-        TempInfo(URI destination) {
-            this.destination = destination;
+    /**
+     * Rebuild the service URLs of the given destinations, and update the index with the difference.
+     *
+     * @param destinations the destinations whose modules, addresses or clusters have changed
+     */
+    private void updateServiceURLs(final Set<URI> destinations) {
+        assert Thread.holdsLock(this);
+        for (URI destination : destinations) {
+            final List<ServiceURL> newURLs = createServiceURLs(destination);
+            final List<ServiceURL> oldURLs = newURLs.isEmpty() ? serviceURLsByDestination.remove(destination) : serviceURLsByDestination.put(destination, newURLs);
+            // add before removing, so that a concurrent discovery never misses the destination altogether
+            for (ServiceURL serviceURL : newURLs) {
+                serviceURLIndex.add(serviceURL);
+            }
+            if (oldURLs != null) for (ServiceURL serviceURL : oldURLs) {
+                if (! newURLs.contains(serviceURL)) {
+                    serviceURLIndex.remove(serviceURL);
+                }
+            }
         }
+        changeListener.run();
     }
 
-    private List<ServiceURL> getServiceURLCache() {
-        List<ServiceURL> serviceURLCache = this.serviceURLCache;
-        if (serviceURLCache == null) {
-            synchronized (this) {
-                serviceURLCache = this.serviceURLCache;
-                if (serviceURLCache == null) {
-                    // the final list to store
-                    serviceURLCache = new ArrayList<>();
-                    HashMap<URI, TempInfo> map = new HashMap<>();
-                    // populate the modules first
-                    for (Map.Entry<EJBClientChannel, Set<EJBModuleIdentifier>> entry : modulesByConnection.entrySet()) {
-                        final EJBClientChannel channel = entry.getKey();
-                        final URI peerURI = channel.getChannel().getConnection().getPeerURI();
-                        TempInfo tempInfo = new TempInfo(peerURI);
-                        tempInfo.modules = entry.getValue();
-                        map.put(tempInfo.destination, tempInfo);
-                    }
-                    // populate standalone nodes next (these will most likely be duplicates of above)
-                    for (Map.Entry<EJBClientChannel, InetSocketAddress> entry : addressesByConnection.entrySet()) {
-                        final EJBClientChannel channel = entry.getKey();
-                        final URI peerURI = channel.getChannel().getConnection().getPeerURI();
-                        map.computeIfAbsent(peerURI, TempInfo::new);
-                    }
-                    // populate the clusters next
-                    for (final Map.Entry<String, ClusterNodeInformation> entry : clustersByName.entrySet()) {
-                        final String clusterName = entry.getKey();
-                        final ClusterNodeInformation clusterNodeInformation = entry.getValue();
-                        for (Map.Entry<String, CidrAddressTable<InetSocketAddress>> entry1 : clusterNodeInformation.getAddressTablesByProtocol().entrySet()) {
-                            final String protocol = entry1.getKey();
-                            final CidrAddressTable<InetSocketAddress> table = entry1.getValue();
-                            for (CidrAddressTable.Mapping<InetSocketAddress> mapping : table) {
-                                CidrAddress cidrAddress = mapping.getRange();
-                                final InetSocketAddress address = mapping.getValue();
-                                URI uri;
-                                try {
-                                    uri = new URI(protocol, null, address.getHostString(), address.getPort(), null, null, null);
-                                } catch (URISyntaxException e) {
-                                    continue;
-                                }
-                                TempInfo tempInfo = map.computeIfAbsent(uri, TempInfo::new);
-                                if (tempInfo.clusters == null) {
-                                    tempInfo.clusters = new HashMap<>();
-                                }
-                                tempInfo.clusters.put(clusterName, cidrAddress);
-                            }
-                        }
-                    }
-                    // populate the service URLs from the cross product (!) of clusters and modules
-                    final AttributeValue nodeNameValue = AttributeValue.fromString(nodeName);
-                    for (TempInfo info : map.values()) {
-                        final ServiceURL.Builder builder = new ServiceURL.Builder();
-                        builder.setUri(info.destination);
-                        builder.setAbstractType(EJBClientContext.EJB_SERVICE_TYPE.getAbstractType());
-                        builder.setAbstractTypeAuthority(EJBClientContext.EJB_SERVICE_TYPE.getAbstractTypeAuthority());
-                        builder.addAttribute(EJBClientContext.FILTER_ATTR_NODE, nodeNameValue);
-                        if (info.modules != null) for (EJBModuleIdentifier moduleIdentifier : info.modules) {
-                            final String appName = moduleIdentifier.getAppName();
-                            final String moduleName = moduleIdentifier.getModuleName();
-                            final String distinctName = moduleIdentifier.getDistinctName();
-                            if (distinctName.isEmpty()) {
-                                if (appName.isEmpty()) {
-                                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE, AttributeValue.fromString(moduleName));
-                                } else {
-                                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE, AttributeValue.fromString(appName + "/" + moduleName));
-                                }
-                            } else {
-                                if (appName.isEmpty()) {
-                                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE_DISTINCT, AttributeValue.fromString(moduleName + "/" + distinctName));
-                                } else {
-                                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE_DISTINCT, AttributeValue.fromString(appName + "/" + moduleName + "/" + distinctName));
-                                }
-                            }
-                        }
-                        // create a no-cluster mapping
-                        serviceURLCache.add(builder.create());
-                        if (info.clusters != null) for (Map.Entry<String, CidrAddress> entry : info.clusters.entrySet()) {
-                            final String clusterName = entry.getKey();
-                            builder.addAttribute(EJBClientContext.FILTER_ATTR_CLUSTER, AttributeValue.fromString(clusterName));
-                            final CidrAddress cidrAddress = entry.getValue();
-                            if (cidrAddress.getNetmaskBits() == 0) {
-                                // historically we treat IPv4 and IPv6 any addresses as any
-                                builder.removeAttribute(EJBClientContext.FILTER_ATTR_SOURCE_IP);
-                            } else {
-                                final AttributeValue value = AttributeValue.fromString(cidrAddress.toString());
-                                builder.addAttribute(EJBClientContext.FILTER_ATTR_SOURCE_IP, value);
-                            }
-                            serviceURLCache.add(builder.create());
+    private void updateServiceURLs(final URI destination) {
+        updateServiceURLs(Collections.singleton(destination));
+    }
+
+    private List<ServiceURL> createServiceURLs(final URI destination) {
+        // this mashes together the cluster topo reports from various nodes, and the mod avail report from this node
+        boolean known = false;
+        Set<EJBModuleIdentifier> modules = null;
+        for (Map.Entry<EJBClientChannel, Set<EJBModuleIdentifier>> entry : modulesByConnection.entrySet()) {
+            if (destination.equals(getPeerURI(entry.getKey()))) {
+                known = true;
+                if (modules == null) {
+                    modules = new HashSet<>();
+                }
+                modules.addAll(entry.getValue());
+            }
+        }
+        // standalone nodes (these will most likely be duplicates of above)
+        if (! known) for (EJBClientChannel channel : addressesByConnection.keySet()) {
+            if (destination.equals(getPeerURI(channel))) {
+                known = true;
+                break;
+            }
+        }
+        Map<String, CidrAddress> clusters = null;
+        for (final Map.Entry<String, ClusterNodeInformation> entry : clustersByName.entrySet()) {
+            final String clusterName = entry.getKey();
+            for (Map.Entry<String, CidrAddressTable<InetSocketAddress>> entry1 : entry.getValue().getAddressTablesByProtocol().entrySet()) {
+                final String protocol = entry1.getKey();
+                for (CidrAddressTable.Mapping<InetSocketAddress> mapping : entry1.getValue()) {
+                    if (destination.equals(getDestinationURI(protocol, mapping.getValue()))) {
+                        known = true;
+                        if (clusters == null) {
+                            clusters = new HashMap<>();
                         }
+                        clusters.put(clusterName, mapping.getRange());
                     }
+                }
+            }
+        }
+        if (! known) {
+            return Collections.emptyList();
+        }
+        final List<ServiceURL> serviceURLs = new ArrayList<>();
+        // populate the service URLs from the cross product (!) of clusters and modules
+        final ServiceURL.Builder builder = new ServiceURL.Builder();
+        builder.setUri(destination);
+        builder.setAbstractType(EJBClientContext.EJB_SERVICE_TYPE.getAbstractType());
+        builder.setAbstractTypeAuthority(EJBClientContext.EJB_SERVICE_TYPE.getAbstractTypeAuthority());
+        builder.addAttribute(EJBClientContext.FILTER_ATTR_NODE, AttributeValue.fromString(nodeName));
+        if (modules != null) for (EJBModuleIdentifier moduleIdentifier : modules) {
+            final String appName = moduleIdentifier.getAppName();
+            final String moduleName = moduleIdentifier.getModuleName();
+            final String distinctName = moduleIdentifier.getDistinctName();
+            if (distinctName.isEmpty()) {
+                if (appName.isEmpty()) {
+                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE, AttributeValue.fromString(moduleName));
+                } else {
+                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE, AttributeValue.fromString(appName + "/" + moduleName));
+                }
+            } else {
+                if (appName.isEmpty()) {
+                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE_DISTINCT, AttributeValue.fromString(moduleName + "/" + distinctName));
+                } else {
+                    builder.addAttribute(EJBClientContext.FILTER_ATTR_EJB_MODULE_DISTINCT, AttributeValue.fromString(appName + "/" + moduleName + "/" + distinctName));
+                }
+            }
+        }
+        // create a no-cluster mapping
+        serviceURLs.add(builder.create());
+        if (clusters != null) for (Map.Entry<String, CidrAddress> entry : clusters.entrySet()) {
+            final String clusterName = entry.getKey();
+            builder.addAttribute(EJBClientContext.FILTER_ATTR_CLUSTER, AttributeValue.fromString(clusterName));
+            final CidrAddress cidrAddress = entry.getValue();
+            if (cidrAddress.getNetmaskBits() == 0) {
+                // historically we treat IPv4 and IPv6 any addresses as any
+                builder.removeAttribute(EJBClientContext.FILTER_ATTR_SOURCE_IP);
+            } else {
+                final AttributeValue value = AttributeValue.fromString(cidrAddress.toString());
+                builder.addAttribute(EJBClientContext.FILTER_ATTR_SOURCE_IP, value);
+            }
+            serviceURLs.add(builder.create());
+        }
+        return serviceURLs;
+    }
 
-                    this.serviceURLCache = serviceURLCache;
+    private Set<URI> getClusterDestinations(final String clusterName) {
+        final ClusterNodeInformation clusterNodeInformation = clustersByName.get(clusterName);
+        if (clusterNodeInformation == null) {
+            return Collections.emptySet();
+        }
+        final Set<URI> destinations = new HashSet<>();
+        for (Map.Entry<String, CidrAddressTable<InetSocketAddress>> entry : clusterNodeInformation.getAddressTablesByProtocol().entrySet()) {
+            for (CidrAddressTable.Mapping<InetSocketAddress> mapping : entry.getValue()) {
+                final URI uri = getDestinationURI(entry.getKey(), mapping.getValue());
+                if (uri != null) {
+                    destinations.add(uri);
                 }
             }
         }
-        return serviceURLCache;
+        return destinations;
+    }
+
+    private static URI getPeerURI(final EJBClientChannel channel) {
+        return channel.getChannel().getConnection().getPeerURI();
+    }
+
+    private static URI getDestinationURI(final String protocol, final InetSocketAddress address) {
+        try {
+            return new URI(protocol, null, address.getHostString(), address.getPort(), null, null, null);
+        } catch (URISyntaxException e) {
+            return null;
+        }
     }
 
     boolean isInvalid() {
@@ -199,45 +238,50 @@ final class NodeInformation {
 
     void addAddress(final String protocol, final String clusterName, final CidrAddress block, final InetSocketAddress destination) {
         synchronized (this) {
-            serviceURLCache = null;
+            // the block may have been mapped to another destination before
+            final Set<URI> destinations = new HashSet<>(getClusterDestinations(clusterName));
             clustersByName.computeIfAbsent(clusterName, name -> new ClusterNodeInformation())
                 .getAddressTablesByProtocol()
                 .computeIfAbsent(protocol, ignored -> new CidrAddressTable<>())
                 .put(block, destination);
+            final URI uri = getDestinationURI(protocol, destination);
+            if (uri != null) {
+                destinations.add(uri);
+            }
+            updateServiceURLs(destinations);
         }
     }
 
 
     void removeCluster(final String clusterName) {
         synchronized (this) {
-            serviceURLCache = null;
+            final Set<URI> destinations = getClusterDestinations(clusterName);
             clustersByName.remove(clusterName);
+            updateServiceURLs(destinations);
         }
     }
 
     void addModules(final EJBClientChannel clientChannel, final EJBModuleIdentifier[] moduleList) {
         synchronized (this) {
-            serviceURLCache = null;
             Collections.addAll(modulesByConnection.computeIfAbsent(clientChannel, ignored -> new HashSet<>()), moduleList);
+            updateServiceURLs(getPeerURI(clientChannel));
         }
     }
 
     void removeModules(final EJBClientChannel clientChannel, final HashSet<EJBModuleIdentifier> toRemove) {
         synchronized (this) {
-            serviceURLCache = null;
             final Set<EJBModuleIdentifier> set = modulesByConnection.get(clientChannel);
-            if (set != null) {
-                set.removeAll(toRemove);
+            if (set != null && set.removeAll(toRemove)) {
+                updateServiceURLs(getPeerURI(clientChannel));
             }
         }
     }
 
     void removeModule(final EJBClientChannel clientChannel, final EJBModuleIdentifier toRemove) {
         synchronized (this) {
-            serviceURLCache = null;
             final Set<EJBModuleIdentifier> set = modulesByConnection.get(clientChannel);
-            if (set != null) {
-                set.remove(toRemove);
+            if (set != null && set.remove(toRemove)) {
+                updateServiceURLs(getPeerURI(clientChannel));
             }
         }
     }
@@ -245,7 +289,7 @@ final class NodeInformation {
     void addAddress(EJBClientChannel clientChannel) {
         synchronized (this) {
             addressesByConnection.put(clientChannel, (InetSocketAddress) clientChannel.getChannel().getConnection().getPeerAddress());
-            serviceURLCache = null;
+            updateServiceURLs(getPeerURI(clientChannel));
         }
     }
 
@@ -254,7 +298,7 @@ final class NodeInformation {
             boolean moduleRemoved = modulesByConnection.remove(clientChannel) != null;
             boolean addressRemoved = addressesByConnection.remove(clientChannel) != null;
             if (moduleRemoved || addressRemoved) {
-                serviceURLCache = null;
+                updateServiceURLs(getPeerURI(clientChannel));
             }
         }
     }
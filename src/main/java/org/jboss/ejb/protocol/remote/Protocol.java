@@ -18,15 +18,21 @@
 
 package org.jboss.ejb.protocol.remote;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 final class Protocol {
 
-    public static final int LATEST_VERSION = 3;
+    public static final int LATEST_VERSION = 4;
 
     // flags field (v3 and up)
     public static final int COMPRESS_RESPONSE = 0b0000_1111;
+    // v4 and up: the codec ID for the response; 0 = deflate
+    public static final int COMPRESS_RESPONSE_CODEC = 0b1111_0000;
 
     public static final int OPEN_SESSION_REQUEST   = 0x01; // c → s
     public static final int OPEN_SESSION_RESPONSE  = 0x02; // s → c
@@ -64,10 +70,77 @@ final class Protocol {
     // v3 and up
     public static final int BAD_VIEW_TYPE         = 0x1C; // s → c
 
+    // v4 and up
+    public static final int BATCH_INVOCATION_REQUEST = 0x1D; // c → s
+    public static final int STREAM_DATA              = 0x1E; // s → c & c → s
+    public static final int CODEC_COMPRESSED_MESSAGE = 0x1F; // s → c & c → s
+    public static final int CLUSTER_NODE_LOAD        = 0x20; // s → c
+    public static final int OPEN_SESSIONS_REQUEST    = 0x21; // c → s
+    public static final int OPEN_SESSIONS_RESPONSE   = 0x22; // s → c
+    // before completion followed by prepare, answered like a prepare request
+    public static final int TXN_BEFORE_COMPLETION_PREPARE_REQUEST = 0x23; // c → s
+    // recovery scan in batches of at most a requested size; a cursor of zero starts a scan
+    public static final int TXN_RECOVERY_SCAN_REQUEST  = 0x24; // c → s
+    public static final int TXN_RECOVERY_SCAN_RESPONSE = 0x25; // s → c
+
+    // advertised load factor of a node which did not report one
+    static final int NO_LOAD_FACTOR = 0xff;
+
+    // v4 and up: the result content follows in a STREAM_DATA message
+    static final int UPDATE_BIT_STREAM_FOLLOWS  = 0b1000;
     static final int UPDATE_BIT_STRONG_AFFINITY = 0b100;
     static final int UPDATE_BIT_WEAK_AFFINITY   = 0b010;
     static final int UPDATE_BIT_SESSION_ID      = 0b001;
 
+    // v4 and up: client greeting channel flags; the channel carries method invocations only
+    static final int CHANNEL_FLAG_INVOCATIONS_ONLY = 0b1;
+
+    // invocation ID masks; v4 and up use packed invocation IDs which fit in at most three bytes
+    static final int INVOCATION_ID_MASK_V1 = 0xffff;
+    static final int INVOCATION_ID_MASK_V4 = 0x1fffff;
+
     private Protocol() {
     }
+
+    /**
+     * Get the invocation ID mask for the given protocol version.
+     *
+     * @param version the negotiated protocol version
+     * @return the mask to apply to allocated invocation IDs
+     */
+    static int invocationIdMask(final int version) {
+        return version >= 4 ? INVOCATION_ID_MASK_V4 : INVOCATION_ID_MASK_V1;
+    }
+
+    /**
+     * Write an invocation ID in the format of the given protocol version.
+     *
+     * @param output the output to write to
+     * @param version the negotiated protocol version
+     * @param invId the invocation ID
+     * @throws IOException if the write fails
+     */
+    static void writeInvocationId(final DataOutput output, final int version, final int invId) throws IOException {
+        if (version >= 4) {
+            PackedInteger.writePackedInteger(output, invId);
+        } else {
+            output.writeShort(invId);
+        }
+    }
+
+    /**
+     * Read an invocation ID in the format of the given protocol version.
+     *
+     * @param input the input to read from
+     * @param version the negotiated protocol version
+     * @return the invocation ID
+     * @throws IOException if the read fails
+     */
+    static int readInvocationId(final DataInput input, final int version) throws IOException {
+        if (version >= 4) {
+            return PackedInteger.readPackedInteger(input);
+        } else {
+            return input.readUnsignedShort();
+        }
+    }
 }
@@ -243,7 +243,10 @@ final class ProtocolV3ObjectTable implements ObjectTable {
     }
 
     public Object readObject(final Unmarshaller unmarshaller) throws IOException, ClassNotFoundException {
-        int idx = unmarshaller.readUnsignedByte();
+        return readObject(unmarshaller, unmarshaller.readUnsignedByte());
+    }
+
+    Object readObject(final Unmarshaller unmarshaller, final int idx) throws IOException, ClassNotFoundException {
         if (idx >= extById.length) {
             throw new InvalidObjectException("ObjectTable " + this.getClass().getName() + " cannot find an object for object index " + idx);
         }
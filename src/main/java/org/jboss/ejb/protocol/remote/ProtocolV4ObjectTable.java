@@ -0,0 +1,240 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.ejb.client.EJBIdentifier;
+import org.jboss.ejb.client.EJBMethodLocator;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.ObjectTable;
+import org.jboss.marshalling.Unmarshaller;
+
+/**
+ * The object table for protocol version 4 and up.  In addition to the version 3 predefined objects, the
+ * {@link EJBIdentifier} and {@link EJBMethodLocator} instances sent from client to server are kept in a per-connection
+ * dictionary.  The first time a value is sent, it is sent along with a small integer key which is then used in its place.
+ * <p>
+ * Since messages may be written concurrently, a key is only sent on its own once a message which defines it has been
+ * completely written ("confirmed"); until then, every message which uses the value defines it again.  Only the
+ * definitions which are written while {@linkplain #startCapture() capturing} are confirmed, which the client does
+ * for invocation request headers only, because the server reads those before it reads the next message.
+ * <p>
+ * The table also defines the {@linkplain #STREAM_MARKER placeholder} for streamed parameters and results.
+ */
+final class ProtocolV4ObjectTable implements ObjectTable {
+
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /**
+     * The placeholder which is marshalled in place of a streamed parameter or result.
+     *
+     * @see RemoteStreams
+     */
+    static final Object STREAM_MARKER = new Object();
+
+    // never valid V3 object indexes
+    private static final int ID_STREAM_MARKER = 0xFB;
+    private static final int ID_DEFINE_IDENTIFIER = 0xFC;
+    private static final int ID_DEFINE_METHOD = 0xFD;
+    private static final int ID_REFERENCE = 0xFE;
+
+    private static final ThreadLocal<List<Entry>> CAPTURE = new ThreadLocal<>();
+
+    private static final Writer STREAM_MARKER_WRITER = (marshaller, object) -> marshaller.writeByte(ID_STREAM_MARKER);
+
+    private final boolean client;
+    private final int maxEntries;
+    // client side (writing)
+    private final ConcurrentHashMap<Object, Entry> entries;
+    private final AtomicInteger nextKey;
+    // server side (reading)
+    private final ConcurrentHashMap<Integer, Object> values;
+
+    ProtocolV4ObjectTable(final boolean client, final int maxEntries) {
+        this.client = client;
+        this.maxEntries = maxEntries;
+        if (client) {
+            entries = new ConcurrentHashMap<>();
+            nextKey = new AtomicInteger();
+            values = null;
+        } else {
+            entries = null;
+            nextKey = null;
+            values = new ConcurrentHashMap<>();
+        }
+    }
+
+    ProtocolV4ObjectTable(final boolean client) {
+        this(client, DEFAULT_MAX_ENTRIES);
+    }
+
+    public Writer getObjectWriter(final Object object) throws IOException {
+        if (object == STREAM_MARKER) {
+            return STREAM_MARKER_WRITER;
+        }
+        if (client && (object instanceof EJBIdentifier || object instanceof EJBMethodLocator)) {
+            Entry entry = entries.get(object);
+            if (entry == null && nextKey.get() < maxEntries) {
+                // the peer rejects keys beyond its limit, so never hand one out
+                entry = entries.computeIfAbsent(object, ignored -> {
+                    final int key = nextKey.getAndIncrement();
+                    return key < maxEntries ? new Entry(key) : null;
+                });
+            }
+            // if the dictionary is full, just write it normally
+            return entry;
+        }
+        return ProtocolV3ObjectTable.INSTANCE.getObjectWriter(object);
+    }
+
+    public Object readObject(final Unmarshaller unmarshaller) throws IOException, ClassNotFoundException {
+        final int idx = unmarshaller.readUnsignedByte();
+        switch (idx) {
+            case ID_STREAM_MARKER: {
+                return STREAM_MARKER;
+            }
+            case ID_DEFINE_IDENTIFIER: {
+                final int key = PackedInteger.readPackedInteger(unmarshaller);
+                final String appName = unmarshaller.readUTF();
+                final String moduleName = unmarshaller.readUTF();
+                final String beanName = unmarshaller.readUTF();
+                final String distinctName = unmarshaller.readUTF();
+                return define(key, new EJBIdentifier(appName, moduleName, beanName, distinctName));
+            }
+            case ID_DEFINE_METHOD: {
+                final int key = PackedInteger.readPackedInteger(unmarshaller);
+                final String methodName = unmarshaller.readUTF();
+                final String[] parameterTypeNames = new String[PackedInteger.readPackedInteger(unmarshaller)];
+                for (int i = 0; i < parameterTypeNames.length; i ++) {
+                    parameterTypeNames[i] = unmarshaller.readUTF();
+                }
+                return define(key, new EJBMethodLocator(methodName, parameterTypeNames));
+            }
+            case ID_REFERENCE: {
+                final int key = PackedInteger.readPackedInteger(unmarshaller);
+                final Object value = values == null ? null : values.get(Integer.valueOf(key));
+                if (value == null) {
+                    throw new InvalidObjectException("ObjectTable " + getClass().getName() + " has no definition for dictionary key " + key);
+                }
+                return value;
+            }
+            default: {
+                return ProtocolV3ObjectTable.INSTANCE.readObject(unmarshaller, idx);
+            }
+        }
+    }
+
+    private Object define(final int key, final Object value) throws InvalidObjectException {
+        if (values == null) {
+            throw new InvalidObjectException("ObjectTable " + getClass().getName() + " does not accept dictionary definitions");
+        }
+        if (key < 0 || key >= maxEntries) {
+            throw new InvalidObjectException("ObjectTable " + getClass().getName() + " does not accept dictionary key " + key);
+        }
+        final Object existing = values.putIfAbsent(Integer.valueOf(key), value);
+        if (existing == null) {
+            return value;
+        }
+        if (existing.equals(value)) {
+            // keep identity stable for every reader of this key
+            return existing;
+        }
+        // keys are never reused by a well-behaved peer
+        throw new InvalidObjectException("ObjectTable " + getClass().getName() + " already has a different definition for dictionary key " + key);
+    }
+
+    /**
+     * Start capturing the dictionary definitions written by the current thread.
+     */
+    void startCapture() {
+        CAPTURE.set(new ArrayList<>());
+    }
+
+    /**
+     * Stop capturing the dictionary definitions written by the current thread.
+     *
+     * @return the definitions written since capture was started, to be {@linkplain #confirm(List) confirmed} once the
+     *      message which contains them has been completely written
+     */
+    List<Entry> stopCapture() {
+        final List<Entry> captured = CAPTURE.get();
+        CAPTURE.remove();
+        return captured;
+    }
+
+    /**
+     * Confirm that the given definitions have been completely written, allowing subsequent messages to refer to them
+     * by key alone.
+     *
+     * @param captured the captured definitions (may be {@code null})
+     */
+    static void confirm(final List<Entry> captured) {
+        if (captured != null) {
+            for (Entry entry : captured) {
+                entry.confirmed = true;
+            }
+        }
+    }
+
+    static final class Entry implements Writer {
+        private final int key;
+        volatile boolean confirmed;
+
+        Entry(final int key) {
+            this.key = key;
+        }
+
+        public void writeObject(final Marshaller marshaller, final Object object) throws IOException {
+            if (confirmed) {
+                marshaller.writeByte(ID_REFERENCE);
+                PackedInteger.writePackedInteger(marshaller, key);
+                return;
+            }
+            if (object instanceof EJBIdentifier) {
+                final EJBIdentifier identifier = (EJBIdentifier) object;
+                marshaller.writeByte(ID_DEFINE_IDENTIFIER);
+                PackedInteger.writePackedInteger(marshaller, key);
+                marshaller.writeUTF(identifier.getAppName());
+                marshaller.writeUTF(identifier.getModuleName());
+                marshaller.writeUTF(identifier.getBeanName());
+                marshaller.writeUTF(identifier.getDistinctName());
+            } else {
+                final EJBMethodLocator methodLocator = (EJBMethodLocator) object;
+                marshaller.writeByte(ID_DEFINE_METHOD);
+                PackedInteger.writePackedInteger(marshaller, key);
+                marshaller.writeUTF(methodLocator.getMethodName());
+                final int parameterCount = methodLocator.getParameterCount();
+                PackedInteger.writePackedInteger(marshaller, parameterCount);
+                for (int i = 0; i < parameterCount; i ++) {
+                    marshaller.writeUTF(methodLocator.getParameterTypeName(i));
+                }
+            }
+            final List<Entry> captured = CAPTURE.get();
+            if (captured != null) {
+                captured.add(this);
+            }
+        }
+    }
+}
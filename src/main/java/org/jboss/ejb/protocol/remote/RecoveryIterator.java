@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.util.NoSuchElementException;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+/**
+ * An iterator over the in-doubt transaction branches of a peer.  The branches arrive in bounded batches, so that the
+ * recovery manager can start resolving the first ones before the peer has sent them all.  An iterator which is not
+ * exhausted should be closed so that the peer can release the scan.
+ */
+public interface RecoveryIterator extends AutoCloseable {
+
+    /**
+     * Determine whether there are more branches, waiting for the next batch if needed.
+     *
+     * @return {@code true} if {@link #next()} will return a branch, {@code false} if the scan is complete
+     * @throws XAException if the next batch could not be retrieved
+     */
+    boolean hasNext() throws XAException;
+
+    /**
+     * Get the next branch.
+     *
+     * @return the transaction ID of the next branch (not {@code null})
+     * @throws NoSuchElementException if the scan is complete
+     * @throws XAException if the next batch could not be retrieved
+     */
+    Xid next() throws NoSuchElementException, XAException;
+
+    /**
+     * Stop the scan.
+     */
+    void close();
+}
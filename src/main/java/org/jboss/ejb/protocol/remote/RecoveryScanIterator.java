@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+import static org.xnio.IoUtils.safeClose;
+
+import java.io.IOException;
+import java.security.PrivilegedAction;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.jboss.remoting3.MessageInputStream;
+import org.jboss.remoting3.MessageOutputStream;
+import org.jboss.remoting3.util.InvocationTracker;
+import org.jboss.remoting3.util.StreamUtils;
+import org.wildfly.transaction.client.SimpleXid;
+
+/**
+ * A recovery scan which fetches the branches of the peer in batches.  The next batch is requested as soon as the
+ * previous one arrived, so that it is on its way while the caller works through the current one.
+ */
+final class RecoveryScanIterator implements RecoveryIterator {
+
+    /**
+     * The number of branches to request at a time.
+     */
+    static final int BATCH_SIZE = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.recovery.batch-size", "256"))).intValue());
+
+    private static final Xid[] NO_XIDS = new Xid[0];
+
+    private final EJBClientChannel channel;
+    private final int batchSize;
+    private Xid[] xids;
+    private int position;
+    private FutureInvocation pending;
+
+    /**
+     * Start a scan on the peer.
+     */
+    RecoveryScanIterator(final EJBClientChannel channel, final int flag, final String parentName, final int batchSize) throws XAException {
+        this.channel = channel;
+        this.batchSize = batchSize;
+        xids = NO_XIDS;
+        pending = sendRequest(0, batchSize, parentName, flag);
+    }
+
+    /**
+     * Iterate over the result of a scan which was retrieved in one piece.
+     */
+    RecoveryScanIterator(final EJBClientChannel channel, final Xid[] xids) {
+        this.channel = channel;
+        batchSize = 0;
+        this.xids = xids;
+    }
+
+    public boolean hasNext() throws XAException {
+        while (position == xids.length) {
+            if (pending == null) {
+                return false;
+            }
+            receiveBatch();
+        }
+        return true;
+    }
+
+    public Xid next() throws NoSuchElementException, XAException {
+        if (! hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return xids[position ++];
+    }
+
+    public void close() {
+        xids = NO_XIDS;
+        final FutureInvocation pending = this.pending;
+        if (pending != null) {
+            this.pending = null;
+            // the peer only lets go of the scan when it is told to
+            pending.getFuture().whenComplete((answer, failure) -> {
+                if (answer != null) try (AwaitableInvocation.Response response = answer) {
+                    if (response.getParameter() == Protocol.TXN_RECOVERY_SCAN_RESPONSE) {
+                        final int cursor = StreamUtils.readPackedUnsignedInt31(response.getInputStream());
+                        if (cursor != 0) {
+                            sendRequest(cursor, 0, null, 0).getFuture().whenComplete((endResponse, ignoredFailure) -> {
+                                if (endResponse != null) safeClose(endResponse.getInputStream());
+                            });
+                        }
+                    }
+                } catch (IOException | XAException e) {
+                    // the channel is gone, and the scan with it
+                }
+            });
+        }
+    }
+
+    private void receiveBatch() throws XAException {
+        final FutureInvocation pending = this.pending;
+        this.pending = null;
+        final AwaitableInvocation.Response answer;
+        try {
+            answer = pending.getFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.pending = pending;
+            close();
+            throw new XAException(XAException.XAER_RMERR);
+        } catch (ExecutionException e) {
+            throw new XAException(XAException.XAER_RMERR);
+        }
+        try (AwaitableInvocation.Response response = answer) {
+            switch (response.getParameter()) {
+                case Protocol.TXN_RECOVERY_SCAN_RESPONSE: {
+                    final MessageInputStream inputStream = response.getInputStream();
+                    final int cursor = StreamUtils.readPackedUnsignedInt31(inputStream);
+                    final int count = StreamUtils.readPackedUnsignedInt31(inputStream);
+                    if (cursor != 0) {
+                        // get the next batch on its way
+                        this.pending = sendRequest(cursor, batchSize, null, 0);
+                    }
+                    final Xid[] xids = new Xid[count];
+                    for (int i = 0; i < count; i ++) {
+                        final int formatId = StreamUtils.readPackedSignedInt32(inputStream);
+                        final byte[] gtid = new byte[inputStream.readUnsignedByte()];
+                        inputStream.readFully(gtid);
+                        final byte[] bq = new byte[inputStream.readUnsignedByte()];
+                        inputStream.readFully(bq);
+                        xids[i] = new SimpleXid(formatId, gtid, bq);
+                    }
+                    this.xids = xids;
+                    position = 0;
+                    break;
+                }
+                case Protocol.APPLICATION_EXCEPTION: {
+                    throw EJBTransactionOperations.readAppException(channel, response);
+                }
+                default: {
+                    throw new XAException(XAException.XAER_RMFAIL);
+                }
+            }
+        } catch (IOException e) {
+            throw new XAException(XAException.XAER_RMERR);
+        }
+    }
+
+    private FutureInvocation sendRequest(final int cursor, final int batchSize, final String parentName, final int flag) throws XAException {
+        final InvocationTracker invocationTracker = channel.getInvocationTracker();
+        final FutureInvocation invocation = invocationTracker.addInvocation(FutureInvocation::new);
+        try (MessageOutputStream os = invocationTracker.allocateMessage(invocation)) {
+            os.writeByte(Protocol.TXN_RECOVERY_SCAN_REQUEST);
+            Protocol.writeInvocationId(os, channel.getVersion(), invocation.getIndex());
+            PackedInteger.writePackedInteger(os, cursor);
+            PackedInteger.writePackedInteger(os, batchSize);
+            if (cursor == 0) {
+                os.writeUTF(parentName);
+                os.writeInt(flag);
+            }
+        } catch (IOException e) {
+            throw new XAException(XAException.XAER_RMERR);
+        }
+        return invocation;
+    }
+}
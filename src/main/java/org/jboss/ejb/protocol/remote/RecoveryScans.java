@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.security.PrivilegedAction;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.Xid;
+
+import org.jboss.remoting3._private.IntIndexHashMap;
+
+/**
+ * The recovery scans of a channel which its peer has not finished reading.  A scan is known to the peer by a non-zero
+ * cursor, which it sends back to get the next batch.  The number of open scans is bounded, and a scan which the peer
+ * left idle for too long is dropped, so that a peer which abandons its scans cannot make the server keep them.  A scan
+ * is open from the time it is {@linkplain #start(Xid[]) started} until it is {@linkplain #finish(Scan) finished} or
+ * dropped, including while a batch of it is being sent.
+ */
+final class RecoveryScans {
+
+    /**
+     * The largest number of open scans per channel.
+     */
+    static final int MAX_SCANS = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.server.recovery-scan.max", "16"))).intValue());
+
+    /**
+     * The time after which an idle scan is dropped, in nanoseconds.
+     */
+    static final long TIMEOUT = TimeUnit.SECONDS.toNanos(Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.server.recovery-scan.timeout", "120"))).intValue()));
+
+    /**
+     * The largest number of branches sent in one batch, whatever the peer asks for.
+     */
+    static final int MAX_BATCH_SIZE = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.server.recovery-scan.max-batch-size", "1024"))).intValue());
+
+    private final IntIndexHashMap<Scan> scans = new IntIndexHashMap<>(Scan::getCursor);
+    private final int maxScans;
+    private final long timeout;
+    private int nextCursor;
+    private int open;
+
+    RecoveryScans(final int maxScans, final long timeout) {
+        this.maxScans = maxScans;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start a scan over the given branches, dropping idle scans first.  The scan counts against the limit until it is
+     * finished or dropped.
+     *
+     * @param xids the branches (must not be {@code null})
+     * @return the scan, or {@code null} if too many scans are open
+     */
+    synchronized Scan start(final Xid[] xids) {
+        final long now = System.nanoTime();
+        for (Scan scan : scans) {
+            if (scan.isExpired(now, timeout)) {
+                scans.remove(scan);
+                open --;
+            }
+        }
+        if (open >= maxScans) {
+            return null;
+        }
+        open ++;
+        int cursor;
+        do {
+            cursor = ++ nextCursor & 0x7fffffff;
+        } while (cursor == 0 || scans.get(cursor) != null);
+        return new Scan(cursor, xids);
+    }
+
+    /**
+     * Take the open scan with the given cursor, in order to send its next batch.
+     *
+     * @param cursor the cursor
+     * @return the scan, or {@code null} if it is unknown, finished or expired
+     */
+    synchronized Scan resume(final int cursor) {
+        final Scan scan = scans.removeKey(cursor);
+        if (scan == null) {
+            return null;
+        }
+        if (scan.isExpired(System.nanoTime(), timeout)) {
+            open --;
+            return null;
+        }
+        return scan;
+    }
+
+    /**
+     * Keep the given scan open for the next request of the peer.
+     *
+     * @param scan the scan (must not be {@code null})
+     */
+    synchronized void suspend(final Scan scan) {
+        scan.touch(System.nanoTime());
+        scans.put(scan);
+    }
+
+    /**
+     * Finish the given scan, which was started or resumed and not suspended since, making room for another one.
+     *
+     * @param scan the scan (must not be {@code null})
+     */
+    synchronized void finish(final Scan scan) {
+        open --;
+    }
+
+    synchronized int size() {
+        return scans.size();
+    }
+
+    static final class Scan {
+        private final int cursor;
+        private final Xid[] xids;
+        private int position;
+        private long lastUsed;
+
+        Scan(final int cursor, final Xid[] xids) {
+            this.cursor = cursor;
+            this.xids = xids;
+        }
+
+        int getCursor() {
+            return cursor;
+        }
+
+        int getRemaining() {
+            return xids.length - position;
+        }
+
+        int advance(final int count) {
+            final int start = position;
+            position += count;
+            return start;
+        }
+
+        Xid get(final int index) {
+            return xids[index];
+        }
+
+        void touch(final long now) {
+            lastUsed = now;
+        }
+
+        boolean isExpired(final long now, final long timeout) {
+            return now - lastUsed >= timeout;
+        }
+    }
+}
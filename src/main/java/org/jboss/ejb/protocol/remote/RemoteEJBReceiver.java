@@ -25,6 +25,7 @@ import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.security.PrivilegedAction;
+import java.util.List;
 
 import javax.ejb.CreateException;
 
@@ -40,7 +41,6 @@ import org.jboss.ejb.client.RequestSendFailedException;
 import org.jboss.ejb.client.SessionID;
 import org.jboss.ejb.client.StatefulEJBLocator;
 import org.jboss.ejb.client.StatelessEJBLocator;
-import org.jboss.remoting3.ClientServiceHandle;
 import org.jboss.remoting3.Connection;
 import org.jboss.remoting3.ConnectionPeerIdentity;
 import org.jboss.remoting3.Endpoint;
@@ -48,7 +48,6 @@ import org.wildfly.common.Assert;
 import org.wildfly.common.annotation.NotNull;
 import org.wildfly.security.auth.client.AuthenticationContext;
 import org.xnio.IoFuture;
-import org.xnio.OptionMap;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -60,31 +59,36 @@ class RemoteEJBReceiver extends EJBReceiver {
     private final EJBReceiverContext receiverContext;
     private final RemotingEJBDiscoveryProvider discoveredNodeRegistry;
 
-    final ClientServiceHandle<EJBClientChannel> serviceHandle;
+    final ChannelPool channelPool;
 
-    private final RetryExecutorWrapper retryExecutorWrapper = new RetryExecutorWrapper();
+    private final RetryScheduler retryScheduler;
+
+    private final ClusterWarmUp clusterWarmUp;
 
     RemoteEJBReceiver(final RemoteTransportProvider remoteTransportProvider, final EJBReceiverContext receiverContext, final RemotingEJBDiscoveryProvider discoveredNodeRegistry) {
         this.remoteTransportProvider = remoteTransportProvider;
         this.receiverContext = receiverContext;
         this.discoveredNodeRegistry = discoveredNodeRegistry;
-        serviceHandle = new ClientServiceHandle<>("jboss.ejb", channel -> EJBClientChannel.construct(channel, this.discoveredNodeRegistry, retryExecutorWrapper));
+        retryScheduler = new RetryScheduler(RetryScheduler.PARTITIONS, receiverContext);
+        channelPool = new ChannelPool(ChannelPool.SIZE, (channel, invocationsOnly) -> EJBClientChannel.construct(channel, receiverContext, this.discoveredNodeRegistry, retryScheduler, invocationsOnly.booleanValue()));
+        clusterWarmUp = new ClusterWarmUp(this);
+        discoveredNodeRegistry.setClusterListener(clusterWarmUp::clusterChanged);
     }
 
     final IoFuture.HandlingNotifier<ConnectionPeerIdentity, EJBReceiverInvocationContext> notifier = new IoFuture.HandlingNotifier<ConnectionPeerIdentity, EJBReceiverInvocationContext>() {
         public void handleDone(final ConnectionPeerIdentity peerIdentity, final EJBReceiverInvocationContext attachment) {
-            serviceHandle.getClientService(peerIdentity.getConnection(), OptionMap.EMPTY).addNotifier((ioFuture, attachment1) -> {
+            channelPool.select(peerIdentity.getConnection()).addNotifier((ioFuture, attachment1) -> {
                 final EJBClientChannel ejbClientChannel;
                 try {
 
                     ejbClientChannel = ioFuture.getInterruptibly();
                 } catch (IOException e) {
                     // should generally not be possible but we should handle it cleanly regardless
-                    attachment1.requestFailed(new RequestSendFailedException(e + "@" + peerIdentity.getConnection().getPeerURI(), false), retryExecutorWrapper.getExecutor(peerIdentity.getConnection().getEndpoint().getXnioWorker()));
+                    attachment1.requestFailed(new RequestSendFailedException(e + "@" + peerIdentity.getConnection().getPeerURI(), false), retryScheduler.getExecutor(peerIdentity.getConnection().getEndpoint().getXnioWorker(), attachment1.getClientInvocationContext()));
                     return;
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
-                    attachment1.requestFailed(new RequestSendFailedException(e + "@" + peerIdentity.getConnection().getPeerURI(), false), retryExecutorWrapper.getExecutor(peerIdentity.getConnection().getEndpoint().getXnioWorker()));
+                    attachment1.requestFailed(new RequestSendFailedException(e + "@" + peerIdentity.getConnection().getPeerURI(), false), retryScheduler.getExecutor(peerIdentity.getConnection().getEndpoint().getXnioWorker(), attachment1.getClientInvocationContext()));
                     return;
                 }
                 attachment1.getClientInvocationContext().putAttachment(EJBCC_KEY, ejbClientChannel);
@@ -98,7 +102,7 @@ class RemoteEJBReceiver extends EJBReceiver {
         }
 
         public void handleFailed(final IOException exception, final EJBReceiverInvocationContext attachment) {
-            attachment.requestFailed(new RequestSendFailedException(exception, false), retryExecutorWrapper.getExecutor(Endpoint.getCurrent().getXnioWorker()));
+            attachment.requestFailed(new RequestSendFailedException(exception, false), retryScheduler.getExecutor(Endpoint.getCurrent().getXnioWorker(), attachment.getClientInvocationContext()));
         }
     };
 
@@ -114,9 +118,13 @@ class RemoteEJBReceiver extends EJBReceiver {
         return receiverContext;
     }
 
+    ClusterWarmUp getClusterWarmUp() {
+        return clusterWarmUp;
+    }
+
     EJBClientChannel getClientChannel(final Connection connection) throws IOException {
         try {
-            return serviceHandle.getClientService(connection, OptionMap.EMPTY).getInterruptibly();
+            return channelPool.getPrimary(connection).getInterruptibly();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new InterruptedIOException();
@@ -159,6 +167,29 @@ class RemoteEJBReceiver extends EJBReceiver {
         }
     }
 
+    protected SessionID[] createSessions(final EJBReceiverSessionCreationContext context, final int count) throws Exception {
+        final StatelessEJBLocator<?> statelessLocator = context.getClientInvocationContext().getLocator().asStateless();
+        final AuthenticationContext authenticationContext = context.getAuthenticationContext();
+        try {
+            IoFuture<ConnectionPeerIdentity> futureConnection = getConnection(context.getClientInvocationContext(), context.getClientInvocationContext().getDestination(), authenticationContext);
+            final ConnectionPeerIdentity identity = futureConnection.getInterruptibly();
+            final EJBClientChannel ejbClientChannel = getClientChannel(identity.getConnection());
+            final List<? extends StatefulEJBLocator<?>> result = ejbClientChannel.openSessions(statelessLocator, identity, context.getClientInvocationContext(), count);
+            final SessionID[] sessionIds = new SessionID[result.size()];
+            for (int i = 0; i < sessionIds.length; i ++) {
+                sessionIds[i] = result.get(i).getSessionId();
+            }
+            return sessionIds;
+        } catch (IOException e) {
+            final RequestSendFailedException failed = new RequestSendFailedException("Failed to create stateful EJBs: " + e.getMessage(), true);
+            failed.initCause(e);
+            throw failed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CreateException("Stateful EJB creation interrupted");
+        }
+    }
+
     protected InetSocketAddress getSourceAddress(final InetSocketAddress destination) {
         return Endpoint.getCurrent().getXnioWorker().getBindAddress(destination.getAddress());
     }
@@ -18,13 +18,17 @@
 
 package org.jboss.ejb.protocol.remote;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static org.xnio.IoUtils.safeClose;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.jboss.ejb.client.EJBModuleIdentifier;
 import org.jboss.ejb.server.Association;
 import org.jboss.ejb.server.ListenerHandle;
+import org.jboss.ejb.server.ModuleAvailabilityListener;
 import org.jboss.remoting3.Channel;
 import org.jboss.remoting3.MessageInputStream;
 import org.jboss.remoting3.MessageOutputStream;
@@ -45,6 +49,15 @@ public final class RemoteEJBService {
     private final CallbackBuffer callbackBuffer = new CallbackBuffer();
 
     private RemoteEJBService(final Association association, final RemotingTransactionService transactionService) {
+        // the method lookup cache has to hear of undeployments whether or not any client is connected
+        association.registerModuleAvailabilityListener(new ModuleAvailabilityListener() {
+            public void moduleAvailable(final List<EJBModuleIdentifier> modules) {
+            }
+
+            public void moduleUnavailable(final List<EJBModuleIdentifier> modules) {
+                MethodLookupCache.invalidate(modules);
+            }
+        });
         openListener = new OpenListener() {
             public void channelOpened(final Channel channel) {
                 final MessageTracker messageTracker = new MessageTracker(channel, channel.getOption(RemotingOptions.MAX_OUTBOUND_MESSAGES).intValue());
@@ -57,8 +70,19 @@ public final class RemoteEJBService {
 
                     public void handleMessage(final Channel channel, final MessageInputStream message) {
                         final int version;
+                        final CompressionCodec[] codecs;
+                        final int flags;
                         try {
-                            version = min(3, StreamUtils.readInt8(message));
+                            version = min(Protocol.LATEST_VERSION, StreamUtils.readInt8(message));
+                            if (version >= 4) {
+                                // marshaller type, then the codecs selected by the client, then the channel flags
+                                message.readUTF();
+                                codecs = CompressionCodecs.resolve(CompressionCodecs.readNames(message));
+                                flags = max(0, message.read());
+                            } else {
+                                codecs = new CompressionCodec[0];
+                                flags = 0;
+                            }
                             // drain the rest of the message because it's just garbage really
                             while (message.read() != - 1) {
                                 message.skip(Long.MAX_VALUE);
@@ -67,8 +91,13 @@ public final class RemoteEJBService {
                             safeClose(channel);
                             return;
                         }
-                        final EJBServerChannel serverChannel = new EJBServerChannel(transactionService.getServerForConnection(channel.getConnection()), channel, version, messageTracker);
+                        final EJBServerChannel serverChannel = new EJBServerChannel(transactionService.getServerForConnection(channel.getConnection()), channel, version, codecs, messageTracker);
                         callbackBuffer.addListener((sc, a) -> {
+                            if ((flags & Protocol.CHANNEL_FLAG_INVOCATIONS_ONLY) != 0) {
+                                // the client's primary channel on this connection receives the module and topology updates
+                                channel.receiveMessage(sc.getReceiver(a, ListenerHandle.NULL, ListenerHandle.NULL));
+                                return;
+                            }
                             final ListenerHandle handle1 = a.registerClusterTopologyListener(sc.createTopologyListener());
                             final ListenerHandle handle2 = a.registerModuleAvailabilityListener(sc.createModuleListener());
                             channel.receiveMessage(sc.getReceiver(a, handle1, handle2));
@@ -79,6 +108,7 @@ public final class RemoteEJBService {
                     mos.writeByte(Protocol.LATEST_VERSION);
                     StreamUtils.writePackedUnsignedInt31(mos, 1);
                     mos.writeUTF("river");
+                    CompressionCodecs.writeNames(mos, CompressionCodecs.getNames());
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     safeClose(channel);
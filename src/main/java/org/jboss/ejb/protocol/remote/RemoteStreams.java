@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+import static org.xnio.IoUtils.safeClose;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.remoting3.MessageInputStream;
+import org.jboss.remoting3.MessageOutputStream;
+
+/**
+ * The inbound streamed parameters or results of a channel (v4 and up).  A streamed value is marshalled as
+ * {@link ProtocolV4ObjectTable#STREAM_MARKER} in its invocation request or response, and its content follows in a
+ * separate {@link Protocol#STREAM_DATA} message which is identified by the invocation ID and the parameter index (or
+ * zero for a result).  The content message is handed to the reader as-is, so it is never buffered as a whole; the
+ * two messages may arrive in any order.
+ * <p>
+ * The streams of an invocation must be {@linkplain #release(int) released} when the invocation is done with them, so
+ * that unread content does not hold on to inbound message slots.  A stream which is {@linkplain #expect(int, int, Runnable)
+ * expected} keeps its entry until its content has arrived, so that the invocation ID can be held until then.  A reader
+ * waits for the content for a bounded time only, since the peer may fail to send it.
+ */
+final class RemoteStreams {
+
+    /**
+     * The time a reader waits for the content of a stream to arrive, in nanoseconds.
+     */
+    static final long TIMEOUT = TimeUnit.SECONDS.toNanos(Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.stream.timeout", "60"))).intValue()));
+
+    private final ConcurrentHashMap<Integer, InvocationStreams> streams = new ConcurrentHashMap<>();
+    private final long timeout;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param timeout the time a reader waits for the content of a stream to arrive, in nanoseconds
+     */
+    RemoteStreams(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Get the stream for the given invocation and index, creating it if its content has not yet arrived.
+     *
+     * @param invId the invocation ID
+     * @param index the parameter index, or 0 for a result
+     * @return the stream (not {@code null})
+     */
+    InputStream getStream(final int invId, final int index) {
+        for (;;) {
+            final InvocationStreams invocationStreams = streams.computeIfAbsent(Integer.valueOf(invId), InvocationStreams::new);
+            synchronized (invocationStreams) {
+                if (invocationStreams.removed) {
+                    continue;
+                }
+                return invocationStreams.byIndex.computeIfAbsent(Integer.valueOf(index), i -> new InboundStream(invocationStreams, i, null));
+            }
+        }
+    }
+
+    /**
+     * Register a stream whose content is known to follow.  The entry is kept until the content has arrived and the
+     * stream has been closed or released, at which point the given action is run.
+     *
+     * @param invId the invocation ID
+     * @param index the parameter index, or 0 for a result
+     * @param onRemoved the action to run when the stream is removed
+     */
+    void expect(final int invId, final int index, final Runnable onRemoved) {
+        final InboundStream stale;
+        for (;;) {
+            final InvocationStreams invocationStreams = streams.computeIfAbsent(Integer.valueOf(invId), InvocationStreams::new);
+            synchronized (invocationStreams) {
+                if (invocationStreams.removed) {
+                    continue;
+                }
+                final Integer key = Integer.valueOf(index);
+                stale = invocationStreams.byIndex.put(key, new InboundStream(invocationStreams, key, onRemoved));
+                break;
+            }
+        }
+        if (stale != null) {
+            safeClose(stale);
+        }
+    }
+
+    /**
+     * Attach the content message of a stream.
+     *
+     * @param invId the invocation ID
+     * @param index the parameter index, or 0 for a result
+     * @param message the content message
+     */
+    void attach(final int invId, final int index, final MessageInputStream message) {
+        ((InboundStream) getStream(invId, index)).attach(message);
+    }
+
+    /**
+     * Close every stream of the given invocation, discarding any content which was not read.
+     *
+     * @param invId the invocation ID
+     */
+    void release(final int invId) {
+        final InvocationStreams invocationStreams = streams.get(Integer.valueOf(invId));
+        if (invocationStreams != null) {
+            invocationStreams.closeAll();
+        }
+    }
+
+    /**
+     * Close every stream, for example because the channel was closed.
+     */
+    void closeAll() {
+        for (InvocationStreams invocationStreams : streams.values()) {
+            invocationStreams.closeAll();
+        }
+        streams.clear();
+    }
+
+    /**
+     * Write the content of a streamed value.  The source stream is always closed.
+     *
+     * @param out the message to write to
+     * @param version the protocol version
+     * @param invId the invocation ID
+     * @param index the parameter index, or 0 for a result
+     * @param source the source stream
+     * @throws IOException if writing failed, in which case the message is cancelled
+     */
+    static void writeStream(final MessageOutputStream out, final int version, final int invId, final int index, final InputStream source) throws IOException {
+        try (InputStream in = source) {
+            out.writeByte(Protocol.STREAM_DATA);
+            Protocol.writeInvocationId(out, version, invId);
+            PackedInteger.writePackedInteger(out, index);
+            final byte[] buffer = new byte[8192];
+            int res;
+            while ((res = in.read(buffer)) != -1) {
+                out.write(buffer, 0, res);
+            }
+        } catch (IOException e) {
+            out.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * The streams of one invocation, by index.  Once its last stream is removed it is retired from the map, and a new
+     * one takes its place if further streams of the invocation turn up.
+     */
+    final class InvocationStreams {
+        private final Integer invId;
+        final HashMap<Integer, InboundStream> byIndex = new HashMap<>();
+        boolean removed;
+
+        InvocationStreams(final Integer invId) {
+            this.invId = invId;
+        }
+
+        boolean remove(final Integer index, final InboundStream stream) {
+            synchronized (this) {
+                if (! byIndex.remove(index, stream)) {
+                    return false;
+                }
+                if (byIndex.isEmpty()) {
+                    removed = true;
+                    streams.remove(invId, this);
+                }
+                return true;
+            }
+        }
+
+        void closeAll() {
+            final List<InboundStream> list;
+            synchronized (this) {
+                list = new ArrayList<>(byIndex.values());
+            }
+            for (InboundStream stream : list) {
+                safeClose(stream);
+            }
+        }
+    }
+
+    final class InboundStream extends InputStream {
+        private final InvocationStreams invocationStreams;
+        private final Integer index;
+        private final Runnable onRemoved;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private MessageInputStream message;
+        private boolean attached;
+        private boolean closed;
+
+        InboundStream(final InvocationStreams invocationStreams, final Integer index, final Runnable onRemoved) {
+            this.invocationStreams = invocationStreams;
+            this.index = index;
+            this.onRemoved = onRemoved;
+        }
+
+        private void remove() {
+            if (invocationStreams.remove(index, this) && onRemoved != null) {
+                onRemoved.run();
+            }
+        }
+
+        void attach(final MessageInputStream message) {
+            lock.lock();
+            try {
+                if (! closed) {
+                    this.message = message;
+                    attached = true;
+                    changed.signalAll();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // the reader is already gone
+            remove();
+            safeClose(message);
+        }
+
+        private MessageInputStream getMessage() throws IOException {
+            lock.lock();
+            try {
+                long remaining = timeout;
+                for (;;) {
+                    if (closed) {
+                        throw new IOException("Stream closed");
+                    }
+                    if (attached) {
+                        return message;
+                    }
+                    if (remaining <= 0L) {
+                        break;
+                    }
+                    try {
+                        remaining = changed.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            // the content did not arrive in time; it is discarded if it still does
+            close();
+            throw new InterruptedIOException("Timed out waiting for stream content");
+        }
+
+        public int read() throws IOException {
+            return getMessage().read();
+        }
+
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return getMessage().read(b, off, len);
+        }
+
+        public long skip(final long n) throws IOException {
+            return getMessage().skip(n);
+        }
+
+        public int available() throws IOException {
+            final MessageInputStream message;
+            lock.lock();
+            try {
+                if (closed || ! attached) {
+                    return 0;
+                }
+                message = this.message;
+            } finally {
+                lock.unlock();
+            }
+            return message.available();
+        }
+
+        public void close() {
+            final MessageInputStream message;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                message = this.message;
+                this.message = null;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (message != null) {
+                remove();
+                safeClose(message);
+            } else if (onRemoved == null) {
+                remove();
+            }
+            // otherwise keep this entry until the expected content arrives, so that it is discarded
+        }
+    }
+}
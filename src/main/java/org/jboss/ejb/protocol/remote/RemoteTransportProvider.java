@@ -40,7 +40,14 @@ public final class RemoteTransportProvider implements EJBTransportProvider {
 
     public void notifyRegistered(final EJBReceiverContext receiverContext) {
         final EJBClientContext clientContext = receiverContext.getClientContext();
-        clientContext.putAttachmentIfAbsent(ATTACHMENT_KEY, new RemoteEJBReceiver(this, receiverContext, new RemotingEJBDiscoveryProvider()));
+        clientContext.putAttachmentIfAbsent(ATTACHMENT_KEY, new RemoteEJBReceiver(this, receiverContext, new RemotingEJBDiscoveryProvider(clientContext.getDiscoveryResultCache(), clientContext.getNodeHealthRegistry())));
+    }
+
+    public void warmUp(final EJBReceiverContext receiverContext) {
+        final RemoteEJBReceiver receiver = receiverContext.getClientContext().getAttachment(ATTACHMENT_KEY);
+        if (receiver != null) {
+            receiver.getClusterWarmUp().warmUpAll();
+        }
     }
 
     public boolean supportsProtocol(final String uriScheme) {
@@ -40,14 +40,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import javax.net.ssl.SSLContext;
 
 import org.jboss.ejb._private.Logs;
+import org.jboss.ejb.client.DiscoveryResultCache;
 import org.jboss.ejb.client.EJBClientConnection;
 import org.jboss.ejb.client.EJBClientContext;
 import org.jboss.ejb.client.EJBModuleIdentifier;
+import org.jboss.ejb.client.NodeHealthRegistry;
 import org.jboss.remoting3.ConnectionPeerIdentity;
 import org.jboss.remoting3.Endpoint;
 import org.wildfly.common.Assert;
@@ -67,7 +72,7 @@ import org.wildfly.security.auth.client.AuthenticationContext;
 import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
 import org.xnio.FailedIoFuture;
 import org.xnio.IoFuture;
-import org.xnio.OptionMap;
+import org.xnio.XnioExecutor;
 
 /**
  * Provides discovery service based on all known EJBClientChannel service registry entries.
@@ -78,9 +83,19 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
 
     static final AuthenticationContextConfigurationClient AUTH_CONFIGURATION_CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
 
-    private final ConcurrentHashMap<String, NodeInformation> nodes = new ConcurrentHashMap<>();
+    /**
+     * The time in milliseconds after which a single connection attempt of a discovery is abandoned and its destination
+     * is treated as failed; zero leaves it to the connection timeout.
+     */
+    static final long ATTEMPT_TIMEOUT = doPrivileged((PrivilegedAction<Long>) () -> Long.valueOf(System.getProperty("org.jboss.ejb.client.discovery.attempt.timeout", "0"))).longValue();
+
+    /**
+     * The number of connections which must be established before a discovery which has a match completes without
+     * waiting for the remaining attempts, which are then cancelled; zero waits for every attempt.
+     */
+    static final int QUORUM = doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.discovery.quorum", "0"))).intValue();
 
-    private final Set<URI> failedDestinations = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+    private final ConcurrentHashMap<String, NodeInformation> nodes = new ConcurrentHashMap<>();
 
     private final ConcurrentHashMap<String, Set<String>> clusterNodes = new ConcurrentHashMap<>();
 
@@ -88,12 +103,51 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
 
 
 
+    private final DiscoveryResultCache discoveryResultCache;
+
+    private final NodeHealthRegistry healthRegistry;
+
+    private volatile Consumer<String> clusterListener;
+
     public RemotingEJBDiscoveryProvider() {
+        this(null, null);
+    }
+
+    RemotingEJBDiscoveryProvider(final DiscoveryResultCache discoveryResultCache, final NodeHealthRegistry healthRegistry) {
         Endpoint.getCurrent(); //this will blow up if remoting is not present, preventing this from being registered
+        this.discoveryResultCache = discoveryResultCache;
+        this.healthRegistry = healthRegistry;
     }
 
     public NodeInformation getNodeInformation(final String nodeName) {
-        return nodes.computeIfAbsent(nodeName, NodeInformation::new);
+        return nodes.computeIfAbsent(nodeName, name -> new NodeInformation(name, this::topologyChanged));
+    }
+
+    /**
+     * Called when the modules, addresses or clusters of any node change, so that cached discovery results are dropped.
+     */
+    void topologyChanged() {
+        final DiscoveryResultCache discoveryResultCache = this.discoveryResultCache;
+        if (discoveryResultCache != null) {
+            discoveryResultCache.invalidate();
+        }
+    }
+
+    /**
+     * Set the listener which is called with the cluster name whenever nodes join or leave a cluster.
+     *
+     * @param clusterListener the listener, or {@code null} for none
+     */
+    void setClusterListener(final Consumer<String> clusterListener) {
+        this.clusterListener = clusterListener;
+    }
+
+    private void clusterChanged(final String clusterName) {
+        topologyChanged();
+        final Consumer<String> clusterListener = this.clusterListener;
+        if (clusterListener != null) {
+            clusterListener.accept(clusterName);
+        }
     }
 
     public List<NodeInformation> getAllNodeInformation() {
@@ -102,17 +156,22 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
 
     public void addNode(final String clusterName, final String nodeName, URI registeredBy) {
         effectiveAuthURIs.putIfAbsent(clusterName, registeredBy);
-        clusterNodes.computeIfAbsent(clusterName, ignored -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(nodeName);
+        if (clusterNodes.computeIfAbsent(clusterName, ignored -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(nodeName)) {
+            clusterChanged(clusterName);
+        }
     }
 
     public void removeNode(final String clusterName, final String nodeName) {
-        clusterNodes.getOrDefault(clusterName, Collections.emptySet()).remove(nodeName);
+        if (clusterNodes.getOrDefault(clusterName, Collections.emptySet()).remove(nodeName)) {
+            clusterChanged(clusterName);
+        }
     }
 
     public void removeCluster(final String clusterName) {
         final Set<String> removed = clusterNodes.remove(clusterName);
         if (removed != null) removed.clear();
         effectiveAuthURIs.remove(clusterName);
+        topologyChanged();
     }
 
     public DiscoveryRequest discover(final ServiceType serviceType, final FilterSpec filterSpec, final DiscoveryResult result) {
@@ -142,7 +201,7 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
             }
             discoveryConnections = true;
             final URI uri = connection.getDestination();
-            if (failedDestinations.contains(uri)) {
+            if (isFailed(uri)) {
                 Logs.INVOCATION.tracef("EJB discovery provider: attempting to connect to configured connection %s, skipping because marked as failed", uri);
                 continue;
             }
@@ -180,7 +239,7 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
                                             }
                                         }
                                         final URI uri = new URI(protocol, null, hostName, destination.getPort(), null, null, null);
-                                        if (! failedDestinations.contains(uri)) {
+                                        if (! isFailed(uri)) {
                                             maxConnections--;
                                             Logs.INVOCATION.tracef("EJB discovery provider: attempting to connect to cluster %s connection %s", clusterName, uri);
                                             discoveryAttempt.connectAndDiscover(uri, clusterName);
@@ -214,6 +273,15 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
         return discoveryAttempt;
     }
 
+    NodeHealthRegistry getHealthRegistry() {
+        final NodeHealthRegistry healthRegistry = this.healthRegistry;
+        return healthRegistry == null ? getCurrent().getNodeHealthRegistry() : healthRegistry;
+    }
+
+    boolean isFailed(final URI destination) {
+        return ! getHealthRegistry().claimProbe(destination);
+    }
+
     static EJBModuleIdentifier getIdentifierForAttribute(String attribute, AttributeValue value) {
         if (! value.isString()) {
             return null;
@@ -324,10 +392,12 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
 
         private final Endpoint endpoint;
         private final AtomicInteger outstandingCount = new AtomicInteger(1); // this is '1' so that we don't finish until all connections are searched
+        private final AtomicInteger connectedCount = new AtomicInteger();
+        private final AtomicBoolean completed = new AtomicBoolean();
         private volatile boolean phase2;
         private final List<Runnable> cancellers = Collections.synchronizedList(new ArrayList<>());
-        private final IoFuture.HandlingNotifier<ConnectionPeerIdentity, URI> outerNotifier;
-        private final IoFuture.HandlingNotifier<EJBClientChannel, URI> innerNotifier;
+        private final IoFuture.HandlingNotifier<ConnectionPeerIdentity, Attempt> outerNotifier;
+        private final IoFuture.HandlingNotifier<EJBClientChannel, Attempt> innerNotifier;
 
         DiscoveryAttempt(final ServiceType serviceType, final FilterSpec filterSpec, final DiscoveryResult discoveryResult, final RemoteEJBReceiver ejbReceiver, final AuthenticationContext authenticationContext) {
             this.serviceType = serviceType;
@@ -337,36 +407,49 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
 
             this.authenticationContext = authenticationContext;
             endpoint = Endpoint.getCurrent();
-            outerNotifier = new IoFuture.HandlingNotifier<ConnectionPeerIdentity, URI>() {
-                public void handleCancelled(final URI destination) {
+            outerNotifier = new IoFuture.HandlingNotifier<ConnectionPeerIdentity, Attempt>() {
+                public void handleCancelled(final Attempt attempt) {
+                    attempt.finish();
                     countDown();
                 }
 
-                public void handleFailed(final IOException exception, final URI destination) {
+                public void handleFailed(final IOException exception, final Attempt attempt) {
+                    attempt.finish();
                     DiscoveryAttempt.this.discoveryResult.reportProblem(exception);
-                    failedDestinations.add(destination);
+                    getHealthRegistry().recordFailure(attempt.destination);
                     countDown();
                 }
 
-                public void handleDone(final ConnectionPeerIdentity data, final URI destination) {
-                    final IoFuture<EJBClientChannel> future = DiscoveryAttempt.this.ejbReceiver.serviceHandle.getClientService(data.getConnection(), OptionMap.EMPTY);
+                public void handleDone(final ConnectionPeerIdentity data, final Attempt attempt) {
+                    final IoFuture<EJBClientChannel> future = DiscoveryAttempt.this.ejbReceiver.channelPool.getPrimary(data.getConnection());
+                    attempt.future = future;
+                    if (attempt.timedOut) {
+                        // the deadline passed while the connection was being completed
+                        future.cancel();
+                    }
                     onCancel(future::cancel);
-                    future.addNotifier(innerNotifier, destination);
+                    future.addNotifier(innerNotifier, attempt);
                 }
             };
-            innerNotifier = new IoFuture.HandlingNotifier<EJBClientChannel, URI>() {
-                public void handleCancelled(final URI destination) {
+            innerNotifier = new IoFuture.HandlingNotifier<EJBClientChannel, Attempt>() {
+                public void handleCancelled(final Attempt attempt) {
+                    attempt.finish();
                     countDown();
                 }
 
-                public void handleFailed(final IOException exception, final URI destination) {
+                public void handleFailed(final IOException exception, final Attempt attempt) {
+                    attempt.finish();
                     DiscoveryAttempt.this.discoveryResult.reportProblem(exception);
-                    failedDestinations.add(destination);
+                    getHealthRegistry().recordFailure(attempt.destination);
                     countDown();
                 }
 
-                public void handleDone(final EJBClientChannel clientChannel, final URI destination) {
-                    failedDestinations.remove(destination);
+                public void handleDone(final EJBClientChannel clientChannel, final Attempt attempt) {
+                    attempt.finish();
+                    getHealthRegistry().recordSuccess(attempt.destination);
+                    if (QUORUM > 0 && connectedCount.incrementAndGet() >= QUORUM) {
+                        completeEarly();
+                    }
                     countDown();
                 }
             };
@@ -379,41 +462,85 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
                 return;
             }
             outstandingCount.getAndIncrement();
+            final Attempt attempt = new Attempt(uri);
             final IoFuture<ConnectionPeerIdentity> future = doPrivileged((PrivilegedAction<IoFuture<ConnectionPeerIdentity>>) () -> getConnectedIdentityUsingClusterEffective(endpoint, uri, "ejb", "jboss", authenticationContext, clusterEffective));
+            attempt.future = future;
             onCancel(future::cancel);
-            future.addNotifier(outerNotifier, uri);
+            if (ATTEMPT_TIMEOUT > 0L) {
+                attempt.deadline = endpoint.getXnioWorker().getIoThread().executeAfter(attempt, ATTEMPT_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            future.addNotifier(outerNotifier, attempt);
+        }
+
+        /**
+         * Collect the matches of all known nodes.
+         */
+        private List<ServiceURL> collectMatches() {
+            final List<ServiceURL> matches = new ArrayList<>();
+            final DiscoveryResult collector = new DiscoveryResult() {
+                public void complete() {
+                }
+
+                public void reportProblem(final Throwable description) {
+                    discoveryResult.reportProblem(description);
+                }
+
+                public void addMatch(final ServiceURL serviceURL) {
+                    matches.add(serviceURL);
+                }
+            };
+            // optimize for simple node name queries
+            final String node = filterSpec.accept(NODE_EXTRACTOR);
+            if (node != null) {
+                final NodeInformation information = nodes.get(node);
+                if (information != null) information.discover(serviceType, filterSpec, collector);
+            } else for (NodeInformation information : nodes.values()) {
+                information.discover(serviceType, filterSpec, collector);
+            }
+            return matches;
+        }
+
+        /**
+         * Complete the discovery with the given matches, unless it was completed already.
+         */
+        private boolean complete(final List<ServiceURL> matches) {
+            if (! completed.compareAndSet(false, true)) {
+                return false;
+            }
+            final DiscoveryResult result = this.discoveryResult;
+            for (ServiceURL serviceURL : matches) {
+                result.addMatch(serviceURL);
+            }
+            result.complete();
+            return true;
+        }
+
+        /**
+         * Complete the discovery if it has a match, without waiting for the remaining connection attempts.
+         */
+        void completeEarly() {
+            if (completed.get()) {
+                return;
+            }
+            final List<ServiceURL> matches = collectMatches();
+            if (! matches.isEmpty() && complete(matches)) {
+                Logs.INVOCATION.tracef("EJB discovery provider: completed discovery for %s after %d connections, cancelling the remaining attempts", filterSpec, connectedCount.get());
+                cancel();
+            }
         }
 
         void countDown() {
             if (outstandingCount.decrementAndGet() == 0) {
-                final DiscoveryResult result = this.discoveryResult;
-                final String node = filterSpec.accept(NODE_EXTRACTOR);
-                final EJBModuleIdentifier module = filterSpec.accept(MI_EXTRACTOR);
+                if (completed.get()) {
+                    // answered early
+                    return;
+                }
                 if (phase2) {
-                    if (node != null) {
-                        final NodeInformation information = nodes.get(node);
-                        if (information != null) information.discover(serviceType, filterSpec, result);
-                    } else for (NodeInformation information : nodes.values()) {
-                        information.discover(serviceType, filterSpec, result);
-                    }
-                    result.complete();
+                    complete(collectMatches());
                 } else {
-                    boolean ok = false;
-                    // optimize for simple module identifier and node name queries
-                    if (node != null) {
-                        final NodeInformation information = nodes.get(node);
-                        if (information != null) {
-                            if (information.discover(serviceType, filterSpec, result)) {
-                                ok = true;
-                            }
-                        }
-                    } else for (NodeInformation information : nodes.values()) {
-                        if (information.discover(serviceType, filterSpec, result)) {
-                            ok = true;
-                        }
-                    }
-                    if (ok) {
-                        result.complete();
+                    final List<ServiceURL> matches = collectMatches();
+                    if (! matches.isEmpty()) {
+                        complete(matches);
                     } else {
                         // everything failed.  We have to reconnect everything.
                         Set<URI> everything = new HashSet<>();
@@ -502,5 +629,37 @@ final class RemotingEJBDiscoveryProvider implements DiscoveryProvider, Discovere
                 cancellers.add(action);
             }
         }
+
+        /**
+         * A connection attempt to one destination, which is also the task run when its deadline passes.
+         */
+        final class Attempt implements Runnable {
+            final URI destination;
+            volatile IoFuture<?> future;
+            volatile XnioExecutor.Key deadline;
+            volatile boolean timedOut;
+
+            Attempt(final URI destination) {
+                this.destination = destination;
+            }
+
+            public void run() {
+                timedOut = true;
+                Logs.INVOCATION.tracef("EJB discovery provider: connection to %s did not complete within %d ms", destination, ATTEMPT_TIMEOUT);
+                // treat a slow host like a failed one
+                getHealthRegistry().recordFailure(destination);
+                final IoFuture<?> future = this.future;
+                if (future != null) {
+                    future.cancel();
+                }
+            }
+
+            void finish() {
+                final XnioExecutor.Key deadline = this.deadline;
+                if (deadline != null) {
+                    deadline.remove();
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.security.PrivilegedAction;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.ejb._private.Logs;
+import org.jboss.ejb.client.EJBReceiverContext;
+
+/**
+ * Runs the retries and failure callbacks of invocations.  Retries are spread over a fixed number of partitions by
+ * invocation; each partition runs its tasks one at a time and in order, so that the tasks of one invocation never
+ * overlap or overtake each other, while the tasks of different partitions run concurrently on the delegate executor.
+ */
+final class RetryScheduler {
+
+    /**
+     * The number of partitions; defaults to the number of available processors.
+     */
+    static final int PARTITIONS = Math.max(1, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.retry.partitions", Integer.toString(Runtime.getRuntime().availableProcessors())))).intValue());
+
+    private final Partition[] partitions;
+    private final EJBReceiverContext receiverContext;
+
+    RetryScheduler(final int partitions, final EJBReceiverContext receiverContext) {
+        this.partitions = new Partition[Math.max(1, partitions)];
+        for (int i = 0; i < this.partitions.length; i ++) {
+            this.partitions[i] = new Partition();
+        }
+        this.receiverContext = receiverContext;
+    }
+
+    /**
+     * Get an executor which runs the tasks of the given invocation on the given delegate executor.
+     *
+     * @param executor the delegate executor
+     * @param key the invocation, whose identity selects the partition
+     * @return the executor
+     */
+    Executor getExecutor(final Executor executor, final Object key) {
+        final Partition partition = partitions[partitionOf(key)];
+        return runnable -> partition.submit(runnable, executor);
+    }
+
+    int partitionOf(final Object key) {
+        // spread the identity hash, whose low bits may be poorly distributed
+        int hash = System.identityHashCode(key);
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % partitions.length;
+    }
+
+    final class Partition {
+
+        // not a monitor, as the delegate executor may block while we hold it
+        private final ReentrantLock lock = new ReentrantLock();
+        private Task last = null;
+
+        void submit(final Runnable runnable, final Executor executor) {
+            receiverContext.retryScheduled();
+            lock.lock();
+            try {
+                Task task = new Task(this, runnable, executor);
+                if (last != null) {
+                    last.next = task;
+                    last = task;
+                } else {
+                    last = task;
+                    executor.execute(task);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    final class Task implements Runnable {
+
+        private final Partition partition;
+        private final Runnable runnable;
+        private final Executor delegate;
+        private final long scheduled = System.nanoTime();
+        private Task next;
+
+        Task(final Partition partition, final Runnable runnable, final Executor delegate) {
+            this.partition = partition;
+            this.runnable = runnable;
+            this.delegate = delegate;
+        }
+
+        public void run() {
+            receiverContext.retryStarted(System.nanoTime() - scheduled);
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                Logs.MAIN.taskFailed(runnable, t);
+            } finally {
+                final ReentrantLock lock = partition.lock;
+                lock.lock();
+                try {
+                    if (partition.last == this) {
+                        partition.last = null;
+                    }
+                    if (next != null) {
+                        next.delegate.execute(next);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
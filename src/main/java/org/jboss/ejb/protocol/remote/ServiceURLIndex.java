@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.wildfly.discovery.AllFilterSpec;
+import org.wildfly.discovery.AttributeValue;
+import org.wildfly.discovery.EqualsFilterSpec;
+import org.wildfly.discovery.FilterSpec;
+import org.wildfly.discovery.ServiceURL;
+
+/**
+ * An index of service URLs by the string values of selected attributes.  Equality filters on an indexed attribute,
+ * alone or within a conjunction, are answered by a single map lookup; any other filter gets every URL as a candidate.
+ * Candidates must still be checked against the filter.
+ * <p>
+ * Lookups may run concurrently with updates, but updates must be serialized by the caller.
+ */
+final class ServiceURLIndex {
+    private final Set<ServiceURL> all = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<ServiceURL>>> byAttribute = new ConcurrentHashMap<>();
+
+    private final FilterSpec.Visitor<Void, Set<ServiceURL>, RuntimeException> candidateFinder = new FilterSpec.Visitor<Void, Set<ServiceURL>, RuntimeException>() {
+        public Set<ServiceURL> handle(final EqualsFilterSpec filterSpec, final Void parameter) throws RuntimeException {
+            final ConcurrentMap<String, Set<ServiceURL>> values = byAttribute.get(filterSpec.getAttribute());
+            final AttributeValue value = filterSpec.getValue();
+            if (values == null || ! value.isString()) {
+                return null;
+            }
+            final Set<ServiceURL> set = values.get(value.toString());
+            return set == null ? Collections.emptySet() : set;
+        }
+
+        public Set<ServiceURL> handle(final AllFilterSpec filterSpec, final Void parameter) throws RuntimeException {
+            // every child must match, so the smallest indexed set will do
+            Set<ServiceURL> best = null;
+            for (FilterSpec child : filterSpec) {
+                final Set<ServiceURL> candidates = child.accept(this);
+                if (candidates != null && (best == null || candidates.size() < best.size())) {
+                    best = candidates;
+                }
+            }
+            return best;
+        }
+    };
+
+    ServiceURLIndex(final String... indexedAttributes) {
+        for (String attribute : indexedAttributes) {
+            byAttribute.put(attribute, new ConcurrentHashMap<>());
+        }
+    }
+
+    void add(final ServiceURL serviceURL) {
+        for (Map.Entry<String, ConcurrentMap<String, Set<ServiceURL>>> entry : byAttribute.entrySet()) {
+            for (AttributeValue value : serviceURL.getAttributeValues(entry.getKey())) {
+                if (value.isString()) {
+                    entry.getValue().computeIfAbsent(value.toString(), ignored -> ConcurrentHashMap.newKeySet()).add(serviceURL);
+                }
+            }
+        }
+        all.add(serviceURL);
+    }
+
+    void remove(final ServiceURL serviceURL) {
+        all.remove(serviceURL);
+        for (Map.Entry<String, ConcurrentMap<String, Set<ServiceURL>>> entry : byAttribute.entrySet()) {
+            final ConcurrentMap<String, Set<ServiceURL>> values = entry.getValue();
+            for (AttributeValue value : serviceURL.getAttributeValues(entry.getKey())) {
+                if (value.isString()) {
+                    final String key = value.toString();
+                    final Set<ServiceURL> set = values.get(key);
+                    if (set != null && set.remove(serviceURL) && set.isEmpty()) {
+                        values.remove(key, set);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the service URLs which may satisfy the given filter.
+     *
+     * @param filterSpec the filter (must not be {@code null})
+     * @return the candidate URLs (not {@code null})
+     */
+    Set<ServiceURL> getCandidates(final FilterSpec filterSpec) {
+        final Set<ServiceURL> candidates = filterSpec.accept(candidateFinder);
+        return candidates == null ? all : candidates;
+    }
+
+    int size() {
+        return all.size();
+    }
+}
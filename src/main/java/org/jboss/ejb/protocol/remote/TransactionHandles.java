@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.security.PrivilegedAction;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+
+/**
+ * The short handles under which the transactions of a channel are known to its peer.  The first request in a
+ * transaction registers a handle along with the full transaction ID; once the peer answered such a request, later
+ * requests send the handle alone.  A handle is released when its transaction completes and may then be reused for
+ * another transaction, which simply registers it again.
+ */
+final class TransactionHandles {
+
+    /**
+     * The largest number of handles a peer has to keep for one channel.
+     */
+    static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * The number of handles per channel; zero disables handles.
+     */
+    static final int DEFAULT_SIZE = Math.min(MAX_SIZE, doPrivileged((PrivilegedAction<Integer>) () -> Integer.valueOf(System.getProperty("org.jboss.ejb.client.transaction-handles", "1024"))).intValue());
+
+    private final int size;
+    private final ConcurrentHashMap<Transaction, Handle> handles = new ConcurrentHashMap<>();
+    private final ArrayDeque<Integer> released = new ArrayDeque<>();
+    private int next;
+
+    TransactionHandles(final int size) {
+        this.size = Math.min(MAX_SIZE, size);
+    }
+
+    /**
+     * Get the handle of the given transaction, allocating one if needed.
+     *
+     * @param transaction the transaction (must not be {@code null})
+     * @return the handle, or {@code null} if the transaction must be sent in full
+     */
+    Handle get(final Transaction transaction) {
+        Handle handle = handles.get(transaction);
+        if (handle != null || size <= 0) {
+            return handle;
+        }
+        final int id = allocate();
+        if (id == -1) {
+            return null;
+        }
+        handle = new Handle(id);
+        final Handle appearing = handles.putIfAbsent(transaction, handle);
+        if (appearing != null) {
+            release(id);
+            return appearing;
+        }
+        final Handle finalHandle = handle;
+        try {
+            transaction.registerSynchronization(new Synchronization() {
+                public void beforeCompletion() {
+                }
+
+                public void afterCompletion(final int status) {
+                    remove(transaction, finalHandle);
+                }
+            });
+        } catch (RollbackException | SystemException | IllegalStateException e) {
+            // it is about to complete anyway
+            remove(transaction, handle);
+            return null;
+        }
+        return handle;
+    }
+
+    int size() {
+        return handles.size();
+    }
+
+    private void remove(final Transaction transaction, final Handle handle) {
+        if (handles.remove(transaction, handle)) {
+            release(handle.getId());
+        }
+    }
+
+    private synchronized int allocate() {
+        final Integer id = released.pollFirst();
+        if (id != null) {
+            return id.intValue();
+        }
+        return next < size ? next ++ : -1;
+    }
+
+    private synchronized void release(final int id) {
+        released.addLast(Integer.valueOf(id));
+    }
+
+    static final class Handle {
+        private final int id;
+        private volatile boolean confirmed;
+
+        Handle(final int id) {
+            this.id = id;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        /**
+         * Determine whether the peer is known to have registered this handle.
+         *
+         * @return {@code true} if the handle may be sent alone, {@code false} if it must be registered again
+         */
+        boolean isConfirmed() {
+            return confirmed;
+        }
+
+        void confirm() {
+            confirmed = true;
+        }
+    }
+}
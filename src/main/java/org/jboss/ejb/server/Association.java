@@ -50,6 +50,19 @@ public interface Association {
     @NotNull
     CancelHandle receiveSessionOpenRequest(@NotNull SessionOpenRequest sessionOpenRequest);
 
+    /**
+     * Receive and execute a request to open several sessions at once.  The default implementation opens the sessions
+     * one after another through {@link #receiveSessionOpenRequest(SessionOpenRequest)}; sessions opened before a
+     * failure are not removed, and are left to expire.
+     *
+     * @param batchSessionOpenRequest the batch session open request (not {@code null})
+     * @return a handle which may be used to request cancellation of the request (must not be {@code null})
+     */
+    @NotNull
+    default CancelHandle receiveBatchSessionOpenRequest(@NotNull BatchSessionOpenRequest batchSessionOpenRequest) {
+        return new SequentialSessionOpener(this, batchSessionOpenRequest).start();
+    }
+
     /**
      * Register a cluster topology listener.  This is used by legacy protocols to transmit cluster updates to old clients.
      *
@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.server;
+
+import org.jboss.ejb.client.SessionID;
+import org.wildfly.common.annotation.NotNull;
+
+/**
+ * A request to open several sessions of the same stateful EJB at once.  Each call to
+ * {@link #convertToStateful(SessionID)} adds one session ID to the response, which is sent once
+ * {@linkplain #getSessionCount() all of them} have been added.  Any of the failure responses abandons the whole
+ * request.
+ */
+public interface BatchSessionOpenRequest extends SessionOpenRequest {
+
+    /**
+     * Get the number of sessions to open.
+     *
+     * @return the number of sessions (at least 1)
+     */
+    int getSessionCount();
+
+    /**
+     * Add several session IDs to the response.
+     *
+     * @param sessionIds the new session IDs (must not be {@code null} or contain {@code null} elements)
+     * @throws IllegalArgumentException if a session ID is {@code null}
+     * @throws IllegalStateException if more session IDs are added than were requested
+     */
+    default void convertToStateful(@NotNull SessionID[] sessionIds) throws IllegalArgumentException, IllegalStateException {
+        for (SessionID sessionId : sessionIds) {
+            convertToStateful(sessionId);
+        }
+    }
+}
@@ -36,6 +36,15 @@ public interface ClusterTopologyListener {
 
     void clusterNodesRemoved(List<ClusterRemovalInfo> clusterRemovalInfoList);
 
+    /**
+     * Report the current zone and load factor of the given nodes.  Servers should call this periodically; only the
+     * zone, load factor and name of each node are used.  Clients which do not understand load reports ignore them.
+     *
+     * @param nodeInfoList the nodes whose load is reported
+     */
+    default void clusterNodesLoadChanged(List<NodeInfo> nodeInfoList) {
+    }
+
     final class ClusterInfo {
         private final String clusterName;
         private final List<NodeInfo> nodeInfoList;
@@ -57,10 +66,26 @@ public interface ClusterTopologyListener {
     final class NodeInfo {
         private final String nodeName;
         private final List<MappingInfo> mappingInfoList;
+        private final String zone;
+        private final int loadFactor;
 
         public NodeInfo(final String nodeName, final List<MappingInfo> mappingInfoList) {
+            this(nodeName, mappingInfoList, null, -1);
+        }
+
+        /**
+         * Construct a new instance.
+         *
+         * @param nodeName the node name
+         * @param mappingInfoList the client mappings of the node
+         * @param zone the zone or rack of the node, or {@code null} if it is not known
+         * @param loadFactor the load of the node from 0 (idle) to 100 (saturated), or -1 if it is not known
+         */
+        public NodeInfo(final String nodeName, final List<MappingInfo> mappingInfoList, final String zone, final int loadFactor) {
             this.nodeName = nodeName;
             this.mappingInfoList = mappingInfoList;
+            this.zone = zone;
+            this.loadFactor = loadFactor < 0 ? -1 : Math.min(loadFactor, 100);
         }
 
         public String getNodeName() {
@@ -70,6 +95,14 @@ public interface ClusterTopologyListener {
         public List<MappingInfo> getMappingInfoList() {
             return mappingInfoList;
         }
+
+        public String getZone() {
+            return zone;
+        }
+
+        public int getLoadFactor() {
+            return loadFactor;
+        }
     }
 
     final class MappingInfo {
@@ -26,4 +26,9 @@ public interface ListenerHandle extends AutoCloseable {
      * Close the handle, unsubscribing the listener.
      */
     void close();
+
+    /**
+     * A null listener handle which does nothing.
+     */
+    ListenerHandle NULL = () -> {};
 }
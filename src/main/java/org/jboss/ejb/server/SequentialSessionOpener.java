@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.server;
+
+import java.net.SocketAddress;
+import java.util.concurrent.Executor;
+
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+
+import org.jboss.ejb.client.Affinity;
+import org.jboss.ejb.client.EJBIdentifier;
+import org.jboss.ejb.client.SessionID;
+import org.wildfly.common.annotation.NotNull;
+import org.wildfly.security.auth.server.SecurityIdentity;
+
+/**
+ * Serves a batch session open request for an association which only knows about single session open requests, by
+ * opening the sessions one after another.
+ */
+final class SequentialSessionOpener implements CancelHandle {
+    private final Association association;
+    private final BatchSessionOpenRequest batchRequest;
+    private final Object lock = new Object();
+    private int opened;
+    private boolean transactionImported;
+    private Transaction transaction;
+    private CancelHandle current = CancelHandle.NULL;
+    private boolean cancelled;
+    private boolean running;
+    private boolean pending;
+
+    SequentialSessionOpener(final Association association, final BatchSessionOpenRequest batchRequest) {
+        this.association = association;
+        this.batchRequest = batchRequest;
+    }
+
+    CancelHandle start() {
+        openNext();
+        return this;
+    }
+
+    public void cancel(final boolean aggressiveCancelRequested) {
+        final CancelHandle current;
+        synchronized (lock) {
+            cancelled = true;
+            current = this.current;
+        }
+        current.cancel(aggressiveCancelRequested);
+    }
+
+    private void openNext() {
+        synchronized (lock) {
+            if (running) {
+                // called back from within the association; the loop below picks it up
+                pending = true;
+                return;
+            }
+            running = true;
+        }
+        for (;;) {
+            final boolean cancelled;
+            synchronized (lock) {
+                cancelled = this.cancelled;
+                if (cancelled) {
+                    running = false;
+                }
+            }
+            if (cancelled) {
+                batchRequest.writeCancelResponse();
+                return;
+            }
+            final CancelHandle handle = association.receiveSessionOpenRequest(new SingleRequest());
+            synchronized (lock) {
+                current = handle;
+                if (! pending) {
+                    running = false;
+                    return;
+                }
+                pending = false;
+            }
+        }
+    }
+
+    Transaction getTransaction() throws SystemException {
+        synchronized (lock) {
+            // the transaction can only be imported once; every session joins the same one
+            if (! transactionImported) {
+                transaction = batchRequest.getTransaction();
+                transactionImported = true;
+            }
+            return transaction;
+        }
+    }
+
+    final class SingleRequest implements SessionOpenRequest {
+        public Executor getRequestExecutor() {
+            return batchRequest.getRequestExecutor();
+        }
+
+        public SocketAddress getPeerAddress() {
+            return batchRequest.getPeerAddress();
+        }
+
+        public SocketAddress getLocalAddress() {
+            return batchRequest.getLocalAddress();
+        }
+
+        public String getProtocol() {
+            return batchRequest.getProtocol();
+        }
+
+        public boolean isBlockingCaller() {
+            return batchRequest.isBlockingCaller();
+        }
+
+        @NotNull
+        public EJBIdentifier getEJBIdentifier() {
+            return batchRequest.getEJBIdentifier();
+        }
+
+        public SecurityIdentity getSecurityIdentity() {
+            return batchRequest.getSecurityIdentity();
+        }
+
+        public boolean hasTransaction() {
+            return batchRequest.hasTransaction();
+        }
+
+        public Transaction getTransaction() throws SystemException, IllegalStateException {
+            return SequentialSessionOpener.this.getTransaction();
+        }
+
+        public void writeException(@NotNull final Exception exception) {
+            batchRequest.writeException(exception);
+        }
+
+        public void writeNoSuchEJB() {
+            batchRequest.writeNoSuchEJB();
+        }
+
+        public void writeWrongViewType() {
+            batchRequest.writeWrongViewType();
+        }
+
+        public void writeCancelResponse() {
+            batchRequest.writeCancelResponse();
+        }
+
+        public void writeNotStateful() {
+            batchRequest.writeNotStateful();
+        }
+
+        public void convertToStateful(@NotNull final SessionID sessionId) throws IllegalArgumentException, IllegalStateException {
+            batchRequest.convertToStateful(sessionId);
+            final boolean more;
+            synchronized (lock) {
+                more = ++ opened < batchRequest.getSessionCount();
+            }
+            if (more) {
+                openNext();
+            }
+        }
+
+        public void updateStrongAffinity(@NotNull final Affinity affinity) {
+            batchRequest.updateStrongAffinity(affinity);
+        }
+
+        public void updateWeakAffinity(@NotNull final Affinity affinity) {
+            batchRequest.updateWeakAffinity(affinity);
+        }
+
+        public <C> C getProviderInterface(final Class<C> providerInterfaceType) {
+            return batchRequest.getProviderInterface(providerInterfaceType);
+        }
+    }
+}
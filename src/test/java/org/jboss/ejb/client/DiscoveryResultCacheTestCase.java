@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client;
+
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_EJB_MODULE;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.discovery.FilterSpec;
+import org.wildfly.discovery.ServiceURL;
+
+/**
+ * Tests for {@link DiscoveryResultCache}.
+ */
+public class DiscoveryResultCacheTestCase {
+
+    private static final URI NODE1 = URI.create("remote://node1:8080");
+    private static final URI NODE2 = URI.create("remote://node2:8080");
+
+    private static List<ServiceURL> serviceURLs(URI uri) {
+        final ServiceURL.Builder builder = new ServiceURL.Builder();
+        builder.setUri(uri);
+        builder.setAbstractType("ejb");
+        builder.setAbstractTypeAuthority("jboss");
+        return Collections.singletonList(builder.create());
+    }
+
+    @Test
+    public void testHitsAndInvalidation() {
+        final DiscoveryResultCache cache = new DiscoveryResultCache(60_000L);
+        final FilterSpec app1 = FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/one");
+        final FilterSpec app2 = FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/two");
+
+        Assert.assertNull(cache.get(app1));
+        cache.put(app1, serviceURLs(NODE1), cache.getGeneration());
+        cache.put(app2, serviceURLs(NODE2), cache.getGeneration());
+        final List<ServiceURL> cached = cache.get(FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/one"));
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(NODE1, cached.get(0).getLocationURI());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        // only the entries which include the location are dropped
+        cache.invalidate(NODE1);
+        Assert.assertNull(cache.get(app1));
+        Assert.assertNotNull(cache.get(app2));
+
+        cache.invalidate();
+        Assert.assertNull(cache.get(app2));
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testRacingInvalidation() {
+        final DiscoveryResultCache cache = new DiscoveryResultCache(60_000L);
+        final FilterSpec app1 = FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/one");
+        final long generation = cache.getGeneration();
+        // the topology changed while discovery was running
+        cache.invalidate();
+        cache.put(app1, serviceURLs(NODE1), generation);
+        Assert.assertNull(cache.get(app1));
+    }
+
+    @Test
+    public void testExpiry() {
+        final DiscoveryResultCache cache = new DiscoveryResultCache(1L);
+        final FilterSpec app1 = FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/one");
+        cache.put(app1, serviceURLs(NODE1), cache.getGeneration());
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < 5_000_000L) {
+            Thread.yield();
+        }
+        Assert.assertNull(cache.get(app1));
+    }
+}
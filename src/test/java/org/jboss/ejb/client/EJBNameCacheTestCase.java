@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EJBNameCache}.
+ */
+public class EJBNameCacheTestCase {
+
+    private static EJBNameCache.ParsedName parsedName(final String beanName) {
+        return new EJBNameCache.ParsedName(new EJBIdentifier(new EJBModuleIdentifier("app", "module", ""), beanName), Runnable.class.getName(), false);
+    }
+
+    @Test
+    public void testBounded() {
+        final EJBNameCache cache = new EJBNameCache(2);
+        cache.put("app/module/One!java.lang.Runnable", parsedName("One"));
+        cache.put("app/module/Two!java.lang.Runnable", parsedName("Two"));
+        cache.put("app/module/Three!java.lang.Runnable", parsedName("Three"));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("Three", cache.get("app/module/Three!java.lang.Runnable").getIdentifier().getBeanName());
+    }
+
+    @Test
+    public void testDisabled() {
+        final EJBNameCache cache = new EJBNameCache(0);
+        cache.put("app/module/One!java.lang.Runnable", parsedName("One"));
+        Assert.assertNull(cache.get("app/module/One!java.lang.Runnable"));
+    }
+
+    @Test
+    public void testViewPerClassLoader() {
+        final EJBNameCache.ParsedName parsedName = parsedName("One");
+        final ClassLoader classLoader = getClass().getClassLoader();
+        Assert.assertNull(parsedName.getView(classLoader));
+        parsedName.setView(classLoader, Runnable.class);
+        Assert.assertEquals(Runnable.class, parsedName.getView(classLoader));
+        // another class loader must resolve the view for itself
+        Assert.assertNull(parsedName.getView(new ClassLoader(classLoader) {}));
+    }
+}
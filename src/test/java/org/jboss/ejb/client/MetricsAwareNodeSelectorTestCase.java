@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the built-in {@link MetricsAwareNodeSelector} implementations.
+ */
+public class MetricsAwareNodeSelectorTestCase {
+
+    private static NodeMetrics metrics(String nodeName, int outstanding, long responseTime) {
+        final NodeMetrics metrics = new NodeMetrics(nodeName);
+        for (int i = 0; i < outstanding + 1; i ++) {
+            metrics.invocationStarted();
+        }
+        metrics.invocationFinished(responseTime);
+        return metrics;
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        final NodeMetrics[] candidates = {
+            metrics("node1", 3, 1_000L),
+            metrics("node2", 1, 5_000L),
+            metrics("node3", 1, 2_000L),
+        };
+        for (int i = 0; i < 20; i ++) {
+            Assert.assertEquals("node3", MetricsAwareNodeSelector.LEAST_OUTSTANDING.selectNode(candidates));
+        }
+    }
+
+    @Test
+    public void testLeastResponseTime() {
+        final NodeMetrics[] candidates = {
+            metrics("node1", 0, 4_000L),
+            metrics("node2", 3, 2_000L),
+            metrics("node3", 1, 1_000L),
+        };
+        for (int i = 0; i < 20; i ++) {
+            Assert.assertEquals("node3", MetricsAwareNodeSelector.LEAST_RESPONSE_TIME.selectNode(candidates));
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() {
+        final NodeMetrics[] candidates = {
+            metrics("node1", 0, 1_000L),
+            metrics("node2", 10, 1_000L),
+            metrics("node3", 20, 1_000L),
+        };
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i ++) {
+            counts.merge(MetricsAwareNodeSelector.POWER_OF_TWO_CHOICES.selectNode(candidates), Integer.valueOf(1), Integer::sum);
+        }
+        // the most loaded node always loses its comparison
+        Assert.assertNull(counts.get("node3"));
+        Assert.assertTrue(counts.get("node1").intValue() > counts.get("node2").intValue());
+    }
+
+    @Test
+    public void testZoneAware() {
+        final NodeMetrics near1 = metrics("near1", 0, 1_000L);
+        near1.setAdvertisedLoad("a", 0);
+        final NodeMetrics near2 = metrics("near2", 0, 1_000L);
+        near2.setAdvertisedLoad("a", 99);
+        final NodeMetrics far = metrics("far", 0, 1_000L);
+        far.setAdvertisedLoad("b", 0);
+        final NodeMetrics[] candidates = { near1, near2, far };
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i ++) {
+            counts.merge(MetricsAwareNodeSelector.zoneAware("a").selectNode(candidates), Integer.valueOf(1), Integer::sum);
+        }
+        Assert.assertNull(counts.get("far"));
+        // weights are 1 and 1/100
+        Assert.assertTrue(counts.get("near1").intValue() > 20 * counts.getOrDefault("near2", Integer.valueOf(0)).intValue());
+
+        // no local node; every candidate is eligible
+        Assert.assertEquals("far", MetricsAwareNodeSelector.zoneAware("c").selectNode(new NodeMetrics[] { far }));
+    }
+
+    @Test
+    public void testMetrics() {
+        final NodeMetrics metrics = new NodeMetrics("node1");
+        metrics.invocationStarted();
+        metrics.invocationStarted();
+        Assert.assertEquals(2, metrics.getOutstandingInvocations());
+        metrics.invocationFinished(8_000L);
+        Assert.assertEquals(8_000L, metrics.getAverageResponseTime());
+        metrics.invocationFinished(-1L);
+        Assert.assertEquals(0, metrics.getOutstandingInvocations());
+        Assert.assertEquals(8_000L, metrics.getAverageResponseTime());
+        metrics.invocationStarted();
+        metrics.invocationFinished(16_000L);
+        Assert.assertEquals(9_000L, metrics.getAverageResponseTime());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.discovery.ServiceURL;
+
+/**
+ * Tests for {@link NodeHealthRegistry}.
+ */
+public class NodeHealthRegistryTestCase {
+
+    private static final URI NODE1 = URI.create("remote://node1:8080");
+    private static final URI NODE2 = URI.create("remote://node2:8080");
+
+    private static void sleepNanos(long nanos) {
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void testBackoffAndProbe() {
+        final NodeHealthRegistry registry = new NodeHealthRegistry(50L, 60_000L);
+        final List<String> events = new ArrayList<>();
+        registry.addListener((destination, oldState, newState) -> events.add(destination.getHost() + ":" + oldState + "->" + newState));
+
+        Assert.assertTrue(registry.claimProbe(NODE1));
+        registry.recordFailure(NODE1);
+        Assert.assertEquals(NodeHealthRegistry.State.BACKING_OFF, registry.getState(NODE1));
+        Assert.assertFalse(registry.claimProbe(NODE1));
+        Assert.assertTrue(registry.claimProbe(NODE2));
+
+        sleepNanos(60_000_000L);
+        // only one caller gets to probe
+        Assert.assertTrue(registry.claimProbe(NODE1));
+        Assert.assertFalse(registry.claimProbe(NODE1));
+        Assert.assertEquals(NodeHealthRegistry.State.PROBING, registry.getState(NODE1));
+
+        // a failed probe starts a longer window
+        registry.recordFailure(NODE1);
+        sleepNanos(60_000_000L);
+        Assert.assertFalse(registry.claimProbe(NODE1));
+        sleepNanos(60_000_000L);
+        Assert.assertTrue(registry.claimProbe(NODE1));
+
+        registry.recordSuccess(NODE1);
+        Assert.assertEquals(NodeHealthRegistry.State.AVAILABLE, registry.getState(NODE1));
+        Assert.assertTrue(registry.claimProbe(NODE1));
+
+        final List<String> expected = new ArrayList<>();
+        expected.add("node1:AVAILABLE->BACKING_OFF");
+        expected.add("node1:BACKING_OFF->PROBING");
+        expected.add("node1:PROBING->BACKING_OFF");
+        expected.add("node1:BACKING_OFF->PROBING");
+        expected.add("node1:PROBING->AVAILABLE");
+        Assert.assertEquals(expected, events);
+    }
+
+    @Test
+    public void testUsableDoesNotClaim() {
+        final NodeHealthRegistry registry = new NodeHealthRegistry(50L, 60_000L);
+        registry.recordFailure(NODE1);
+        Assert.assertFalse(registry.isUsable(NODE1));
+        sleepNanos(60_000_000L);
+        // any number of callers may consider the destination without claiming its probe
+        Assert.assertTrue(registry.isUsable(NODE1));
+        Assert.assertTrue(registry.isUsable(NODE1));
+        Assert.assertEquals(NodeHealthRegistry.State.BACKING_OFF, registry.getState(NODE1));
+        // only the caller which chose it probes it
+        Assert.assertTrue(registry.claimProbe(NODE1));
+        Assert.assertEquals(NodeHealthRegistry.State.PROBING, registry.getState(NODE1));
+        Assert.assertFalse(registry.isUsable(NODE1));
+    }
+
+    @Test
+    public void testRecoveryForgetsHistory() {
+        final NodeHealthRegistry registry = new NodeHealthRegistry(50L, 60_000L);
+        registry.recordSuccess(NODE1, 9_000_000L);
+        registry.recordFailure(NODE1);
+        registry.recordFailure(NODE1);
+        registry.recordSuccess(NODE1);
+        Assert.assertEquals(NodeHealthRegistry.State.AVAILABLE, registry.getState(NODE1));
+        // the stale latency is gone along with the failures
+        Assert.assertEquals(1.0, registry.getScore(NODE1), 0.0);
+        registry.recordFailure(NODE1);
+        sleepNanos(60_000_000L);
+        // the failure count started again from one, so the first window applies
+        Assert.assertTrue(registry.isUsable(NODE1));
+    }
+
+    @Test
+    public void testScore() {
+        final NodeHealthRegistry registry = new NodeHealthRegistry(1_000L, 1_000L);
+        Assert.assertEquals(1.0, registry.getScore(NODE1), 0.0);
+        registry.recordSuccess(NODE1, 1_000_000L);
+        registry.recordSuccess(NODE2, 9_000_000L);
+        Assert.assertEquals(0.5, registry.getScore(NODE1), 0.001);
+        Assert.assertEquals(0.1, registry.getScore(NODE2), 0.001);
+        registry.recordFailure(NODE1);
+        Assert.assertEquals(0.0, registry.getScore(NODE1), 0.0);
+    }
+
+    @Test
+    public void testSortByScore() {
+        final NodeHealthRegistry registry = new NodeHealthRegistry(1_000L, 1_000L);
+        final URI node3 = URI.create("remote://node3:8080");
+        registry.recordSuccess(NODE1, 9_000_000L);
+        registry.recordSuccess(NODE2, 1_000_000L);
+        final List<ServiceURL> serviceURLs = new ArrayList<>();
+        serviceURLs.add(new ServiceURL.Builder().setUri(NODE1).create());
+        serviceURLs.add(new ServiceURL.Builder().setUri(node3).setAbstractType("a").create());
+        serviceURLs.add(new ServiceURL.Builder().setUri(NODE2).create());
+        serviceURLs.add(new ServiceURL.Builder().setUri(node3).setAbstractType("b").create());
+        DiscoveryEJBClientInterceptor.sortByScore(registry, serviceURLs);
+        // a destination without latency samples comes first, and keeps the order of its services
+        Assert.assertEquals(node3, serviceURLs.get(0).getLocationURI());
+        Assert.assertEquals("a", serviceURLs.get(0).getAbstractType());
+        Assert.assertEquals(node3, serviceURLs.get(1).getLocationURI());
+        Assert.assertEquals("b", serviceURLs.get(1).getAbstractType());
+        Assert.assertEquals(NODE2, serviceURLs.get(2).getLocationURI());
+        Assert.assertEquals(NODE1, serviceURLs.get(3).getLocationURI());
+    }
+}
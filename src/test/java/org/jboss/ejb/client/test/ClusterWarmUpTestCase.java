@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.client.test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.ejb.client.EJBClientCluster;
+import org.jboss.ejb.client.EJBClientConnection;
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.NodeHealthRegistry;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.ejb.client.test.common.Echo;
+import org.jboss.ejb.client.test.common.EchoBean;
+import org.jboss.ejb.protocol.remote.RemoteTransportProvider;
+import org.jboss.ejb.server.ClusterTopologyListener.ClusterInfo;
+import org.jboss.ejb.server.ClusterTopologyListener.NodeInfo;
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the nodes of a cluster with warm-up enabled are connected ahead of the first invocation, and that the
+ * outcome is reported to the node health registry.
+ */
+public class ClusterWarmUpTestCase {
+
+    private static final Logger logger = Logger.getLogger(ClusterWarmUpTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final String APP_NAME = "my-foo-app";
+    private static final String MODULE_NAME = "my-bar-module";
+    private static final String DISTINCT_NAME = "";
+
+    private static final String CLUSTER_NAME = "ejb";
+    private static final String NODE1_NAME = "node1";
+    private static final String NODE2_NAME = "node2";
+
+    private static final NodeInfo NODE1 = DummyServer.getNodeInfo(NODE1_NAME, "localhost", 6999, "0.0.0.0", 0);
+    private static final NodeInfo NODE2 = DummyServer.getNodeInfo(NODE2_NAME, "localhost", 7099, "0.0.0.0", 0);
+    private static final ClusterInfo CLUSTER = DummyServer.getClusterInfo(CLUSTER_NAME, NODE1, NODE2);
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(30L);
+
+    private final DummyServer[] servers = new DummyServer[2];
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        // the authentication configuration of the connections comes from here
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(ClusterWarmUpTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+
+        ClassCallback.beforeClassCallback();
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        servers[0] = startServer(6999, NODE1_NAME);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        final URI node2 = new URI("remote", null, "localhost", 7099, null, null, null);
+        final EJBClientContext context = new EJBClientContext.Builder()
+            .addTransportProvider(new RemoteTransportProvider())
+            .addClientConnection(new EJBClientConnection.Builder().setDestination(new URI("remote", null, "localhost", 6999, null, null, null)).build())
+            .addClientCluster(new EJBClientCluster.Builder().setName(CLUSTER_NAME).setWarmUp(true).build())
+            .build();
+        final NodeHealthRegistry healthRegistry = context.getNodeHealthRegistry();
+
+        // node2 is advertised by node1 but is not running, so warming it up fails
+        awaitState(context, healthRegistry, node2, NodeHealthRegistry.State.BACKING_OFF);
+
+        // once node2 is up, the next warm-up after its backoff window connects it
+        servers[1] = startServer(7099, NODE2_NAME);
+        awaitState(context, healthRegistry, node2, NodeHealthRegistry.State.AVAILABLE);
+    }
+
+    private static void awaitState(final EJBClientContext context, final NodeHealthRegistry healthRegistry, final URI destination, final NodeHealthRegistry.State state) throws InterruptedException {
+        final long start = System.nanoTime();
+        while (healthRegistry.getState(destination) != state) {
+            Assert.assertTrue("Destination " + destination + " did not become " + state, System.nanoTime() - start < TIMEOUT);
+            Thread.sleep(100L);
+            // warm up again, as a topology change would
+            context.warmUp();
+        }
+    }
+
+    private static DummyServer startServer(final int port, final String name) throws Exception {
+        final DummyServer server = new DummyServer("localhost", port, name);
+        server.start();
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getSimpleName(), new EchoBean());
+        server.addCluster(CLUSTER);
+        logger.info("Started server " + name);
+        return server;
+    }
+
+    @After
+    public void afterTest() {
+        for (DummyServer server : servers) {
+            if (server != null) {
+                server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getName());
+                server.removeCluster(CLUSTER_NAME);
+                try {
+                    server.stop();
+                } catch (Throwable t) {
+                    logger.info("Could not stop server", t);
+                }
+            }
+        }
+    }
+}
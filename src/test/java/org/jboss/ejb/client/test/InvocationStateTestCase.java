@@ -0,0 +1,202 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client.test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.ejb.client.EJBClient;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.URIAffinity;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.common.Delay;
+import org.jboss.ejb.client.test.common.DelayBean;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Exercises the state machine of asynchronous invocations from many threads at once: callers which poll the result
+ * with short timeouts while the invocations are in progress, and cancellations which race with responses.
+ */
+public class InvocationStateTestCase {
+
+    private static final Logger logger = Logger.getLogger(InvocationStateTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final String APP_NAME = "my-foo-app";
+    private static final String MODULE_NAME = "my-bar-module";
+    private static final String DISTINCT_NAME = "";
+
+    private static final String SERVER_NAME = "test-server";
+
+    private static final int INVOCATIONS = 20;
+    private static final int POLLERS = 4;
+
+    private DummyServer server;
+    private ExecutorService executor;
+    private Delay proxy;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(InvocationStateTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        server = new DummyServer("localhost", 6999, SERVER_NAME);
+        server.start();
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Delay.class.getSimpleName(), new DelayBean());
+        executor = Executors.newFixedThreadPool(INVOCATIONS * POLLERS);
+
+        proxy = EJBClient.createProxy(new StatelessEJBLocator<>(Delay.class, APP_NAME, MODULE_NAME, Delay.class.getSimpleName(), DISTINCT_NAME));
+        EJBClient.setStrongAffinity(proxy, URIAffinity.forUri(new URI("remote", null, "localhost", 6999, null, null, null)));
+        // make sure the connection is up before the callers pile in
+        Assert.assertEquals("warm-up", proxy.delay("warm-up", 0L));
+    }
+
+    /**
+     * Test that callers which keep timing out while waiting for a result all see it once it arrives
+     */
+    @Test
+    public void testTimedWaits() throws Exception {
+        final List<Future<?>> futures = startInvocations(300L);
+        final AtomicInteger timeouts = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(INVOCATIONS * POLLERS);
+        for (int i = 0; i < INVOCATIONS; i ++) {
+            final Future<?> future = futures.get(i);
+            final String expected = "hello-" + i;
+            for (int j = 0; j < POLLERS; j ++) {
+                executor.execute(() -> {
+                    try {
+                        for (;;) {
+                            try {
+                                if (! expected.equals(future.get(1L, TimeUnit.MILLISECONDS))) {
+                                    failures.incrementAndGet();
+                                }
+                                // once a result was seen, the future stays done
+                                if (! future.isDone()) {
+                                    failures.incrementAndGet();
+                                }
+                                return;
+                            } catch (TimeoutException e) {
+                                timeouts.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        logger.error("Waiting for the result failed", t);
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        Assert.assertTrue("Callers did not finish in time", done.await(30L, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        Assert.assertTrue("Callers did not wait", timeouts.get() > 0);
+        logger.infof("%d timed waits expired", timeouts.get());
+        // the invocations still answer normally
+        Assert.assertEquals("hello", proxy.delay("hello", 0L));
+    }
+
+    /**
+     * Test that cancellations which race with responses and with waiting callers leave every invocation either
+     * cancelled or completed
+     */
+    @Test
+    public void testCancellationUnderContention() throws Exception {
+        final List<Future<?>> futures = startInvocations(100L);
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(INVOCATIONS * POLLERS);
+        for (int i = 0; i < INVOCATIONS; i ++) {
+            final Future<?> future = futures.get(i);
+            final String expected = "hello-" + i;
+            for (int j = 0; j < POLLERS; j ++) {
+                final boolean canceller = j == 0;
+                executor.execute(() -> {
+                    try {
+                        if (canceller && future.cancel(true)) {
+                            cancelled.incrementAndGet();
+                            if (! future.isCancelled() || ! future.isDone()) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                        try {
+                            final Object result = future.get(30L, TimeUnit.SECONDS);
+                            if (! expected.equals(result) || future.isCancelled()) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (CancellationException e) {
+                            if (! future.isCancelled()) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        logger.error("Waiting for the result failed", t);
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        Assert.assertTrue("Callers did not finish in time", done.await(60L, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        logger.infof("%d of %d invocations were cancelled", cancelled.get(), INVOCATIONS);
+        // the connection is still usable
+        Assert.assertEquals("hello", proxy.delay("hello", 0L));
+    }
+
+    private List<Future<?>> startInvocations(final long millis) {
+        final Delay async = EJBClient.asynchronous(proxy);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < INVOCATIONS; i ++) {
+            async.delay("hello-" + i, millis);
+            futures.add(EJBClient.getFutureResult());
+        }
+        return futures;
+    }
+
+    @After
+    public void afterTest() {
+        executor.shutdownNow();
+        server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Delay.class.getSimpleName());
+        try {
+            server.stop();
+        } catch (Throwable t) {
+            logger.info("Could not stop server", t);
+        }
+    }
+}
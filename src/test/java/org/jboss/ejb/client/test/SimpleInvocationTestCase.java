@@ -20,6 +20,10 @@ package org.jboss.ejb.client.test;
 import org.jboss.ejb.client.EJBClient;
 import org.jboss.ejb.client.EJBClientConnection;
 import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.EJBMethodInvocation;
+import org.jboss.ejb.client.EJBMethodLocator;
+import org.jboss.ejb.client.SessionID;
+import org.jboss.ejb.client.StatefulEJBLocator;
 import org.jboss.ejb.client.StatelessEJBLocator;
 import org.jboss.ejb.client.URIAffinity;
 import org.jboss.ejb.client.legacy.JBossEJBProperties;
@@ -41,7 +45,14 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests basic invocation of a bean deployed on a single server node.
@@ -131,6 +142,74 @@ public class SimpleInvocationTestCase {
         Assert.assertEquals("Got an unexpected echo", echo, message);
     }
 
+    /**
+     * Test a batch of invocations sent together to the same destination
+     */
+    @Test
+    public void testBatchInvocation() throws Exception {
+        logger.info("Testing batch invocation on proxy with URIAffinity");
+
+        final StatelessEJBLocator<Echo> statelessEJBLocator = new StatelessEJBLocator<Echo>(Echo.class, APP_NAME, MODULE_NAME, Echo.class.getSimpleName(), DISTINCT_NAME);
+        final Echo proxy = EJBClient.createProxy(statelessEJBLocator);
+        EJBClient.setStrongAffinity(proxy, URIAffinity.forUri(new URI("remote", null,"localhost", 6999, null, null,null)));
+
+        final EJBMethodLocator echoLocator = EJBMethodLocator.forMethod(Echo.class.getMethod("echo", String.class));
+        final List<EJBMethodInvocation> invocations = new ArrayList<>();
+        for (int i = 0; i < 20; i ++) {
+            invocations.add(new EJBMethodInvocation(echoLocator, "hello-" + i));
+        }
+        final List<Future<?>> results = EJBClient.invokeBatch(proxy, invocations);
+        Assert.assertEquals("Got an unexpected number of results", invocations.size(), results.size());
+        for (int i = 0; i < results.size(); i ++) {
+            Assert.assertEquals("Got an unexpected echo", "hello-" + i, results.get(i).get());
+        }
+    }
+
+    /**
+     * Test the creation of several sessions in one request, synchronously and asynchronously
+     */
+    @Test
+    public void testBatchSessionCreation() throws Exception {
+        logger.info("Testing batch session creation with URIAffinity");
+
+        final StatelessEJBLocator<Echo> statelessEJBLocator = new StatelessEJBLocator<Echo>(Echo.class, APP_NAME, MODULE_NAME, Echo.class.getSimpleName(), DISTINCT_NAME, URIAffinity.forUri(new URI("remote", null,"localhost", 6999, null, null,null)));
+
+        final List<StatefulEJBLocator<Echo>> locators = EJBClient.createSessions(statelessEJBLocator, 5);
+        Assert.assertEquals("Got an unexpected number of sessions", 5, locators.size());
+        final Set<SessionID> sessionIds = new HashSet<>();
+        for (StatefulEJBLocator<Echo> locator : locators) {
+            sessionIds.add(locator.getSessionId());
+        }
+        Assert.assertEquals("Got duplicate sessions", 5, sessionIds.size());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final List<StatefulEJBLocator<Echo>> asyncLocators = EJBClient.createSessionsAsync(statelessEJBLocator, 3, executor).toCompletableFuture().get(30, TimeUnit.SECONDS);
+            Assert.assertEquals("Got an unexpected number of sessions", 3, asyncLocators.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that a request for more sessions than the server allows is rejected
+     */
+    @Test
+    public void testBatchSessionCreationLimit() throws Exception {
+        logger.info("Testing batch session creation above the server limit");
+
+        final StatelessEJBLocator<Echo> statelessEJBLocator = new StatelessEJBLocator<Echo>(Echo.class, APP_NAME, MODULE_NAME, Echo.class.getSimpleName(), DISTINCT_NAME, URIAffinity.forUri(new URI("remote", null,"localhost", 6999, null, null,null)));
+
+        try {
+            EJBClient.createSessions(statelessEJBLocator, 1001);
+            Assert.fail("Expected the request to be rejected");
+        } catch (Exception expected) {
+            logger.info("Request was rejected", expected);
+        }
+        // the connection is still usable
+        Assert.assertEquals("Got an unexpected number of sessions", 2, EJBClient.createSessions(statelessEJBLocator, 2).size());
+    }
+
     /**
      * Do any test-specific tear down here.
      */
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.ejb.client.EJBClient;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.URIAffinity;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.ejb.client.test.common.Echo;
+import org.jboss.ejb.client.test.common.EchoBean;
+import org.jboss.ejb.client.test.common.Streams;
+import org.jboss.ejb.client.test.common.StreamsBean;
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests invocations with streamed parameters and results against a single server node.  Every invocation is bounded
+ * in time, so that a stream whose content never arrives fails the test instead of hanging it.
+ */
+public class StreamInvocationTestCase {
+
+    private static final Logger logger = Logger.getLogger(StreamInvocationTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final String APP_NAME = "my-foo-app";
+    private static final String MODULE_NAME = "my-bar-module";
+    private static final String DISTINCT_NAME = "";
+
+    private static final String SERVER_NAME = "test-server";
+
+    private DummyServer server;
+    private ExecutorService executor;
+    private Streams streams;
+    private Echo echo;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(StreamInvocationTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        server = new DummyServer("localhost", 6999, SERVER_NAME);
+        server.start();
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Streams.class.getSimpleName(), new StreamsBean());
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getSimpleName(), new EchoBean());
+        executor = Executors.newCachedThreadPool();
+
+        final URIAffinity affinity = URIAffinity.forUri(new URI("remote", null, "localhost", 6999, null, null, null));
+        streams = EJBClient.createProxy(new StatelessEJBLocator<>(Streams.class, APP_NAME, MODULE_NAME, Streams.class.getSimpleName(), DISTINCT_NAME, affinity));
+        echo = EJBClient.createProxy(new StatelessEJBLocator<>(Echo.class, APP_NAME, MODULE_NAME, Echo.class.getSimpleName(), DISTINCT_NAME, affinity));
+    }
+
+    /**
+     * Test a streamed parameter which the bean reads to its end
+     */
+    @Test
+    public void testStreamedParameter() throws Exception {
+        final byte[] content = StreamsBean.content(1 << 20);
+        Assert.assertEquals(content.length, call(() -> Long.valueOf(streams.count(new ByteArrayInputStream(content)))).longValue());
+        // and an empty one
+        Assert.assertEquals(0L, call(() -> Long.valueOf(streams.count(new ByteArrayInputStream(new byte[0])))).longValue());
+    }
+
+    /**
+     * Test a streamed result which the client reads to its end
+     */
+    @Test
+    public void testStreamedResult() throws Exception {
+        final byte[] content = StreamsBean.content(1 << 20);
+        final byte[] received = call(() -> {
+            try (InputStream in = streams.generate(content.length)) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int res;
+                while ((res = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, res);
+                }
+                return out.toByteArray();
+            }
+        });
+        Assert.assertArrayEquals(content, received);
+    }
+
+    /**
+     * Test that content which neither the bean nor the client reads does not hold on to the connection; far more
+     * invocations are made than the connection has inbound message slots
+     */
+    @Test
+    public void testUnreadContent() throws Exception {
+        for (int i = 0; i < 200; i ++) {
+            Assert.assertEquals("ignored", call(() -> streams.ignore(new ByteArrayInputStream(StreamsBean.content(1024)))));
+            // the result stream is closed without being read
+            call(() -> {
+                streams.generate(1024).close();
+                return null;
+            });
+        }
+        Assert.assertEquals("hello", call(() -> echo.echo("hello")));
+    }
+
+    /**
+     * Test that a streamed parameter which fails while it is being sent fails the invocation instead of leaving the
+     * bean waiting for its content
+     */
+    @Test
+    public void testFailedParameterWrite() throws Exception {
+        final InputStream failing = new InputStream() {
+            private int remaining = 100_000;
+
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Simulated failure");
+                }
+                remaining --;
+                return 'x';
+            }
+        };
+        try {
+            call(() -> Long.valueOf(streams.count(failing)));
+            Assert.fail("Expected the invocation to fail");
+        } catch (ExecutionException expected) {
+            logger.info("Invocation failed as expected", expected.getCause());
+        }
+        // the connection is still usable
+        Assert.assertEquals("hello", call(() -> echo.echo("hello")));
+    }
+
+    private <T> T call(final Callable<T> callable) throws Exception {
+        return executor.submit(callable).get(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void afterTest() {
+        executor.shutdownNow();
+        server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Streams.class.getSimpleName());
+        server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getSimpleName());
+        try {
+            server.stop();
+        } catch (Throwable t) {
+            logger.info("Could not stop server", t);
+        }
+    }
+}
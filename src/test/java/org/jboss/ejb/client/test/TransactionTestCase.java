@@ -80,6 +80,9 @@ public class TransactionTestCase {
     private static final String SERVER3_NAME = "server3";
     private static final String SERVER4_NAME = "server4";
 
+    private static final int TRANSACTIONS = Integer.getInteger("org.jboss.ejb.client.test.transactions", 2).intValue();
+    private static final int CALLS = Integer.getInteger("org.jboss.ejb.client.test.transaction.calls", 10).intValue();
+
     /**
      * Do any general setup here
      * @throws Exception
@@ -301,6 +304,55 @@ public class TransactionTestCase {
         Assert.assertEquals(Stream.of("server2", "server3", "server4").collect(Collectors.toSet()), id2s);
     }
 
+    /**
+     * Runs transactions of many invocations spread over two applications and logs how long they take.  Once an
+     * application is pinned within a transaction, its invocations skip discovery; the other application follows it to
+     * the same node when that node has it.  The regular build runs a couple of short transactions to check the
+     * routing; the {@code org.jboss.ejb.client.test.transactions} and
+     * {@code org.jboss.ejb.client.test.transaction.calls} system properties, which the {@code stress-test} profile sets
+     * to 50 and 100 ({@code mvn test -Dstress-test}), make it long enough for the timing to mean something.
+     */
+    @Test
+    public void testManyCallTransactions() throws Exception {
+        FastHashtable<String, Object> props = new FastHashtable<>();
+        props.put("java.naming.provider.url", "remote://localhost:6999, remote://localhost:7999, remote://localhost:8999, remote://localhost:9999");
+        props.put("java.naming.factory.initial", WildFlyInitialContextFactory.class.getName());
+        WildFlyRootContext context = new WildFlyRootContext(props);
+
+        final Echo echo1 = (Echo) context.lookup("ejb:" + APP_NAME + "/" + MODULE_NAME + "/" + EchoBean.class.getSimpleName() + "!" + Echo.class.getName());
+        final Echo echo2 = (Echo) context.lookup("ejb:" + OTHER_APP + "/" + MODULE_NAME + "/" + EchoBean.class.getSimpleName() + "!" + Echo.class.getName());
+
+        final int transactions = TRANSACTIONS;
+        final int calls = CALLS;
+        long elapsed = 0L;
+        // the first round warms up connections and discovery
+        for (int attempts = -1; attempts < transactions; attempts++) {
+            txManager.begin();
+            final long start = System.nanoTime();
+            HashSet<String> id1s = new HashSet<>();
+            HashSet<String> id2s = new HashSet<>();
+            for (int i = 0; i < Math.max(1, calls / 2); i++) {
+                id1s.add(echo1.whoAreYou());
+                id2s.add(echo2.whoAreYou());
+            }
+            if (attempts >= 0) {
+                elapsed += System.nanoTime() - start;
+            }
+            txManager.commit();
+
+            // Everything should clump to one node per application under this transaction
+            Assert.assertEquals(1, id1s.size());
+            Assert.assertEquals(1, id2s.size());
+            final String id1 = id1s.iterator().next();
+            if (! id1.equals("server1")) {
+                Assert.assertEquals(id1s, id2s);
+            }
+        }
+        if (transactions > 0) {
+            logger.infof("%d transactions of %d invocations took %d µs each on average", transactions, calls, elapsed / transactions / 1000L);
+        }
+    }
+
     /**
      * Do any test-specific tear down here.
      */
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client.test;
+
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.ejb.client.EJBClient;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.URIAffinity;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.ejb.client.test.common.Echo;
+import org.jboss.ejb.client.test.common.EchoBean;
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Exercises the blocking invocation paths with many concurrent callers.  On a JDK with virtual threads every caller
+ * gets its own virtual thread, which only works out if waiting for a response does not pin the carrier thread; on
+ * older JDKs the callers share a pool of platform threads.  The regular build runs a modest number of callers; the
+ * number comes from the {@code org.jboss.ejb.client.test.callers} system property, which the {@code stress-test}
+ * profile sets to 100000 ({@code mvn test -Dstress-test}).
+ */
+public class VirtualThreadInvocationTestCase {
+
+    private static final Logger logger = Logger.getLogger(VirtualThreadInvocationTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final String APP_NAME = "my-foo-app";
+    private static final String MODULE_NAME = "my-bar-module";
+    private static final String DISTINCT_NAME = "";
+
+    private static final String SERVER_NAME = "test-server";
+
+    private static final int CALLERS = Integer.getInteger("org.jboss.ejb.client.test.callers", 500).intValue();
+
+    private DummyServer server;
+    private boolean serverStarted = false;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(VirtualThreadInvocationTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+
+        ClassCallback.beforeClassCallback();
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        server = new DummyServer("localhost", 6999, SERVER_NAME);
+        server.start();
+        serverStarted = true;
+
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getSimpleName(), new EchoBean());
+    }
+
+    @Test
+    public void testConcurrentCallers() throws Exception {
+        final StatelessEJBLocator<Echo> statelessEJBLocator = new StatelessEJBLocator<Echo>(Echo.class, APP_NAME, MODULE_NAME, Echo.class.getSimpleName(), DISTINCT_NAME);
+        final Echo proxy = EJBClient.createProxy(statelessEJBLocator);
+        EJBClient.setStrongAffinity(proxy, URIAffinity.forUri(new URI("remote", null, "localhost", 6999, null, null, null)));
+        // make sure the connection is up before the callers pile in
+        Assert.assertEquals("Got an unexpected echo", "warm-up", proxy.echo("warm-up"));
+
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            logger.info("Virtual threads are not available; using platform threads");
+            executor = Executors.newFixedThreadPool(64);
+        }
+        final int callers = CALLERS;
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        try {
+            for (int i = 0; i < callers; i ++) {
+                final String message = "hello-" + i;
+                executor.execute(() -> {
+                    try {
+                        if (message.equals(proxy.echo(message))) {
+                            succeeded.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        if (failed.getAndIncrement() == 0) {
+                            logger.error("Invocation failed", t);
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue("Callers did not finish in time", executor.awaitTermination(Math.max(1, callers / 10000), TimeUnit.MINUTES));
+        Assert.assertEquals("Some invocations failed", 0, failed.get());
+        Assert.assertEquals(callers, succeeded.get());
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @After
+    public void afterTest() {
+        server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getName());
+
+        if (serverStarted) {
+            try {
+                this.server.stop();
+            } catch (Throwable t) {
+                logger.info("Could not stop server", t);
+            }
+        }
+    }
+}
@@ -200,6 +200,15 @@ public class DummyServer {
         clusterRegistry.removeClusterNodes(clusterRemovalInfo);
     }
 
+    // listener registrations, one of each per EJB client channel which receives module and topology updates
+    public int getModuleListenerCount() {
+        return deploymentRepository.listeners.size();
+    }
+
+    public int getClusterListenerCount() {
+        return clusterRegistry.listeners.size();
+    }
+
     public interface EJBDeploymentRepositoryListener {
         void moduleAvailable(List<EJBModuleIdentifier> modules);
         void moduleUnavailable(List<EJBModuleIdentifier> modules);
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.ejb.client.test.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A bean which reads, produces or ignores streamed content.
+ */
+public class StreamsBean implements Streams {
+
+    /**
+     * Get the content which {@link #generate(int)} produces.
+     *
+     * @param length the content length
+     * @return the content
+     */
+    public static byte[] content(final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        return bytes;
+    }
+
+    public long count(final InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            final byte[] buffer = new byte[8192];
+            long count = 0L;
+            int res;
+            while ((res = stream.read(buffer)) != -1) {
+                count += res;
+            }
+            return count;
+        }
+    }
+
+    public InputStream generate(final int length) {
+        return new ByteArrayInputStream(content(length));
+    }
+
+    public String ignore(final InputStream in) {
+        return "ignored";
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import org.jboss.ejb.client.EJBMethodLocator;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AdaptiveCompression}.
+ */
+public final class AdaptiveCompressionTestCase {
+
+    private static int compressedCount(final AdaptiveCompression.MethodStats stats, final int calls, final long rawSize, final long compressedSize) {
+        int compressed = 0;
+        for (int i = 0; i < calls; i ++) {
+            if (stats.shouldCompress()) {
+                compressed ++;
+                stats.record(rawSize, compressedSize);
+            }
+        }
+        return compressed;
+    }
+
+    @Test
+    public void testHysteresis() {
+        final AdaptiveCompression adaptiveCompression = new AdaptiveCompression(512);
+        final AdaptiveCompression.MethodStats stats = adaptiveCompression.getStats(new EJBMethodLocator("upload", "byte[]"));
+        assertSame(stats, adaptiveCompression.getStats(new EJBMethodLocator("upload", "byte[]")));
+        // compression is only probed until it is known to pay off
+        assertEquals(2, compressedCount(stats, AdaptiveCompression.PROBE_INTERVAL * 2, 10_000, 9_900));
+        assertFalse(stats.isCompressing());
+        // the ratio is averaged, so one good sample is not enough
+        assertEquals(2, compressedCount(stats, AdaptiveCompression.PROBE_INTERVAL * 2, 10_000, 1_000));
+        assertTrue(stats.isCompressing());
+        // a ratio between the two limits does not switch compression off
+        assertEquals(20, compressedCount(stats, 20, 10_000, 8_000));
+        assertTrue(stats.isCompressing());
+        compressedCount(stats, 20, 10_000, 10_000);
+        assertFalse(stats.isCompressing());
+    }
+
+    @Test
+    public void testSmallPayloads() {
+        final AdaptiveCompression.MethodStats stats = new AdaptiveCompression(512).getStats(new EJBMethodLocator("ping"));
+        // requests below the threshold are never compressed, so the ratio remains unknown
+        compressedCount(stats, AdaptiveCompression.PROBE_INTERVAL * 4, 100, -1);
+        assertFalse(stats.isCompressing());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import com.arjuna.ats.internal.jbossatx.jta.jca.XATerminator;
+import com.arjuna.ats.internal.jta.transaction.arjunacore.TransactionManagerImple;
+import com.arjuna.ats.internal.jta.transaction.arjunacore.TransactionSynchronizationRegistryImple;
+import com.arjuna.ats.jta.common.JTAEnvironmentBean;
+import com.arjuna.ats.jta.common.jtaPropertyManager;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.ClassCallback;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.logging.Logger;
+import org.jboss.remoting3.ConnectionPeerIdentity;
+import org.jboss.remoting3.Endpoint;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.security.auth.client.AuthenticationContext;
+import org.wildfly.transaction.client.LocalTransactionContext;
+import org.wildfly.transaction.client.SimpleXid;
+import org.wildfly.transaction.client.provider.jboss.JBossLocalTransactionProvider;
+
+/**
+ * Tests the asynchronous transaction operations against a server, including the combined before-completion and
+ * prepare request.
+ */
+public class AsyncTransactionOperationsTestCase {
+
+    private static final Logger logger = Logger.getLogger(AsyncTransactionOperationsTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final int FORMAT_ID = 0x4A424F53;
+
+    private DummyServer server;
+    private ConnectionPeerIdentity peerIdentity;
+    private EJBTransactionOperations operations;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        // the server imports the transactions into Narayana
+        final JTAEnvironmentBean jtaEnvironmentBean = jtaPropertyManager.getJTAEnvironmentBean();
+        jtaEnvironmentBean.setTransactionManagerClassName(TransactionManagerImple.class.getName());
+        jtaEnvironmentBean.setTransactionSynchronizationRegistryClassName(TransactionSynchronizationRegistryImple.class.getName());
+        final TransactionManager narayanaTm = jtaEnvironmentBean.getTransactionManager();
+        final TransactionSynchronizationRegistry narayanaTsr = jtaEnvironmentBean.getTransactionSynchronizationRegistry();
+        final XATerminator xat = new XATerminator();
+        final JBossLocalTransactionProvider.Builder builder = JBossLocalTransactionProvider.builder();
+        builder.setXATerminator(xat).setExtendedJBossXATerminator(xat);
+        builder.setTransactionManager(narayanaTm);
+        builder.setTransactionSynchronizationRegistry(narayanaTsr);
+        LocalTransactionContext.getContextManager().setGlobalDefault(new LocalTransactionContext(builder.build()));
+
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(AsyncTransactionOperationsTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+
+        ClassCallback.beforeClassCallback();
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        server = new DummyServer("localhost", 6999, "test-server", true);
+        server.start();
+        logger.info("Started server ...");
+
+        final URI uri = new URI("remote", null, "localhost", 6999, null, null, null);
+        peerIdentity = Endpoint.getCurrent().getConnectedIdentity(uri, "ejb", "jboss", AuthenticationContext.captureCurrent()).get().getConnection().getConnectionPeerIdentity();
+        operations = new EJBTransactionOperations(peerIdentity.getConnection());
+    }
+
+    @Test
+    public void testCommitAsync() throws Exception {
+        Assert.assertNull(await(operations.commitAsync(newXid(), true, peerIdentity)));
+    }
+
+    @Test
+    public void testRollbackAsync() throws Exception {
+        Assert.assertNull(await(operations.rollbackAsync(newXid(), peerIdentity)));
+    }
+
+    @Test
+    public void testBeforeCompletionAndPrepareAsync() throws Exception {
+        final Xid xid = newXid();
+        final int vote = await(operations.beforeCompletionAndPrepareAsync(xid, peerIdentity)).intValue();
+        if (vote == XAResource.XA_OK) {
+            Assert.assertNull(await(operations.commitAsync(xid, false, peerIdentity)));
+        } else {
+            // nothing was enlisted on the server
+            Assert.assertEquals(XAResource.XA_RDONLY, vote);
+        }
+        // the blocking variant sends the same request
+        final int blockingVote = operations.beforeCompletionAndPrepare(newXid(), peerIdentity);
+        Assert.assertTrue(blockingVote == XAResource.XA_OK || blockingVote == XAResource.XA_RDONLY);
+    }
+
+    @Test
+    public void testFailureCompletesExceptionally() throws Exception {
+        // a two phase commit of a transaction which was never prepared fails on the server
+        try {
+            await(operations.commitAsync(newXid(), false, peerIdentity));
+            Assert.fail("Expected the commit to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof XAException);
+        }
+        // the channel still answers afterwards
+        Assert.assertNull(await(operations.rollbackAsync(newXid(), peerIdentity)));
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        server.stop();
+        logger.info("Stopped server ...");
+    }
+
+    private static <T> T await(final CompletionStage<T> stage) throws Exception {
+        return stage.toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private static Xid newXid() {
+        final UUID uuid = UUID.randomUUID();
+        final byte[] gtid = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+        return new SimpleXid(FORMAT_ID, gtid, new byte[] { 1 });
+    }
+}
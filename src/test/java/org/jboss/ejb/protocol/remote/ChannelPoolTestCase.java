@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.ejb.client.EJBClient;
+import org.jboss.ejb.client.EJBClientConnection;
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.EJBClientInterceptor;
+import org.jboss.ejb.client.EJBClientInvocationContext;
+import org.jboss.ejb.client.StatefulEJBLocator;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.ClassCallback;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.logging.Logger;
+import org.jboss.remoting3.Connection;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that with more than one channel per connection, method invocations are spread over all of the channels while
+ * discovery, sessions and transactions stay on the primary channel.
+ */
+public class ChannelPoolTestCase {
+
+    private static final Logger logger = Logger.getLogger(ChannelPoolTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final String APP_NAME = "my-foo-app";
+    private static final String MODULE_NAME = "my-bar-module";
+    private static final String DISTINCT_NAME = "";
+
+    private static final int CHANNELS = 3;
+    private static final int CALLERS = 6;
+    private static final int ATTEMPTS = 20;
+
+    static {
+        // read once, when the first receiver is created
+        System.setProperty("org.jboss.ejb.client.channels-per-connection", Integer.toString(CHANNELS));
+    }
+
+    private final Set<EJBClientChannel> channels = ConcurrentHashMap.newKeySet();
+    private DummyServer server;
+    private EJBClientContext context;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        // the authentication configuration of the connections comes from here
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(ChannelPoolTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+
+        ClassCallback.beforeClassCallback();
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        server = new DummyServer("localhost", 6999, "test-server");
+        server.start();
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Delay.class.getSimpleName(), new DelayBean());
+        logger.info("Started server ...");
+
+        context = new EJBClientContext.Builder()
+            .addTransportProvider(new RemoteTransportProvider())
+            .addClientConnection(new EJBClientConnection.Builder().setDestination(new URI("remote", null, "localhost", 6999, null, null, null)).build())
+            .addInterceptor(new ChannelRecorder())
+            .build();
+        EJBClientContext.getContextManager().setGlobalDefault(context);
+    }
+
+    @Test
+    public void testInvocationsAreSpread() throws Exception {
+        final Delay proxy = EJBClient.createProxy(new StatelessEJBLocator<>(Delay.class, APP_NAME, MODULE_NAME, Delay.class.getSimpleName(), DISTINCT_NAME));
+        final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            // the invocation-only channels are opened once the primary one is ready
+            for (int attempt = 0; attempt < ATTEMPTS && channels.size() < CHANNELS; attempt ++) {
+                final List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < CALLERS; i ++) {
+                    final String message = "hello " + i;
+                    results.add(executor.submit(() -> proxy.delay(message)));
+                }
+                for (int i = 0; i < CALLERS; i ++) {
+                    Assert.assertEquals("hello " + i, results.get(i).get(30, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals("Invocations were not spread over all channels", CHANNELS, channels.size());
+
+        final Connection connection = channels.iterator().next().getChannel().getConnection();
+        int invocationsOnly = 0;
+        for (EJBClientChannel channel : channels) {
+            Assert.assertSame(connection, channel.getChannel().getConnection());
+            if (channel.isInvocationsOnly()) {
+                invocationsOnly ++;
+            }
+        }
+        Assert.assertEquals(CHANNELS - 1, invocationsOnly);
+
+        // only the primary channel receives module availability and cluster topology updates
+        Assert.assertEquals(1, server.getModuleListenerCount());
+        Assert.assertEquals(1, server.getClusterListenerCount());
+    }
+
+    @Test
+    public void testSessionsAndTransactionsUsePrimary() throws Exception {
+        final StatelessEJBLocator<Delay> locator = new StatelessEJBLocator<>(Delay.class, APP_NAME, MODULE_NAME, Delay.class.getSimpleName(), DISTINCT_NAME);
+        final StatefulEJBLocator<Delay> session = EJBClient.createSession(locator);
+        Assert.assertEquals("hello", EJBClient.createProxy(session).delay("hello"));
+        Assert.assertFalse(channels.isEmpty());
+
+        // session creation and transaction control both go through the receiver's client channel
+        final Connection connection = channels.iterator().next().getChannel().getConnection();
+        final RemoteEJBReceiver receiver = context.getAttachment(RemoteTransportProvider.ATTACHMENT_KEY);
+        final EJBClientChannel primary = receiver.getClientChannel(connection);
+        Assert.assertFalse(primary.isInvocationsOnly());
+        Assert.assertSame(primary, receiver.channelPool.getPrimary(connection).get());
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Delay.class.getSimpleName());
+        server.stop();
+        logger.info("Stopped server ...");
+    }
+
+    /**
+     * Records the channel each invocation was sent on.
+     */
+    private final class ChannelRecorder implements EJBClientInterceptor {
+        public void handleInvocation(final EJBClientInvocationContext context) throws Exception {
+            context.sendRequest();
+        }
+
+        public Object handleInvocationResult(final EJBClientInvocationContext context) throws Exception {
+            try {
+                return context.getResult();
+            } finally {
+                final EJBClientChannel channel = context.getAttachment(RemoteEJBReceiver.EJBCC_KEY);
+                if (channel != null) {
+                    channels.add(channel);
+                }
+            }
+        }
+    }
+
+    public interface Delay {
+        String delay(String message);
+    }
+
+    public static class DelayBean implements Delay {
+        public String delay(final String message) {
+            // keep the invocation in flight long enough for the others to pick another channel
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return message;
+        }
+    }
+}
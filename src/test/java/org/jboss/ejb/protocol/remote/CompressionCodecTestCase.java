@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the built-in {@link CompressionCodec} implementations.
+ */
+public final class CompressionCodecTestCase {
+
+    private static byte[] roundTrip(final CompressionCodec codec, final byte[] data) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream os = codec.compress(compressed, -1)) {
+            // write in odd-sized chunks to cross block boundaries
+            for (int pos = 0; pos < data.length; pos += 1000) {
+                os.write(data, pos, Math.min(1000, data.length - pos));
+            }
+        }
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream is = codec.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+            final byte[] buf = new byte[777];
+            int res;
+            while ((res = is.read(buf)) != -1) {
+                result.write(buf, 0, res);
+            }
+        }
+        assertArrayEquals(data, result.toByteArray());
+        return compressed.toByteArray();
+    }
+
+    @Test
+    public void testFastCodec() throws IOException {
+        final FastCompressionCodec codec = new FastCompressionCodec(1);
+        final Random random = new Random(1234);
+        final byte[] random200k = new byte[200_000];
+        random.nextBytes(random200k);
+        final byte[] text = new byte[200_000];
+        for (int i = 0; i < text.length; i ++) {
+            text[i] = (byte) ("lorem ipsum dolor sit amet ".charAt(i % 27) + (i % 1009 == 0 ? 1 : 0));
+        }
+        assertEquals(1, roundTrip(codec, new byte[0]).length);
+        roundTrip(codec, new byte[] { 1, 2, 3 });
+        // incompressible data is stored, with a few bytes of overhead per block
+        assertTrue(roundTrip(codec, random200k).length < random200k.length + 32);
+        assertTrue(roundTrip(codec, text).length < text.length / 10);
+        assertTrue(roundTrip(codec, new byte[FastCompressionCodec.BLOCK_SIZE * 2]).length < 1000);
+    }
+
+    @Test
+    public void testDeflateCodec() throws IOException {
+        final DeflateCompressionCodec codec = new DeflateCompressionCodec(1);
+        final byte[] data = new byte[100_000];
+        // run more than once to exercise the pooled deflater and inflater
+        for (int i = 0; i < 3; i ++) {
+            assertTrue(roundTrip(codec, data).length < 1000);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptBlock() throws IOException {
+        final byte[] encoded = new byte[] { 10, 5, (byte) 0xf0, 0, 0, 0, 0 };
+        try (InputStream is = new FastCompressionCodec(0).decompress(new ByteArrayInputStream(encoded))) {
+            while (is.read() != -1) {
+            }
+        }
+    }
+}
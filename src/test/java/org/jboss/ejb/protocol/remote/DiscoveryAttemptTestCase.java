@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.ejb.client.EJBClientConnection;
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.NodeHealthRegistry;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.ClassCallback;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.ejb.client.test.common.Echo;
+import org.jboss.ejb.client.test.common.EchoBean;
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.discovery.FilterSpec;
+import org.wildfly.discovery.ServiceType;
+import org.wildfly.discovery.ServiceURL;
+import org.wildfly.discovery.spi.DiscoveryResult;
+
+/**
+ * Tests that a discovery completes once its quorum of connections is established, cancelling the remaining attempts,
+ * and that an attempt which misses its deadline is cancelled and its destination recorded as failed.  The slow
+ * destination accepts connections but never answers them.
+ */
+public class DiscoveryAttemptTestCase {
+
+    private static final Logger logger = Logger.getLogger(DiscoveryAttemptTestCase.class);
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private static final String APP_NAME = "my-foo-app";
+    private static final String MODULE_NAME = "my-bar-module";
+    private static final String DISTINCT_NAME = "";
+
+    private static final long ATTEMPT_TIMEOUT = 5000L;
+
+    static {
+        // read once by the discovery provider; this depends on running in forkMode=always
+        System.setProperty("org.jboss.ejb.client.discovery.quorum", "2");
+        System.setProperty("org.jboss.ejb.client.discovery.attempt.timeout", String.valueOf(ATTEMPT_TIMEOUT));
+    }
+
+    private final DummyServer[] servers = new DummyServer[2];
+    private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+    private ServerSocket slowServer;
+    private URI slowDestination;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        // the authentication configuration of the connections comes from here
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(DiscoveryAttemptTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+
+        ClassCallback.beforeClassCallback();
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        servers[0] = startServer(6999, "node1");
+        servers[1] = startServer(7099, "node2");
+
+        // accept connections and hold them open without ever sending a greeting
+        slowServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        slowDestination = new URI("remote", null, "localhost", slowServer.getLocalPort(), null, null, null);
+        final Thread acceptor = new Thread(() -> {
+            try {
+                for (;;) {
+                    final Socket socket = slowServer.accept();
+                    accepted.add(socket);
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }, "slow-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Test that a discovery completes as soon as the quorum is reached, without waiting for the slow destination,
+     * and that the slow attempt is cancelled rather than left to run into its deadline.
+     */
+    @Test
+    public void testQuorum() throws Exception {
+        final EJBClientContext context = buildContext(node(6999), node(7099), slowDestination);
+        final NodeHealthRegistry healthRegistry = context.getNodeHealthRegistry();
+
+        final Result result = discover(context);
+        Assert.assertTrue("Discovery did not complete", result.done.await(30L, TimeUnit.SECONDS));
+        Assert.assertFalse("Discovery did not match", result.matches.isEmpty());
+        Assert.assertTrue("Unexpected problems: " + result.problems, result.problems.isEmpty());
+        Assert.assertEquals(NodeHealthRegistry.State.AVAILABLE, healthRegistry.getState(node(6999)));
+        Assert.assertEquals(NodeHealthRegistry.State.AVAILABLE, healthRegistry.getState(node(7099)));
+
+        // an attempt which was cancelled has its deadline removed, so the slow destination is never marked failed
+        Thread.sleep(ATTEMPT_TIMEOUT + 1000L);
+        Assert.assertEquals("Cancelled attempt ran into its deadline", NodeHealthRegistry.State.AVAILABLE, healthRegistry.getState(slowDestination));
+        Assert.assertEquals("Discovery completed more than once", 1, result.completions.get());
+    }
+
+    /**
+     * Test that an attempt which misses its deadline is cancelled, so that a discovery which cannot reach its quorum
+     * still completes, and that the slow destination is recorded as failed.
+     */
+    @Test
+    public void testAttemptTimeout() throws Exception {
+        final EJBClientContext context = buildContext(node(6999), slowDestination);
+        final NodeHealthRegistry healthRegistry = context.getNodeHealthRegistry();
+
+        final long start = System.nanoTime();
+        final Result result = discover(context);
+        Assert.assertTrue("Discovery did not complete", result.done.await(30L, TimeUnit.SECONDS));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Discovery completed after " + elapsed + " ms");
+
+        // one connection is short of the quorum, so only the deadline can have completed the discovery
+        Assert.assertTrue("Discovery completed before the deadline: " + elapsed + " ms", elapsed >= ATTEMPT_TIMEOUT);
+        Assert.assertFalse("Discovery did not match", result.matches.isEmpty());
+        // the attempt was cancelled, not failed
+        Assert.assertTrue("Unexpected problems: " + result.problems, result.problems.isEmpty());
+        Assert.assertEquals(NodeHealthRegistry.State.AVAILABLE, healthRegistry.getState(node(6999)));
+        Assert.assertEquals(NodeHealthRegistry.State.BACKING_OFF, healthRegistry.getState(slowDestination));
+    }
+
+    private static Result discover(final EJBClientContext context) {
+        final RemoteEJBReceiver receiver = context.getAttachment(RemoteTransportProvider.ATTACHMENT_KEY);
+        Assert.assertNotNull("No remote receiver", receiver);
+        final Result result = new Result();
+        final FilterSpec filterSpec = FilterSpec.equal(EJBClientContext.FILTER_ATTR_EJB_MODULE, APP_NAME + "/" + MODULE_NAME);
+        // discovery looks up the receiver and configured connections of the current context
+        context.run(() -> receiver.getDiscoveredNodeRegistry().discover(ServiceType.of("ejb", "jboss"), filterSpec, result));
+        return result;
+    }
+
+    private static EJBClientContext buildContext(final URI... destinations) {
+        final EJBClientContext.Builder builder = new EJBClientContext.Builder();
+        builder.addTransportProvider(new RemoteTransportProvider());
+        for (URI destination : destinations) {
+            builder.addClientConnection(new EJBClientConnection.Builder().setDestination(destination).build());
+        }
+        return builder.build();
+    }
+
+    private static URI node(final int port) throws Exception {
+        return new URI("remote", null, "localhost", port, null, null, null);
+    }
+
+    private static DummyServer startServer(final int port, final String name) throws Exception {
+        final DummyServer server = new DummyServer("localhost", port, name);
+        server.start();
+        server.register(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getSimpleName(), new EchoBean());
+        logger.info("Started server " + name);
+        return server;
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        slowServer.close();
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+        for (DummyServer server : servers) {
+            if (server != null) {
+                server.unregister(APP_NAME, MODULE_NAME, DISTINCT_NAME, Echo.class.getName());
+                try {
+                    server.stop();
+                } catch (Throwable t) {
+                    logger.info("Could not stop server", t);
+                }
+            }
+        }
+    }
+
+    static final class Result implements DiscoveryResult {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger completions = new AtomicInteger();
+        final List<ServiceURL> matches = new CopyOnWriteArrayList<>();
+        final List<Throwable> problems = new CopyOnWriteArrayList<>();
+
+        public void complete() {
+            completions.incrementAndGet();
+            done.countDown();
+        }
+
+        public void reportProblem(final Throwable description) {
+            problems.add(description);
+        }
+
+        public void addMatch(final ServiceURL serviceURL) {
+            matches.add(serviceURL);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.marshalling.InputStreamByteInput;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerFactory;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.OutputStreamByteOutput;
+import org.jboss.marshalling.Unmarshaller;
+import org.jboss.marshalling.river.RiverMarshallerFactory;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MarshallerPool}.
+ */
+public final class MarshallerPoolTestCase {
+
+    private static final MarshallerFactory FACTORY = new RiverMarshallerFactory();
+
+    @Test
+    public void testMarshallerReuse() throws Exception {
+        final MarshallerPool pool = new MarshallerPool(FACTORY, configuration(), 2);
+        final Marshaller marshaller = pool.getMarshaller();
+        final byte[] first = write(marshaller, pair("a"));
+        pool.returnMarshaller(marshaller);
+        assertSame(marshaller, pool.getMarshaller());
+        // with its caches cleared, the second message does not refer back to the first
+        final byte[] second = write(marshaller, pair("a"));
+        assertArrayEquals(first, second);
+        assertEquals(pair("a"), read(FACTORY.createUnmarshaller(configuration()), second));
+    }
+
+    @Test
+    public void testUnmarshallerReuse() throws Exception {
+        final MarshallerPool pool = new MarshallerPool(FACTORY, configuration(), 2);
+        final Unmarshaller unmarshaller = pool.getUnmarshaller();
+        assertEquals(pair("a"), read(unmarshaller, write(FACTORY.createMarshaller(configuration()), pair("a"))));
+        pool.returnUnmarshaller(unmarshaller);
+        assertSame(unmarshaller, pool.getUnmarshaller());
+        // the back reference in the second message is numbered from zero; a stale cache would resolve it to "a"
+        final List<Value> pair = read(unmarshaller, write(FACTORY.createMarshaller(configuration()), pair("b")));
+        assertEquals(pair("b"), pair);
+        assertSame(pair.get(0), pair.get(1));
+    }
+
+    @Test
+    public void testPoolSize() throws Exception {
+        final MarshallerPool pool = new MarshallerPool(FACTORY, configuration(), 2);
+        final List<Marshaller> marshallers = new ArrayList<>();
+        final List<Unmarshaller> unmarshallers = new ArrayList<>();
+        for (int i = 0; i < 3; i ++) {
+            marshallers.add(pool.getMarshaller());
+            unmarshallers.add(pool.getUnmarshaller());
+        }
+        for (int i = 0; i < 3; i ++) {
+            pool.returnMarshaller(marshallers.get(i));
+            pool.returnUnmarshaller(unmarshallers.get(i));
+        }
+        // only the first two were kept
+        assertSame(marshallers.get(0), pool.getMarshaller());
+        assertSame(marshallers.get(1), pool.getMarshaller());
+        assertFalse(marshallers.contains(pool.getMarshaller()));
+        assertSame(unmarshallers.get(0), pool.getUnmarshaller());
+        assertSame(unmarshallers.get(1), pool.getUnmarshaller());
+        assertFalse(unmarshallers.contains(pool.getUnmarshaller()));
+    }
+
+    @Test
+    public void testNoPooling() throws Exception {
+        final MarshallerPool pool = new MarshallerPool(FACTORY, configuration(), 0);
+        final Marshaller marshaller = pool.getMarshaller();
+        pool.returnMarshaller(marshaller);
+        assertNotSame(marshaller, pool.getMarshaller());
+        final Unmarshaller unmarshaller = pool.getUnmarshaller();
+        pool.returnUnmarshaller(unmarshaller);
+        assertNotSame(unmarshaller, pool.getUnmarshaller());
+    }
+
+    private static MarshallingConfiguration configuration() {
+        final MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setVersion(4);
+        return configuration;
+    }
+
+    /**
+     * A list holding the same value twice, so that the second element is written as a back reference.
+     */
+    private static List<Value> pair(final String name) {
+        final Value value = new Value(name);
+        final List<Value> pair = new ArrayList<>();
+        pair.add(value);
+        pair.add(value);
+        return pair;
+    }
+
+    private static byte[] write(final Marshaller marshaller, final Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        marshaller.start(new OutputStreamByteOutput(bytes));
+        marshaller.writeObject(object);
+        marshaller.finish();
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T read(final Unmarshaller unmarshaller, final byte[] bytes) throws IOException, ClassNotFoundException {
+        unmarshaller.start(new InputStreamByteInput(new ByteArrayInputStream(bytes)));
+        try {
+            return (T) unmarshaller.readObject();
+        } finally {
+            unmarshaller.finish();
+        }
+    }
+
+    static final class Value implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        Value(final String name) {
+            this.name = name;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Value && name.equals(((Value) obj).name);
+        }
+
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+}
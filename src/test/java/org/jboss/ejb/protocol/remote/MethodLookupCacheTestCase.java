@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.ejb.client.EJBMethodLocator;
+import org.jboss.ejb.client.EJBModuleIdentifier;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.ejb.client.test.common.Echo;
+import org.jboss.ejb.client.test.common.EchoBean;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MethodLookupCache}.
+ */
+public final class MethodLookupCacheTestCase {
+
+    private static final EJBModuleIdentifier MODULE = new EJBModuleIdentifier("app", "module", "");
+
+    @Test
+    public void testOverloadedMethods() {
+        // StringBuilder has many overloads of append and insert
+        for (Method method : StringBuilder.class.getMethods()) {
+            final EJBMethodLocator methodLocator = EJBMethodLocator.forMethod(method);
+            assertEquals(scan(StringBuilder.class, methodLocator), MethodLookupCache.findMethod(MODULE, StringBuilder.class, methodLocator));
+        }
+        assertNull(MethodLookupCache.findMethod(MODULE, StringBuilder.class, new EJBMethodLocator("append", "no.such.Type")));
+        assertNull(MethodLookupCache.findMethod(MODULE, StringBuilder.class, new EJBMethodLocator("noSuchMethod")));
+    }
+
+    @Test
+    public void testInvalidation() {
+        final EJBMethodLocator methodLocator = new EJBMethodLocator("append", "java.lang.String");
+        final Method method = MethodLookupCache.findMethod(MODULE, StringBuilder.class, methodLocator);
+        assertEquals(scan(StringBuilder.class, methodLocator), method);
+        final int count = MethodLookupCache.getModuleCount();
+        MethodLookupCache.invalidate(Collections.singletonList(MODULE));
+        assertEquals(count - 1, MethodLookupCache.getModuleCount());
+        assertEquals(method, MethodLookupCache.findMethod(MODULE, StringBuilder.class, methodLocator));
+    }
+
+    @Test
+    public void testUndeploymentWithoutClients() throws Exception {
+        final DummyServer server = new DummyServer("localhost", 6999, "test-server");
+        server.start();
+        try {
+            server.register("app", "undeployed", "", Echo.class.getSimpleName(), new EchoBean());
+            final EJBModuleIdentifier module = new EJBModuleIdentifier("app", "undeployed", "");
+            assertNotNull(MethodLookupCache.findMethod(module, Echo.class, new EJBMethodLocator("echo", "java.lang.String")));
+            final int count = MethodLookupCache.getModuleCount();
+            // no channel is open, so only the service itself is there to hear of it
+            server.unregister("app", "undeployed", "", Echo.class.getSimpleName());
+            assertEquals(count - 1, MethodLookupCache.getModuleCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testModuleLimit() {
+        final EJBMethodLocator methodLocator = new EJBMethodLocator("append", "java.lang.String");
+        final Method method = MethodLookupCache.findMethod(MODULE, StringBuilder.class, methodLocator);
+        final List<EJBModuleIdentifier> modules = new ArrayList<>();
+        for (int i = 0; i < 2000; i ++) {
+            final EJBModuleIdentifier module = new EJBModuleIdentifier("app", "module-" + i, "");
+            modules.add(module);
+            assertEquals(method, MethodLookupCache.findMethod(module, StringBuilder.class, methodLocator));
+        }
+        assertTrue(MethodLookupCache.getModuleCount() <= 1024);
+        MethodLookupCache.invalidate(modules);
+    }
+
+    /**
+     * Looks up every method of a view with 60 overloads, both through the cache and through the linear scan which it
+     * replaced, and checks that they agree, on the first lookup and once the view is cached.
+     */
+    @Test
+    public void testManyOverloads() {
+        final Method[] methods = Overloaded.class.getMethods();
+        assertEquals(60, methods.length);
+        for (int round = 0; round < 2; round ++) {
+            for (Method method : methods) {
+                final EJBMethodLocator methodLocator = EJBMethodLocator.forMethod(method);
+                assertEquals(method, linearScan(Overloaded.class, methodLocator));
+                assertEquals(method, MethodLookupCache.findMethod(MODULE, Overloaded.class, methodLocator));
+            }
+        }
+    }
+
+    @Test
+    public void testSignatures() {
+        assertEquals(0, MethodLookupCache.getParameterTypeNames("").length);
+        assertArrayEquals(new String[] { "int", "java.lang.String" }, MethodLookupCache.getParameterTypeNames("int,java.lang.String"));
+        assertSame(MethodLookupCache.getParameterTypeNames("long"), MethodLookupCache.getParameterTypeNames("long"));
+    }
+
+    private static Method scan(final Class<?> view, final EJBMethodLocator methodLocator) {
+        for (Method method : view.getMethods()) {
+            if (EJBMethodLocator.forMethod(method).equals(methodLocator)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The lookup which the cache replaced.
+     */
+    private static Method linearScan(final Class<?> view, final EJBMethodLocator methodLocator) {
+        for (Method method : view.getMethods()) {
+            if (method.getName().equals(methodLocator.getMethodName())) {
+                final Class<?>[] methodParamTypes = method.getParameterTypes();
+                if (methodParamTypes.length != methodLocator.getParameterCount()) {
+                    continue;
+                }
+                boolean found = true;
+                for (int i = 0; i < methodParamTypes.length; i ++) {
+                    if (! methodParamTypes[i].getName().equals(methodLocator.getParameterTypeName(i))) {
+                        found = false;
+                        break;
+                    }
+                }
+                if (found) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A view with 60 overloads of one method.
+     */
+    interface Overloaded {
+        void call(boolean a);
+        void call(byte a);
+        void call(char a);
+        void call(short a);
+        void call(int a);
+        void call(long a);
+        void call(float a);
+        void call(double a);
+        void call(String a);
+        void call(Object a);
+        void call(Integer a);
+        void call(Long a);
+        void call(String a, boolean b);
+        void call(String a, byte b);
+        void call(String a, char b);
+        void call(String a, short b);
+        void call(String a, int b);
+        void call(String a, long b);
+        void call(String a, float b);
+        void call(String a, double b);
+        void call(String a, String b);
+        void call(String a, Object b);
+        void call(String a, Integer b);
+        void call(String a, Long b);
+        void call(int a, boolean b);
+        void call(int a, byte b);
+        void call(int a, char b);
+        void call(int a, short b);
+        void call(int a, int b);
+        void call(int a, long b);
+        void call(int a, float b);
+        void call(int a, double b);
+        void call(int a, String b);
+        void call(int a, Object b);
+        void call(int a, Integer b);
+        void call(int a, Long b);
+        void call(long a, boolean b);
+        void call(long a, byte b);
+        void call(long a, char b);
+        void call(long a, short b);
+        void call(long a, int b);
+        void call(long a, long b);
+        void call(long a, float b);
+        void call(long a, double b);
+        void call(long a, String b);
+        void call(long a, Object b);
+        void call(long a, Integer b);
+        void call(long a, Long b);
+        void call(Object a, boolean b);
+        void call(Object a, byte b);
+        void call(Object a, char b);
+        void call(Object a, short b);
+        void call(Object a, int b);
+        void call(Object a, long b);
+        void call(Object a, float b);
+        void call(Object a, double b);
+        void call(Object a, String b);
+        void call(Object a, Object b);
+        void call(Object a, Integer b);
+        void call(Object a, Long b);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.Collections;
+
+import org.jboss.ejb.client.EJBIdentifier;
+import org.jboss.marshalling.InputStreamByteInput;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerFactory;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.OutputStreamByteOutput;
+import org.jboss.marshalling.Unmarshaller;
+import org.jboss.marshalling.river.RiverMarshallerFactory;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProtocolV4ObjectTable}.
+ */
+public final class ProtocolV4ObjectTableTestCase {
+
+    private static final MarshallerFactory FACTORY = new RiverMarshallerFactory();
+
+    private static final EJBIdentifier ID1 = new EJBIdentifier("app", "module", "bean1", "");
+    private static final EJBIdentifier ID2 = new EJBIdentifier("app", "module", "bean2", "");
+
+    @Test
+    public void testDefineAndReference() throws Exception {
+        final ProtocolV4ObjectTable client = new ProtocolV4ObjectTable(true);
+        final ProtocolV4ObjectTable server = new ProtocolV4ObjectTable(false);
+        assertEquals(ID1, read(server, write(client, ID1)));
+        // confirm the definition, so the next message refers to it by key alone
+        ProtocolV4ObjectTable.confirm(Collections.singletonList((ProtocolV4ObjectTable.Entry) client.getObjectWriter(ID1)));
+        assertEquals(ID1, read(server, write(client, ID1)));
+    }
+
+    @Test
+    public void testClientStopsAtLimit() throws Exception {
+        final ProtocolV4ObjectTable client = new ProtocolV4ObjectTable(true, 1);
+        final ProtocolV4ObjectTable server = new ProtocolV4ObjectTable(false, 1);
+        assertNotNull(client.getObjectWriter(ID1));
+        // the dictionary is full, so the second value is written out normally
+        assertNull(client.getObjectWriter(ID2));
+        assertEquals(ID1, read(server, write(client, ID1)));
+        assertEquals(ID2, read(server, write(client, ID2)));
+    }
+
+    @Test
+    public void testKeyOutOfRange() throws Exception {
+        final ProtocolV4ObjectTable client = new ProtocolV4ObjectTable(true, 2);
+        final ProtocolV4ObjectTable server = new ProtocolV4ObjectTable(false, 1);
+        assertEquals(ID1, read(server, write(client, ID1)));
+        try {
+            read(server, write(client, ID2));
+            fail("Expected key beyond the limit to be rejected");
+        } catch (InvalidObjectException expected) {
+        }
+    }
+
+    @Test
+    public void testConflictingRedefinition() throws Exception {
+        final ProtocolV4ObjectTable server = new ProtocolV4ObjectTable(false);
+        // each client table hands out key 0 for its first value
+        assertEquals(ID1, read(server, write(new ProtocolV4ObjectTable(true), ID1)));
+        assertEquals(ID1, read(server, write(new ProtocolV4ObjectTable(true), ID1)));
+        try {
+            read(server, write(new ProtocolV4ObjectTable(true), ID2));
+            fail("Expected conflicting redefinition to be rejected");
+        } catch (InvalidObjectException expected) {
+        }
+        // the original definition is kept
+        assertEquals(ID1, read(server, write(new ProtocolV4ObjectTable(true), ID1)));
+    }
+
+    private static byte[] write(final ProtocolV4ObjectTable table, final Object object) throws IOException {
+        final MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setVersion(4);
+        configuration.setObjectTable(table);
+        final Marshaller marshaller = FACTORY.createMarshaller(configuration);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        marshaller.start(new OutputStreamByteOutput(bytes));
+        marshaller.writeObject(object);
+        marshaller.finish();
+        return bytes.toByteArray();
+    }
+
+    private static Object read(final ProtocolV4ObjectTable table, final byte[] bytes) throws IOException, ClassNotFoundException {
+        final MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setVersion(4);
+        configuration.setObjectTable(table);
+        final Unmarshaller unmarshaller = FACTORY.createUnmarshaller(configuration);
+        unmarshaller.start(new InputStreamByteInput(new ByteArrayInputStream(bytes)));
+        try {
+            return unmarshaller.readObject();
+        } finally {
+            unmarshaller.finish();
+        }
+    }
+}
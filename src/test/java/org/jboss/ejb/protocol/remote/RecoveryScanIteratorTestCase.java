@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.NoSuchElementException;
+
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import com.arjuna.ats.internal.jbossatx.jta.jca.XATerminator;
+import com.arjuna.ats.internal.jta.transaction.arjunacore.TransactionManagerImple;
+import com.arjuna.ats.internal.jta.transaction.arjunacore.TransactionSynchronizationRegistryImple;
+import com.arjuna.ats.jta.common.JTAEnvironmentBean;
+import com.arjuna.ats.jta.common.jtaPropertyManager;
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.legacy.JBossEJBProperties;
+import org.jboss.ejb.client.test.ClassCallback;
+import org.jboss.ejb.client.test.common.DummyServer;
+import org.jboss.remoting3.Connection;
+import org.jboss.remoting3.Endpoint;
+import org.jboss.remoting3.MessageOutputStream;
+import org.jboss.remoting3.util.InvocationTracker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.security.auth.client.AuthenticationContext;
+import org.wildfly.transaction.client.LocalTransactionContext;
+import org.wildfly.transaction.client.SimpleXid;
+import org.wildfly.transaction.client.provider.jboss.JBossLocalTransactionProvider;
+
+/**
+ * Tests for {@link RecoveryScanIterator}, and for the handling of its requests on the server.
+ */
+public final class RecoveryScanIteratorTestCase {
+
+    private static final String PROPERTIES_FILE = "jboss-ejb-client.properties";
+
+    private DummyServer server;
+    private EJBClientChannel channel;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        // the server answers the scans from Narayana
+        final JTAEnvironmentBean jtaEnvironmentBean = jtaPropertyManager.getJTAEnvironmentBean();
+        jtaEnvironmentBean.setTransactionManagerClassName(TransactionManagerImple.class.getName());
+        jtaEnvironmentBean.setTransactionSynchronizationRegistryClassName(TransactionSynchronizationRegistryImple.class.getName());
+        final TransactionManager narayanaTm = jtaEnvironmentBean.getTransactionManager();
+        final TransactionSynchronizationRegistry narayanaTsr = jtaEnvironmentBean.getTransactionSynchronizationRegistry();
+        final XATerminator xat = new XATerminator();
+        final JBossLocalTransactionProvider.Builder builder = JBossLocalTransactionProvider.builder();
+        builder.setXATerminator(xat).setExtendedJBossXATerminator(xat);
+        builder.setTransactionManager(narayanaTm);
+        builder.setTransactionSynchronizationRegistry(narayanaTsr);
+        LocalTransactionContext.getContextManager().setGlobalDefault(new LocalTransactionContext(builder.build()));
+
+        JBossEJBProperties ejbProperties = JBossEJBProperties.fromClassPath(RecoveryScanIteratorTestCase.class.getClassLoader(), PROPERTIES_FILE);
+        JBossEJBProperties.getContextManager().setGlobalDefault(ejbProperties);
+
+        ClassCallback.beforeClassCallback();
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        server = new DummyServer("localhost", 6999, "test-server", true);
+        server.start();
+
+        final URI uri = new URI("remote", null, "localhost", 6999, null, null, null);
+        final Connection connection = Endpoint.getCurrent().getConnectedIdentity(uri, "ejb", "jboss", AuthenticationContext.captureCurrent()).get().getConnection();
+        channel = EJBClientContext.getCurrent().getAttachment(RemoteTransportProvider.ATTACHMENT_KEY).getClientChannel(connection);
+    }
+
+    @Test
+    public void testRetrievedScan() throws Exception {
+        final Xid xid1 = new SimpleXid(1, new byte[] { 1 }, new byte[0]);
+        final Xid xid2 = new SimpleXid(1, new byte[] { 2 }, new byte[0]);
+        // nothing is fetched, so the scan needs no channel
+        final RecoveryScanIterator iterator = new RecoveryScanIterator(null, new Xid[] { xid1, xid2 });
+        assertTrue(iterator.hasNext());
+        assertSame(xid1, iterator.next());
+        assertSame(xid2, iterator.next());
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("Expected the scan to be exhausted");
+        } catch (NoSuchElementException expected) {
+        }
+        iterator.close();
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        assertTrue(channel.getVersion() >= 4);
+        // one branch at a time, so that every branch the server knows of takes a cursor round trip
+        final RecoveryScanIterator iterator = new RecoveryScanIterator(channel, XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN, "test", 1);
+        try {
+            while (iterator.hasNext()) {
+                assertNotNull(iterator.next());
+            }
+            try {
+                iterator.next();
+                fail("Expected the scan to be exhausted");
+            } catch (NoSuchElementException expected) {
+            }
+        } finally {
+            iterator.close();
+        }
+        // closing an unfinished scan must not leave anything behind which breaks the next one
+        new RecoveryScanIterator(channel, XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN, "test", 1).close();
+        final RecoveryScanIterator next = new RecoveryScanIterator(channel, XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN, "test", RecoveryScanIterator.BATCH_SIZE);
+        try {
+            while (next.hasNext()) {
+                assertNotNull(next.next());
+            }
+        } finally {
+            next.close();
+        }
+    }
+
+    @Test
+    public void testUnknownCursor() throws Exception {
+        final InvocationTracker invocationTracker = channel.getInvocationTracker();
+        final EJBTransactionOperations.PlainTransactionInvocation invocation = invocationTracker.addInvocation(EJBTransactionOperations.PlainTransactionInvocation::new);
+        try (MessageOutputStream os = invocationTracker.allocateMessage(invocation)) {
+            os.writeByte(Protocol.TXN_RECOVERY_SCAN_REQUEST);
+            Protocol.writeInvocationId(os, channel.getVersion(), invocation.getIndex());
+            PackedInteger.writePackedInteger(os, 12345);
+            PackedInteger.writePackedInteger(os, 1);
+        }
+        try (AwaitableInvocation.Response response = invocation.getResponse()) {
+            assertEquals(Protocol.APPLICATION_EXCEPTION, response.getParameter());
+            try {
+                throw EJBTransactionOperations.readAppException(channel, response);
+            } catch (RuntimeException e) {
+                assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof XAException);
+                assertEquals(XAException.XAER_PROTO, ((XAException) e.getCause()).errorCode);
+            }
+        }
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        server.stop();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.Xid;
+
+import org.junit.Test;
+import org.wildfly.transaction.client.SimpleXid;
+
+/**
+ * Tests for {@link RecoveryScans}.
+ */
+public final class RecoveryScansTestCase {
+
+    @Test
+    public void testCursors() {
+        final RecoveryScans scans = new RecoveryScans(4, Long.MAX_VALUE);
+        final RecoveryScans.Scan scan = scans.start(xids(5));
+        assertNotNull(scan);
+        assertNotEquals(0, scan.getCursor());
+        assertEquals(0, scan.advance(2));
+        scans.suspend(scan);
+        assertEquals(1, scans.size());
+
+        // the peer asks for the next batch
+        assertSame(scan, scans.resume(scan.getCursor()));
+        assertEquals(0, scans.size());
+        assertEquals(2, scan.advance(3));
+        assertEquals(0, scan.getRemaining());
+        scans.finish(scan);
+
+        // a finished scan is gone, and so is one which never existed
+        assertNull(scans.resume(scan.getCursor()));
+        assertNull(scans.resume(scan.getCursor() + 1));
+
+        final RecoveryScans.Scan other = scans.start(xids(1));
+        assertNotEquals(scan.getCursor(), other.getCursor());
+    }
+
+    @Test
+    public void testLimit() {
+        final RecoveryScans scans = new RecoveryScans(2, Long.MAX_VALUE);
+        final RecoveryScans.Scan scan1 = scans.start(xids(2));
+        scans.suspend(scan1);
+        scans.suspend(scans.start(xids(2)));
+        assertNull(scans.start(xids(2)));
+
+        // one which is taken to send its next batch is still open
+        assertSame(scan1, scans.resume(scan1.getCursor()));
+        assertNull(scans.start(xids(2)));
+
+        // once it is finished, another one may start
+        scans.finish(scan1);
+        assertNotNull(scans.start(xids(2)));
+    }
+
+    @Test
+    public void testLimitBeforeSuspend() {
+        // scans whose first batch is still being sent count against the limit
+        final RecoveryScans scans = new RecoveryScans(1, Long.MAX_VALUE);
+        assertNotNull(scans.start(xids(2)));
+        assertNull(scans.start(xids(2)));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final RecoveryScans scans = new RecoveryScans(1, TimeUnit.MILLISECONDS.toNanos(1L));
+        final RecoveryScans.Scan idle = scans.start(xids(2));
+        scans.suspend(idle);
+        Thread.sleep(10L);
+
+        // the idle scan makes room for a new one, and cannot be resumed any more
+        final RecoveryScans.Scan scan = scans.start(xids(2));
+        assertNotNull(scan);
+        assertEquals(0, scans.size());
+        assertNull(scans.resume(idle.getCursor()));
+
+        scans.suspend(scan);
+        Thread.sleep(10L);
+        assertNull(scans.resume(scan.getCursor()));
+    }
+
+    private static Xid[] xids(final int count) {
+        final Xid[] xids = new Xid[count];
+        for (int i = 0; i < count; i ++) {
+            xids[i] = new SimpleXid(1, new byte[] { (byte) i }, new byte[0]);
+        }
+        return xids;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.remoting3.MessageInputStream;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RemoteStreams}.
+ */
+public final class RemoteStreamsTestCase {
+
+    @Test
+    public void testContentBeforeAndAfterReader() throws Exception {
+        final RemoteStreams streams = new RemoteStreams(TimeUnit.SECONDS.toNanos(10L));
+        // the content arrives first
+        streams.attach(1, 1, new TestMessage(new byte[] { 1, 2 }));
+        final InputStream first = streams.getStream(1, 1);
+        assertEquals(1, first.read());
+        assertEquals(2, first.read());
+        assertEquals(-1, first.read());
+        first.close();
+
+        // the reader asks first
+        final InputStream second = streams.getStream(2, 0);
+        final TestMessage message = new TestMessage(new byte[] { 3 });
+        streams.attach(2, 0, message);
+        assertEquals(3, second.read());
+        second.close();
+        assertTrue(message.closed);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final RemoteStreams streams = new RemoteStreams(TimeUnit.MILLISECONDS.toNanos(50L));
+        final InputStream stream = streams.getStream(1, 1);
+        try {
+            stream.read();
+            fail("Expected the read to time out");
+        } catch (InterruptedIOException expected) {
+        }
+        // content which arrives late is discarded once the invocation releases its streams
+        final TestMessage late = new TestMessage(new byte[] { 1 });
+        streams.attach(1, 1, late);
+        streams.release(1);
+        assertTrue(late.closed);
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        final RemoteStreams streams = new RemoteStreams(TimeUnit.SECONDS.toNanos(10L));
+        final TestMessage unread = new TestMessage(new byte[] { 1 });
+        streams.attach(1, 1, unread);
+        final InputStream waiting = streams.getStream(1, 2);
+        streams.release(1);
+        assertTrue(unread.closed);
+        try {
+            waiting.read();
+            fail("Expected the stream to be closed");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testExpected() throws Exception {
+        final RemoteStreams streams = new RemoteStreams(TimeUnit.SECONDS.toNanos(10L));
+        final boolean[] removed = new boolean[1];
+        streams.expect(1, 0, () -> removed[0] = true);
+        // the reader gives up before the content arrives; the entry stays until it does
+        streams.getStream(1, 0).close();
+        assertFalse(removed[0]);
+        final TestMessage message = new TestMessage(new byte[] { 1 });
+        streams.attach(1, 0, message);
+        assertTrue(message.closed);
+        assertTrue(removed[0]);
+    }
+
+    static final class TestMessage extends MessageInputStream {
+        private final ByteArrayInputStream delegate;
+        volatile boolean closed;
+
+        TestMessage(final byte[] content) {
+            delegate = new ByteArrayInputStream(content);
+        }
+
+        public int read() {
+            return delegate.read();
+        }
+
+        public int read(final byte[] b, final int off, final int len) {
+            return delegate.read(b, off, len);
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.EJBReceiver;
+import org.jboss.ejb.client.EJBReceiverContext;
+import org.jboss.ejb.client.EJBTransportProvider;
+import org.jboss.ejb.client.RetryMetrics;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RetryScheduler}.
+ */
+public final class RetrySchedulerTestCase {
+
+    private static EJBReceiverContext newReceiverContext() {
+        final AtomicReference<EJBReceiverContext> ref = new AtomicReference<>();
+        new EJBClientContext.Builder().addTransportProvider(new EJBTransportProvider() {
+            public void notifyRegistered(final EJBReceiverContext receiverContext) {
+                ref.set(receiverContext);
+            }
+
+            public boolean supportsProtocol(final String uriScheme) {
+                return false;
+            }
+
+            public EJBReceiver getReceiver(final EJBReceiverContext receiverContext, final String uriScheme) throws IllegalArgumentException {
+                throw new IllegalArgumentException();
+            }
+        }).build();
+        return ref.get();
+    }
+
+    @Test
+    public void testOrderingPerKey() throws Exception {
+        final EJBReceiverContext receiverContext = newReceiverContext();
+        final RetryMetrics metrics = receiverContext.getClientContext().getRetryMetrics();
+        final RetryScheduler scheduler = new RetryScheduler(4, receiverContext);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Object key = new Object();
+            final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch done = new CountDownLatch(100);
+            for (int i = 0; i < 100; i ++) {
+                final Integer value = Integer.valueOf(i);
+                scheduler.getExecutor(executor, key).execute(() -> {
+                    order.add(value);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 100; i ++) {
+                assertEquals(i, order.get(i).intValue());
+            }
+            assertEquals(100, metrics.getScheduledCount());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, metrics.getQueueDepth());
+    }
+
+    @Test
+    public void testPartitionsRunConcurrently() throws Exception {
+        final RetryScheduler scheduler = new RetryScheduler(2, newReceiverContext());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // find two keys in different partitions
+            final Object first = new Object();
+            Object second = new Object();
+            while (scheduler.partitionOf(second) == scheduler.partitionOf(first)) {
+                second = new Object();
+            }
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final CountDownLatch released = new CountDownLatch(1);
+            scheduler.getExecutor(executor, first).execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // must not wait behind the blocked task of the other partition
+            scheduler.getExecutor(executor, second).execute(released::countDown);
+            assertTrue(released.await(10, TimeUnit.SECONDS));
+            blocked.countDown();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_CLUSTER;
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_EJB_MODULE;
+import static org.jboss.ejb.client.EJBClientContext.FILTER_ATTR_NODE;
+import static org.junit.Assert.*;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.wildfly.discovery.AttributeValue;
+import org.wildfly.discovery.FilterSpec;
+import org.wildfly.discovery.ServiceURL;
+
+/**
+ * Tests for {@link ServiceURLIndex}.
+ */
+public final class ServiceURLIndexTestCase {
+
+    private static ServiceURL createServiceURL(final String uri, final String node, final String cluster, final String... modules) {
+        final ServiceURL.Builder builder = new ServiceURL.Builder();
+        builder.setUri(URI.create(uri));
+        builder.setAbstractType("ejb");
+        builder.setAbstractTypeAuthority("jboss");
+        builder.addAttribute(FILTER_ATTR_NODE, AttributeValue.fromString(node));
+        if (cluster != null) {
+            builder.addAttribute(FILTER_ATTR_CLUSTER, AttributeValue.fromString(cluster));
+        }
+        for (String module : modules) {
+            builder.addAttribute(FILTER_ATTR_EJB_MODULE, AttributeValue.fromString(module));
+        }
+        return builder.create();
+    }
+
+    @Test
+    public void testLookups() {
+        final ServiceURLIndex index = new ServiceURLIndex(FILTER_ATTR_EJB_MODULE, FILTER_ATTR_CLUSTER, FILTER_ATTR_NODE);
+        final ServiceURL plain = createServiceURL("remote://host1:8080", "node1", null, "app/a", "app/b");
+        final ServiceURL clustered = createServiceURL("remote://host1:8080", "node1", "ejb", "app/a", "app/b");
+        final ServiceURL other = createServiceURL("remote://host2:8080", "node2", null, "app/c");
+        index.add(plain);
+        index.add(clustered);
+        index.add(other);
+        assertEquals(3, index.size());
+
+        assertEquals(2, index.getCandidates(FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/a")).size());
+        assertTrue(index.getCandidates(FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/c")).contains(other));
+        assertTrue(index.getCandidates(FilterSpec.equal(FILTER_ATTR_NODE, "node3")).isEmpty());
+        // the smallest indexed set is used for a conjunction
+        assertEquals(1, index.getCandidates(FilterSpec.all(
+            FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/a"),
+            FilterSpec.equal(FILTER_ATTR_CLUSTER, "ejb")
+        )).size());
+        // filters on other attributes cannot be answered from the index
+        assertEquals(3, index.getCandidates(FilterSpec.hasAttribute(FILTER_ATTR_CLUSTER)).size());
+
+        index.remove(plain);
+        index.remove(clustered);
+        assertEquals(1, index.size());
+        assertTrue(index.getCandidates(FilterSpec.equal(FILTER_ATTR_EJB_MODULE, "app/a")).isEmpty());
+        assertEquals(1, index.getCandidates(FilterSpec.equal(FILTER_ATTR_NODE, "node2")).size());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2017 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.ejb.protocol.remote;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TransactionHandles}.
+ */
+public final class TransactionHandlesTestCase {
+
+    @Test
+    public void testAllocationAndRelease() throws Exception {
+        final TransactionHandles handles = new TransactionHandles(2);
+        final TestTransaction tx1 = new TestTransaction();
+        final TestTransaction tx2 = new TestTransaction();
+        final TestTransaction tx3 = new TestTransaction();
+
+        final TransactionHandles.Handle handle1 = handles.get(tx1);
+        assertNotNull(handle1);
+        assertSame(handle1, handles.get(tx1));
+        assertFalse(handle1.isConfirmed());
+        handle1.confirm();
+        assertTrue(handles.get(tx1).isConfirmed());
+
+        final TransactionHandles.Handle handle2 = handles.get(tx2);
+        assertNotEquals(handle1.getId(), handle2.getId());
+        // the table is full, so this one goes out in full
+        assertNull(handles.get(tx3));
+
+        tx1.complete();
+        assertEquals(1, handles.size());
+        final TransactionHandles.Handle handle3 = handles.get(tx3);
+        assertEquals(handle1.getId(), handle3.getId());
+        // a reused handle must be registered again
+        assertFalse(handle3.isConfirmed());
+    }
+
+    @Test
+    public void testCompletingTransaction() {
+        final TransactionHandles handles = new TransactionHandles(2);
+        final TestTransaction tx = new TestTransaction();
+        tx.rollbackOnly = true;
+        assertNull(handles.get(tx));
+        assertEquals(0, handles.size());
+        assertNotNull(handles.get(new TestTransaction()));
+    }
+
+    @Test
+    public void testDisabled() {
+        assertNull(new TransactionHandles(0).get(new TestTransaction()));
+    }
+
+    static final class TestTransaction implements Transaction {
+        final List<Synchronization> synchronizations = new ArrayList<>();
+        boolean rollbackOnly;
+
+        void complete() {
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(Status.STATUS_COMMITTED);
+            }
+        }
+
+        public void registerSynchronization(final Synchronization sync) throws RollbackException {
+            if (rollbackOnly) {
+                throw new RollbackException();
+            }
+            synchronizations.add(sync);
+        }
+
+        public void commit() {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean delistResource(final XAResource xaRes, final int flag) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean enlistResource(final XAResource xaRes) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int getStatus() {
+            return rollbackOnly ? Status.STATUS_MARKED_ROLLBACK : Status.STATUS_ACTIVE;
+        }
+
+        public void rollback() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+    }
+}